@@ -0,0 +1,394 @@
+package com.liskovsoft.leankeyboard.build;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Compiles word lists (src/main/dictionaries/&lt;lang&gt;.txt) into memory-mappable prediction dictionaries.<br/>
+ * Words are stored in a double-array trie. Every state keeps the best frequency of its subtree,
+ * so the runtime can enumerate completions best-first and stop early.<br/>
+ * Must be kept in sync with the runtime reader (<code>WordDictionary</code>).
+ * <pre>
+ * source:    # comment
+ *            word freq          (unigram)
+ *            word1 word2 freq   (bigram, both words must be present as unigrams)
+ *
+ * file:      int magic, short version, short reserved,
+ *            int alphabetSize, char[alphabetSize] (sorted, code = index + 1, code 0 = end of word), pad,
+ *            int stateCount, int[stateCount] base, int[stateCount] check, byte[stateCount] best, pad,
+ *            int[stateCount + 1] labelStart, int labelCount, char[labelCount] labels, pad,
+ *            int wordCount, int[wordCount] wordState, int[wordCount + 1] bigramStart,
+ *            int bigramCount, int[bigramCount] bigramWord, byte[bigramCount] bigramFreq
+ * </pre>
+ * State 0 is the root. Free slots have check -1. Word end is the child with code 0, its base is <code>-1 - wordId</code>.
+ * Labels are child codes of each state (ascending), so children are enumerated without scanning the alphabet.
+ * Frequencies are log-scaled to 1..255. Bigrams of a word are sorted by frequency (descending).
+ * Sections are padded to 4 bytes.
+ */
+public final class DictionaryCompiler {
+    public static final String OUTPUT_DIR = "dictionaries";
+    public static final String OUTPUT_EXTENSION = ".dict";
+    static final int MAGIC = 0x4C4B4454; // LKDT
+    static final int VERSION = 1;
+    static final int MAX_BIGRAMS_PER_WORD = 16;
+    private static final int MAX_WORD_LENGTH = 48;
+
+    private static class Node {
+        private final TreeMap<Integer, Node> children = new TreeMap<>();
+        private int wordId = -1;
+        private int best;
+        private int state;
+    }
+
+    private final Map<String, Long> mUnigrams = new LinkedHashMap<>();
+    private final Map<String, Map<String, Long>> mBigrams = new HashMap<>();
+    private String mCurrentFile;
+
+    /**
+     * @param srcDir folder with &lt;lang&gt;.txt word lists
+     * @param outDir assets root, dictionaries are written to <code>outDir/dictionaries/&lt;lang&gt;.dict</code>
+     */
+    public static void compile(File srcDir, File outDir) throws IOException {
+        File[] files = srcDir.listFiles((dir, name) -> name.endsWith(".txt"));
+
+        if (files == null) {
+            throw new IOException("Not a directory: " + srcDir);
+        }
+
+        File dictDir = new File(outDir, OUTPUT_DIR);
+
+        if (!dictDir.isDirectory() && !dictDir.mkdirs()) {
+            throw new IOException("Can't create dir: " + dictDir);
+        }
+
+        for (File file : files) {
+            String lang = file.getName().substring(0, file.getName().length() - ".txt".length());
+            new DictionaryCompiler().compileFile(file, new File(dictDir, lang + OUTPUT_EXTENSION));
+        }
+    }
+
+    private void compileFile(File srcFile, File outFile) throws IOException {
+        mCurrentFile = srcFile.getName();
+        parse(srcFile);
+
+        if (mUnigrams.isEmpty()) {
+            throw new IOException(mCurrentFile + ": no words");
+        }
+
+        // ids in frequency order: most used words have the smallest ids
+        List<String> words = new ArrayList<>(mUnigrams.keySet());
+        words.sort((a, b) -> Long.compare(mUnigrams.get(b), mUnigrams.get(a)));
+
+        Map<String, Integer> wordIds = new HashMap<>();
+        long maxFreq = mUnigrams.get(words.get(0));
+
+        for (int i = 0; i < words.size(); i++) {
+            wordIds.put(words.get(i), i);
+        }
+
+        TreeSet<Character> chars = new TreeSet<>();
+
+        for (String word : words) {
+            for (int i = 0; i < word.length(); i++) {
+                chars.add(word.charAt(i));
+            }
+        }
+
+        char[] alphabet = new char[chars.size()];
+        int idx = 0;
+
+        for (char c : chars) {
+            alphabet[idx++] = c;
+        }
+
+        Node root = new Node();
+
+        for (String word : words) {
+            Node node = root;
+
+            for (int i = 0; i < word.length(); i++) {
+                int code = Arrays.binarySearch(alphabet, word.charAt(i)) + 1;
+                node = node.children.computeIfAbsent(code, key -> new Node());
+            }
+
+            Node end = node.children.computeIfAbsent(0, key -> new Node());
+            end.wordId = wordIds.get(word);
+            end.best = scale(mUnigrams.get(word), maxFreq);
+        }
+
+        computeBest(root);
+
+        DoubleArray array = new DoubleArray();
+        array.build(root, words.size());
+
+        int[] bigramStart = new int[words.size() + 1];
+        List<Integer> bigramWords = new ArrayList<>();
+        List<Integer> bigramFreqs = new ArrayList<>();
+
+        for (int i = 0; i < words.size(); i++) {
+            bigramStart[i] = bigramWords.size();
+            Map<String, Long> next = mBigrams.get(words.get(i));
+
+            if (next == null) {
+                continue;
+            }
+
+            List<Map.Entry<String, Long>> entries = new ArrayList<>(next.entrySet());
+            entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+            long maxBigramFreq = entries.get(0).getValue();
+
+            for (int j = 0; j < entries.size() && j < MAX_BIGRAMS_PER_WORD; j++) {
+                bigramWords.add(wordIds.get(entries.get(j).getKey()));
+                bigramFreqs.add(scale(entries.get(j).getValue(), maxBigramFreq));
+            }
+        }
+
+        bigramStart[words.size()] = bigramWords.size();
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outFile)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(0);
+
+            out.writeInt(alphabet.length);
+            for (char c : alphabet) {
+                out.writeChar(c);
+            }
+            pad(out);
+
+            int stateCount = array.size;
+            out.writeInt(stateCount);
+            for (int i = 0; i < stateCount; i++) {
+                out.writeInt(array.base[i]);
+            }
+            for (int i = 0; i < stateCount; i++) {
+                out.writeInt(array.check[i]);
+            }
+            for (int i = 0; i < stateCount; i++) {
+                out.writeByte(array.best[i]);
+            }
+            pad(out);
+
+            int labelCount = 0;
+            for (int i = 0; i < stateCount; i++) {
+                out.writeInt(labelCount);
+                labelCount += array.labels[i] != null ? array.labels[i].length : 0;
+            }
+            out.writeInt(labelCount);
+            out.writeInt(labelCount);
+            for (int i = 0; i < stateCount; i++) {
+                if (array.labels[i] != null) {
+                    for (int code : array.labels[i]) {
+                        out.writeChar(code);
+                    }
+                }
+            }
+            pad(out);
+
+            out.writeInt(words.size());
+            for (int state : array.wordStates) {
+                out.writeInt(state);
+            }
+            for (int start : bigramStart) {
+                out.writeInt(start);
+            }
+            out.writeInt(bigramWords.size());
+            for (int word : bigramWords) {
+                out.writeInt(word);
+            }
+            for (int freq : bigramFreqs) {
+                out.writeByte(freq);
+            }
+            pad(out);
+        }
+    }
+
+    private void parse(File file) throws IOException {
+        List<String[]> bigrams = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNum = 0;
+
+            while ((line = reader.readLine()) != null) {
+                lineNum++;
+                line = line.trim();
+
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] parts = line.split("\\s+");
+                long freq;
+
+                try {
+                    freq = Long.parseLong(parts[parts.length - 1]);
+                } catch (NumberFormatException e) {
+                    throw new IOException(mCurrentFile + ":" + lineNum + ": bad frequency");
+                }
+
+                if (freq <= 0) {
+                    throw new IOException(mCurrentFile + ":" + lineNum + ": frequency should be positive");
+                }
+
+                if (parts.length == 2) {
+                    String word = normalize(parts[0], lineNum);
+                    mUnigrams.merge(word, freq, Long::sum);
+                } else if (parts.length == 3) {
+                    bigrams.add(new String[] {normalize(parts[0], lineNum), normalize(parts[1], lineNum), parts[2], String.valueOf(lineNum)});
+                } else {
+                    throw new IOException(mCurrentFile + ":" + lineNum + ": expected 'word freq' or 'word1 word2 freq'");
+                }
+            }
+        }
+
+        for (String[] bigram : bigrams) {
+            if (!mUnigrams.containsKey(bigram[0]) || !mUnigrams.containsKey(bigram[1])) {
+                throw new IOException(mCurrentFile + ":" + bigram[3] + ": bigram words should be listed as unigrams");
+            }
+
+            mBigrams.computeIfAbsent(bigram[0], key -> new HashMap<>()).merge(bigram[1], Long.parseLong(bigram[2]), Long::sum);
+        }
+    }
+
+    private String normalize(String word, int lineNum) throws IOException {
+        if (word.length() > MAX_WORD_LENGTH) {
+            throw new IOException(mCurrentFile + ":" + lineNum + ": word is too long");
+        }
+
+        // runtime matches case-insensitively, see WordDictionary.codeOf
+        return word.toLowerCase(Locale.ROOT);
+    }
+
+    private static int computeBest(Node node) {
+        for (Node child : node.children.values()) {
+            node.best = Math.max(node.best, computeBest(child));
+        }
+
+        return node.best;
+    }
+
+    /**
+     * Log scale: 1..255
+     */
+    private static int scale(long freq, long maxFreq) {
+        if (maxFreq <= 1) {
+            return 255;
+        }
+
+        return 1 + (int) Math.round(254 * Math.log(freq) / Math.log(maxFreq));
+    }
+
+    private static void pad(DataOutputStream out) throws IOException {
+        while (out.size() % 4 != 0) {
+            out.writeByte(0);
+        }
+    }
+
+    private static class DoubleArray {
+        private int[] base = new int[1024];
+        private int[] check = new int[1024];
+        private int[] best = new int[1024];
+        private int[][] labels = new int[1024][];
+        private int[] wordStates;
+        private final BitSet mUsed = new BitSet();
+        private int size = 1;
+
+        private void build(Node root, int wordCount) {
+            wordStates = new int[wordCount];
+            Arrays.fill(check, -1);
+            mUsed.set(0);
+            root.state = 0;
+            best[0] = root.best;
+
+            Deque<Node> queue = new ArrayDeque<>();
+            queue.add(root);
+            int firstFree = 1;
+
+            while (!queue.isEmpty()) {
+                Node node = queue.poll();
+
+                if (node.wordId >= 0) {
+                    base[node.state] = -1 - node.wordId;
+                    wordStates[node.wordId] = node.state;
+                    continue;
+                }
+
+                int[] codes = new int[node.children.size()];
+                int i = 0;
+
+                for (int code : node.children.keySet()) {
+                    codes[i++] = code;
+                }
+
+                while (mUsed.get(firstFree)) {
+                    firstFree++;
+                }
+
+                // first code lands on the first free slot or later
+                int candidate = Math.max(1, firstFree - codes[0]);
+
+                while (!fits(candidate, codes)) {
+                    candidate++;
+                }
+
+                base[node.state] = candidate;
+                labels[node.state] = codes;
+
+                for (Map.Entry<Integer, Node> entry : node.children.entrySet()) {
+                    int state = candidate + entry.getKey();
+                    ensureCapacity(state + 1);
+                    mUsed.set(state);
+                    check[state] = node.state;
+                    best[state] = entry.getValue().best;
+                    size = Math.max(size, state + 1);
+                    entry.getValue().state = state;
+                    queue.add(entry.getValue());
+                }
+            }
+        }
+
+        private boolean fits(int candidate, int[] codes) {
+            for (int code : codes) {
+                if (mUsed.get(candidate + code)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity <= base.length) {
+                return;
+            }
+
+            int oldLength = base.length;
+            int newLength = Math.max(capacity, oldLength * 2);
+            base = Arrays.copyOf(base, newLength);
+            check = Arrays.copyOf(check, newLength);
+            Arrays.fill(check, oldLength, newLength, -1);
+            best = Arrays.copyOf(best, newLength);
+            labels = Arrays.copyOf(labels, newLength);
+        }
+    }
+}
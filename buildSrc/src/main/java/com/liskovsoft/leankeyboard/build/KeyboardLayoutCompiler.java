@@ -0,0 +1,408 @@
+package com.liskovsoft.leankeyboard.build;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiles keyboard layouts (res/xml files with the &lt;Keyboard&gt; root) into one compact binary key table.<br/>
+ * Resource references are stored by name and resolved at runtime, because resource ids aren't known at this stage.<br/>
+ * Must be kept in sync with the runtime reader (<code>KeyboardLayoutLoader</code>).
+ * <pre>
+ * file:      int magic, short version, int stringCount, utf[stringCount], int layoutCount,
+ *            (int nameIdx, int offset)[layoutCount], layout data...
+ * layout:    dim keyWidth, dim keyHeight, dim horizontalGap, dim verticalGap, short rowCount, row[rowCount]
+ * row:       int rowEdgeFlags, dim keyWidth, dim keyHeight, dim horizontalGap, dim verticalGap, short keyCount, key[keyCount]
+ * key:       byte codeCount, int[codeCount], text label, text icon, text popupKeyboard, text popupCharacters,
+ *            text outputText, int edgeFlags, dim width, dim height, dim gap, byte flags
+ * text:      byte kind (none, literal, reference), int stringIdx (if not none)
+ * dim:       byte kind (inherit, reference, value, fraction), then int stringIdx | byte unit, float value | float fraction
+ * </pre>
+ * Offsets are relative to the start of the layout data.
+ */
+public final class KeyboardLayoutCompiler {
+    public static final String OUTPUT_NAME = "keyboard_layouts.bin";
+    static final int MAGIC = 0x4C4B4C54; // LKLT
+    static final int VERSION = 1;
+    static final byte TEXT_NONE = 0;
+    static final byte TEXT_LITERAL = 1;
+    static final byte TEXT_REFERENCE = 2;
+    static final byte DIM_INHERIT = 0;
+    static final byte DIM_REFERENCE = 1;
+    static final byte DIM_VALUE = 2;
+    static final byte DIM_FRACTION = 3;
+    static final byte FLAG_REPEATABLE = 1;
+    static final byte FLAG_MODIFIER = 1 << 1;
+    static final byte FLAG_STICKY = 1 << 2;
+    private static final String ANDROID_NS = "http://schemas.android.com/apk/res/android";
+    private static final Set<String> KEYBOARD_ATTRS = new HashSet<>(Arrays.asList("keyWidth", "keyHeight", "horizontalGap", "verticalGap"));
+    private static final Set<String> ROW_ATTRS = new HashSet<>(Arrays.asList("keyWidth", "keyHeight", "horizontalGap", "verticalGap", "rowEdgeFlags"));
+    private static final Set<String> KEY_ATTRS = new HashSet<>(Arrays.asList("codes", "keyLabel", "keyIcon", "popupKeyboard",
+            "popupCharacters", "keyOutputText", "keyEdgeFlags", "keyWidth", "keyHeight", "horizontalGap",
+            "isRepeatable", "isModifier", "isSticky"));
+    private static final Map<String, Integer> EDGE_FLAGS = new HashMap<>();
+    private static final Map<String, Integer> UNITS = new HashMap<>();
+
+    static {
+        EDGE_FLAGS.put("left", 1);
+        EDGE_FLAGS.put("right", 2);
+        EDGE_FLAGS.put("top", 4);
+        EDGE_FLAGS.put("bottom", 8);
+
+        // android.util.TypedValue.COMPLEX_UNIT_*
+        UNITS.put("px", 0);
+        UNITS.put("dp", 1);
+        UNITS.put("dip", 1);
+        UNITS.put("sp", 2);
+        UNITS.put("pt", 3);
+        UNITS.put("in", 4);
+        UNITS.put("mm", 5);
+    }
+
+    private final List<String> mStrings = new ArrayList<>();
+    private final Map<String, Integer> mStringIndexes = new HashMap<>();
+    private String mCurrentFile;
+
+    private KeyboardLayoutCompiler() {
+    }
+
+    /**
+     * @param xmlDir res/xml dir (non-keyboard xml files are skipped)
+     * @param outFile result binary table
+     */
+    public static void compile(File xmlDir, File outFile) throws Exception {
+        File[] files = xmlDir.listFiles((dir, name) -> name.endsWith(".xml"));
+
+        if (files == null) {
+            throw new IOException("Not a directory: " + xmlDir);
+        }
+
+        Arrays.sort(files);
+
+        new KeyboardLayoutCompiler().compile(files, outFile);
+    }
+
+    private void compile(File[] files, File outFile) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        DocumentBuilder builder = factory.newDocumentBuilder();
+
+        List<Integer> names = new ArrayList<>();
+        List<Integer> offsets = new ArrayList<>();
+        ByteArrayOutputStream layouts = new ByteArrayOutputStream();
+        DataOutputStream layoutsOut = new DataOutputStream(layouts);
+
+        for (File file : files) {
+            Document document = builder.parse(file);
+            Element root = document.getDocumentElement();
+
+            if (!"Keyboard".equals(root.getTagName())) {
+                continue;
+            }
+
+            mCurrentFile = file.getName();
+            names.add(string(mCurrentFile.substring(0, mCurrentFile.length() - ".xml".length())));
+            offsets.add(layoutsOut.size());
+            writeLayout(root, layoutsOut);
+        }
+
+        layoutsOut.flush();
+
+        File parent = outFile.getParentFile();
+
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Can't create dir: " + parent);
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outFile)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(mStrings.size());
+
+            for (String string : mStrings) {
+                out.writeUTF(string);
+            }
+
+            out.writeInt(names.size());
+
+            for (int i = 0; i < names.size(); i++) {
+                out.writeInt(names.get(i));
+                out.writeInt(offsets.get(i));
+            }
+
+            layouts.writeTo(out);
+        }
+    }
+
+    private void writeLayout(Element keyboard, DataOutputStream out) throws IOException {
+        checkAttrs(keyboard, KEYBOARD_ATTRS);
+
+        writeDim(keyboard, "keyWidth", out);
+        writeDim(keyboard, "keyHeight", out);
+        writeDim(keyboard, "horizontalGap", out);
+        writeDim(keyboard, "verticalGap", out);
+
+        List<Element> rows = children(keyboard, "Row");
+        out.writeShort(rows.size());
+
+        for (Element row : rows) {
+            checkAttrs(row, ROW_ATTRS);
+
+            out.writeInt(parseFlags(attr(row, "rowEdgeFlags")));
+            writeDim(row, "keyWidth", out);
+            writeDim(row, "keyHeight", out);
+            writeDim(row, "horizontalGap", out);
+            writeDim(row, "verticalGap", out);
+
+            List<Element> keys = children(row, "Key");
+            out.writeShort(keys.size());
+
+            for (Element key : keys) {
+                writeKey(key, out);
+            }
+        }
+    }
+
+    private void writeKey(Element key, DataOutputStream out) throws IOException {
+        checkAttrs(key, KEY_ATTRS);
+
+        int[] codes = parseCodes(attr(key, "codes"));
+        out.writeByte(codes.length);
+
+        for (int code : codes) {
+            out.writeInt(code);
+        }
+
+        writeText(attr(key, "keyLabel"), out);
+        writeReference(attr(key, "keyIcon"), "drawable", out);
+        writeReference(attr(key, "popupKeyboard"), "xml", out);
+        writeText(attr(key, "popupCharacters"), out);
+        writeText(attr(key, "keyOutputText"), out);
+        out.writeInt(parseFlags(attr(key, "keyEdgeFlags")));
+        writeDim(key, "keyWidth", out);
+        writeDim(key, "keyHeight", out);
+        writeDim(key, "horizontalGap", out);
+
+        int flags = 0;
+
+        if ("true".equals(attr(key, "isRepeatable"))) {
+            flags |= FLAG_REPEATABLE;
+        }
+
+        if ("true".equals(attr(key, "isModifier"))) {
+            flags |= FLAG_MODIFIER;
+        }
+
+        if ("true".equals(attr(key, "isSticky"))) {
+            flags |= FLAG_STICKY;
+        }
+
+        out.writeByte(flags);
+    }
+
+    private void writeText(String value, DataOutputStream out) throws IOException {
+        if (value == null) {
+            out.writeByte(TEXT_NONE);
+        } else if (isReference(value)) {
+            out.writeByte(TEXT_REFERENCE);
+            out.writeInt(string(value.substring(1)));
+        } else {
+            out.writeByte(TEXT_LITERAL);
+            out.writeInt(string(unescape(value)));
+        }
+    }
+
+    private void writeReference(String value, String type, DataOutputStream out) throws IOException {
+        if (value == null) {
+            out.writeByte(TEXT_NONE);
+            return;
+        }
+
+        if (!isReference(value) || !value.startsWith("@" + type + "/")) {
+            throw error("expected @" + type + " reference but found " + value);
+        }
+
+        out.writeByte(TEXT_REFERENCE);
+        out.writeInt(string(value.substring(1)));
+    }
+
+    private void writeDim(Element element, String name, DataOutputStream out) throws IOException {
+        String value = attr(element, name);
+
+        if (value == null) {
+            out.writeByte(DIM_INHERIT);
+        } else if (isReference(value)) {
+            if (!value.startsWith("@dimen/") && !value.startsWith("@fraction/")) {
+                throw error("unsupported dimension " + value);
+            }
+
+            out.writeByte(DIM_REFERENCE);
+            out.writeInt(string(value.substring(1)));
+        } else if (value.endsWith("%p") || value.endsWith("%")) {
+            String number = value.substring(0, value.indexOf('%'));
+            out.writeByte(DIM_FRACTION);
+            out.writeFloat(Float.parseFloat(number) / 100);
+        } else {
+            int unitStart = value.length();
+
+            while (unitStart > 0 && Character.isLetter(value.charAt(unitStart - 1))) {
+                unitStart--;
+            }
+
+            Integer unit = UNITS.get(value.substring(unitStart));
+
+            if (unit == null) {
+                throw error("unsupported dimension " + value);
+            }
+
+            out.writeByte(DIM_VALUE);
+            out.writeByte(unit);
+            out.writeFloat(Float.parseFloat(value.substring(0, unitStart)));
+        }
+    }
+
+    private int string(String value) {
+        Integer index = mStringIndexes.get(value);
+
+        if (index == null) {
+            index = mStrings.size();
+            mStrings.add(value);
+            mStringIndexes.put(value, index);
+        }
+
+        return index;
+    }
+
+    private int[] parseCodes(String value) {
+        if (value == null) {
+            return new int[0]; // resolved from the label at runtime (same as Keyboard.Key)
+        }
+
+        if (isReference(value)) {
+            throw error("unsupported codes " + value);
+        }
+
+        String[] parts = value.split(",");
+        int[] codes = new int[parts.length];
+
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i].trim();
+            codes[i] = part.startsWith("0x") ? Integer.parseInt(part.substring(2), 16) : Integer.parseInt(part);
+        }
+
+        return codes;
+    }
+
+    private int parseFlags(String value) {
+        if (value == null) {
+            return 0;
+        }
+
+        int flags = 0;
+
+        for (String flag : value.split("\\|")) {
+            Integer bit = EDGE_FLAGS.get(flag.trim());
+
+            if (bit == null) {
+                throw error("unknown edge flag " + flag);
+            }
+
+            flags |= bit;
+        }
+
+        return flags;
+    }
+
+    private static boolean isReference(String value) {
+        return value.length() > 1 && value.charAt(0) == '@' && value.indexOf('/') > 0;
+    }
+
+    /**
+     * Same escapes as aapt: <code>\\ \@ \? \# \' \" \n \t \\uXXXX</code>
+     */
+    private static String unescape(String value) {
+        if (value.indexOf('\\') == -1) {
+            return value;
+        }
+
+        StringBuilder result = new StringBuilder();
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c != '\\' || i == value.length() - 1) {
+                result.append(c);
+                continue;
+            }
+
+            char next = value.charAt(++i);
+
+            switch (next) {
+                case 'n':
+                    result.append('\n');
+                    break;
+                case 't':
+                    result.append('\t');
+                    break;
+                case 'u':
+                    result.append((char) Integer.parseInt(value.substring(i + 1, i + 5), 16));
+                    i += 4;
+                    break;
+                default:
+                    result.append(next);
+            }
+        }
+
+        return result.toString();
+    }
+
+    private void checkAttrs(Element element, Set<String> supported) {
+        for (int i = 0; i < element.getAttributes().getLength(); i++) {
+            Node attr = element.getAttributes().item(i);
+
+            if (ANDROID_NS.equals(attr.getNamespaceURI()) && !supported.contains(attr.getLocalName())) {
+                throw error("unsupported attribute " + attr.getNodeName() + " in <" + element.getTagName() + ">");
+            }
+        }
+    }
+
+    private static String attr(Element element, String name) {
+        return element.hasAttributeNS(ANDROID_NS, name) ? element.getAttributeNS(ANDROID_NS, name) : null;
+    }
+
+    private static List<Element> children(Element parent, String tag) {
+        List<Element> result = new ArrayList<>();
+        NodeList nodes = parent.getChildNodes();
+
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Node node = nodes.item(i);
+
+            if (node instanceof Element && tag.equals(((Element) node).getTagName())) {
+                result.add((Element) node);
+            }
+        }
+
+        return result;
+    }
+
+    private IllegalStateException error(String message) {
+        return new IllegalStateException(mCurrentFile + ": " + message);
+    }
+}
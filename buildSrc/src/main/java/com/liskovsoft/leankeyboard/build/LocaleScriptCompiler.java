@@ -0,0 +1,192 @@
+package com.liskovsoft.leankeyboard.build;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compiles the language to script table (src/main/locales/scripts.txt) into a packed java resource.<br/>
+ * Must be kept in sync with the runtime reader (<code>LocaleScript</code>).
+ * <pre>
+ * source:    # comment
+ *            language script [COUNTRY=script ...]   ('-' = unknown script)
+ *
+ * file:      int magic, short version, short reserved,
+ *            int languageCount, int[languageCount] language (sorted), int[languageCount] script,
+ *            int[languageCount + 1] countryStart, int countryCount, int[countryCount] country (sorted per language),
+ *            int[countryCount] countryScript
+ * </pre>
+ * Language and country codes (up to 3 ASCII chars) are packed into ints big-endian, zero padded, so the numeric
+ * order is the alphabetical one. Scripts are 4 char tags packed the same way, 0 = unknown.
+ */
+public final class LocaleScriptCompiler {
+    public static final String OUTPUT_PATH = "com/liskovsoft/leankeyboard/utils/locale_scripts.bin";
+    static final int MAGIC = 0x4C4B4C53; // LKLS
+    static final int VERSION = 1;
+    private static final int MAX_CODE_LENGTH = 3;
+    private static final int SCRIPT_LENGTH = 4;
+
+    private LocaleScriptCompiler() {
+    }
+
+    /**
+     * @param srcFile scripts.txt
+     * @param outDir java resources root, the table is written to {@link #OUTPUT_PATH}
+     */
+    public static void compile(File srcFile, File outDir) throws IOException {
+        // language -> (country -> script), "" is the default script of the language
+        Map<Integer, Map<Integer, Integer>> table = parse(srcFile);
+
+        File outFile = new File(outDir, OUTPUT_PATH);
+        File parent = outFile.getParentFile();
+
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Can't create dir: " + parent);
+        }
+
+        int countryCount = 0;
+
+        for (Map<Integer, Integer> scripts : table.values()) {
+            countryCount += scripts.size() - 1;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outFile)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(0);
+
+            out.writeInt(table.size());
+
+            for (int language : table.keySet()) {
+                out.writeInt(language);
+            }
+
+            for (Map<Integer, Integer> scripts : table.values()) {
+                out.writeInt(scripts.get(0));
+            }
+
+            int countryStart = 0;
+
+            for (Map<Integer, Integer> scripts : table.values()) {
+                out.writeInt(countryStart);
+                countryStart += scripts.size() - 1;
+            }
+
+            out.writeInt(countryStart);
+
+            out.writeInt(countryCount);
+
+            for (Map<Integer, Integer> scripts : table.values()) {
+                for (int country : scripts.keySet()) {
+                    if (country != 0) {
+                        out.writeInt(country);
+                    }
+                }
+            }
+
+            for (Map<Integer, Integer> scripts : table.values()) {
+                for (Map.Entry<Integer, Integer> entry : scripts.entrySet()) {
+                    if (entry.getKey() != 0) {
+                        out.writeInt(entry.getValue());
+                    }
+                }
+            }
+        }
+    }
+
+    private static Map<Integer, Map<Integer, Integer>> parse(File srcFile) throws IOException {
+        Map<Integer, Map<Integer, Integer>> table = new TreeMap<>();
+        String fileName = srcFile.getName();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(srcFile), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNum = 0;
+
+            while ((line = reader.readLine()) != null) {
+                lineNum++;
+                line = line.trim();
+
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] parts = line.split("\\s+");
+
+                if (parts.length < 2) {
+                    throw new IOException(fileName + ":" + lineNum + ": expected 'language script [COUNTRY=script ...]'");
+                }
+
+                int language = packCode(parts[0], fileName, lineNum);
+
+                if (table.containsKey(language)) {
+                    throw new IOException(fileName + ":" + lineNum + ": duplicate language " + parts[0]);
+                }
+
+                Map<Integer, Integer> scripts = new TreeMap<>();
+                scripts.put(0, packScript(parts[1], fileName, lineNum));
+
+                for (int i = 2; i < parts.length; i++) {
+                    String[] override = parts[i].split("=");
+
+                    if (override.length != 2) {
+                        throw new IOException(fileName + ":" + lineNum + ": expected 'COUNTRY=script'");
+                    }
+
+                    scripts.put(packCode(override[0], fileName, lineNum), packScript(override[1], fileName, lineNum));
+                }
+
+                table.put(language, scripts);
+            }
+        }
+
+        if (table.isEmpty()) {
+            throw new IOException(fileName + ": no languages");
+        }
+
+        return table;
+    }
+
+    private static int packCode(String code, String fileName, int lineNum) throws IOException {
+        if (code.isEmpty() || code.length() > MAX_CODE_LENGTH) {
+            throw new IOException(fileName + ":" + lineNum + ": bad code " + code);
+        }
+
+        return pack(code, MAX_CODE_LENGTH, fileName, lineNum);
+    }
+
+    private static int packScript(String script, String fileName, int lineNum) throws IOException {
+        if ("-".equals(script)) {
+            return 0;
+        }
+
+        if (script.length() != SCRIPT_LENGTH) {
+            throw new IOException(fileName + ":" + lineNum + ": bad script " + script);
+        }
+
+        return pack(script, SCRIPT_LENGTH, fileName, lineNum);
+    }
+
+    private static int pack(String code, int length, String fileName, int lineNum) throws IOException {
+        int result = 0;
+
+        for (int i = 0; i < length; i++) {
+            char c = i < code.length() ? code.charAt(i) : 0;
+
+            if (c > 0x7F) {
+                throw new IOException(fileName + ":" + lineNum + ": not ASCII " + code);
+            }
+
+            result = result << 8 | c;
+        }
+
+        return result;
+    }
+}
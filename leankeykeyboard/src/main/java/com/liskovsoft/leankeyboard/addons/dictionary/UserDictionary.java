@@ -0,0 +1,472 @@
+package com.liskovsoft.leankeyboard.addons.dictionary;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Words learned from the user input (language independent).<br/>
+ * In memory: open-addressing table on primitive arrays (frequency, last use), bounded by {@link #MAX_WORDS}.
+ * When full, the least frequent word (the oldest one among equals) is evicted.<br/>
+ * On disk: snapshot + append-only log of learned words. Log is replayed on top of the snapshot on load
+ * and compacted into a new snapshot every {@link #COMPACT_AFTER_RECORDS} records.
+ * Snapshot and log carry a generation number, so a crash in the middle of the compaction
+ * can't apply the same records twice.<br/>
+ * All file operations are done on the background thread. Table itself is accessed from the main thread only.
+ */
+public final class UserDictionary {
+    private static final String TAG = UserDictionary.class.getSimpleName();
+    private static final String SNAPSHOT_NAME = "user_words.dat";
+    private static final String LOG_PREFIX = "user_words.";
+    private static final String LOG_EXTENSION = ".log";
+    private static final String SNAPSHOT_VERSION = "v1";
+    static final int MAX_WORDS = 2000;
+    private static final int MIN_WORD_LENGTH = 2;
+    private static final int MAX_WORD_LENGTH = 48;
+    private static final int COMPACT_AFTER_RECORDS = 256;
+    /**
+     * Typed once could be a typo
+     */
+    private static final int MIN_FREQUENCY_TO_SUGGEST = 2;
+    private static UserDictionary sInstance;
+    private final Store mStore;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mWriter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "UserDictionaryWriter");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Table mTable;
+    /**
+     * Words learned before the table is loaded
+     */
+    private final List<String> mPendingWords = new ArrayList<>();
+    private int mLogRecords;
+    private int[] mTopSlots = new int[8];
+
+    /**
+     * Words, their frequencies and last use time (logical clock)
+     */
+    static final class Table {
+        private static final int CAPACITY = Integer.highestOneBit(MAX_WORDS * 2) << 1; // load factor <= 0.5
+        private final String[] words = new String[CAPACITY];
+        private final int[] hashes = new int[CAPACITY];
+        private final int[] frequencies = new int[CAPACITY];
+        private final int[] lastUsed = new int[CAPACITY];
+        private int size;
+        private int clock;
+
+        void learn(String word) {
+            put(word, -1, ++clock);
+        }
+
+        /**
+         * @param frequency increment if -1
+         */
+        void put(String word, int frequency, int time) {
+            int hash = word.hashCode();
+            int slot = find(word, hash);
+
+            if (words[slot] == null) {
+                if (size >= MAX_WORDS) {
+                    evict();
+                    slot = find(word, hash);
+                }
+
+                words[slot] = word;
+                hashes[slot] = hash;
+                frequencies[slot] = 0; // may be left from the removed word
+                size++;
+            }
+
+            frequencies[slot] = frequency == -1 ? frequencies[slot] + 1 : frequency;
+            lastUsed[slot] = time;
+        }
+
+        /**
+         * @return slot of the word or of the free cell where it should go
+         */
+        int find(String word, int hash) {
+            int mask = CAPACITY - 1;
+            int slot = mix(hash) & mask;
+
+            while (words[slot] != null && (hashes[slot] != hash || !words[slot].equals(word))) {
+                slot = (slot + 1) & mask;
+            }
+
+            return slot;
+        }
+
+        /**
+         * Least frequent, oldest among equals. Deterministic: replay gives the same table.
+         */
+        private void evict() {
+            int victim = -1;
+
+            for (int i = 0; i < CAPACITY; i++) {
+                if (words[i] != null && (victim == -1 || frequencies[i] < frequencies[victim] ||
+                        (frequencies[i] == frequencies[victim] && lastUsed[i] < lastUsed[victim]))) {
+                    victim = i;
+                }
+            }
+
+            remove(victim);
+        }
+
+        /**
+         * Backward shift deletion: keeps probe chains intact without tombstones
+         */
+        void remove(int slot) {
+            int mask = CAPACITY - 1;
+            int hole = slot;
+            int next = (hole + 1) & mask;
+
+            while (words[next] != null) {
+                int home = mix(hashes[next]) & mask;
+
+                // move the entry if the hole lies between its home slot and its current slot
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    words[hole] = words[next];
+                    hashes[hole] = hashes[next];
+                    frequencies[hole] = frequencies[next];
+                    lastUsed[hole] = lastUsed[next];
+                    hole = next;
+                }
+
+                next = (next + 1) & mask;
+            }
+
+            words[hole] = null;
+            size--;
+        }
+
+        /**
+         * @return frequency or 0 if the word isn't in the table
+         */
+        int getFrequency(String word) {
+            int slot = find(word, word.hashCode());
+            return words[slot] != null ? frequencies[slot] : 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    public static synchronized UserDictionary instance(Context ctx) {
+        if (sInstance == null)
+            sInstance = new UserDictionary(ctx.getApplicationContext().getFilesDir());
+        return sInstance;
+    }
+
+    private UserDictionary(File dir) {
+        mStore = new Store(dir);
+        mWriter.execute(this::load);
+    }
+
+    /**
+     * Remembers committed word. Non-words (numbers, links etc) are ignored. Doesn't block.
+     */
+    public void learn(CharSequence word) {
+        if (!isLearnable(word)) {
+            return;
+        }
+
+        String key = word.toString().toLowerCase(Locale.ROOT);
+
+        if (mTable == null) {
+            mPendingWords.add(key);
+        } else {
+            mTable.learn(key);
+        }
+
+        mWriter.execute(() -> mStore.append(key));
+
+        if (++mLogRecords >= COMPACT_AFTER_RECORDS && mTable != null) {
+            mLogRecords = 0;
+            Table snapshot = copy(mTable);
+            mWriter.execute(() -> mStore.compact(snapshot));
+        }
+    }
+
+    /**
+     * Appends most used words that start with the prefix (ignoring case)
+     * @return number of added words
+     */
+    public int complete(CharSequence prefix, List<String> out, int maxResults) {
+        Table table = mTable;
+
+        if (table == null || prefix.length() == 0 || maxResults <= 0) {
+            return 0;
+        }
+
+        if (mTopSlots.length < maxResults) {
+            mTopSlots = new int[maxResults];
+        }
+
+        int[] top = mTopSlots;
+        int count = 0;
+        String prefixString = prefix.toString();
+
+        for (int slot = 0; slot < Table.CAPACITY; slot++) {
+            String word = table.words[slot];
+
+            if (word == null || table.frequencies[slot] < MIN_FREQUENCY_TO_SUGGEST || word.length() <= prefix.length() ||
+                    !word.regionMatches(true, 0, prefixString, 0, prefix.length())) {
+                continue;
+            }
+
+            // insertion into the small sorted top list
+            int pos = count < maxResults ? count++ : maxResults;
+
+            while (pos > 0 && isBetter(table, slot, top[pos - 1])) {
+                if (pos < maxResults) {
+                    top[pos] = top[pos - 1];
+                }
+                pos--;
+            }
+
+            if (pos < maxResults) {
+                top[pos] = slot;
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            out.add(table.words[top[i]]);
+        }
+
+        return count;
+    }
+
+    private static boolean isBetter(Table table, int slot, int otherSlot) {
+        return table.frequencies[slot] > table.frequencies[otherSlot] ||
+                (table.frequencies[slot] == table.frequencies[otherSlot] && table.lastUsed[slot] > table.lastUsed[otherSlot]);
+    }
+
+    private static boolean isLearnable(CharSequence word) {
+        if (word == null || word.length() < MIN_WORD_LENGTH || word.length() > MAX_WORD_LENGTH) {
+            return false;
+        }
+
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+
+            if (!Character.isLetter(c) && c != '\'' && Character.getType(c) != Character.NON_SPACING_MARK) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static Table copy(Table table) {
+        Table copy = new Table();
+        System.arraycopy(table.words, 0, copy.words, 0, Table.CAPACITY);
+        System.arraycopy(table.hashes, 0, copy.hashes, 0, Table.CAPACITY);
+        System.arraycopy(table.frequencies, 0, copy.frequencies, 0, Table.CAPACITY);
+        System.arraycopy(table.lastUsed, 0, copy.lastUsed, 0, Table.CAPACITY);
+        copy.size = table.size;
+        copy.clock = table.clock;
+        return copy;
+    }
+
+    /**
+     * Snapshot and log files. Used from the writer thread only.
+     */
+    static final class Store {
+        private final File mDir;
+        private int mGeneration;
+        private Writer mLog;
+        private int mReplayedRecords;
+
+        Store(File dir) {
+            mDir = dir;
+        }
+
+        /**
+         * @return snapshot with the log replayed on top
+         */
+        Table load() {
+            Table table = new Table();
+            File snapshot = new File(mDir, SNAPSHOT_NAME);
+
+            if (snapshot.exists()) {
+                try (BufferedReader reader = open(snapshot)) {
+                    String[] header = reader.readLine().split(" ");
+
+                    if (SNAPSHOT_VERSION.equals(header[0])) {
+                        mGeneration = Integer.parseInt(header[1]);
+                        table.clock = Integer.parseInt(header[2]);
+                        String line;
+
+                        while ((line = reader.readLine()) != null) {
+                            String[] parts = line.split("\t");
+                            table.put(parts[0], Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    Log.e(TAG, "Broken snapshot. Starting from scratch...", e);
+                    table = new Table();
+                }
+            }
+
+            int replayed = 0;
+            File log = getLogFile(mGeneration);
+
+            if (log.exists()) {
+                try (BufferedReader reader = open(log)) {
+                    String line;
+
+                    while ((line = reader.readLine()) != null) {
+                        if (isLearnable(line)) { // skips torn tail after a crash
+                            table.learn(line);
+                            replayed++;
+                        }
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Can't replay log: " + e.getMessage());
+                }
+            }
+
+            deleteStaleLogs();
+
+            Log.d(TAG, "User words loaded: " + table.size + ", replayed: " + replayed);
+
+            mReplayedRecords = replayed;
+
+            return table;
+        }
+
+        /**
+         * Records in the current log after {@link #load()}
+         */
+        int getReplayedRecords() {
+            return mReplayedRecords;
+        }
+
+        void append(String word) {
+            try {
+                if (mLog == null) {
+                    mLog = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(getLogFile(mGeneration), true), StandardCharsets.UTF_8));
+                }
+
+                mLog.write(word);
+                mLog.write('\n');
+                mLog.flush();
+            } catch (IOException e) {
+                Log.e(TAG, "Can't append to log: " + e.getMessage());
+                closeLog();
+            }
+        }
+
+        /**
+         * Writes snapshot of the next generation and switches to a new log.
+         * Records queued after the snapshot was taken go to the new log.
+         */
+        void compact(Table table) {
+            int generation = mGeneration + 1;
+            File tmp = new File(mDir, SNAPSHOT_NAME + ".tmp");
+
+            try (FileOutputStream stream = new FileOutputStream(tmp)) {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+                writer.write(SNAPSHOT_VERSION + " " + generation + " " + table.clock + "\n");
+
+                for (int slot = 0; slot < Table.CAPACITY; slot++) {
+                    if (table.words[slot] != null) {
+                        writer.write(table.words[slot] + "\t" + table.frequencies[slot] + "\t" + table.lastUsed[slot] + "\n");
+                    }
+                }
+
+                writer.flush();
+                stream.getFD().sync();
+            } catch (IOException e) {
+                Log.e(TAG, "Can't write snapshot: " + e.getMessage());
+                return;
+            }
+
+            if (!tmp.renameTo(new File(mDir, SNAPSHOT_NAME))) {
+                Log.e(TAG, "Can't replace snapshot");
+                return;
+            }
+
+            closeLog();
+            mGeneration = generation;
+            deleteStaleLogs();
+
+            Log.d(TAG, "User words compacted: " + table.size);
+        }
+
+        private void deleteStaleLogs() {
+            String current = getLogFile(mGeneration).getName();
+            File[] logs = mDir.listFiles((dir, name) -> name.startsWith(LOG_PREFIX) && name.endsWith(LOG_EXTENSION) && !name.equals(current));
+
+            if (logs != null) {
+                for (File log : logs) {
+                    log.delete();
+                }
+            }
+        }
+
+        void closeLog() {
+            if (mLog != null) {
+                try {
+                    mLog.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+
+                mLog = null;
+            }
+        }
+
+        private File getLogFile(int generation) {
+            return new File(mDir, LOG_PREFIX + generation + LOG_EXTENSION);
+        }
+
+        private static BufferedReader open(File file) throws IOException {
+            return new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+        }
+    }
+
+    // Writer thread
+
+    private void load() {
+        Table table = mStore.load();
+        int logRecords = mStore.getReplayedRecords();
+        mHandler.post(() -> onLoaded(table, logRecords));
+    }
+
+    // Main thread
+
+    private void onLoaded(Table table, int logRecords) {
+        for (String word : mPendingWords) {
+            table.learn(word);
+        }
+
+        mLogRecords += logRecords;
+        mPendingWords.clear();
+        mTable = table;
+    }
+}
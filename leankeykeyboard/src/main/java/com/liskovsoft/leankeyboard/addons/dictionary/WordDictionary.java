@@ -0,0 +1,394 @@
+package com.liskovsoft.leankeyboard.addons.dictionary;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Read-only view of the prediction dictionary compiled at build time
+ * (see <code>buildSrc/.../DictionaryCompiler</code> for the format).<br/>
+ * Works directly on the (memory-mapped) buffer: nothing is copied except the alphabet.
+ * Thread safe, the search state lives in {@link Cursor}.
+ */
+public final class WordDictionary {
+    private static final int MAGIC = 0x4C4B4454; // LKDT
+    private static final int VERSION = 1;
+    private static final int ROOT = 0;
+    private static final int NO_STATE = -1;
+    private final char[] mAlphabet;
+    private final byte[] mAsciiCodes = new byte[128];
+    private final int mStateCount;
+    private final IntBuffer mBase;
+    private final IntBuffer mCheck;
+    private final ByteBuffer mBest;
+    private final IntBuffer mLabelStart;
+    private final CharBuffer mLabels;
+    private final int mWordCount;
+    private final IntBuffer mWordStates;
+    private final IntBuffer mBigramStart;
+    private final IntBuffer mBigramWords;
+    private final ByteBuffer mBigramFreqs;
+
+    /**
+     * @throws IllegalArgumentException unsupported format
+     */
+    public WordDictionary(ByteBuffer buffer) {
+        ByteBuffer data = buffer.duplicate();
+
+        if (data.getInt() != MAGIC || data.getShort() != VERSION) {
+            throw new IllegalArgumentException("Unsupported dictionary format");
+        }
+
+        data.getShort(); // reserved
+
+        mAlphabet = new char[data.getInt()];
+        data.asCharBuffer().get(mAlphabet);
+        skip(data, mAlphabet.length * 2);
+
+        for (int i = 0; i < mAlphabet.length && mAlphabet[i] < 128; i++) {
+            mAsciiCodes[mAlphabet[i]] = (byte) (i + 1);
+        }
+
+        mStateCount = data.getInt();
+        mBase = ints(data, mStateCount);
+        mCheck = ints(data, mStateCount);
+        mBest = bytes(data, mStateCount);
+
+        mLabelStart = ints(data, mStateCount + 1);
+        int labelCount = data.getInt();
+        mLabels = chars(data, labelCount);
+
+        mWordCount = data.getInt();
+        mWordStates = ints(data, mWordCount);
+        mBigramStart = ints(data, mWordCount + 1);
+        int bigramCount = data.getInt();
+        mBigramWords = ints(data, bigramCount);
+        mBigramFreqs = bytes(data, bigramCount);
+    }
+
+    public Cursor newCursor() {
+        return new Cursor();
+    }
+
+    public int getWordCount() {
+        return mWordCount;
+    }
+
+    /**
+     * @return word id or -1
+     */
+    public int findWord(CharSequence word) {
+        int state = ROOT;
+
+        for (int i = 0; i < word.length() && state != NO_STATE; i++) {
+            state = next(state, word.charAt(i));
+        }
+
+        return state != NO_STATE ? wordIdOf(state) : -1;
+    }
+
+    /**
+     * Appends the word in dictionary (lower) case
+     */
+    public void getWord(int wordId, StringBuilder out) {
+        int start = out.length();
+        int state = mCheck.get(mWordStates.get(wordId)); // skip end of word
+
+        while (state != ROOT) {
+            int parent = mCheck.get(state);
+            out.append(mAlphabet[state - mBase.get(parent) - 1]);
+            state = parent;
+        }
+
+        // collected from the end
+        for (int i = start, j = out.length() - 1; i < j; i++, j--) {
+            char tmp = out.charAt(i);
+            out.setCharAt(i, out.charAt(j));
+            out.setCharAt(j, tmp);
+        }
+    }
+
+    /**
+     * Number of the word's bigrams. They are sorted by frequency.
+     */
+    public int getBigramCount(int wordId) {
+        return mBigramStart.get(wordId + 1) - mBigramStart.get(wordId);
+    }
+
+    public int getBigramWord(int wordId, int index) {
+        return mBigramWords.get(mBigramStart.get(wordId) + index);
+    }
+
+    /**
+     * @return 1..255 (log scale)
+     */
+    public int getBigramFrequency(int wordId, int index) {
+        return mBigramFreqs.get(mBigramStart.get(wordId) + index) & 0xFF;
+    }
+
+    /**
+     * @return 1..255 (log scale)
+     */
+    public int getFrequency(int wordId) {
+        return mBest.get(mWordStates.get(wordId)) & 0xFF;
+    }
+
+    private int next(int state, char c) {
+        int code = codeOf(Character.toLowerCase(c));
+
+        if (code == 0) {
+            return NO_STATE;
+        }
+
+        int child = mBase.get(state) + code;
+
+        return child < mStateCount && mCheck.get(child) == state ? child : NO_STATE;
+    }
+
+    private int wordIdOf(int state) {
+        int end = mBase.get(state); // code 0
+
+        return end > 0 && end < mStateCount && mCheck.get(end) == state ? -1 - mBase.get(end) : -1;
+    }
+
+    /**
+     * Is state below (or equal to) the ancestor
+     */
+    private boolean isDescendant(int state, int ancestor) {
+        while (state != ancestor && state != ROOT) {
+            state = mCheck.get(state);
+        }
+
+        return state == ancestor;
+    }
+
+    private int codeOf(char c) {
+        if (c < 128) {
+            return mAsciiCodes[c];
+        }
+
+        int low = 0;
+        int high = mAlphabet.length - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char midChar = mAlphabet[mid];
+
+            if (midChar < c) {
+                low = mid + 1;
+            } else if (midChar > c) {
+                high = mid - 1;
+            } else {
+                return mid + 1;
+            }
+        }
+
+        return 0;
+    }
+
+    private static IntBuffer ints(ByteBuffer data, int count) {
+        IntBuffer result = slice(data, count * 4).asIntBuffer();
+        skip(data, count * 4);
+        return result;
+    }
+
+    private static CharBuffer chars(ByteBuffer data, int count) {
+        CharBuffer result = slice(data, count * 2).asCharBuffer();
+        skip(data, count * 2);
+        return result;
+    }
+
+    private static ByteBuffer bytes(ByteBuffer data, int count) {
+        ByteBuffer result = slice(data, count);
+        skip(data, count);
+        return result;
+    }
+
+    private static ByteBuffer slice(ByteBuffer data, int length) {
+        ByteBuffer slice = data.slice();
+        slice.limit(length);
+        return slice;
+    }
+
+    /**
+     * Skips section and its padding
+     */
+    private static void skip(ByteBuffer data, int length) {
+        data.position(data.position() + ((length + 3) & ~3));
+    }
+
+    /**
+     * Prefix search state. Follows the word being typed: appending or removing chars costs O(1) per char,
+     * so the trie isn't walked from the root on every keystroke.<br/>
+     * Not thread safe. Buffers are reused between searches.
+     */
+    public final class Cursor {
+        private final StringBuilder mPrefix = new StringBuilder();
+        /**
+         * State of the first {@link #mMatched} chars of the prefix
+         */
+        private int mState = ROOT;
+        private int mMatched;
+        private int[] mHeapStates = new int[64];
+        private int[] mHeapKeys = new int[64];
+        private int mHeapSize;
+
+        /**
+         * Moves the cursor to the new prefix, reusing the common part with the previous one
+         */
+        public void moveTo(CharSequence prefix) {
+            int common = 0;
+            int max = Math.min(prefix.length(), mPrefix.length());
+
+            while (common < max && prefix.charAt(common) == mPrefix.charAt(common)) {
+                common++;
+            }
+
+            while (mMatched > common) {
+                mState = mCheck.get(mState);
+                mMatched--;
+            }
+
+            mPrefix.setLength(common);
+
+            for (int i = common; i < prefix.length(); i++) {
+                mPrefix.append(prefix.charAt(i));
+            }
+
+            if (mMatched == common) { // otherwise prefix is already out of the dictionary
+                while (mMatched < mPrefix.length()) {
+                    int next = next(mState, mPrefix.charAt(mMatched));
+
+                    if (next == NO_STATE) {
+                        break;
+                    }
+
+                    mState = next;
+                    mMatched++;
+                }
+            }
+        }
+
+        public void reset() {
+            mPrefix.setLength(0);
+            mState = ROOT;
+            mMatched = 0;
+        }
+
+        /**
+         * Is current prefix a beginning of some word in the dictionary
+         */
+        public boolean isValid() {
+            return mMatched == mPrefix.length();
+        }
+
+        /**
+         * @return id of the word equal to the prefix or -1
+         */
+        public int getWordId() {
+            return isValid() ? wordIdOf(mState) : -1;
+        }
+
+        public boolean isPrefixOf(int wordId) {
+            return isValid() && isDescendant(mWordStates.get(wordId), mState);
+        }
+
+        /**
+         * Collects the most frequent words that start with the prefix, best first.
+         * Stops early when the deadline is reached.
+         * @param offset first index in outWordIds to write to
+         * @param deadlineNanos {@link System#nanoTime()} based
+         * @return number of found words
+         */
+        public int complete(int[] outWordIds, int offset, int maxResults, long deadlineNanos) {
+            if (!isValid() || maxResults <= 0) {
+                return 0;
+            }
+
+            int found = 0;
+            int iterations = 0;
+            mHeapSize = 0;
+            push(mState);
+
+            // best of a subtree is never lower than its words: words come out by frequency
+            while (mHeapSize > 0 && found < maxResults) {
+                if ((++iterations & 63) == 0 && System.nanoTime() > deadlineNanos) {
+                    break;
+                }
+
+                int state = pop();
+                int base = mBase.get(state);
+
+                if (base < 0) { // end of word
+                    outWordIds[offset + found++] = -1 - base;
+                    continue;
+                }
+
+                for (int i = mLabelStart.get(state), end = mLabelStart.get(state + 1); i < end; i++) {
+                    push(base + mLabels.get(i));
+                }
+            }
+
+            return found;
+        }
+
+        private void push(int state) {
+            if (mHeapSize == mHeapStates.length) {
+                mHeapStates = Arrays.copyOf(mHeapStates, mHeapSize * 2);
+                mHeapKeys = Arrays.copyOf(mHeapKeys, mHeapSize * 2);
+            }
+
+            int key = mBest.get(state) & 0xFF;
+            int pos = mHeapSize++;
+
+            while (pos > 0) {
+                int parent = (pos - 1) >>> 1;
+
+                if (mHeapKeys[parent] >= key) {
+                    break;
+                }
+
+                mHeapStates[pos] = mHeapStates[parent];
+                mHeapKeys[pos] = mHeapKeys[parent];
+                pos = parent;
+            }
+
+            mHeapStates[pos] = state;
+            mHeapKeys[pos] = key;
+        }
+
+        private int pop() {
+            int result = mHeapStates[0];
+            int size = --mHeapSize;
+            int state = mHeapStates[size];
+            int key = mHeapKeys[size];
+            int pos = 0;
+
+            while (true) {
+                int child = pos * 2 + 1;
+
+                if (child >= size) {
+                    break;
+                }
+
+                if (child + 1 < size && mHeapKeys[child + 1] > mHeapKeys[child]) {
+                    child++;
+                }
+
+                if (mHeapKeys[child] <= key) {
+                    break;
+                }
+
+                mHeapStates[pos] = mHeapStates[child];
+                mHeapKeys[pos] = mHeapKeys[child];
+                pos = child;
+            }
+
+            mHeapStates[pos] = state;
+            mHeapKeys[pos] = key;
+
+            return result;
+        }
+    }
+}
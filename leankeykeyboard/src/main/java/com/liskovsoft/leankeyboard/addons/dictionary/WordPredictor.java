@@ -0,0 +1,324 @@
+package com.liskovsoft.leankeyboard.addons.dictionary;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+import android.util.Log;
+import com.liskovsoft.leankeyboard.helpers.Helpers;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Completes the word being typed and predicts the next one using the per-language {@link WordDictionary}
+ * (assets/dictionaries/&lt;lang&gt;.dict, built by the <code>compileDictionaries</code> task)
+ * and words learned by the {@link UserDictionary}.<br/>
+ * Dictionaries are mapped in the background on language switch. Until then (or if there's no dictionary
+ * for the language) nothing is predicted.<br/>
+ * Each prediction has a fixed time budget. The trie cursor follows the typed word between keystrokes.<br/>
+ * Should be used from the main thread.
+ */
+public final class WordPredictor {
+    private static final String TAG = WordPredictor.class.getSimpleName();
+    private static final String ASSET_DIR = "dictionaries/";
+    private static final String ASSET_EXTENSION = ".dict";
+    /**
+     * Enough to find the current and the previous word
+     */
+    public static final int MAX_CONTEXT_LENGTH = 64;
+    private static final long TIME_BUDGET_NANOS = 4_000_000;
+    private static WordPredictor sInstance;
+    private final Context mContext;
+    private final UserDictionary mUserDictionary;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mLoader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "DictionaryLoader");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * Lang to dictionary. Null value: no dictionary for the lang.
+     */
+    private final Map<String, WordDictionary> mDictionaries = new HashMap<>();
+    private String mLang;
+    private WordDictionary mDictionary;
+    private WordDictionary.Cursor mCursor;
+    private final StringBuilder mPrefix = new StringBuilder();
+    private final StringBuilder mPrevWord = new StringBuilder();
+    private final StringBuilder mWord = new StringBuilder();
+    private int[] mWordIds = new int[16];
+
+    public static synchronized WordPredictor instance(Context ctx) {
+        if (sInstance == null)
+            sInstance = new WordPredictor(ctx.getApplicationContext());
+        return sInstance;
+    }
+
+    private WordPredictor(Context context) {
+        mContext = context;
+        mUserDictionary = UserDictionary.instance(context);
+    }
+
+    /**
+     * @param langCode keyboard lang code (e.g. en_us) or null
+     */
+    public void setLanguage(String langCode) {
+        String lang = langCode != null ? langCode.split("_")[0].toLowerCase(Locale.ROOT) : null;
+
+        if (lang == null ? mLang == null : lang.equals(mLang)) {
+            return;
+        }
+
+        mLang = lang;
+        mDictionary = null;
+        mCursor = null;
+
+        if (lang == null) {
+            return;
+        }
+
+        if (mDictionaries.containsKey(lang)) {
+            onDictionaryLoaded(lang, mDictionaries.get(lang));
+            return;
+        }
+
+        mLoader.execute(() -> {
+            WordDictionary dictionary = load(lang);
+            mHandler.post(() -> {
+                mDictionaries.put(lang, dictionary);
+                onDictionaryLoaded(lang, dictionary);
+            });
+        });
+    }
+
+    /**
+     * @param textBeforeCursor at least {@link #MAX_CONTEXT_LENGTH} chars if available
+     * @param out predictions are appended here, most probable first
+     * @return number of added predictions
+     */
+    public int predict(CharSequence textBeforeCursor, List<String> out, int maxResults) {
+        if (textBeforeCursor == null || maxResults <= 0) {
+            return 0;
+        }
+
+        long deadline = System.nanoTime() + TIME_BUDGET_NANOS;
+
+        parseContext(textBeforeCursor);
+
+        // personal words first, they don't depend on the lang
+        int firstIndex = out.size();
+        int userCount = mUserDictionary.complete(mPrefix, out, maxResults);
+
+        for (int i = firstIndex; i < out.size(); i++) {
+            mWord.setLength(0);
+            mWord.append(out.get(i));
+            applyCase(mPrefix, mWord);
+            out.set(i, mWord.toString());
+        }
+
+        return userCount + predictFromDictionary(out, firstIndex, maxResults - userCount, deadline);
+    }
+
+    private int predictFromDictionary(List<String> out, int firstIndex, int maxResults, long deadline) {
+        WordDictionary dictionary = mDictionary;
+
+        if (dictionary == null || maxResults <= 0 || (mPrefix.length() == 0 && mPrevWord.length() == 0)) {
+            return 0;
+        }
+
+        WordDictionary.Cursor cursor = mCursor;
+        cursor.moveTo(mPrefix);
+
+        if (!cursor.isValid()) {
+            return 0;
+        }
+
+        int[] wordIds = ensureCapacity(maxResults * 2 + 1);
+        int typedId = cursor.getWordId(); // already shown as the user input
+        int count = 0;
+
+        // context first: words that usually follow the previous one
+        int prevId = mPrevWord.length() > 0 ? dictionary.findWord(mPrevWord) : -1;
+
+        if (prevId != -1) {
+            for (int i = 0; i < dictionary.getBigramCount(prevId) && count < maxResults; i++) {
+                int wordId = dictionary.getBigramWord(prevId, i);
+
+                if (wordId != typedId && cursor.isPrefixOf(wordId)) {
+                    wordIds[count++] = wordId;
+                }
+            }
+        }
+
+        // then plain completions, no point in listing the whole dictionary after a space
+        if (mPrefix.length() > 0 && count < maxResults) {
+            int bigramCount = count;
+            int found = cursor.complete(wordIds, bigramCount, maxResults + 1, deadline);
+
+            for (int i = bigramCount; i < bigramCount + found && count < maxResults; i++) {
+                int wordId = wordIds[i];
+
+                if (wordId != typedId && !contains(wordIds, bigramCount, wordId)) {
+                    wordIds[count++] = wordId;
+                }
+            }
+        }
+
+        int added = 0;
+
+        for (int i = 0; i < count; i++) {
+            mWord.setLength(0);
+            dictionary.getWord(wordIds[i], mWord);
+            applyCase(mPrefix, mWord);
+
+            if (!containsWord(out, firstIndex, mWord)) {
+                out.add(mWord.toString());
+                added++;
+            }
+        }
+
+        return added;
+    }
+
+    /**
+     * Learns the word the user has just finished
+     * @param textBeforeCursor text that ends with the word
+     */
+    public void learnWord(CharSequence textBeforeCursor) {
+        if (textBeforeCursor != null) {
+            int end = textBeforeCursor.length();
+            mUserDictionary.learn(textBeforeCursor.subSequence(getWordStart(textBeforeCursor, end), end));
+        }
+    }
+
+    /**
+     * Length of the word under construction (chars to replace with a prediction)
+     */
+    public static int getCurrentWordLength(CharSequence textBeforeCursor) {
+        if (textBeforeCursor == null) {
+            return 0;
+        }
+
+        return textBeforeCursor.length() - getWordStart(textBeforeCursor, textBeforeCursor.length());
+    }
+
+    private void onDictionaryLoaded(String lang, WordDictionary dictionary) {
+        if (dictionary != null && lang.equals(mLang)) {
+            mDictionary = dictionary;
+            mCursor = dictionary.newCursor();
+        }
+    }
+
+    private WordDictionary load(String lang) {
+        String assetName = ASSET_DIR + lang + ASSET_EXTENSION;
+
+        try {
+            long startTimeMs = System.currentTimeMillis();
+            WordDictionary dictionary = new WordDictionary(Helpers.mapAsset(mContext, assetName));
+            Log.d(TAG, "Dictionary loaded: " + lang + ", words: " + dictionary.getWordCount() + ", " +
+                    (System.currentTimeMillis() - startTimeMs) + "ms");
+            return dictionary;
+        } catch (IOException e) {
+            Log.d(TAG, "No dictionary for " + lang);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Can't load dictionary " + assetName, e);
+        }
+
+        return null;
+    }
+
+    /**
+     * Current word prefix and the previous word (if separated by spaces only)
+     */
+    private void parseContext(CharSequence text) {
+        int end = text.length();
+        int wordStart = getWordStart(text, end);
+
+        mPrefix.setLength(0);
+        mPrefix.append(text, wordStart, end);
+
+        int prevEnd = wordStart;
+
+        while (prevEnd > 0 && text.charAt(prevEnd - 1) == ' ') {
+            prevEnd--;
+        }
+
+        int prevStart = prevEnd < wordStart ? getWordStart(text, prevEnd) : prevEnd;
+
+        mPrevWord.setLength(0);
+
+        // text may be cut in the middle of the word
+        if (prevStart > 0 || text.length() < MAX_CONTEXT_LENGTH) {
+            mPrevWord.append(text, prevStart, prevEnd);
+        }
+    }
+
+    private static int getWordStart(CharSequence text, int end) {
+        int start = end;
+
+        while (start > 0 && isWordChar(text.charAt(start - 1))) {
+            start--;
+        }
+
+        return start;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetter(c) || c == '\'' || Character.getType(c) == Character.NON_SPACING_MARK;
+    }
+
+    /**
+     * Follow the typed case: Capitalized or UPPER
+     */
+    private static void applyCase(CharSequence prefix, StringBuilder word) {
+        if (prefix.length() == 0 || !Character.isUpperCase(prefix.charAt(0))) {
+            return;
+        }
+
+        boolean allUpper = prefix.length() > 1;
+
+        for (int i = 1; i < prefix.length() && allUpper; i++) {
+            allUpper = !Character.isLowerCase(prefix.charAt(i));
+        }
+
+        for (int i = 0; i < (allUpper ? word.length() : 1); i++) {
+            word.setCharAt(i, Character.toUpperCase(word.charAt(i)));
+        }
+    }
+
+    private static boolean containsWord(List<String> words, int from, CharSequence word) {
+        for (int i = from; i < words.size(); i++) {
+            if (TextUtils.equals(words.get(i), word)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private int[] ensureCapacity(int capacity) {
+        if (mWordIds.length < capacity) {
+            mWordIds = Arrays.copyOf(mWordIds, capacity);
+        }
+
+        return mWordIds;
+    }
+}
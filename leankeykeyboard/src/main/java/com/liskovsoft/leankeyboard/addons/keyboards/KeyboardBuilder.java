@@ -7,4 +7,8 @@ public interface KeyboardBuilder {
     Keyboard createAbcKeyboard();
     Keyboard createSymKeyboard();
     Keyboard createNumKeyboard();
+    /**
+     * Lang code (e.g. en_us) or null if unknown
+     */
+    String getLangCode();
 }
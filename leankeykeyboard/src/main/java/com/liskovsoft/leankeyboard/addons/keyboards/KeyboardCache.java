@@ -0,0 +1,133 @@
+package com.liskovsoft.leankeyboard.addons.keyboards;
+
+import android.content.Context;
+import android.inputmethodservice.Keyboard;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import com.liskovsoft.leankeyboard.utils.LeanKeyPreferences;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Process-wide cache of parsed {@link Keyboard} models. Survives input sessions (and input view recreation).<br/>
+ * Cached models are templates and never leave the cache: views change keys in place (labels, shift icon, shift state),
+ * so every {@link #get} returns a fresh copy (see {@link KeyboardLayoutLoader#copy}).<br/>
+ * Entry key is (keyboard id, layout resource). Enlarge flag and display metrics form the cache config:
+ * all entries are dropped once the config is changed.
+ */
+public class KeyboardCache {
+    private static final String TAG = KeyboardCache.class.getSimpleName();
+    private static KeyboardCache sInstance;
+    private final Map<String, Entry> mEntries = new HashMap<>();
+    private final KeyboardLayoutLoader mLoader = KeyboardLayoutLoader.instance();
+    private final ExecutorService mWarmer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "KeyboardWarmer");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.setDaemon(true);
+        return thread;
+    });
+    private boolean mConfigured;
+    private boolean mEnlarge;
+    private int mDensityDpi;
+    private int mWidthPixels;
+    private int mHeightPixels;
+
+    public interface Loader {
+        Keyboard load();
+    }
+
+    private static class Entry {
+        private Keyboard keyboard;
+    }
+
+    public static synchronized KeyboardCache instance() {
+        if (sInstance == null)
+            sInstance = new KeyboardCache();
+        return sInstance;
+    }
+
+    /**
+     * Returns copy of the cached keyboard. Loads it in the caller thread on miss.
+     * @param id unique keyboard id (e.g. lang code + lang name)
+     * @param layoutResId xml layout
+     * @param loader keyboard source
+     */
+    public Keyboard get(Context context, String id, int layoutResId, Loader loader) {
+        return mLoader.copy(context, getTemplate(context, id, layoutResId, loader));
+    }
+
+    /**
+     * Same as {@link #get} without the copy. For background warm up.
+     */
+    public void preload(Context context, String id, int layoutResId, Loader loader) {
+        getTemplate(context, id, layoutResId, loader);
+    }
+
+    private Keyboard getTemplate(Context context, String id, int layoutResId, Loader loader) {
+        Entry entry;
+
+        synchronized (mEntries) {
+            checkConfig(context);
+
+            String key = id + ":" + layoutResId;
+            entry = mEntries.get(key);
+
+            if (entry == null) {
+                entry = new Entry();
+                mEntries.put(key, entry);
+            }
+        }
+
+        // per-entry lock: don't block other keyboards while this one is parsed
+        synchronized (entry) {
+            if (entry.keyboard == null) {
+                long startTimeMs = System.currentTimeMillis();
+                entry.keyboard = loader.load();
+                Log.d(TAG, "Keyboard loaded: " + id + ", " + (System.currentTimeMillis() - startTimeMs) + "ms");
+            }
+
+            return entry.keyboard;
+        }
+    }
+
+    /**
+     * Builds keyboards in the background so they are ready before the user switches to them
+     */
+    public void warm(Runnable task) {
+        mWarmer.execute(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                Log.e(TAG, "Error warming keyboard", e);
+            }
+        });
+    }
+
+    public void clear() {
+        synchronized (mEntries) {
+            mEntries.clear();
+        }
+    }
+
+    private void checkConfig(Context context) {
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        boolean enlarge = LeanKeyPreferences.instance(context).getEnlargeKeyboard();
+
+        if (!mConfigured || enlarge != mEnlarge || metrics.densityDpi != mDensityDpi ||
+                metrics.widthPixels != mWidthPixels || metrics.heightPixels != mHeightPixels) {
+            if (mConfigured) {
+                Log.d(TAG, "Config changed. Dropping cached keyboards...");
+            }
+
+            mEntries.clear();
+            mConfigured = true;
+            mEnlarge = enlarge;
+            mDensityDpi = metrics.densityDpi;
+            mWidthPixels = metrics.widthPixels;
+            mHeightPixels = metrics.heightPixels;
+        }
+    }
+}
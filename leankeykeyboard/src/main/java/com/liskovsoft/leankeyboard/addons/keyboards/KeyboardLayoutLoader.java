@@ -0,0 +1,475 @@
+package com.liskovsoft.leankeyboard.addons.keyboards;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.inputmethodservice.Keyboard;
+import android.text.TextUtils;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.util.TypedValue;
+import androidx.core.content.res.ResourcesCompat;
+import com.liskovsoft.leankeyboard.helpers.Helpers;
+import com.slideos.system.R;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds {@link Keyboard} models from the binary key table compiled at build time
+ * (see <code>buildSrc/.../KeyboardLayoutCompiler</code> for the format).<br/>
+ * The table is memory-mapped (or read in one pass if the asset is compressed) on first use.
+ * Falls back to the regular xml parsing if the table is missing or doesn't contain the layout.
+ */
+public class KeyboardLayoutLoader {
+    private static final String TAG = KeyboardLayoutLoader.class.getSimpleName();
+    private static final String ASSET_NAME = "keyboard_layouts.bin";
+    private static final int MAGIC = 0x4C4B4C54; // LKLT
+    private static final int VERSION = 1;
+    private static final byte TEXT_NONE = 0;
+    private static final byte TEXT_REFERENCE = 2;
+    private static final byte DIM_INHERIT = 0;
+    private static final byte DIM_REFERENCE = 1;
+    private static final byte DIM_VALUE = 2;
+    private static final byte FLAG_REPEATABLE = 1;
+    private static final byte FLAG_MODIFIER = 1 << 1;
+    private static final byte FLAG_STICKY = 1 << 2;
+    private static final int KEYCODE_ALT = -6;
+    private static KeyboardLayoutLoader sInstance;
+    private boolean mInitDone;
+    private ByteBuffer mLayouts;
+    private String[] mStrings;
+    private int[] mResIds;
+    private final Map<String, Integer> mOffsets = new HashMap<>();
+
+    public static synchronized KeyboardLayoutLoader instance() {
+        if (sInstance == null)
+            sInstance = new KeyboardLayoutLoader();
+        return sInstance;
+    }
+
+    /**
+     * Drop-in replacement for <code>new Keyboard(context, layoutResId)</code>
+     */
+    public Keyboard load(Context context, int layoutResId) {
+        Keyboard keyboard = null;
+
+        try {
+            keyboard = loadCompiled(context, layoutResId);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Can't load compiled layout. Falling back to xml...", e);
+        }
+
+        return keyboard != null ? keyboard : new Keyboard(context, layoutResId);
+    }
+
+    /**
+     * Fresh model with copies of the template's keys. Cheap: no parsing, drawables and codes are shared.<br/>
+     * Lets the template be reused while the copy's keys are changed in place (labels, shift state).
+     */
+    public Keyboard copy(Context context, Keyboard template) {
+        return new CompiledKeyboard(context, template);
+    }
+
+    /**
+     * @return null if the layout isn't in the table (package-private for the tests)
+     */
+    Keyboard loadCompiled(Context context, int layoutResId) {
+        ByteBuffer data;
+        String[] strings;
+        Integer offset;
+
+        synchronized (this) {
+            if (!mInitDone) {
+                mInitDone = true;
+                init(context);
+            }
+
+            if (mLayouts == null) {
+                return null;
+            }
+
+            offset = mOffsets.get(context.getResources().getResourceEntryName(layoutResId));
+
+            if (offset == null) {
+                return null;
+            }
+
+            data = mLayouts.duplicate(); // independent position, thread safe
+            strings = mStrings;
+        }
+
+        data.position(offset);
+
+        return new LayoutReader(context, data, strings).read();
+    }
+
+    private void init(Context context) {
+        try {
+            ByteBuffer buffer = Helpers.mapAsset(context, ASSET_NAME);
+
+            if (buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+                Log.e(TAG, "Unsupported layouts table format");
+                return;
+            }
+
+            String[] strings = new String[buffer.getInt()];
+
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = readUtf(buffer);
+            }
+
+            int layoutCount = buffer.getInt();
+            int[] names = new int[layoutCount];
+            int[] offsets = new int[layoutCount];
+
+            for (int i = 0; i < layoutCount; i++) {
+                names[i] = buffer.getInt();
+                offsets[i] = buffer.getInt();
+            }
+
+            mLayouts = buffer.slice();
+
+            for (int i = 0; i < layoutCount; i++) {
+                mOffsets.put(strings[names[i]], offsets[i]);
+            }
+
+            mStrings = strings;
+            mResIds = new int[strings.length];
+        } catch (IOException e) {
+            Log.w(TAG, "Compiled layouts not found: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Decodes {@link java.io.DataOutput#writeUTF(String) modified UTF-8}
+     */
+    private static String readUtf(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        int end = buffer.position() + length;
+        char[] chars = new char[length];
+        int count = 0;
+
+        while (buffer.position() < end) {
+            int a = buffer.get() & 0xFF;
+
+            if (a < 0x80) {
+                chars[count++] = (char) a;
+            } else if ((a & 0xE0) == 0xC0) {
+                int b = buffer.get() & 0x3F;
+                chars[count++] = (char) (((a & 0x1F) << 6) | b);
+            } else {
+                int b = buffer.get() & 0x3F;
+                int c = buffer.get() & 0x3F;
+                chars[count++] = (char) (((a & 0x0F) << 12) | (b << 6) | c);
+            }
+        }
+
+        return new String(chars, 0, count);
+    }
+
+    /**
+     * Resolves "type/name" reference. Ids are cached for the process lifetime.
+     */
+    private int getResId(Resources resources, String packageName, int stringIdx) {
+        int[] resIds = mResIds;
+        int resId = resIds[stringIdx];
+
+        if (resId == 0) {
+            resId = resources.getIdentifier(mStrings[stringIdx], null, packageName);
+
+            if (resId == 0) {
+                throw new IllegalStateException("Resource not found: " + mStrings[stringIdx]);
+            }
+
+            resIds[stringIdx] = resId;
+        }
+
+        return resId;
+    }
+
+    /**
+     * Mirrors the xml parsing done inside {@link Keyboard}
+     */
+    private class LayoutReader {
+        private final Context mContext;
+        private final Resources mResources;
+        private final String mPackageName;
+        private final ByteBuffer mData;
+        private final String[] mStrings;
+        private final DisplayMetrics mMetrics;
+
+        LayoutReader(Context context, ByteBuffer data, String[] strings) {
+            mContext = context;
+            mResources = context.getResources();
+            mPackageName = context.getPackageName();
+            mData = data;
+            mStrings = strings;
+            mMetrics = mResources.getDisplayMetrics();
+        }
+
+        CompiledKeyboard read() {
+            int displayWidth = mMetrics.widthPixels;
+            int displayHeight = mMetrics.heightPixels;
+            CompiledKeyboard keyboard = new CompiledKeyboard(mContext);
+
+            int defaultWidth = readDim(displayWidth, displayWidth / 10);
+            int defaultHeight = readDim(displayHeight, 50);
+            int defaultHorizontalGap = readDim(displayWidth, 0);
+            int defaultVerticalGap = readDim(displayHeight, 0);
+            keyboard.setDefaults(defaultWidth, defaultHeight, defaultHorizontalGap, defaultVerticalGap);
+
+            List<Keyboard.Key> keys = keyboard.getKeys();
+            int x;
+            int y = 0;
+            int totalWidth = 0;
+            int rowCount = mData.getShort();
+
+            for (int i = 0; i < rowCount; i++) {
+                Keyboard.Row row = new Keyboard.Row(keyboard);
+                row.rowEdgeFlags = mData.getInt();
+                row.defaultWidth = readDim(displayWidth, defaultWidth);
+                row.defaultHeight = readDim(displayHeight, defaultHeight);
+                row.defaultHorizontalGap = readDim(displayWidth, defaultHorizontalGap);
+                row.verticalGap = readDim(displayHeight, defaultVerticalGap);
+
+                x = 0;
+                int keyCount = mData.getShort();
+
+                for (int j = 0; j < keyCount; j++) {
+                    Keyboard.Key key = readKey(row, x, y);
+                    keys.add(key);
+
+                    if (key.codes != null && key.codes.length > 0) {
+                        if (key.codes[0] == Keyboard.KEYCODE_SHIFT) {
+                            keyboard.addShiftKey(key, keys.size() - 1);
+                            keyboard.getModifierKeys().add(key);
+                        } else if (key.codes[0] == KEYCODE_ALT) {
+                            keyboard.getModifierKeys().add(key);
+                        }
+                    }
+
+                    x += key.gap + key.width;
+
+                    if (x > totalWidth) {
+                        totalWidth = x;
+                    }
+                }
+
+                y += row.verticalGap;
+                y += row.defaultHeight;
+            }
+
+            keyboard.setTotalSize(totalWidth, y - defaultVerticalGap);
+
+            return keyboard;
+        }
+
+        private Keyboard.Key readKey(Keyboard.Row row, int x, int y) {
+            Keyboard.Key key = new Keyboard.Key(row);
+
+            int codeCount = mData.get();
+            int[] codes = null;
+
+            if (codeCount > 0) {
+                codes = new int[codeCount];
+
+                for (int i = 0; i < codeCount; i++) {
+                    codes[i] = mData.getInt();
+                }
+            }
+
+            CharSequence label = readText();
+            int iconIdx = readTextIdx();
+            int popupIdx = readTextIdx();
+            key.popupCharacters = readText();
+            key.text = readText();
+            key.edgeFlags = mData.getInt() | row.rowEdgeFlags;
+            key.width = readDim(mMetrics.widthPixels, row.defaultWidth);
+            key.height = readDim(mMetrics.heightPixels, row.defaultHeight);
+            key.gap = readDim(mMetrics.widthPixels, row.defaultHorizontalGap);
+            int flags = mData.get();
+
+            key.x = x + key.gap;
+            key.y = y;
+            key.repeatable = (flags & FLAG_REPEATABLE) != 0;
+            key.modifier = (flags & FLAG_MODIFIER) != 0;
+            key.sticky = (flags & FLAG_STICKY) != 0;
+            key.label = label;
+
+            if (popupIdx != -1) {
+                key.popupResId = getResId(mResources, mPackageName, popupIdx);
+            }
+
+            if (iconIdx != -1) {
+                key.icon = ResourcesCompat.getDrawable(mResources, getResId(mResources, mPackageName, iconIdx), null);
+
+                if (key.icon != null) {
+                    key.icon.setBounds(0, 0, key.icon.getIntrinsicWidth(), key.icon.getIntrinsicHeight());
+                }
+            }
+
+            if (codes == null && !TextUtils.isEmpty(label)) {
+                codes = new int[] {label.charAt(0)};
+            }
+
+            key.codes = codes;
+
+            return key;
+        }
+
+        private CharSequence readText() {
+            byte kind = mData.get();
+
+            if (kind == TEXT_NONE) {
+                return null;
+            }
+
+            int idx = mData.getInt();
+
+            return kind == TEXT_REFERENCE ? mResources.getText(getResId(mResources, mPackageName, idx)) : mStrings[idx];
+        }
+
+        /**
+         * Reference that is resolved by the caller
+         */
+        private int readTextIdx() {
+            return mData.get() == TEXT_NONE ? -1 : mData.getInt();
+        }
+
+        /**
+         * Same as Keyboard.getDimensionOrFraction()
+         */
+        private int readDim(int base, int defValue) {
+            byte kind = mData.get();
+
+            switch (kind) {
+                case DIM_INHERIT:
+                    return defValue;
+                case DIM_REFERENCE:
+                    int idx = mData.getInt();
+                    int resId = getResId(mResources, mPackageName, idx);
+                    return mStrings[idx].startsWith("fraction/") ?
+                            Math.round(mResources.getFraction(resId, base, base)) : mResources.getDimensionPixelOffset(resId);
+                case DIM_VALUE:
+                    int unit = mData.get();
+                    return (int) TypedValue.applyDimension(unit, mData.getFloat(), mMetrics);
+                default: // DIM_FRACTION
+                    return Math.round(mData.getFloat() * base);
+            }
+        }
+    }
+
+    /**
+     * Keyboard whose keys are filled from outside. Empty template is used to pass construction.
+     */
+    private static class CompiledKeyboard extends Keyboard {
+        private final List<Key> mShiftKeys = new ArrayList<>(2);
+        private int mShiftKeyIndex = -1;
+        private int mTotalWidth;
+        private int mTotalHeight;
+
+        CompiledKeyboard(Context context) {
+            super(context, R.xml.empty_kbd);
+        }
+
+        CompiledKeyboard(Context context, Keyboard template) {
+            this(context);
+
+            if (template instanceof CompiledKeyboard) {
+                CompiledKeyboard compiled = (CompiledKeyboard) template;
+                setDefaults(compiled.getKeyWidth(), compiled.getKeyHeight(), compiled.getHorizontalGap(), compiled.getVerticalGap());
+            }
+
+            Row row = new Row(this); // only binds the keys to this keyboard, dimensions are copied
+            List<Key> keys = getKeys();
+
+            for (Key templateKey : template.getKeys()) {
+                Key key = copyKey(row, templateKey);
+                keys.add(key);
+
+                if (key.codes != null && key.codes.length > 0) {
+                    if (key.codes[0] == KEYCODE_SHIFT) {
+                        addShiftKey(key, keys.size() - 1);
+                        getModifierKeys().add(key);
+                    } else if (key.codes[0] == KEYCODE_ALT) {
+                        getModifierKeys().add(key);
+                    }
+                }
+            }
+
+            setTotalSize(template.getMinWidth(), template.getHeight());
+        }
+
+        private static Key copyKey(Row row, Key template) {
+            Key key = new Key(row);
+            key.codes = template.codes;
+            key.label = template.label;
+            key.icon = template.icon;
+            key.iconPreview = template.iconPreview;
+            key.text = template.text;
+            key.popupCharacters = template.popupCharacters;
+            key.popupResId = template.popupResId;
+            key.repeatable = template.repeatable;
+            key.modifier = template.modifier;
+            key.sticky = template.sticky;
+            key.edgeFlags = template.edgeFlags;
+            key.width = template.width;
+            key.height = template.height;
+            key.gap = template.gap;
+            key.x = template.x;
+            key.y = template.y;
+
+            return key;
+        }
+
+        void setDefaults(int keyWidth, int keyHeight, int horizontalGap, int verticalGap) {
+            setKeyWidth(keyWidth);
+            setKeyHeight(keyHeight);
+            setHorizontalGap(horizontalGap);
+            setVerticalGap(verticalGap);
+        }
+
+        void setTotalSize(int width, int height) {
+            mTotalWidth = width;
+            mTotalHeight = height;
+        }
+
+        void addShiftKey(Key key, int index) {
+            if (mShiftKeys.size() < 2) {
+                mShiftKeys.add(key);
+
+                if (mShiftKeyIndex == -1) {
+                    mShiftKeyIndex = index;
+                }
+            }
+        }
+
+        @Override
+        public boolean setShifted(boolean shiftState) {
+            for (Key shiftKey : mShiftKeys) {
+                shiftKey.on = shiftState;
+            }
+
+            return super.setShifted(shiftState);
+        }
+
+        @Override
+        public int getShiftKeyIndex() {
+            return mShiftKeyIndex;
+        }
+
+        @Override
+        public int getHeight() {
+            return mTotalHeight;
+        }
+
+        @Override
+        public int getMinWidth() {
+            return mTotalWidth;
+        }
+    }
+}
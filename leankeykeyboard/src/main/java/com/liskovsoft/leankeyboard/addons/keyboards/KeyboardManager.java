@@ -19,6 +19,26 @@ public class KeyboardManager {
         public Keyboard abcKeyboard;
         public Keyboard symKeyboard;
         public Keyboard numKeyboard;
+        public final String langCode;
+        private final KeyboardBuilder mBuilder;
+
+        private KeyboardData(KeyboardBuilder builder) {
+            mBuilder = builder;
+            langCode = builder.getLangCode();
+        }
+
+        /**
+         * Keyboards are taken from {@link KeyboardCache} on first access (usually already warmed)
+         */
+        private KeyboardData ensureBuilt() {
+            if (abcKeyboard == null) {
+                abcKeyboard = mBuilder.createAbcKeyboard();
+                symKeyboard = mBuilder.createSymKeyboard();
+                numKeyboard = mBuilder.createNumKeyboard();
+            }
+
+            return this;
+        }
     }
 
     public KeyboardManager(Context ctx) {
@@ -33,21 +53,37 @@ public class KeyboardManager {
         mAllKeyboards = buildAllKeyboards();
     }
 
+    /**
+     * Models are built lazily through the {@link KeyboardCache}, so repeated loads don't touch xml
+     */
     private List<KeyboardData> buildAllKeyboards() {
         List<KeyboardData> keyboards = new ArrayList<>();
         if (!mKeyboardBuilders.isEmpty()) {
             for (KeyboardBuilder builder : mKeyboardBuilders) {
-                KeyboardData data = new KeyboardData();
-                data.abcKeyboard = builder.createAbcKeyboard();
-                data.symKeyboard = builder.createSymKeyboard();
-                data.numKeyboard = builder.createNumKeyboard();
-
-                keyboards.add(data);
+                keyboards.add(new KeyboardData(builder));
             }
         }
         return keyboards;
     }
 
+    /**
+     * Prepare keyboard that will be shown after {@link #next()}
+     */
+    private void warmNextKeyboard() {
+        if (mAllKeyboards.size() < 2) {
+            return;
+        }
+
+        int nextIndex = mKeyboardIndex + 1 < mAllKeyboards.size() ? mKeyboardIndex + 1 : 0;
+        KeyboardBuilder builder = mAllKeyboards.get(nextIndex).mBuilder;
+
+        KeyboardCache.instance().warm(() -> {
+            builder.createAbcKeyboard();
+            builder.createSymKeyboard();
+            builder.createNumKeyboard();
+        });
+    }
+
     /**
      * Performs callback to event handlers
      */
@@ -73,8 +109,12 @@ public class KeyboardManager {
             throw new IllegalStateException(String.format("Keyboard %s not initialized", mKeyboardIndex));
         }
 
+        kbd.ensureBuilt();
+
         onNextKeyboard();
 
+        warmNextKeyboard();
+
         return kbd;
     }
 
@@ -98,6 +138,10 @@ public class KeyboardManager {
             mKeyboardIndex = 0;
         }
 
-        return mAllKeyboards.get(mKeyboardIndex);
+        KeyboardData kbd = mAllKeyboards.get(mKeyboardIndex).ensureBuilt();
+
+        warmNextKeyboard();
+
+        return kbd;
     }
 }
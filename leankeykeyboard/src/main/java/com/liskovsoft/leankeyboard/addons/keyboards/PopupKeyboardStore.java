@@ -0,0 +1,102 @@
+package com.liskovsoft.leankeyboard.addons.keyboards;
+
+import android.content.Context;
+import android.inputmethodservice.Keyboard;
+import android.inputmethodservice.Keyboard.Key;
+import android.util.Log;
+import android.util.SparseIntArray;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Popup (accent) keyboards of the active layout, parsed ahead of the long press.<br/>
+ * Popups are stored in the {@link KeyboardCache} by their layout resource only: shift state doesn't change accent keys
+ * (case is applied by the view). Popups that were long-pressed more often are loaded first.
+ */
+public class PopupKeyboardStore {
+    private static final String TAG = PopupKeyboardStore.class.getSimpleName();
+    private static final String POPUP_ID = "popup";
+    private static final int MAX_USAGE_COUNT = 255;
+    private static PopupKeyboardStore sInstance;
+    private final KeyboardLayoutLoader mLoader = KeyboardLayoutLoader.instance();
+    private final KeyboardCache mKeyboardCache = KeyboardCache.instance();
+    /**
+     * Popup resource to long press count
+     */
+    private final SparseIntArray mUsageCounts = new SparseIntArray();
+    private volatile Keyboard mActiveLayout;
+
+    public static synchronized PopupKeyboardStore instance() {
+        if (sInstance == null)
+            sInstance = new PopupKeyboardStore();
+        return sInstance;
+    }
+
+    /**
+     * Starts background parsing of all popups referenced by the layout. Once per layout.
+     * Pending work of the previously activated layout is abandoned.
+     */
+    public void preload(Context context, Keyboard layout) {
+        if (mActiveLayout == layout) {
+            return;
+        }
+
+        mActiveLayout = layout;
+
+        List<Integer> popupResIds = getPopupResIds(layout);
+
+        if (popupResIds.isEmpty()) {
+            return;
+        }
+
+        mKeyboardCache.warm(() -> {
+            for (int popupResId : popupResIds) {
+                if (mActiveLayout != layout) {
+                    Log.d(TAG, "Layout changed. Skipping rest of the popups...");
+                    return;
+                }
+
+                mKeyboardCache.preload(context, POPUP_ID, popupResId, () -> mLoader.load(context, popupResId));
+            }
+        });
+    }
+
+    /**
+     * Returns popup keys. Parsed in the caller thread if preload isn't finished yet.<br/>
+     * Keys are fresh copies: caller may move them (x, y, edge flags)
+     */
+    public List<Key> get(Context context, int popupResId) {
+        return mKeyboardCache.get(context, POPUP_ID, popupResId, () -> mLoader.load(context, popupResId)).getKeys();
+    }
+
+    /**
+     * Raises popup priority for the next preloads
+     */
+    public synchronized void onPopupShown(int popupResId) {
+        int count = mUsageCounts.get(popupResId);
+
+        if (count < MAX_USAGE_COUNT) {
+            mUsageCounts.put(popupResId, count + 1);
+        }
+    }
+
+    /**
+     * Unique popups in key order, most used first
+     */
+    private synchronized List<Integer> getPopupResIds(Keyboard layout) {
+        List<Integer> result = new ArrayList<>();
+
+        for (Key key : layout.getKeys()) {
+            if (key.popupResId != 0 && !result.contains(key.popupResId)) {
+                result.add(key.popupResId);
+            }
+        }
+
+        // stable sort: ties keep key order
+        Collections.sort(result, (id1, id2) -> mUsageCounts.get(id2) - mUsageCounts.get(id1));
+
+        return result;
+    }
+}
@@ -9,8 +9,10 @@ import android.inputmethodservice.Keyboard.Key;
 import android.text.Layout;
 import android.util.Log;
 import com.liskovsoft.leankeyboard.addons.keyboards.KeyboardBuilder;
+import com.liskovsoft.leankeyboard.addons.keyboards.KeyboardCache;
 import com.liskovsoft.leankeyboard.addons.keyboards.KeyboardFactory;
 import com.liskovsoft.leankeyboard.addons.keyboards.KeyboardInfo;
+import com.liskovsoft.leankeyboard.addons.keyboards.KeyboardLayoutLoader;
 import com.liskovsoft.leankeyboard.ime.LeanbackKeyboardView;
 import com.liskovsoft.leankeyboard.utils.LeanKeyPreferences;
 import com.liskovsoft.leankeyboard.utils.TextDrawable;
@@ -26,10 +28,14 @@ public class ResKeyboardFactory implements KeyboardFactory {
     private static final String TAG = ResKeyboardFactory.class.getSimpleName();
     private final Context mContext;
     private Map<String, Drawable> mCachedSpace;
+    private final KeyboardCache mKeyboardCache;
+    private final KeyboardLayoutLoader mLayoutLoader;
 
     public ResKeyboardFactory(Context ctx) {
         mContext = ctx;
         mCachedSpace = new HashMap<>();
+        mKeyboardCache = KeyboardCache.instance();
+        mLayoutLoader = KeyboardLayoutLoader.instance();
     }
 
     @Override
@@ -78,24 +84,36 @@ public class ResKeyboardFactory implements KeyboardFactory {
     private KeyboardBuilder createKeyboard(final KeyboardInfo info) {
         return new KeyboardBuilder() {
             private final String langCode = info.getLangCode();
+            // space key label depends on the lang name
+            private final String keyboardId = langCode + "|" + info.getLangName();
 
             @Override
             public Keyboard createAbcKeyboard() {
                 // Use compact letters keyboard for better highlighting
-                Keyboard keyboard = new Keyboard(mContext, R.xml.qwerty_letters_compact);
-                Log.d(TAG, "Creating compact letters keyboard... " + info.getLangName());
-                return localizeKeys(keyboard, info);
+                return mKeyboardCache.get(mContext, keyboardId, R.xml.qwerty_letters_compact, () -> {
+                    Keyboard keyboard = mLayoutLoader.load(mContext, R.xml.qwerty_letters_compact);
+                    Log.d(TAG, "Creating compact letters keyboard... " + info.getLangName());
+                    return localizeKeys(keyboard, info);
+                });
             }
 
             @Override
             public Keyboard createSymKeyboard() {
-                Keyboard keyboard = new Keyboard(mContext, R.xml.qwerty_symbols);
-                return localizeKeys(keyboard, info);
+                return mKeyboardCache.get(mContext, keyboardId, R.xml.qwerty_symbols, () -> {
+                    Keyboard keyboard = mLayoutLoader.load(mContext, R.xml.qwerty_symbols);
+                    return localizeKeys(keyboard, info);
+                });
             }
 
             @Override
             public Keyboard createNumKeyboard() {
-                return new Keyboard(mContext, R.xml.qwerty_numbers);
+                // numbers don't depend on the language
+                return mKeyboardCache.get(mContext, "", R.xml.qwerty_numbers, () -> mLayoutLoader.load(mContext, R.xml.qwerty_numbers));
+            }
+
+            @Override
+            public String getLangCode() {
+                return langCode;
             }
         };
     }
@@ -118,7 +136,7 @@ public class ResKeyboardFactory implements KeyboardFactory {
         return keyboard;
     }
 
-    private void localizeSpace(Key key, KeyboardInfo info) {
+    private synchronized void localizeSpace(Key key, KeyboardInfo info) {
         if (mCachedSpace.containsKey(info.getLangCode())) {
             key.icon = mCachedSpace.get(info.getLangCode());
             return;
@@ -21,14 +21,7 @@ public class ResKeyboardInfo implements KeyboardInfo {
         List<KeyboardInfo> result = new ArrayList<>();
         String[] langs = ctx.getResources().getStringArray(R.array.additional_languages);
         for (final String langPair : langs) {
-            String[] pairs = langPair.split("\\|");
-            final String langName = pairs[0];
-            final String langCode = pairs[1];
-            final boolean isAzerty = pairs.length >= 3 && "azerty".equals(pairs[2]);
-            KeyboardInfo info = new ResKeyboardInfo();
-            info.setLangName(langName);
-            info.setLangCode(langCode);
-            info.setIsAzerty(isAzerty);
+            KeyboardInfo info = fromLangPair(langPair);
             // sync with prefs
             syncWithPrefs(ctx, info);
             result.add(info);
@@ -37,6 +30,21 @@ public class ResKeyboardInfo implements KeyboardInfo {
         return result;
     }
 
+    /**
+     * @param langPair item of <code>R.array.additional_languages</code>: <code>name|code[|azerty]</code>
+     */
+    static KeyboardInfo fromLangPair(String langPair) {
+        String[] pairs = langPair.split("\\|");
+        final String langName = pairs[0];
+        final String langCode = pairs[1];
+        final boolean isAzerty = pairs.length >= 3 && "azerty".equals(pairs[2]);
+        KeyboardInfo info = new ResKeyboardInfo();
+        info.setLangName(langName);
+        info.setLangCode(langCode);
+        info.setIsAzerty(isAzerty);
+        return info;
+    }
+
     public static void updateAllKeyboardInfos(Context ctx, List<KeyboardInfo> infos) {
         for (KeyboardInfo info : infos) {
             // update prefs
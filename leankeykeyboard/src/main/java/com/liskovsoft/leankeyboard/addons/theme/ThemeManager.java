@@ -1,33 +1,45 @@
 package com.liskovsoft.leankeyboard.addons.theme;
 
 import android.content.Context;
-import android.content.res.Resources;
-import android.graphics.drawable.Drawable;
 import android.util.Log;
 import android.view.View;
-import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.LinearLayout;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
-import androidx.core.content.ContextCompat;
 import com.liskovsoft.leankeyboard.ime.LeanbackKeyboardView;
 import com.liskovsoft.leankeyboard.utils.LeanKeyPreferences;
+import com.liskovsoft.leankeyboard.utils.TraceLog;
 import com.slideos.system.R;
 
 public class ThemeManager {
     private static final String TAG = ThemeManager.class.getSimpleName();
+    private static final int TRACE_ACCENT_COLOR = TraceLog.event(Log.DEBUG, TAG, "Applying accent color: #%06X");
     private static ThemeManager sInstance;
     private final Context mContext;
     private final RelativeLayout mRootView;
     private final LeanKeyPreferences mPrefs;
     private int mCurrentAccentColor = -1;
 
+    // Views the palette applies to, looked up once
+    private View mRootLayout;
+    private View mCandidateLayout;
+    private Button mEnterButton;
+    private LeanbackKeyboardView mKeyboardView;
+    private View mStatusBar;
+    private TextView mStatusTitle;
+    private TextView mTimeStatus;
+    private Button[] mSuggestionButtons = new Button[0];
+
+    /**
+     * @param rootView keyboard root with the suggestion cells already in place
+     */
     public ThemeManager(Context context, RelativeLayout rootView) {
         mContext = context;
         mRootView = rootView;
         mPrefs = LeanKeyPreferences.instance(mContext);
         sInstance = this;
+        bindViews();
     }
     
     public static ThemeManager getInstance(Context context) {
@@ -39,178 +51,121 @@ public class ThemeManager {
     }
 
     public void updateKeyboardTheme() {
-        String currentThemeId = mPrefs.getCurrentTheme();
+        ThemePalette palette = getPalette();
 
-        if (LeanKeyPreferences.THEME_DEFAULT.equals(currentThemeId)) {
-            applyKeyboardColors(
-                    R.color.keyboard_background,
-                    R.color.candidate_background,
-                    R.color.enter_key_font_color,
-                    R.color.key_text_default
-            );
-            applyShiftDrawable(-1);
-        } else {
-            applyForTheme((String themeId) -> {
-                Resources resources = mContext.getResources();
-                int keyboardBackgroundResId = resources.getIdentifier("keyboard_background_" + themeId.toLowerCase(), "color", mContext.getPackageName());
-                int candidateBackgroundResId = resources.getIdentifier("candidate_background_" + themeId.toLowerCase(), "color", mContext.getPackageName());
-                int enterFontColorResId = resources.getIdentifier("enter_key_font_color_" + themeId.toLowerCase(), "color", mContext.getPackageName());
-                int keyTextColorResId = resources.getIdentifier("key_text_default_" + themeId.toLowerCase(), "color", mContext.getPackageName());
-
-                applyKeyboardColors(
-                        keyboardBackgroundResId,
-                        candidateBackgroundResId,
-                        enterFontColorResId,
-                        keyTextColorResId
-                );
+        applyKeyboardColors(palette.keyboardBackground, palette.candidateBackground, palette.enterFontColor, palette.keyTextColor);
 
-                int shiftLockOnResId = resources.getIdentifier("ic_ime_shift_lock_on_" + themeId.toLowerCase(), "drawable", mContext.getPackageName());
-
-                applyShiftDrawable(shiftLockOnResId);
-            });
+        if (mKeyboardView != null) {
+            mKeyboardView.setCapsLockDrawable(palette.capsLockDrawable);
         }
     }
 
     public void updateSuggestionsTheme() {
-        String currentTheme = mPrefs.getCurrentTheme();
-
-        if (LeanKeyPreferences.THEME_DEFAULT.equals(currentTheme)) {
-            applySuggestionsColors(
-                    R.color.candidate_font_color
-            );
-        } else {
-            applyForTheme((String themeId) -> {
-                Resources resources = mContext.getResources();
-                int candidateFontColorResId = resources.getIdentifier("candidate_font_color_" + themeId.toLowerCase(), "color", mContext.getPackageName());
-                applySuggestionsColors(candidateFontColorResId);
-            });
-        }
+        applySuggestionsColors(getPalette().candidateFontColor);
     }
 
-    private void applyKeyboardColors(
-            int keyboardBackground,
-            int candidateBackground,
-            int enterFontColor,
-            int keyTextColor) {
-
-        RelativeLayout rootLayout = mRootView.findViewById(R.id.root_ime);
+    private ThemePalette getPalette() {
+        return ThemeRegistry.instance(mContext).getPalette(mPrefs.getCurrentTheme());
+    }
 
-        if (rootLayout != null) {
-            rootLayout.setBackgroundColor(ContextCompat.getColor(mContext, keyboardBackground));
+    private void bindViews() {
+        if (mRootView == null) {
+            return;
         }
 
-        View candidateLayout = mRootView.findViewById(R.id.candidate_background);
+        mRootLayout = mRootView.findViewById(R.id.root_ime);
+        mCandidateLayout = mRootView.findViewById(R.id.candidate_background);
+        mEnterButton = mRootView.findViewById(R.id.enter);
+        mKeyboardView = mRootView.findViewById(R.id.main_keyboard);
+        mStatusBar = mRootView.findViewById(R.id.unified_status_bar);
 
-        if (candidateLayout != null) {
-            candidateLayout.setBackgroundColor(ContextCompat.getColor(mContext, candidateBackground));
+        if (mStatusBar != null) {
+            mStatusTitle = mStatusBar.findViewById(R.id.status_title);
+            mTimeStatus = mStatusBar.findViewById(R.id.time_status);
         }
 
-        Button enterButton = mRootView.findViewById(R.id.enter);
+        bindSuggestions();
+    }
 
-        if (enterButton != null) {
-            enterButton.setTextColor(ContextCompat.getColor(mContext, enterFontColor));
+    /**
+     * Re-reads the suggestion cells, call when they're added
+     */
+    public void bindSuggestions() {
+        if (mRootView == null) {
+            return;
         }
 
-        LeanbackKeyboardView keyboardView = mRootView.findViewById(R.id.main_keyboard);
+        LinearLayout suggestions = mRootView.findViewById(R.id.suggestions);
 
-        if (keyboardView != null) {
-            keyboardView.setKeyTextColor(ContextCompat.getColor(mContext, keyTextColor));
-        }
-        
-        // Apply theme to all other UI elements
-        applyThemeToAllElements(keyboardBackground, keyTextColor);
-    }
-    
-    private void applyThemeToAllElements(int backgroundColor, int textColor) {
-        // Apply to status bar if present
-        View statusBar = mRootView.findViewById(R.id.unified_status_bar);
-        if (statusBar != null) {
-            statusBar.setBackgroundColor(ContextCompat.getColor(mContext, backgroundColor));
-            
-            // Update status bar text colors
-            TextView statusTitle = statusBar.findViewById(R.id.status_title);
-            if (statusTitle != null) {
-                statusTitle.setTextColor(ContextCompat.getColor(mContext, textColor));
-            }
-            
-            TextView timeStatus = statusBar.findViewById(R.id.time_status);
-            if (timeStatus != null) {
-                timeStatus.setTextColor(ContextCompat.getColor(mContext, textColor));
-            }
-        }
-        
-        // Apply to any other text elements
-        applyTextColorToChildren(mRootView, textColor);
-    }
-    
-    private void applyTextColorToChildren(View parent, int textColor) {
-        if (parent instanceof ViewGroup) {
-            ViewGroup viewGroup = (ViewGroup) parent;
-            for (int i = 0; i < viewGroup.getChildCount(); i++) {
-                View child = viewGroup.getChildAt(i);
-                if (child instanceof TextView) {
-                    ((TextView) child).setTextColor(ContextCompat.getColor(mContext, textColor));
-                } else if (child instanceof Button) {
-                    ((Button) child).setTextColor(ContextCompat.getColor(mContext, textColor));
-                } else {
-                    applyTextColorToChildren(child, textColor);
-                }
+        if (suggestions != null) {
+            mSuggestionButtons = new Button[suggestions.getChildCount()];
+
+            for (int i = 0; i < mSuggestionButtons.length; i++) {
+                mSuggestionButtons[i] = suggestions.getChildAt(i).findViewById(R.id.text);
             }
         }
     }
 
-    private void applySuggestionsColors(int candidateFontColor) {
-        LinearLayout suggestions = mRootView.findViewById(R.id.suggestions);
-
-        if (suggestions != null) {
-            int childCount = suggestions.getChildCount();
+    private void applyKeyboardColors(
+            int keyboardBackground,
+            int candidateBackground,
+            int enterFontColor,
+            int keyTextColor) {
 
-            Log.d(TAG, "Number of suggestions: " + childCount);
+        if (mRootLayout != null) {
+            mRootLayout.setBackgroundColor(keyboardBackground);
+        }
 
-            for (int i = 0; i < childCount; i++) {
-                View child = suggestions.getChildAt(i);
+        if (mCandidateLayout != null) {
+            mCandidateLayout.setBackgroundColor(candidateBackground);
+        }
 
-                Button candidateButton = child.findViewById(R.id.text);
+        if (mEnterButton != null) {
+            mEnterButton.setTextColor(enterFontColor);
+        }
 
-                if (candidateButton != null) {
-                    candidateButton.setTextColor(ContextCompat.getColor(mContext, candidateFontColor));
-                }
-            }
+        if (mKeyboardView != null) {
+            mKeyboardView.setKeyTextColor(keyTextColor);
         }
+
+        applyStatusBarColors(keyboardBackground, keyTextColor);
     }
 
-    private void applyShiftDrawable(int resId) {
-        LeanbackKeyboardView keyboardView = mRootView.findViewById(R.id.main_keyboard);
+    private void applyStatusBarColors(int backgroundColor, int textColor) {
+        if (mStatusBar != null) {
+            mStatusBar.setBackgroundColor(backgroundColor);
+        }
 
-        if (keyboardView != null && resId > 0) {
-            Drawable drawable = ContextCompat.getDrawable(mContext, resId);
+        if (mStatusTitle != null) {
+            mStatusTitle.setTextColor(textColor);
+        }
 
-            keyboardView.setCapsLockDrawable(drawable);
+        if (mTimeStatus != null) {
+            mTimeStatus.setTextColor(textColor);
         }
     }
 
-    private void applyForTheme(ThemeCallback callback) {
-        String currentThemeId = mPrefs.getCurrentTheme();
-        Resources resources = mContext.getResources();
-        String[] themes = resources.getStringArray(R.array.keyboard_themes);
+    /**
+     * Text elements of the keyboard, status bar included
+     */
+    private void applyTextColors(int backgroundColor, int textColor) {
+        applyStatusBarColors(backgroundColor, textColor);
 
-        for (String theme : themes) {
-            String[] split = theme.split("\\|");
-            String themeName = split[0];
-            String themeId = split[1];
+        if (mEnterButton != null) {
+            mEnterButton.setTextColor(textColor);
+        }
 
-            if (currentThemeId.equals(themeId)) {
-                callback.onThemeFound(themeId);
+        applySuggestionsColors(textColor);
+    }
 
-                break;
+    private void applySuggestionsColors(int candidateFontColor) {
+        for (Button candidateButton : mSuggestionButtons) {
+            if (candidateButton != null) {
+                candidateButton.setTextColor(candidateFontColor);
             }
         }
     }
 
-    private interface ThemeCallback {
-        void onThemeFound(String themeId);
-    }
-    
     public void setAccentColor(int color) {
         mCurrentAccentColor = color;
         
@@ -238,7 +193,9 @@ public class ThemeManager {
         
         // Apply accent color to ListView selectors and other UI elements
         // This will be called when the accent color changes
-        Log.d(TAG, "Applying accent color: " + String.format("#%06X", (0xFFFFFF & mCurrentAccentColor)));
+        if (TraceLog.DEBUG) {
+            TraceLog.trace(TRACE_ACCENT_COLOR, 0xFFFFFF & mCurrentAccentColor);
+        }
     }
     
     public void applyTheme(String themeName) {
@@ -287,7 +244,7 @@ public class ThemeManager {
             mRootView.setBackgroundColor(mContext.getResources().getColor(android.R.color.black));
             
             // Apply dark theme to all child elements
-            applyThemeToAllElements(
+            applyTextColors(
                 mContext.getResources().getColor(android.R.color.black),
                 mContext.getResources().getColor(android.R.color.white)
             );
@@ -304,7 +261,7 @@ public class ThemeManager {
             mRootView.setBackgroundColor(mContext.getResources().getColor(android.R.color.white));
             
             // Apply light theme to all child elements
-            applyThemeToAllElements(
+            applyTextColors(
                 mContext.getResources().getColor(android.R.color.white),
                 mContext.getResources().getColor(android.R.color.black)
             );
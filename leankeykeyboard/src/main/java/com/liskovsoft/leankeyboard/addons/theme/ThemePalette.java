@@ -0,0 +1,30 @@
+package com.liskovsoft.leankeyboard.addons.theme;
+
+import android.graphics.drawable.Drawable;
+
+/**
+ * Resolved colors of a keyboard theme. Immutable.
+ */
+public final class ThemePalette {
+    public final String themeId;
+    public final int keyboardBackground;
+    public final int candidateBackground;
+    public final int candidateFontColor;
+    public final int enterFontColor;
+    public final int keyTextColor;
+    /**
+     * Null: keyboard's own icon
+     */
+    public final Drawable capsLockDrawable;
+
+    ThemePalette(String themeId, int keyboardBackground, int candidateBackground, int candidateFontColor,
+                 int enterFontColor, int keyTextColor, Drawable capsLockDrawable) {
+        this.themeId = themeId;
+        this.keyboardBackground = keyboardBackground;
+        this.candidateBackground = candidateBackground;
+        this.candidateFontColor = candidateFontColor;
+        this.enterFontColor = enterFontColor;
+        this.keyTextColor = keyTextColor;
+        this.capsLockDrawable = capsLockDrawable;
+    }
+}
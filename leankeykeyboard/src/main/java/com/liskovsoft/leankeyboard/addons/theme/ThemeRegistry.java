@@ -0,0 +1,92 @@
+package com.liskovsoft.leankeyboard.addons.theme;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.util.Log;
+import androidx.core.content.ContextCompat;
+import com.liskovsoft.leankeyboard.utils.LeanKeyPreferences;
+import com.slideos.system.R;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Palettes of all themes from <code>R.array.keyboard_themes</code>, resolved once.<br/>
+ * Theme resources follow the naming convention: <code>keyboard_background_&lt;theme id&gt;</code> etc.
+ */
+public final class ThemeRegistry {
+    private static final String TAG = ThemeRegistry.class.getSimpleName();
+    private static ThemeRegistry sInstance;
+    private final Map<String, ThemePalette> mPalettes = new HashMap<>();
+    private final ThemePalette mDefaultPalette;
+
+    public static synchronized ThemeRegistry instance(Context ctx) {
+        if (sInstance == null)
+            sInstance = new ThemeRegistry(ctx.getApplicationContext());
+        return sInstance;
+    }
+
+    private ThemeRegistry(Context context) {
+        mDefaultPalette = new ThemePalette(
+                LeanKeyPreferences.THEME_DEFAULT,
+                ContextCompat.getColor(context, R.color.keyboard_background),
+                ContextCompat.getColor(context, R.color.candidate_background),
+                ContextCompat.getColor(context, R.color.candidate_font_color),
+                ContextCompat.getColor(context, R.color.enter_key_font_color),
+                ContextCompat.getColor(context, R.color.key_text_default),
+                null
+        );
+        mPalettes.put(mDefaultPalette.themeId, mDefaultPalette);
+
+        for (String theme : context.getResources().getStringArray(R.array.keyboard_themes)) {
+            String themeId = theme.split("\\|")[1];
+
+            if (!mPalettes.containsKey(themeId)) {
+                ThemePalette palette = resolve(context, themeId);
+
+                if (palette != null) {
+                    mPalettes.put(themeId, palette);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return palette of the theme or the default one
+     */
+    public ThemePalette getPalette(String themeId) {
+        ThemePalette palette = mPalettes.get(themeId);
+
+        return palette != null ? palette : mDefaultPalette;
+    }
+
+    private static ThemePalette resolve(Context context, String themeId) {
+        String suffix = "_" + themeId.toLowerCase(Locale.ROOT);
+
+        try {
+            int capsLockResId = getId(context, "ic_ime_shift_lock_on" + suffix, "drawable");
+
+            return new ThemePalette(
+                    themeId,
+                    getColor(context, "keyboard_background" + suffix),
+                    getColor(context, "candidate_background" + suffix),
+                    getColor(context, "candidate_font_color" + suffix),
+                    getColor(context, "enter_key_font_color" + suffix),
+                    getColor(context, "key_text_default" + suffix),
+                    capsLockResId != 0 ? ContextCompat.getDrawable(context, capsLockResId) : null
+            );
+        } catch (Resources.NotFoundException e) {
+            Log.e(TAG, "Incomplete theme " + themeId + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static int getColor(Context context, String name) {
+        return ContextCompat.getColor(context, getId(context, name, "color"));
+    }
+
+    private static int getId(Context context, String name, String type) {
+        return context.getResources().getIdentifier(name, type, context.getPackageName());
+    }
+}
@@ -26,6 +26,8 @@ public class MiscFragment extends BaseSettingsFragment {
         addCheckedAction(R.string.enable_suggestions, R.string.enable_suggestions_desc, mPrefs::getSuggestionsEnabled, mPrefs::setSuggestionsEnabled);
         addCheckedAction(R.string.show_launcher_icon, R.string.show_launcher_icon_desc, this::getLauncherIconShown, this::setLauncherIconShown);
         addCheckedAction(R.string.enable_cyclic_navigation, R.string.enable_cyclic_navigation_desc, mPrefs::isCyclicNavigationEnabled, mPrefs::setCyclicNavigationEnabled);
+        addCheckedAction(R.string.single_canvas_rendering, R.string.single_canvas_rendering_desc, mPrefs::getSingleCanvasRendering, mPrefs::setSingleCanvasRendering);
+        addCheckedAction(R.string.perf_overlay, R.string.perf_overlay_desc, mPrefs::getPerfOverlayEnabled, mPrefs::setPerfOverlayEnabled);
     }
 
     @NonNull
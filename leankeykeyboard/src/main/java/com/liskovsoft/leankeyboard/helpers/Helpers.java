@@ -6,6 +6,7 @@ import android.content.ActivityNotFoundException;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.content.res.AssetFileDescriptor;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.graphics.Bitmap;
@@ -22,10 +23,14 @@ import com.liskovsoft.leankeyboard.activity.settings.KbSettingsActivity;
 import com.liskovsoft.leankeyboard.utils.LocaleUtility;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
 import java.util.Date;
@@ -69,6 +74,29 @@ public class Helpers {
         return is;
     }
 
+    /**
+     * Maps the asset into memory. Works only when the asset is stored uncompressed (see aaptOptions in build.gradle).
+     * Compressed asset is read in one pass.
+     */
+    public static ByteBuffer mapAsset(Context ctx, String fileName) throws IOException {
+        try (AssetFileDescriptor fd = ctx.getAssets().openFd(fileName);
+             FileInputStream stream = fd.createInputStream()) {
+            return stream.getChannel().map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getLength());
+        } catch (IOException e) {
+            try (InputStream stream = ctx.getAssets().open(fileName)) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[16 * 1024];
+                int read;
+
+                while ((read = stream.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+
+                return ByteBuffer.wrap(out.toByteArray());
+            }
+        }
+    }
+
     public static String encodeURI(byte[] data) {
         try {
             // make behaviour of java uri-encode the same as javascript's one
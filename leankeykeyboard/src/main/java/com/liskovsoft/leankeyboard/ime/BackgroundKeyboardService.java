@@ -1,6 +1,7 @@
 package com.liskovsoft.leankeyboard.ime;
 
 import android.app.Service;
+import android.content.ComponentName;
 import android.content.Intent;
 import android.os.IBinder;
 import android.view.KeyEvent;
@@ -9,14 +10,24 @@ import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 import android.content.Context;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import com.liskovsoft.leankeyboard.utils.RootShell;
+import com.liskovsoft.leankeyboard.utils.SecureSettingsReconciler;
+import com.liskovsoft.leankeyboard.utils.TraceLog;
+import com.slideos.system.BuildConfig;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class BackgroundKeyboardService extends Service {
     private static final String TAG = "BackgroundKeyboardService";
     private static final int BACK_KEYCODE = KeyEvent.KEYCODE_BACK;
     private static final long HOLD_THRESHOLD = 800; // 800ms hold time for keyboard spawn/dismiss
+    private final Map<String, String> mKeyboardSettings = new LinkedHashMap<>();
+    private String mImeId;
     
     private Handler mHandler;
     private boolean mIsBackHeld = false;
@@ -25,14 +36,31 @@ public class BackgroundKeyboardService extends Service {
     private boolean mIsKeyboardActive = false; // Track if keyboard is currently active/visible
     private boolean mRootListenerActive = false;
     private Thread mRootListenerThread;
+    private volatile Process mRootListenerProcess;
     private boolean mShouldConsumeBackRelease = false; // Flag to consume BACK release after long press
     private InputMethodManager mInputMethodManager;
+    private InputDeviceInventory mInputDevices;
+    private int mCheckedDevicesGeneration = -1;
+    private RootShell mRootShell;
+    private SecureSettingsReconciler mSettings;
+    private boolean mImeStateCheckPending = false;
     
     @Override
     public void onCreate() {
         super.onCreate();
         mHandler = new Handler(Looper.getMainLooper());
         mInputMethodManager = (InputMethodManager) getSystemService(Context.INPUT_METHOD_SERVICE);
+        mInputDevices = InputDeviceInventory.instance(this);
+        mRootShell = RootShell.instance();
+        mSettings = SecureSettingsReconciler.instance(this);
+        // Full form, as stored by the system (the package differs from the class package)
+        mImeId = new ComponentName(this, LeanbackImeService.class).flattenToString();
+        // Force Android to show soft keyboard even with physical keyboard
+        mKeyboardSettings.put("show_ime_with_hard_keyboard", "1");
+        mKeyboardSettings.put("show_soft_keyboard", "1");
+        mKeyboardSettings.put("always_show_soft_keyboard", "1");
+        // Force IME to always be available
+        mKeyboardSettings.put("default_input_method", mImeId);
         Log.d(TAG, "Background keyboard service created");
         
         // Start root-based key event listener
@@ -64,25 +92,8 @@ public class BackgroundKeyboardService extends Service {
                     
                     Log.d(TAG, "Found BACK button device: " + inputDevice);
                     
-                    // Use getevent to listen for key events at system level
-                    Process process = Runtime.getRuntime().exec("su -c 'getevent -lt " + inputDevice + "'");
-                    BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-                    
-                    String line;
-                    while ((line = reader.readLine()) != null && !Thread.interrupted()) {
-                        if (line.contains("EV_KEY") && line.contains("KEY_BACK")) {
-                            if (line.contains("DOWN")) {
-                                handleBackDown();
-                            } else if (line.contains("UP")) {
-                                boolean consumed = handleBackUp();
-                                if (consumed) {
-                                    // Block the BACK release event by not letting it propagate
-                                    Log.d(TAG, "Consuming BACK release event");
-                                    // The event is already consumed by our processing
-                                }
-                            }
-                        }
-                    }
+                    // Listen for key events at system level
+                    readBackKeyEvents(inputDevice);
                 } catch (IOException e) {
                     Log.e(TAG, "Error in root key listener: " + e.getMessage());
                     // Fall back to non-root method
@@ -97,30 +108,89 @@ public class BackgroundKeyboardService extends Service {
         Log.d(TAG, "Root-based key listener started");
     }
     
-    private String findBackButtonDevice() {
+    /**
+     * Reads binary evdev records of the device: directly if the node is readable, otherwise through a root pipe
+     */
+    private void readBackKeyEvents(String inputDevice) throws IOException {
+        File node = new File(inputDevice);
+
+        if (node.canRead()) {
+            readBackKeyEvents(new FileInputStream(node), EvdevReader.getRecordSize());
+            return;
+        }
+
+        Process process = new ProcessBuilder("su", "-c", "cat " + inputDevice).start();
+        mRootListenerProcess = process;
+
         try {
-            // List input devices and find one that has BACK button
-            Process process = Runtime.getRuntime().exec("su -c 'getevent -p'");
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            
-            String line;
-            String currentDevice = null;
-            while ((line = reader.readLine()) != null) {
-                if (line.startsWith("add device")) {
-                    // Extract device path
-                    int start = line.indexOf("'") + 1;
-                    int end = line.lastIndexOf("'");
-                    if (start > 0 && end > start) {
-                        currentDevice = line.substring(start, end);
-                    }
-                } else if (line.contains("KEY_BACK") && currentDevice != null) {
-                    return currentDevice;
+            // bitness of the cat binary is unknown
+            readBackKeyEvents(process.getInputStream(), EvdevReader.RECORD_SIZE_AUTO);
+        } finally {
+            mRootListenerProcess = null;
+            process.destroy();
+        }
+    }
+
+    private void readBackKeyEvents(InputStream stream, int recordSize) throws IOException {
+        EvdevReader reader = new EvdevReader(stream, recordSize, EvdevReader.EV_KEY, EvdevReader.KEY_BACK);
+
+        try {
+            reader.read(mBackKeyListener);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Called on the reader thread only for BACK events. Handling is moved to the main thread.
+     */
+    private final EvdevReader.Listener mBackKeyListener = (realtimeMs, value) -> {
+        // wall clock -> the KeyEvent time base used by the handlers
+        long timeMs = EvdevReader.toUptimeMillis(realtimeMs);
+
+        if (value == EvdevReader.VALUE_DOWN) {
+            mHandler.post(() -> handleBackDown(timeMs));
+        } else if (value == EvdevReader.VALUE_UP) {
+            mHandler.post(() -> {
+                if (handleBackUp(timeMs)) {
+                    // Block the BACK release event by not letting it propagate
+                    Log.d(TAG, "Consuming BACK release event");
                 }
+            });
+        }
+    };
+
+    /**
+     * Test mode: feeds recorded <code>struct input_event</code> records (e.g. <code>cat /dev/input/eventX > file</code>)
+     * through the same pipeline as the live device
+     */
+    private void replayBackKeyEvents(String fixturePath, int recordSize) {
+        Thread thread = new Thread(() -> {
+            try {
+                readBackKeyEvents(new FileInputStream(fixturePath), recordSize);
+                Log.d(TAG, "Replay finished: " + fixturePath);
+            } catch (IOException e) {
+                Log.e(TAG, "Error replaying input events: " + e.getMessage());
             }
-        } catch (IOException e) {
-            Log.e(TAG, "Error finding BACK button device: " + e.getMessage());
+        }, "EvdevReplay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Debug mode: prints {@link TraceLog} records to logcat or appends them to the file
+     * (<code>am startservice -a com.slideos.system.DRAIN_TRACE [--es path /sdcard/trace.txt]</code>)
+     */
+    private void drainTrace(String path) {
+        if (path != null) {
+            TraceLog.drainToFile(new File(path));
+        } else {
+            TraceLog.drainToLogcat();
         }
-        return null;
+    }
+
+    private String findBackButtonDevice() {
+        return mInputDevices.getBackKeyDevicePath();
     }
     
     @Override
@@ -135,6 +205,10 @@ public class BackgroundKeyboardService extends Service {
                 // Update keyboard state when it changes
                 mIsKeyboardActive = intent.getBooleanExtra("isActive", false);
                 Log.d(TAG, "Keyboard state changed: " + mIsKeyboardActive);
+            } else if ("com.slideos.system.REPLAY_INPUT_EVENTS".equals(action) && BuildConfig.DEBUG) {
+                replayBackKeyEvents(intent.getStringExtra("path"), intent.getIntExtra("recordSize", EvdevReader.getRecordSize()));
+            } else if ("com.slideos.system.DRAIN_TRACE".equals(action) && BuildConfig.DEBUG) {
+                drainTrace(intent.getStringExtra("path"));
             } else if (intent.hasExtra("keyCode")) {
                 // Handle key event from activity (fallback method)
                 int keyCode = intent.getIntExtra("keyCode", 0);
@@ -159,19 +233,22 @@ public class BackgroundKeyboardService extends Service {
         // Only handle BACK for keyboard spawn/dismiss
         if (keyCode == BACK_KEYCODE) {
             if (event.getAction() == KeyEvent.ACTION_DOWN) {
-                handleBackDown();
+                handleBackDown(event.getEventTime());
                 return true;
             } else if (event.getAction() == KeyEvent.ACTION_UP) {
-                return handleBackUp();
+                return handleBackUp(event.getEventTime());
             }
         }
         return false;
     }
     
-    private void handleBackDown() {
+    /**
+     * @param eventTimeMs event time in {@link android.os.SystemClock#uptimeMillis()} base
+     */
+    private void handleBackDown(long eventTimeMs) {
         if (!mIsBackHeld) {
             mIsBackHeld = true;
-            mBackStartTime = System.currentTimeMillis();
+            mBackStartTime = eventTimeMs;
             mShouldConsumeBackRelease = false; // Reset consumption flag
             
             // Schedule keyboard spawn/dismiss after hold threshold
@@ -194,10 +271,10 @@ public class BackgroundKeyboardService extends Service {
         }
     }
     
-    private boolean handleBackUp() {
+    private boolean handleBackUp(long eventTimeMs) {
         if (mIsBackHeld) {
             mIsBackHeld = false;
-            long holdDuration = System.currentTimeMillis() - mBackStartTime;
+            long holdDuration = eventTimeMs - mBackStartTime;
             
             if (holdDuration >= HOLD_THRESHOLD) {
                 // Long press - handle keyboard spawn/dismiss
@@ -251,29 +328,9 @@ public class BackgroundKeyboardService extends Service {
     }
     
     private void setSystemKeyboardSettings() {
-        try {
-            // Force Android to show soft keyboard even with physical keyboard
-            Runtime.getRuntime().exec("su -c 'settings put secure show_ime_with_hard_keyboard 1'");
-            Runtime.getRuntime().exec("su -c 'settings put secure show_soft_keyboard 1'");
-            Runtime.getRuntime().exec("su -c 'settings put secure always_show_soft_keyboard 1'");
-            
-            // Additional settings to ensure keyboard shows with hardware input devices
-            Runtime.getRuntime().exec("su -c 'settings put secure show_ime_with_hard_keyboard 1'");
-            Runtime.getRuntime().exec("su -c 'settings put secure show_soft_keyboard 1'");
-            Runtime.getRuntime().exec("su -c 'settings put secure always_show_soft_keyboard 1'");
-            
-            // Disable hardware keyboard detection that might hide soft keyboard
-            Runtime.getRuntime().exec("su -c 'settings put secure show_ime_with_hard_keyboard 1'");
-            Runtime.getRuntime().exec("su -c 'settings put secure show_soft_keyboard 1'");
-            Runtime.getRuntime().exec("su -c 'settings put secure always_show_soft_keyboard 1'");
-            
-            // Force IME to always be available
-            Runtime.getRuntime().exec("su -c 'settings put secure default_input_method com.slideos.system/.ime.LeanbackImeService'");
-            
-            Log.d(TAG, "System keyboard settings updated for hardware input compatibility");
-        } catch (IOException e) {
-            Log.e(TAG, "Failed to update system keyboard settings: " + e.getMessage());
-        }
+        // Writes only the values that differ (see SecureSettingsReconciler)
+        mSettings.ensure(mKeyboardSettings);
+        Log.d(TAG, "System keyboard settings updated for hardware input compatibility");
     }
     
     private void startFocusMonitoring() {
@@ -292,69 +349,25 @@ public class BackgroundKeyboardService extends Service {
     }
     
     private void checkForHardwareInputDevices() {
-        try {
-            // Check for connected hardware input devices
-            Process process = Runtime.getRuntime().exec("su -c 'getevent -p'");
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            
-            String line;
-            boolean hasHardwareKeyboard = false;
-            boolean hasDpad = false;
-            boolean hasGamepad = false;
-            
-            while ((line = reader.readLine()) != null) {
-                if (line.contains("KEY_A") || line.contains("KEY_B") || line.contains("KEY_C") || 
-                    line.contains("KEY_D") || line.contains("KEY_E") || line.contains("KEY_F") ||
-                    line.contains("KEY_G") || line.contains("KEY_H") || line.contains("KEY_I") ||
-                    line.contains("KEY_J") || line.contains("KEY_K") || line.contains("KEY_L") ||
-                    line.contains("KEY_M") || line.contains("KEY_N") || line.contains("KEY_O") ||
-                    line.contains("KEY_P") || line.contains("KEY_Q") || line.contains("KEY_R") ||
-                    line.contains("KEY_S") || line.contains("KEY_T") || line.contains("KEY_U") ||
-                    line.contains("KEY_V") || line.contains("KEY_W") || line.contains("KEY_X") ||
-                    line.contains("KEY_Y") || line.contains("KEY_Z")) {
-                    hasHardwareKeyboard = true;
-                }
-                
-                if (line.contains("KEY_DPAD_UP") || line.contains("KEY_DPAD_DOWN") || 
-                    line.contains("KEY_DPAD_LEFT") || line.contains("KEY_DPAD_RIGHT")) {
-                    hasDpad = true;
-                }
-                
-                if (line.contains("KEY_BUTTON_A") || line.contains("KEY_BUTTON_B") || 
-                    line.contains("KEY_BUTTON_X") || line.contains("KEY_BUTTON_Y")) {
-                    hasGamepad = true;
-                }
-            }
-            
-            // If hardware input devices are detected, ensure soft keyboard is available
-            if (hasHardwareKeyboard || hasDpad || hasGamepad) {
-                Log.d(TAG, "Hardware input devices detected - ensuring soft keyboard availability");
-                ensureSoftKeyboardAvailability();
-            }
-            
-        } catch (IOException e) {
-            Log.e(TAG, "Error checking hardware input devices: " + e.getMessage());
+        // Answered from the cached inventory. Re-apply settings only when the device set has changed.
+        int generation = mInputDevices.getGeneration();
+
+        if (generation == mCheckedDevicesGeneration) {
+            return;
+        }
+
+        mCheckedDevicesGeneration = generation;
+
+        if (mInputDevices.hasHardwareInputDevices()) {
+            Log.d(TAG, "Hardware input devices detected - ensuring soft keyboard availability");
+            ensureSoftKeyboardAvailability();
         }
     }
     
     private void ensureSoftKeyboardAvailability() {
-        try {
-            // Force the system to show soft keyboard even with hardware input devices
-            Runtime.getRuntime().exec("su -c 'settings put secure show_ime_with_hard_keyboard 1'");
-            Runtime.getRuntime().exec("su -c 'settings put secure show_soft_keyboard 1'");
-            Runtime.getRuntime().exec("su -c 'settings put secure always_show_soft_keyboard 1'");
-            
-            // Ensure our IME is set as default
-            Runtime.getRuntime().exec("su -c 'settings put secure default_input_method com.slideos.system/.ime.LeanbackImeService'");
-            
-            // Force IME to be enabled
-            Runtime.getRuntime().exec("su -c 'ime enable com.slideos.system/.ime.LeanbackImeService'");
-            Runtime.getRuntime().exec("su -c 'ime set com.slideos.system/.ime.LeanbackImeService'");
-            
-            Log.d(TAG, "Soft keyboard availability ensured for hardware input devices");
-        } catch (IOException e) {
-            Log.e(TAG, "Error ensuring soft keyboard availability: " + e.getMessage());
-        }
+        // Same settings plus our IME in the enabled list. Costs nothing when already applied.
+        mSettings.ensure(mKeyboardSettings, mImeId);
+        Log.d(TAG, "Soft keyboard availability ensured for hardware input devices. Skipped writes: " + mSettings.getSkippedWrites());
     }
     
     private void checkForTextInputFocus() {
@@ -378,37 +391,45 @@ public class BackgroundKeyboardService extends Service {
     }
     
     private void checkForTextInputFocusViaRoot() {
-        try {
-            // Use a more targeted approach to detect text input focus
-            // Check if any app is requesting text input
-            Process process = Runtime.getRuntime().exec("su -c 'dumpsys input_method | grep -E \"mInputStarted|mShowRequested|mInputShown\"'");
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            
-            String line;
-            boolean hasActiveInput = false;
-            boolean showRequested = false;
-            boolean inputShown = false;
-            
-            while ((line = reader.readLine()) != null) {
-                if (line.contains("mInputStarted=true")) {
-                    hasActiveInput = true;
-                }
-                if (line.contains("mShowRequested=true")) {
-                    showRequested = true;
-                }
-                if (line.contains("mInputShown=true")) {
-                    inputShown = true;
-                }
+        if (mImeStateCheckPending) {
+            return; // previous dump isn't finished yet
+        }
+
+        // Use a more targeted approach to detect text input focus
+        // Check if any app is requesting text input
+        mImeStateCheckPending = mRootShell.submit("dumpsys input_method | grep -E \"mInputStarted|mShowRequested|mInputShown\"",
+                result -> mHandler.post(() -> {
+                    mImeStateCheckPending = false;
+
+                    if (result.timedOut) {
+                        Log.e(TAG, "Error checking IME state: timeout");
+                    } else {
+                        onImeState(result.output);
+                    }
+                }));
+    }
+
+    private void onImeState(List<String> lines) {
+        boolean hasActiveInput = false;
+        boolean showRequested = false;
+        boolean inputShown = false;
+
+        for (String line : lines) {
+            if (line.contains("mInputStarted=true")) {
+                hasActiveInput = true;
             }
-            
-            // Show keyboard if input is started but not shown, or if show is requested
-            if (hasActiveInput && (showRequested || !inputShown) && !mIsKeyboardActive) {
-                Log.d(TAG, "Text input field detected via IME dump - showing keyboard");
-                showKeyboard();
+            if (line.contains("mShowRequested=true")) {
+                showRequested = true;
+            }
+            if (line.contains("mInputShown=true")) {
+                inputShown = true;
             }
-            
-        } catch (IOException e) {
-            Log.e(TAG, "Error checking IME state: " + e.getMessage());
+        }
+
+        // Show keyboard if input is started but not shown, or if show is requested
+        if (hasActiveInput && (showRequested || !inputShown) && !mIsKeyboardActive) {
+            Log.d(TAG, "Text input field detected via IME dump - showing keyboard");
+            showKeyboard();
         }
     }
     
@@ -420,6 +441,13 @@ public class BackgroundKeyboardService extends Service {
         if (mRootListenerThread != null && mRootListenerThread.isAlive()) {
             mRootListenerThread.interrupt();
         }
+
+        // blocking read of the pipe isn't interruptible, killing the helper ends the stream
+        Process process = mRootListenerProcess;
+
+        if (process != null) {
+            process.destroy();
+        }
         
         Log.d(TAG, "Background keyboard service destroyed");
     }
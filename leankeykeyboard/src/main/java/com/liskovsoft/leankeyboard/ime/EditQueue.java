@@ -0,0 +1,211 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.inputmethod.InputConnection;
+
+import java.util.Arrays;
+
+/**
+ * Collects editor changes made within a frame and sends them on the next frame as one batch edit,
+ * so the app redraws once instead of after every call.<br/>
+ * Adjacent operations are merged: commits are concatenated, deletes are summed, a delete eats the end of
+ * the preceding commit (backspace after typing), the last of adjacent selections wins.<br/>
+ * Anything that depends on the editor state (editor actions, key events, switching the editor)
+ * should {@link #flush()} first. {@link EditorMirror} is updated by the caller immediately, so reads
+ * don't have to wait for the flush.<br/>
+ * Main thread only.
+ */
+public class EditQueue {
+    private static final String TAG = EditQueue.class.getSimpleName();
+    private static final boolean DEBUG = false;
+    private static final int OP_COMMIT = 0;
+    private static final int OP_DELETE = 1;
+    private static final int OP_SELECTION = 2;
+    /**
+     * Null: flushed by the caller only (host tests)
+     */
+    private final Choreographer mChoreographer;
+    private final Choreographer.FrameCallback mFlushCallback = frameTimeNanos -> flush();
+    private InputConnection mConnection;
+    private int[] mTypes = new int[8];
+    private StringBuilder[] mTexts = new StringBuilder[8];
+    /**
+     * Delete: before/after lengths. Selection: start/end.
+     */
+    private int[] mArgs1 = new int[8];
+    private int[] mArgs2 = new int[8];
+    private int mCount;
+    private boolean mScheduled;
+    private long mCallsRequested;
+    private long mCallsIssued;
+
+    public EditQueue() {
+        this(Choreographer.getInstance());
+    }
+
+    EditQueue(Choreographer choreographer) {
+        mChoreographer = choreographer;
+    }
+
+    public void commitText(InputConnection connection, CharSequence text) {
+        mCallsRequested++;
+
+        if (prepare(connection, OP_COMMIT)) {
+            mTexts[mCount - 1].append(text);
+            return;
+        }
+
+        add(OP_COMMIT, 0, 0).append(text);
+    }
+
+    public void deleteSurroundingText(InputConnection connection, int beforeLength, int afterLength) {
+        mCallsRequested++;
+
+        if (prepare(connection, OP_DELETE)) {
+            mArgs1[mCount - 1] += beforeLength;
+            mArgs2[mCount - 1] += afterLength;
+            return;
+        }
+
+        if (mCount > 0 && mTypes[mCount - 1] == OP_COMMIT && afterLength == 0) {
+            StringBuilder text = mTexts[mCount - 1];
+            int trim = Math.min(beforeLength, text.length());
+            text.setLength(text.length() - trim);
+            beforeLength -= trim;
+
+            if (beforeLength == 0) {
+                return;
+            }
+        }
+
+        add(OP_DELETE, beforeLength, afterLength);
+    }
+
+    public void setSelection(InputConnection connection, int start, int end) {
+        mCallsRequested++;
+
+        if (!prepare(connection, OP_SELECTION)) {
+            add(OP_SELECTION, 0, 0);
+        }
+
+        mArgs1[mCount - 1] = start;
+        mArgs2[mCount - 1] = end;
+    }
+
+    /**
+     * Sends pending operations now
+     */
+    public void flush() {
+        if (mScheduled) {
+            mChoreographer.removeFrameCallback(mFlushCallback);
+            mScheduled = false;
+        }
+
+        if (mCount == 0) {
+            return;
+        }
+
+        InputConnection connection = mConnection;
+        boolean batch = mCount > 1; // single call is applied atomically anyway
+        boolean committed = false;
+
+        if (batch) {
+            connection.beginBatchEdit();
+        }
+
+        for (int i = 0; i < mCount; i++) {
+            switch (mTypes[i]) {
+                case OP_COMMIT:
+                    connection.commitText(mTexts[i].toString(), 1); // empty commit still replaces the selection
+                    committed = true;
+                    break;
+                case OP_DELETE:
+                    connection.deleteSurroundingText(mArgs1[i], mArgs2[i]);
+                    break;
+                case OP_SELECTION:
+                    connection.setSelection(mArgs1[i], mArgs2[i]);
+                    break;
+            }
+        }
+
+        if (batch) {
+            connection.endBatchEdit();
+        }
+
+        if (committed) {
+            // text has reached the editor only now, including the frame delay of the queue
+            PerfMonitor.instance().onCommit();
+        }
+
+        mCallsIssued += mCount;
+
+        if (DEBUG) {
+            Log.d(TAG, "Flushed " + mCount + " operations. Issued: " + mCallsIssued + ", coalesced: " + getCallsCoalesced());
+        }
+
+        clear();
+    }
+
+    /**
+     * Edit calls sent to the editor
+     */
+    public long getCallsIssued() {
+        return mCallsIssued;
+    }
+
+    /**
+     * Edit calls saved by merging
+     */
+    public long getCallsCoalesced() {
+        return mCallsRequested - mCallsIssued - mCount;
+    }
+
+    /**
+     * @return can the operation be merged into the last one
+     */
+    private boolean prepare(InputConnection connection, int type) {
+        if (connection != mConnection) {
+            flush();
+            mConnection = connection;
+        }
+
+        if (!mScheduled && mChoreographer != null) {
+            mChoreographer.postFrameCallback(mFlushCallback);
+            mScheduled = true;
+        }
+
+        return mCount > 0 && mTypes[mCount - 1] == type;
+    }
+
+    private StringBuilder add(int type, int arg1, int arg2) {
+        if (mCount == mTypes.length) {
+            mTypes = Arrays.copyOf(mTypes, mCount * 2);
+            mTexts = Arrays.copyOf(mTexts, mCount * 2);
+            mArgs1 = Arrays.copyOf(mArgs1, mCount * 2);
+            mArgs2 = Arrays.copyOf(mArgs2, mCount * 2);
+        }
+
+        if (mTexts[mCount] == null) {
+            mTexts[mCount] = new StringBuilder();
+        }
+
+        StringBuilder text = mTexts[mCount];
+        text.setLength(0);
+        mTypes[mCount] = type;
+        mArgs1[mCount] = arg1;
+        mArgs2[mCount] = arg2;
+        mCount++;
+
+        return text;
+    }
+
+    private void clear() {
+        for (int i = 0; i < mCount; i++) {
+            mTexts[i].setLength(0);
+        }
+
+        mCount = 0;
+        mConnection = null;
+    }
+}
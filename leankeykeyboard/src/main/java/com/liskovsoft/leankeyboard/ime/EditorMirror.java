@@ -0,0 +1,369 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.inputmethodservice.InputMethodService;
+import android.util.Log;
+import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.ExtractedText;
+import android.view.inputmethod.ExtractedTextRequest;
+import android.view.inputmethod.InputConnection;
+
+/**
+ * Local copy of the editor text around the cursor. Reading from the {@link InputConnection} is an IPC round trip
+ * per call, so suggestions, predictions and cursor keys read from here instead.<br/>
+ * Seeded once per input session (lazily, on the first read), then follows our own edits.
+ * Editor reports ({@link #onUpdateSelection}, {@link #onUpdateExtractedText}) are checked against the expected state:
+ * on mismatch the mirror is marked stale and re-read from the editor.<br/>
+ * Main thread only.
+ */
+public class EditorMirror {
+    private static final String TAG = EditorMirror.class.getSimpleName();
+    private static final boolean DEBUG = false;
+    /**
+     * Same limit as the old direct reads
+     */
+    public static final int MAX_CHARS = 1000;
+    private static final int EXTRACTED_TEXT_TOKEN = 0x4C4B; // any, InputMethodService uses 0 for its extract view
+    private static final int MAX_PENDING = 16;
+    private final InputMethodService mService;
+    /**
+     * Known text, starts at {@link #mTextStart} of the editor
+     */
+    private final StringBuilder mText = new StringBuilder();
+    private int mTextStart;
+    private int mSelStart;
+    private int mSelEnd;
+    private boolean mValid;
+    /**
+     * Editor sends text updates, so cursor moves can be trusted without re-reading
+     */
+    private boolean mMonitored;
+    private int mInitialSelStart = -1;
+    private int mInitialSelEnd = -1;
+    /**
+     * Selections our edits should produce, oldest first: editor reports lag behind
+     */
+    private final int[] mPendingSelStart = new int[MAX_PENDING];
+    private final int[] mPendingSelEnd = new int[MAX_PENDING];
+    private int mPendingCount;
+    private int mResyncCount;
+
+    public EditorMirror(InputMethodService service) {
+        mService = service;
+    }
+
+    public void onStartInput(EditorInfo info) {
+        mInitialSelStart = info != null ? info.initialSelStart : -1;
+        mInitialSelEnd = info != null ? info.initialSelEnd : -1;
+        invalidate();
+    }
+
+    public void invalidate() {
+        mValid = false;
+        mMonitored = false;
+        mPendingCount = 0;
+    }
+
+    /**
+     * See {@link InputMethodService#onUpdateSelection}
+     */
+    public void onUpdateSelection(int newSelStart, int newSelEnd) {
+        mInitialSelStart = newSelStart;
+        mInitialSelEnd = newSelEnd;
+
+        if (!mValid) {
+            return;
+        }
+
+        for (int i = 0; i < mPendingCount; i++) {
+            if (mPendingSelStart[i] == newSelStart && mPendingSelEnd[i] == newSelEnd) {
+                dropPending(i + 1);
+                return;
+            }
+        }
+
+        if (mPendingCount == 0 && newSelStart == mSelStart && newSelEnd == mSelEnd) {
+            return;
+        }
+
+        if (mPendingCount == 0 && mMonitored && contains(newSelStart) && contains(newSelEnd)) {
+            // moved by the app or user, text changes (if any) come with the extracted text
+            mSelStart = newSelStart;
+            mSelEnd = newSelEnd;
+            return;
+        }
+
+        onDrift("selection " + newSelStart + "-" + newSelEnd + ", expected " + mSelStart + "-" + mSelEnd);
+    }
+
+    /**
+     * See {@link InputMethodService#onUpdateExtractedText}
+     * @return is the update ours
+     */
+    public boolean onUpdateExtractedText(int token, ExtractedText text) {
+        if (token != EXTRACTED_TEXT_TOKEN) {
+            return false;
+        }
+
+        if (!mValid || text == null || text.text == null) {
+            return true;
+        }
+
+        if (mPendingCount > 0) {
+            // report of the older state, our edits aren't there yet
+            return true;
+        }
+
+        if (text.partialStartOffset < 0) {
+            seed(text);
+            return true;
+        }
+
+        int start = text.partialStartOffset - mTextStart;
+        int end = text.partialEndOffset - mTextStart;
+
+        if (start < 0 || end > mText.length() || start > end) {
+            onDrift("text update out of the known range");
+            return true;
+        }
+
+        mText.replace(start, end, text.text.toString());
+        mSelStart = text.startOffset + text.selectionStart;
+        mSelEnd = text.startOffset + text.selectionEnd;
+
+        return true;
+    }
+
+    // Reads
+
+    public CharSequence getTextBeforeCursor(int maxChars) {
+        if (!ensureValid()) {
+            return null;
+        }
+
+        int end = mSelStart - mTextStart;
+
+        return mText.substring(Math.max(0, end - maxChars), end);
+    }
+
+    public CharSequence getTextAfterCursor(int maxChars) {
+        if (!ensureValid()) {
+            return null;
+        }
+
+        int start = mSelEnd - mTextStart;
+
+        return mText.substring(start, Math.min(mText.length(), start + maxChars));
+    }
+
+    /**
+     * Text before and after the cursor (selection excluded)
+     */
+    public String getText() {
+        if (!ensureValid()) {
+            return "";
+        }
+
+        int selStart = mSelStart - mTextStart;
+        int selEnd = mSelEnd - mTextStart;
+
+        return new StringBuilder(mText.length() - (selEnd - selStart))
+                .append(mText, Math.max(0, selStart - MAX_CHARS), selStart)
+                .append(mText, selEnd, Math.min(mText.length(), selEnd + MAX_CHARS))
+                .toString();
+    }
+
+    public int getCharLengthBeforeCursor() {
+        return ensureValid() ? Math.min(MAX_CHARS, mSelStart - mTextStart) : 0;
+    }
+
+    public int getCharLengthAfterCursor() {
+        return ensureValid() ? Math.min(MAX_CHARS, mTextStart + mText.length() - mSelEnd) : 0;
+    }
+
+    /**
+     * Editor position of the first '@' (or of the text end)
+     */
+    public int getAmpersandLocation() {
+        if (!ensureValid()) {
+            return 0;
+        }
+
+        String text = getText();
+        int lengthBefore = getCharLengthBeforeCursor();
+        int pos = text.indexOf('@');
+
+        if (pos < 0) { // not found
+            pos = text.length();
+        }
+
+        // selection isn't part of the text
+        return pos < lengthBefore ? mSelStart - lengthBefore + pos : mSelEnd + pos - lengthBefore;
+    }
+
+    /**
+     * Number of times the mirror was re-read from the editor after the first seed
+     */
+    public int getResyncCount() {
+        return mResyncCount;
+    }
+
+    // Our edits. Should be applied right after the same call on the InputConnection.
+
+    /**
+     * {@link InputConnection#commitText} with newCursorPosition 1
+     */
+    public void commitText(CharSequence text) {
+        if (!mValid) {
+            return;
+        }
+
+        int start = mSelStart - mTextStart;
+        mText.replace(start, mSelEnd - mTextStart, text.toString());
+        mSelStart = mSelEnd = mTextStart + start + text.length();
+        addPending();
+    }
+
+    /**
+     * {@link InputConnection#deleteSurroundingText}
+     */
+    public void deleteSurroundingText(int beforeLength, int afterLength) {
+        if (!mValid) {
+            return;
+        }
+
+        int selStart = mSelStart - mTextStart;
+        int selEnd = mSelEnd - mTextStart;
+        int before = Math.min(beforeLength, selStart);
+        int after = Math.min(afterLength, mText.length() - selEnd);
+
+        if ((before < beforeLength && mTextStart > 0) || (after < afterLength && !mMonitored)) {
+            // crosses the known text, editor knows better
+            invalidate();
+            return;
+        }
+
+        mText.delete(selEnd, selEnd + after);
+        mText.delete(selStart - before, selStart);
+        mSelStart -= before;
+        mSelEnd = mSelStart + (selEnd - selStart);
+        addPending();
+    }
+
+    /**
+     * {@link InputConnection#setSelection}
+     */
+    public void setSelection(int start, int end) {
+        if (!mValid) {
+            return;
+        }
+
+        if (!contains(start) || !contains(end)) {
+            invalidate();
+            return;
+        }
+
+        mSelStart = Math.min(start, end);
+        mSelEnd = Math.max(start, end);
+        addPending();
+    }
+
+    private boolean contains(int position) {
+        return position >= mTextStart && position <= mTextStart + mText.length();
+    }
+
+    private boolean ensureValid() {
+        if (mValid) {
+            return true;
+        }
+
+        InputConnection connection = mService.getCurrentInputConnection();
+
+        if (connection == null) {
+            return false;
+        }
+
+        ExtractedTextRequest request = new ExtractedTextRequest();
+        request.token = EXTRACTED_TEXT_TOKEN;
+        request.hintMaxChars = MAX_CHARS * 2;
+        ExtractedText text = connection.getExtractedText(request, InputConnection.GET_EXTRACTED_TEXT_MONITOR);
+
+        if (text != null && text.text != null) {
+            seed(text);
+            mMonitored = true;
+        } else {
+            seed(connection);
+        }
+
+        return true;
+    }
+
+    private void seed(ExtractedText text) {
+        mText.setLength(0);
+        mText.append(text.text);
+        mTextStart = text.startOffset;
+        mSelStart = text.startOffset + Math.min(text.selectionStart, text.selectionEnd);
+        mSelEnd = text.startOffset + Math.max(text.selectionStart, text.selectionEnd);
+
+        if (!contains(mSelStart) || !contains(mSelEnd)) {
+            mSelStart = mSelEnd = mTextStart + mText.length();
+        }
+
+        mValid = true;
+    }
+
+    /**
+     * Editor doesn't support text extraction: read around the cursor
+     */
+    private void seed(InputConnection connection) {
+        CharSequence before = connection.getTextBeforeCursor(MAX_CHARS, 0);
+        CharSequence selected = mInitialSelStart != mInitialSelEnd ? connection.getSelectedText(0) : null;
+        CharSequence after = connection.getTextAfterCursor(MAX_CHARS, 0);
+        int beforeLength = before != null ? before.length() : 0;
+        int selectedLength = selected != null ? selected.length() : 0;
+
+        mText.setLength(0);
+
+        if (before != null) {
+            mText.append(before);
+        }
+
+        if (selected != null) {
+            mText.append(selected);
+        }
+
+        if (after != null) {
+            mText.append(after);
+        }
+
+        // old behavior when the position is unknown: text before the cursor is all the text
+        mTextStart = mInitialSelStart >= beforeLength ? Math.min(mInitialSelStart, mInitialSelEnd) - beforeLength : 0;
+        mSelStart = mTextStart + beforeLength;
+        mSelEnd = mSelStart + selectedLength;
+        mValid = true;
+    }
+
+    private void onDrift(String reason) {
+        if (DEBUG) {
+            Log.d(TAG, "Out of sync with the editor: " + reason);
+        }
+
+        mResyncCount++;
+        invalidate();
+    }
+
+    private void addPending() {
+        if (mPendingCount == MAX_PENDING) {
+            dropPending(1);
+        }
+
+        mPendingSelStart[mPendingCount] = mSelStart;
+        mPendingSelEnd[mPendingCount] = mSelEnd;
+        mPendingCount++;
+    }
+
+    private void dropPending(int count) {
+        System.arraycopy(mPendingSelStart, count, mPendingSelStart, 0, mPendingCount - count);
+        System.arraycopy(mPendingSelEnd, count, mPendingSelEnd, 0, mPendingCount - count);
+        mPendingCount -= count;
+    }
+}
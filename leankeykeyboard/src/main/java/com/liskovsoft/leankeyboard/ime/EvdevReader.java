@@ -0,0 +1,182 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.os.SystemClock;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Decodes binary <code>struct input_event</code> records from an evdev node, a privileged pipe
+ * (e.g. <code>su -c 'cat /dev/input/event2'</code>) or a recorded fixture file.<br/>
+ * Records are read into one reusable direct buffer and filtered numerically, so nothing is allocated per event.
+ * <pre>
+ * struct input_event {
+ *     struct timeval time; // 2 x long: 8 bytes on 32-bit, 16 bytes on 64-bit userspace
+ *     __u16 type;
+ *     __u16 code;
+ *     __s32 value;
+ * };
+ * </pre>
+ * The layout is detected from the first records when the size is {@link #RECORD_SIZE_AUTO}: a pipe from a helper
+ * process carries records of the helper's bitness, which can't be told reliably from this process.<br/>
+ * Timestamps are passed as recorded: the kernel stamps events with <code>CLOCK_REALTIME</code> unless the reader's fd
+ * has <code>EVIOCSCLOCKID</code> set (an ioctl, not available from Java nor through a pipe). Convert them before comparing against
+ * {@link SystemClock#uptimeMillis()} (see {@link #toUptimeMillis(long)}).
+ */
+public final class EvdevReader {
+    public static final int RECORD_SIZE_AUTO = 0;
+    public static final int RECORD_SIZE_32 = 16;
+    public static final int RECORD_SIZE_64 = 24;
+    public static final int EV_KEY = 0x01;
+    public static final int KEY_BACK = 158;
+    public static final int VALUE_UP = 0;
+    public static final int VALUE_DOWN = 1;
+    public static final int VALUE_REPEAT = 2;
+    private static final int EV_SYN = 0x00;
+    private static final int EV_MAX = 0x1f;
+    private static final int SYN_MAX = 0x03; // SYN_DROPPED
+    private static final int USEC_PER_SEC = 1_000_000;
+    private static final int RECORDS_PER_READ = 64;
+    // both layouts align every 48 bytes, give up on ambiguous data after a few packets
+    private static final int DETECT_MIN_BYTES = 48;
+    private static final int DETECT_MAX_BYTES = DETECT_MIN_BYTES * 8;
+    private final ReadableByteChannel mChannel;
+    private int mRecordSize;
+    private final int mType;
+    private final int mCode;
+    private final ByteBuffer mBuffer;
+
+    public interface Listener {
+        /**
+         * @param timeMs kernel timestamp, wall clock (<code>CLOCK_REALTIME</code>) millis
+         * @param value one of {@link #VALUE_DOWN}, {@link #VALUE_UP}, {@link #VALUE_REPEAT}
+         */
+        void onEvent(long timeMs, int value);
+    }
+
+    /**
+     * @param recordSize {@link #RECORD_SIZE_32}, {@link #RECORD_SIZE_64} (see {@link #getRecordSize()}) or {@link #RECORD_SIZE_AUTO}
+     * @param type event type to pass (e.g. {@link #EV_KEY})
+     * @param code event code to pass (e.g. {@link #KEY_BACK})
+     */
+    public EvdevReader(InputStream stream, int recordSize, int type, int code) {
+        if (recordSize != RECORD_SIZE_AUTO && recordSize != RECORD_SIZE_32 && recordSize != RECORD_SIZE_64) {
+            throw new IllegalArgumentException("Unsupported record size: " + recordSize);
+        }
+
+        mChannel = Channels.newChannel(stream);
+        mRecordSize = recordSize;
+        mType = type;
+        mCode = code;
+        mBuffer = ByteBuffer.allocateDirect(RECORD_SIZE_64 * RECORDS_PER_READ).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Record layout of the node read by this process. Depends on the bitness of the process, not the kernel:
+     * 32-bit userland on 64-bit kernel reports armv8l and gets 32-bit compat records.
+     */
+    public static int getRecordSize() {
+        return System.getProperty("os.arch", "").contains("64") ? RECORD_SIZE_64 : RECORD_SIZE_32;
+    }
+
+    /**
+     * Blocks until the stream ends, the thread is interrupted or the stream is closed.
+     * Incomplete trailing record is dropped.
+     */
+    public void read(Listener listener) throws IOException {
+        ByteBuffer buffer = mBuffer;
+        buffer.clear();
+
+        while (!Thread.currentThread().isInterrupted() && mChannel.read(buffer) != -1) {
+            if (mRecordSize == RECORD_SIZE_AUTO && (mRecordSize = detectRecordSize(buffer)) == RECORD_SIZE_AUTO) {
+                continue; // wait for more records
+            }
+
+            buffer.flip();
+
+            while (buffer.remaining() >= mRecordSize) {
+                decode(buffer, buffer.position(), listener);
+                buffer.position(buffer.position() + mRecordSize);
+            }
+
+            buffer.compact();
+        }
+    }
+
+    /**
+     * @param realtimeMs kernel timestamp as passed to the {@link Listener}
+     * @return same moment in {@link SystemClock#uptimeMillis()} base (offset sampled now)
+     */
+    public static long toUptimeMillis(long realtimeMs) {
+        return realtimeMs - (System.currentTimeMillis() - SystemClock.uptimeMillis());
+    }
+
+    public void close() throws IOException {
+        mChannel.close();
+    }
+
+    /**
+     * Layout is valid when every record has a known type, a sane microseconds field and a known EV_SYN code.
+     * @param buffer records read so far (from 0 to position)
+     * @return detected size, {@link #RECORD_SIZE_AUTO} when more data is needed
+     */
+    static int detectRecordSize(ByteBuffer buffer) {
+        int length = buffer.position();
+
+        if (length < DETECT_MIN_BYTES) {
+            return RECORD_SIZE_AUTO;
+        }
+
+        boolean valid32 = isValidLayout(buffer, length, RECORD_SIZE_32);
+        boolean valid64 = isValidLayout(buffer, length, RECORD_SIZE_64);
+
+        if (valid32 != valid64) {
+            return valid32 ? RECORD_SIZE_32 : RECORD_SIZE_64;
+        }
+
+        if (valid32 && length < DETECT_MAX_BYTES) {
+            return RECORD_SIZE_AUTO;
+        }
+
+        return getRecordSize();
+    }
+
+    private static boolean isValidLayout(ByteBuffer buffer, int length, int recordSize) {
+        for (int offset = 0; offset + recordSize <= length; offset += recordSize) {
+            int typeOffset = offset + recordSize - 8;
+            int type = buffer.getShort(typeOffset) & 0xFFFF;
+            long usec = recordSize == RECORD_SIZE_64 ? buffer.getLong(offset + 8) : buffer.getInt(offset + 4) & 0xFFFFFFFFL;
+
+            if (type > EV_MAX || usec >= USEC_PER_SEC || (type == EV_SYN && (buffer.getShort(typeOffset + 2) & 0xFFFF) > SYN_MAX)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void decode(ByteBuffer buffer, int offset, Listener listener) {
+        int typeOffset = offset + mRecordSize - 8;
+
+        if ((buffer.getShort(typeOffset) & 0xFFFF) != mType || (buffer.getShort(typeOffset + 2) & 0xFFFF) != mCode) {
+            return;
+        }
+
+        long sec;
+        long usec;
+
+        if (mRecordSize == RECORD_SIZE_64) {
+            sec = buffer.getLong(offset);
+            usec = buffer.getLong(offset + 8);
+        } else {
+            sec = buffer.getInt(offset) & 0xFFFFFFFFL;
+            usec = buffer.getInt(offset + 4) & 0xFFFFFFFFL;
+        }
+
+        listener.onEvent(sec * 1000 + usec / 1000, buffer.getInt(typeOffset + 4));
+    }
+}
@@ -0,0 +1,252 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.content.Context;
+import android.hardware.input.InputManager;
+import android.hardware.input.InputManager.InputDeviceListener;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.SparseIntArray;
+import android.view.InputDevice;
+import com.liskovsoft.leankeyboard.utils.RootShell;
+
+import java.util.List;
+
+/**
+ * Process-wide snapshot of the connected hardware input devices.<br/>
+ * Built once from {@link InputManager} and then kept up to date from {@link InputDeviceListener} callbacks,
+ * so the keyboard show path never has to spawn a root shell. Root <code>getevent -pl</code> parsing is used only
+ * when the framework service is not available, and to resolve evdev node paths (which {@link InputDevice} doesn't expose).<br/>
+ * Root probes never run under the lock taken by the main thread callbacks.
+ */
+public final class InputDeviceInventory implements InputDeviceListener {
+    private static final String TAG = InputDeviceInventory.class.getSimpleName();
+    public static final int CAPABILITY_KEYBOARD = 1;
+    public static final int CAPABILITY_DPAD = 1 << 1;
+    public static final int CAPABILITY_GAMEPAD = 1 << 2;
+    private static InputDeviceInventory sInstance;
+    private final InputManager mInputManager;
+    /**
+     * Device id to capability mask. Guarded by <code>this</code>.
+     */
+    private final SparseIntArray mDevices = new SparseIntArray();
+    private volatile int mCapabilities;
+    private volatile int mGeneration;
+    private volatile BackKeyDevice mBackKeyDevice;
+
+    private static final class BackKeyDevice {
+        private final String path;
+        private final int generation;
+
+        private BackKeyDevice(String path, int generation) {
+            this.path = path;
+            this.generation = generation;
+        }
+    }
+
+    public static synchronized InputDeviceInventory instance(Context ctx) {
+        if (sInstance == null)
+            sInstance = new InputDeviceInventory(ctx);
+        return sInstance;
+    }
+
+    private InputDeviceInventory(Context context) {
+        mInputManager = (InputManager) context.getApplicationContext().getSystemService(Context.INPUT_SERVICE);
+
+        if (mInputManager != null) {
+            mInputManager.registerInputDeviceListener(this, new Handler(Looper.getMainLooper()));
+
+            for (int deviceId : mInputManager.getInputDeviceIds()) {
+                putDevice(deviceId);
+            }
+
+            updateCapabilities();
+            Log.d(TAG, "Input device capabilities: " + mCapabilities);
+        } else {
+            Log.w(TAG, "InputManager isn't available. Falling back to getevent...");
+            // no devices reported until the scan is done
+            Thread thread = new Thread(this::scanCapabilitiesViaRoot, "InputDeviceScan");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Whether at least one physical keyboard, d-pad or gamepad is connected
+     */
+    public boolean hasHardwareInputDevices() {
+        return mCapabilities != 0;
+    }
+
+    public int getCapabilities() {
+        return mCapabilities;
+    }
+
+    /**
+     * Incremented on every device add/remove/change. Lets pollers skip work when nothing was plugged.
+     */
+    public int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Evdev node (e.g. <code>/dev/input/event2</code>) that reports KEY_BACK.<br/>
+     * Requires root, so the result is cached until the device set changes.
+     * Blocks on the root shell when the cache is stale, call from a worker thread.
+     * @return node path or null
+     */
+    public String getBackKeyDevicePath() {
+        int generation = mGeneration;
+        BackKeyDevice device = mBackKeyDevice;
+
+        if (device == null || device.generation != generation) {
+            // a device plugged during the probe bumps the generation, so the next call probes again
+            device = new BackKeyDevice(findBackKeyDeviceViaRoot(), generation);
+            mBackKeyDevice = device;
+        }
+
+        return device.path;
+    }
+
+    @Override
+    public void onInputDeviceAdded(int deviceId) {
+        putDevice(deviceId);
+        updateCapabilities();
+    }
+
+    @Override
+    public void onInputDeviceRemoved(int deviceId) {
+        synchronized (this) {
+            mDevices.delete(deviceId);
+        }
+        updateCapabilities();
+    }
+
+    @Override
+    public void onInputDeviceChanged(int deviceId) {
+        putDevice(deviceId);
+        updateCapabilities();
+    }
+
+    private void putDevice(int deviceId) {
+        InputDevice device = mInputManager.getInputDevice(deviceId);
+
+        synchronized (this) {
+            if (device == null || device.isVirtual()) {
+                mDevices.delete(deviceId);
+            } else {
+                mDevices.put(deviceId, getCapabilities(device));
+            }
+        }
+    }
+
+    private synchronized void updateCapabilities() {
+        int capabilities = 0;
+
+        for (int i = 0; i < mDevices.size(); i++) {
+            capabilities |= mDevices.valueAt(i);
+        }
+
+        mCapabilities = capabilities;
+        mGeneration++;
+    }
+
+    private static int getCapabilities(InputDevice device) {
+        int sources = device.getSources();
+        int capabilities = 0;
+
+        // power buttons, HDMI-CEC and IR remotes are non-alphabetic keyboards too
+        if ((sources & InputDevice.SOURCE_KEYBOARD) == InputDevice.SOURCE_KEYBOARD &&
+            device.getKeyboardType() == InputDevice.KEYBOARD_TYPE_ALPHABETIC) {
+            capabilities |= CAPABILITY_KEYBOARD;
+        }
+
+        if ((sources & InputDevice.SOURCE_DPAD) == InputDevice.SOURCE_DPAD) {
+            capabilities |= CAPABILITY_DPAD;
+        }
+
+        if ((sources & InputDevice.SOURCE_GAMEPAD) == InputDevice.SOURCE_GAMEPAD ||
+            (sources & InputDevice.SOURCE_JOYSTICK) == InputDevice.SOURCE_JOYSTICK) {
+            capabilities |= CAPABILITY_GAMEPAD;
+        }
+
+        return capabilities;
+    }
+
+    /**
+     * Called on the scan thread
+     */
+    private void scanCapabilitiesViaRoot() {
+        RootShell.Result result = RootShell.instance().run("getevent -pl");
+
+        if (!result.isSuccess()) {
+            Log.e(TAG, "Error checking hardware input devices: " + result.output);
+        }
+
+        int capabilities = parseCapabilities(result.output);
+
+        synchronized (this) {
+            mCapabilities = capabilities;
+            mGeneration++;
+        }
+
+        Log.d(TAG, "Input device capabilities: " + capabilities);
+    }
+
+    /**
+     * @param lines output of <code>getevent -pl</code>: an <code>add device</code> line followed by the device's event codes
+     */
+    static int parseCapabilities(List<String> lines) {
+        int capabilities = 0;
+        int letterKeys = 0; // of the current device
+
+        for (String line : lines) {
+            if (line.startsWith("add device")) {
+                letterKeys = 0;
+                continue;
+            }
+
+            for (String token : line.trim().split("\\s+")) {
+                if (token.startsWith("KEY_DPAD_")) {
+                    capabilities |= CAPABILITY_DPAD;
+                } else if (token.startsWith("KEY_BUTTON_") || token.equals("BTN_GAMEPAD")) {
+                    capabilities |= CAPABILITY_GAMEPAD;
+                } else if (token.equals("KEY_A")) {
+                    letterKeys |= 1;
+                } else if (token.equals("KEY_Q")) {
+                    letterKeys |= 1 << 1;
+                }
+            }
+
+            // remotes and buttons report KEY_* codes too, only a keyboard has letters
+            if (letterKeys == 0b11) {
+                capabilities |= CAPABILITY_KEYBOARD;
+            }
+        }
+
+        return capabilities;
+    }
+
+    private static String findBackKeyDeviceViaRoot() {
+        RootShell.Result result = RootShell.instance().run("getevent -pl");
+
+        if (!result.isSuccess()) {
+            Log.e(TAG, "Error finding BACK button device: " + result.output);
+        }
+
+        String currentDevice = null;
+        for (String line : result.output) {
+            if (line.startsWith("add device")) {
+                // e.g. add device 1: /dev/input/event2
+                int start = line.indexOf(": ") + 2;
+                if (start > 1 && start < line.length()) {
+                    currentDevice = line.substring(start).trim();
+                }
+            } else if (line.contains("KEY_BACK") && currentDevice != null) {
+                return currentDevice;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,115 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import android.text.TextUtils;
+import android.util.LruCache;
+
+/**
+ * Process-wide LRU cache of pre-rendered key bitmaps.<br/>
+ * Entry is identified by everything that affects key pixels: label, icon, key size, icon size and text color.
+ * So shift toggle, keyboard switch or mini keyboard open/close only swap bitmaps on the existing views.
+ */
+final class KeyBitmapCache {
+    private static final int MAX_SIZE_BYTES = 16 * 1024 * 1024;
+    private static KeyBitmapCache sInstance;
+    private final LruCache<RenderSpec, Bitmap> mCache;
+
+    static KeyBitmapCache instance() {
+        if (sInstance == null)
+            sInstance = new KeyBitmapCache();
+        return sInstance;
+    }
+
+    private KeyBitmapCache() {
+        int maxSize = (int) Math.min(Runtime.getRuntime().maxMemory() / 16, MAX_SIZE_BYTES);
+
+        mCache = new LruCache<RenderSpec, Bitmap>(maxSize) {
+            @Override
+            protected int sizeOf(RenderSpec key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * @param spec lookup key (may be mutable and reused between calls)
+     * @return cached bitmap or null
+     */
+    Bitmap get(RenderSpec spec) {
+        return mCache.get(spec);
+    }
+
+    /**
+     * @param spec lookup key (stored copy will be made)
+     */
+    void put(RenderSpec spec, Bitmap bitmap) {
+        mCache.put(spec.copy(), bitmap);
+    }
+
+    void clear() {
+        mCache.evictAll();
+    }
+
+    /**
+     * Mutable render key. Reuse one instance for lookups to keep cache hits allocation-free.
+     */
+    static final class RenderSpec {
+        CharSequence label;
+        Drawable icon;
+        int width;
+        int height;
+        int iconWidth;
+        int iconHeight;
+        int textColor;
+
+        void set(CharSequence label, Drawable icon, int width, int height, int iconWidth, int iconHeight, int textColor) {
+            this.label = label;
+            this.icon = icon;
+            this.width = width;
+            this.height = height;
+            this.iconWidth = iconWidth;
+            this.iconHeight = iconHeight;
+            this.textColor = textColor;
+        }
+
+        RenderSpec copy() {
+            RenderSpec spec = new RenderSpec();
+            spec.set(label, icon, width, height, iconWidth, iconHeight, textColor);
+            return spec;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof RenderSpec)) {
+                return false;
+            }
+
+            RenderSpec spec = (RenderSpec) obj;
+
+            return icon == spec.icon &&
+                    width == spec.width &&
+                    height == spec.height &&
+                    iconWidth == spec.iconWidth &&
+                    iconHeight == spec.iconHeight &&
+                    textColor == spec.textColor &&
+                    TextUtils.equals(label, spec.label);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = label != null ? label.hashCode() : 0;
+            result = 31 * result + System.identityHashCode(icon);
+            result = 31 * result + width;
+            result = 31 * result + height;
+            result = 31 * result + iconWidth;
+            result = 31 * result + iconHeight;
+            result = 31 * result + textColor;
+            return result;
+        }
+    }
+}
@@ -33,6 +33,8 @@ public class KeyMapperImeService extends InputMethodService {
                 return;
             }
 
+            onBeforeDirectInput();
+
             KeyEvent downEvent;
             KeyEvent upEvent;
 
@@ -80,6 +82,12 @@ public class KeyMapperImeService extends InputMethodService {
         }
     };
 
+    /**
+     * Called before the Key Mapper input is written straight to the current input connection
+     */
+    protected void onBeforeDirectInput() {
+    }
+
     @SuppressWarnings("UnspecifiedRegisterReceiverFlag")
     @Override
     public void onCreate() {
@@ -15,17 +15,27 @@ import android.view.MotionEvent;
 import android.view.View;
 import android.view.inputmethod.CompletionInfo;
 import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.ExtractedText;
 import android.view.inputmethod.InputConnection;
 import androidx.core.text.BidiFormatter;
+import com.liskovsoft.leankeyboard.addons.dictionary.WordPredictor;
 import com.liskovsoft.leankeyboard.ime.LeanbackKeyboardController.InputListener;
+import com.liskovsoft.leankeyboard.utils.KeyboardConfig;
 import com.liskovsoft.leankeyboard.utils.LeanKeyPreferences;
+import com.liskovsoft.leankeyboard.utils.TraceLog;
+import com.liskovsoft.leankeyboard.addons.keyboards.KeyboardCache;
 import com.liskovsoft.leankeyboard.addons.theme.ThemeManager;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.IOException;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 
 public class LeanbackImeService extends KeyMapperImeService {
     private static final String TAG = LeanbackImeService.class.getSimpleName();
+    private static final int TRACE_CURSOR_BEFORE = TraceLog.event(Log.DEBUG, TAG,
+            "direction key: before: lenBefore=%d, lenAfter=%d, isRtlBefore=%d");
+    private static final int TRACE_CURSOR_AFTER = TraceLog.event(Log.DEBUG, TAG,
+            "direction key: after: lenBefore=%d, lenAfter=%d, isRtlAfter=%d");
+    private static final int TRACE_CURSOR_INDEX = TraceLog.event(Log.DEBUG, TAG, "direction key: index: %d");
     private static final boolean DEBUG = false;
     public static final String IME_CLOSE = "com.google.android.athome.action.IME_CLOSE";
     public static final String IME_OPEN = "com.google.android.athome.action.IME_OPEN";
@@ -43,6 +53,9 @@ public class LeanbackImeService extends KeyMapperImeService {
     private boolean mForceShowKbd;
     private KeyboardTipsManager mTipsManager;
     private android.content.BroadcastReceiver mThemeReceiver;
+    private InputDeviceInventory mInputDevices;
+    private EditorMirror mEditorMirror;
+    private EditQueue mEditQueue;
 
     @SuppressLint("HandlerLeak")
     private final Handler mHandler = new Handler() {
@@ -58,6 +71,8 @@ public class LeanbackImeService extends KeyMapperImeService {
 
     private InputListener mInputListener = this::handleTextEntry;
 
+    private final KeyboardConfig.Listener mConfigListener = this::onConfigChanged;
+
     @SuppressLint("NewApi")
     @SuppressWarnings("deprecation")
     public LeanbackImeService() {
@@ -75,6 +90,9 @@ public class LeanbackImeService extends KeyMapperImeService {
             Log.d(TAG, "onCreate");
 
             initSettings();
+            LeanKeyPreferences.instance(this).addConfigListener(mConfigListener);
+
+            mInputDevices = InputDeviceInventory.instance(this);
             
                     // Initialize tips manager with error handling
         try {
@@ -108,6 +126,7 @@ public class LeanbackImeService extends KeyMapperImeService {
 
             if (mKeyboardController != null) {
                 mKeyboardController.setSuggestionsEnabled(prefs.getSuggestionsEnabled());
+                mKeyboardController.setPerfOverlayEnabled(prefs.getPerfOverlayEnabled());
             }
         } catch (Exception e) {
             Log.e(TAG, "Error initializing settings", e);
@@ -117,7 +136,8 @@ public class LeanbackImeService extends KeyMapperImeService {
     }
 
     private void clearSuggestionsDelayed() {
-        if (!mSuggestionsFactory.shouldSuggestionsAmend()) {
+        // predictions follow the text, no need to clear them
+        if (!mSuggestionsFactory.shouldSuggestionsAmend() && !mSuggestionsFactory.isPredictionEnabled()) {
             mHandler.removeMessages(MSG_SUGGESTIONS_CLEAR);
             mShouldClearSuggestions = true;
             mHandler.sendEmptyMessageDelayed(MSG_SUGGESTIONS_CLEAR, SUGGESTIONS_CLEAR_DELAY);
@@ -134,13 +154,18 @@ public class LeanbackImeService extends KeyMapperImeService {
                     clearSuggestionsDelayed();
                     if (mEnterSpaceBeforeCommitting && mKeyboardController.enableAutoEnterSpace()) {
                         if (LeanbackUtils.isAlphabet(keyCode)) {
-                            connection.commitText(" ", 1);
+                            commitText(connection, " ");
                         }
 
                         mEnterSpaceBeforeCommitting = false;
                     }
 
-                    connection.commitText(text, 1);
+                    if (!LeanbackUtils.isAlphabet(keyCode) && keyCode != '\'' && mSuggestionsFactory.isLearningEnabled()) {
+                        // separator: the word is complete
+                        mSuggestionsFactory.learnWord(mEditorMirror.getTextBeforeCursor(WordPredictor.MAX_CONTEXT_LENGTH));
+                    }
+
+                    commitText(connection, text);
                     updateSuggestions = true;
                     if (keyCode == LeanbackKeyboardView.ASCII_PERIOD) {
                         mEnterSpaceBeforeCommitting = true;
@@ -148,24 +173,38 @@ public class LeanbackImeService extends KeyMapperImeService {
                     break;
                 case InputListener.ENTRY_TYPE_BACKSPACE:
                     clearSuggestionsDelayed();
-                    connection.deleteSurroundingText(1, 0);
+                    deleteSurroundingText(connection, 1, 0);
                     mEnterSpaceBeforeCommitting = false;
                     updateSuggestions = true;
                     break;
                 case InputListener.ENTRY_TYPE_SUGGESTION:
+                    mSuggestionsFactory.learnWord(text);
+
+                    if (mSuggestionsFactory.isPrediction(text)) {
+                        commitPrediction(connection, text);
+                        updateSuggestions = true;
+                        break;
+                    }
                 case InputListener.ENTRY_TYPE_VOICE:
                     clearSuggestionsDelayed();
                     if (!mSuggestionsFactory.shouldSuggestionsAmend()) {
-                        connection.deleteSurroundingText(LeanbackUtils.getCharLengthBeforeCursor(connection), LeanbackUtils.getCharLengthAfterCursor(connection));
+                        deleteSurroundingText(connection, mEditorMirror.getCharLengthBeforeCursor(), mEditorMirror.getCharLengthAfterCursor());
                     } else {
-                        int location = LeanbackUtils.getAmpersandLocation(connection);
-                        connection.setSelection(location, location);
-                        connection.deleteSurroundingText(0, LeanbackUtils.getCharLengthAfterCursor(connection));
+                        int location = mEditorMirror.getAmpersandLocation();
+                        setSelection(connection, location, location);
+                        deleteSurroundingText(connection, 0, mEditorMirror.getCharLengthAfterCursor());
                     }
 
-                    connection.commitText(text, 1);
+                    commitText(connection, text);
                     mEnterSpaceBeforeCommitting = true;
                 case InputListener.ENTRY_TYPE_ACTION:  // User presses Go, Send, Search etc
+                    if (type == InputListener.ENTRY_TYPE_ACTION && mSuggestionsFactory.isLearningEnabled()) {
+                        // no separator after the last word (e.g. a search query)
+                        mSuggestionsFactory.learnWord(mEditorMirror.getTextBeforeCursor(WordPredictor.MAX_CONTEXT_LENGTH));
+                    }
+
+                    mEditQueue.flush();
+                    mEditorMirror.invalidate(); // the app could do anything with the text
                     boolean result = sendDefaultEditorAction(true);
 
                     if (result) {
@@ -180,7 +219,7 @@ public class LeanbackImeService extends KeyMapperImeService {
                 case InputListener.ENTRY_TYPE_RIGHT:
                     BidiFormatter formatter = BidiFormatter.getInstance();
 
-                    CharSequence textBeforeCursor = connection.getTextBeforeCursor(1000, 0);
+                    CharSequence textBeforeCursor = mEditorMirror.getTextBeforeCursor(EditorMirror.MAX_CHARS);
                     int lenBefore = 0;
                     boolean isRtlBefore = false;
                     //int rtlLenBefore = 0;
@@ -190,7 +229,7 @@ public class LeanbackImeService extends KeyMapperImeService {
                         //rtlLenBefore = LeanbackUtils.getRtlLenBeforeCursor(textBeforeCursor);
                     }
 
-                    CharSequence textAfterCursor = connection.getTextAfterCursor(1000, 0);
+                    CharSequence textAfterCursor = mEditorMirror.getTextAfterCursor(EditorMirror.MAX_CHARS);
                     int lenAfter = 0;
                     //int rtlLenAfter = 0;
                     boolean isRtlAfter = false;
@@ -217,7 +256,9 @@ public class LeanbackImeService extends KeyMapperImeService {
                         }
 
                         //Log.d(TAG, String.format("direction key: before: lenBefore=%s, lenAfter=%s, rtlLenBefore=%s, rtlLenAfter=%s", lenBefore, lenAfter, rtlLenBefore, rtlLenAfter));
-                        Log.d(TAG, String.format("direction key: before: lenBefore=%s, lenAfter=%s, isRtlBefore=%s", lenBefore, lenAfter, isRtlBefore));
+                        if (TraceLog.DEBUG) {
+                            TraceLog.trace(TRACE_CURSOR_BEFORE, lenBefore, lenAfter, isRtlBefore ? 1 : 0);
+                        }
                     } else {
                         if (lenAfter > 0) {
                             if (!isRtlAfter) {
@@ -234,19 +275,25 @@ public class LeanbackImeService extends KeyMapperImeService {
                         }
 
                         //Log.d(TAG, String.format("direction key: after: lenBefore=%s, lenAfter=%s, rtlLenBefore=%s, rtlLenAfter=%s", lenBefore, lenAfter, rtlLenBefore, rtlLenAfter));
-                        Log.d(TAG, String.format("direction key: after: lenBefore=%s, lenAfter=%s, isRtlAfter=%s", lenBefore, lenAfter, isRtlAfter));
+                        if (TraceLog.DEBUG) {
+                            TraceLog.trace(TRACE_CURSOR_AFTER, lenBefore, lenAfter, isRtlAfter ? 1 : 0);
+                        }
                     }
 
-                    Log.d(TAG, "direction key: index: " + index);
+                    if (TraceLog.DEBUG) {
+                        TraceLog.trace(TRACE_CURSOR_INDEX, index);
+                    }
 
-                    connection.setSelection(index, index);
+                    setSelection(connection, index, index);
                     updateSuggestions = true;
                     break;
                 case InputListener.ENTRY_TYPE_DISMISS:
+                    mEditQueue.flush();
                     connection.performEditorAction(EditorInfo.IME_ACTION_NONE);
                     updateSuggestions = false;
                     break;
                 case InputListener.ENTRY_TYPE_VOICE_DISMISS:
+                    mEditQueue.flush();
                     connection.performEditorAction(EditorInfo.IME_ACTION_GO);
                     updateSuggestions = false;
                     break;
@@ -255,11 +302,59 @@ public class LeanbackImeService extends KeyMapperImeService {
             }
 
             if (mKeyboardController.areSuggestionsEnabled() && updateSuggestions) {
+                updatePredictions(connection);
                 mKeyboardController.updateSuggestions(mSuggestionsFactory.getSuggestions());
             }
         }
     }
 
+    /**
+     * Replaces the word under construction, the rest of the text stays intact
+     */
+    private void commitPrediction(InputConnection connection, CharSequence word) {
+        int wordLength = WordPredictor.getCurrentWordLength(mEditorMirror.getTextBeforeCursor(WordPredictor.MAX_CONTEXT_LENGTH));
+
+        deleteSurroundingText(connection, wordLength, 0);
+        commitText(connection, word);
+
+        mEnterSpaceBeforeCommitting = true;
+    }
+
+    private void updatePredictions(InputConnection connection) {
+        if (mSuggestionsFactory.isPredictionEnabled()) {
+            mSuggestionsFactory.onTextChanged(mKeyboardController.getLangCode(),
+                    mEditorMirror.getTextBeforeCursor(WordPredictor.MAX_CONTEXT_LENGTH));
+        }
+    }
+
+    // Edits are queued for the next frame, the mirror is updated right away
+
+    private void commitText(InputConnection connection, CharSequence text) {
+        mEditQueue.commitText(connection, text);
+        mEditorMirror.commitText(text);
+    }
+
+    private void deleteSurroundingText(InputConnection connection, int beforeLength, int afterLength) {
+        mEditQueue.deleteSurroundingText(connection, beforeLength, afterLength);
+        mEditorMirror.deleteSurroundingText(beforeLength, afterLength);
+    }
+
+    private void setSelection(InputConnection connection, int start, int end) {
+        mEditQueue.setSelection(connection, start, end);
+        mEditorMirror.setSelection(start, end);
+    }
+
+    public EditQueue getEditQueue() {
+        return mEditQueue;
+    }
+
+    /**
+     * Editor text as seen by the keyboard. Read from here instead of the {@link InputConnection}.
+     */
+    public EditorMirror getEditorMirror() {
+        return mEditorMirror;
+    }
+
     @Override
     public View onCreateInputView() {
         mInputView = mKeyboardController.getView();
@@ -308,42 +403,7 @@ public class LeanbackImeService extends KeyMapperImeService {
     }
     
     private boolean hasHardwareInputDevices() {
-        try {
-            // Check for hardware input devices using system properties
-            Process process = Runtime.getRuntime().exec("su -c 'getevent -p'");
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Check for hardware keyboard keys
-                if (line.contains("KEY_A") || line.contains("KEY_B") || line.contains("KEY_C") || 
-                    line.contains("KEY_D") || line.contains("KEY_E") || line.contains("KEY_F") ||
-                    line.contains("KEY_G") || line.contains("KEY_H") || line.contains("KEY_I") ||
-                    line.contains("KEY_J") || line.contains("KEY_K") || line.contains("KEY_L") ||
-                    line.contains("KEY_M") || line.contains("KEY_N") || line.contains("KEY_O") ||
-                    line.contains("KEY_P") || line.contains("KEY_Q") || line.contains("KEY_R") ||
-                    line.contains("KEY_S") || line.contains("KEY_T") || line.contains("KEY_U") ||
-                    line.contains("KEY_V") || line.contains("KEY_W") || line.contains("KEY_X") ||
-                    line.contains("KEY_Y") || line.contains("KEY_Z")) {
-                    return true;
-                }
-                
-                // Check for D-pad
-                if (line.contains("KEY_DPAD_UP") || line.contains("KEY_DPAD_DOWN") || 
-                    line.contains("KEY_DPAD_LEFT") || line.contains("KEY_DPAD_RIGHT")) {
-                    return true;
-                }
-                
-                // Check for gamepad buttons
-                if (line.contains("KEY_BUTTON_A") || line.contains("KEY_BUTTON_B") || 
-                    line.contains("KEY_BUTTON_X") || line.contains("KEY_BUTTON_Y")) {
-                    return true;
-                }
-            }
-        } catch (IOException e) {
-            Log.e(TAG, "Error checking hardware input devices: " + e.getMessage());
-        }
-        return false;
+        return mInputDevices != null && mInputDevices.hasHardwareInputDevices();
     }
 
     // FireTV fix
@@ -383,6 +443,15 @@ public class LeanbackImeService extends KeyMapperImeService {
                 mKeyboardController.onGenericMotionEvent(event) || super.onGenericMotionEvent(event);
     }
 
+    @Override
+    protected void onBeforeDirectInput() {
+        // queued edits go first, the app changes the text behind the mirror
+        if (mEditQueue != null) {
+            mEditQueue.flush();
+            mEditorMirror.invalidate();
+        }
+    }
+
     public void hideIme() {
         requestHideSelf(InputMethodService.BACK_DISPOSITION_DEFAULT);
     }
@@ -393,6 +462,9 @@ public class LeanbackImeService extends KeyMapperImeService {
         mKeyboardController.setHideWhenPhysicalKeyboardUsed(!mForceShowKbd);
         mEnterSpaceBeforeCommitting = false;
         mSuggestionsFactory = new LeanbackSuggestionsFactory(this, MAX_SUGGESTIONS);
+        mEditorMirror = new EditorMirror(this);
+        mEditQueue = new EditQueue();
+        mKeyboardController.setPerfOverlayEnabled(LeanKeyPreferences.instance(this).getPerfOverlayEnabled());
     }
 
     @Override
@@ -402,6 +474,8 @@ public class LeanbackImeService extends KeyMapperImeService {
         //event = mapEscToBack(event);
         //keyCode = mapEscToBack(keyCode);
 
+        PerfMonitor.instance().onInputEvent();
+
         // Hide keyboard on ESC key: https://github.com/yuliskov/SmartYouTubeTV/issues/142
         if (keyCode == KeyEvent.KEYCODE_ESCAPE) {
             hideIme();
@@ -438,6 +512,8 @@ public class LeanbackImeService extends KeyMapperImeService {
         //event = mapEscToBack(event);
         //keyCode = mapEscToBack(keyCode);
 
+        PerfMonitor.instance().onInputEvent(); // most keys are committed on key up
+
         return isInputViewShown() && mKeyboardController.onKeyUp(keyCode, event) || super.onKeyUp(keyCode, event);
     }
 
@@ -477,10 +553,30 @@ public class LeanbackImeService extends KeyMapperImeService {
     public void onStartInput(EditorInfo info, boolean restarting) {
         super.onStartInput(info, restarting);
         mEnterSpaceBeforeCommitting = false;
+        mEditorMirror.onStartInput(info);
         mSuggestionsFactory.onStartInput(info);
         mKeyboardController.onStartInput(info);
     }
 
+    @Override
+    public void onFinishInput() {
+        mEditQueue.flush(); // while the connection is still there
+        super.onFinishInput();
+    }
+
+    @Override
+    public void onUpdateSelection(int oldSelStart, int oldSelEnd, int newSelStart, int newSelEnd, int candidatesStart, int candidatesEnd) {
+        super.onUpdateSelection(oldSelStart, oldSelEnd, newSelStart, newSelEnd, candidatesStart, candidatesEnd);
+        mEditorMirror.onUpdateSelection(newSelStart, newSelEnd);
+    }
+
+    @Override
+    public void onUpdateExtractedText(int token, ExtractedText text) {
+        if (!mEditorMirror.onUpdateExtractedText(token, text)) {
+            super.onUpdateExtractedText(token, text);
+        }
+    }
+
     @Override
     public void onStartInputView(EditorInfo info, boolean restarting) {
         super.onStartInputView(info, restarting);
@@ -490,14 +586,20 @@ public class LeanbackImeService extends KeyMapperImeService {
             sendBroadcast(new Intent(IME_OPEN));
             if (mKeyboardController.areSuggestionsEnabled()) {
                 mSuggestionsFactory.createSuggestions();
+
+                InputConnection connection = getCurrentInputConnection();
+                if (connection != null) {
+                    updatePredictions(connection);
+                }
+
                 mKeyboardController.updateSuggestions(mSuggestionsFactory.getSuggestions());
 
                 // NOTE: FileManager+ rename item fix: https://t.me/LeanKeyboard/931
                 // NOTE: Code below deletes text that has selection.
                 //InputConnection connection = getCurrentInputConnection();
                 //if (connection != null) {
-                //    String text = LeanbackUtils.getEditorText(connection);
-                //    connection.deleteSurroundingText(LeanbackUtils.getCharLengthBeforeCursor(connection), LeanbackUtils.getCharLengthAfterCursor(connection));
+                //    String text = mEditorMirror.getText();
+                //    deleteSurroundingText(connection, mEditorMirror.getCharLengthBeforeCursor(), mEditorMirror.getCharLengthAfterCursor());
                 //    connection.commitText(text, 1);
                 //}
             }
@@ -515,6 +617,38 @@ public class LeanbackImeService extends KeyMapperImeService {
         }
     }
 
+    /**
+     * Drops only the caches the changed preferences affect
+     */
+    private void onConfigChanged(KeyboardConfig config, int changes) {
+        if ((changes & (KeyboardConfig.CHANGED_ENLARGE_KEYBOARD | KeyboardConfig.CHANGED_THEME)) != 0) {
+            // old bitmaps won't be hit anymore (key size or text color changed)
+            KeyBitmapCache.instance().clear();
+        }
+
+        if ((changes & KeyboardConfig.CHANGED_ENLARGE_KEYBOARD) != 0) {
+            KeyboardCache.instance().clear();
+        }
+
+        if ((changes & KeyboardConfig.CHANGED_THEME) != 0 && mKeyboardController != null) {
+            try {
+                ThemeManager.getInstance(this).updateKeyboardTheme();
+                ThemeManager.getInstance(this).updateSuggestionsTheme();
+            } catch (Exception e) {
+                Log.e(TAG, "Error updating keyboard theme", e);
+            }
+        }
+
+        if ((changes & (KeyboardConfig.CHANGED_FORCE_SHOW_KEYBOARD | KeyboardConfig.CHANGED_SUGGESTIONS |
+                KeyboardConfig.CHANGED_PERF_OVERLAY)) != 0) {
+            initSettings();
+
+            if (mKeyboardController != null) {
+                mKeyboardController.setHideWhenPhysicalKeyboardUsed(!mForceShowKbd);
+            }
+        }
+    }
+
     private void reInitKeyboard() {
         initSettings();
 
@@ -548,9 +682,32 @@ public class LeanbackImeService extends KeyMapperImeService {
         registerReceiver(mThemeReceiver, filter);
     }
     
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter fout, String[] args) {
+        super.dump(fd, fout, args);
+
+        StringBuilder report = new StringBuilder();
+        PerfMonitor.instance().dump(report);
+        fout.println("Latency:");
+        fout.print(report);
+
+        if (mEditQueue != null) {
+            fout.println("Edits issued: " + mEditQueue.getCallsIssued() + ", coalesced: " + mEditQueue.getCallsCoalesced());
+        }
+
+        if (TraceLog.LEVEL < Log.ASSERT) {
+            StringBuilder trace = new StringBuilder();
+            TraceLog.dump(trace);
+            fout.println("Trace:");
+            fout.print(trace);
+        }
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
+
+        LeanKeyPreferences.instance(this).removeConfigListener(mConfigListener);
         
         // Unregister theme receiver
         if (mThemeReceiver != null) {
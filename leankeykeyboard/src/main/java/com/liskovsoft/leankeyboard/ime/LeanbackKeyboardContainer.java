@@ -31,7 +31,6 @@ import android.view.animation.DecelerateInterpolator;
 import android.view.animation.Interpolator;
 import android.view.animation.Transformation;
 import android.view.inputmethod.EditorInfo;
-import android.view.inputmethod.InputConnection;
 import android.widget.Button;
 import android.widget.FrameLayout;
 import android.widget.HorizontalScrollView;
@@ -55,6 +54,8 @@ import com.liskovsoft.leankeyboard.addons.keyboards.KeyboardManager;
 import com.liskovsoft.leankeyboard.helpers.Helpers;
 import com.liskovsoft.leankeyboard.helpers.MessageHelpers;
 import com.liskovsoft.leankeyboard.utils.LeanKeyPreferences;
+import com.liskovsoft.leankeyboard.utils.LocaleUtility;
+import com.liskovsoft.leankeyboard.utils.TraceLog;
 import com.slideos.system.R;
 
 import java.util.ArrayList;
@@ -71,6 +72,8 @@ public class LeanbackKeyboardContainer {
     protected static final float PHYSICAL_HEIGHT_CM = 5.0F;
     protected static final float PHYSICAL_WIDTH_CM = 12.0F;
     private static final String TAG = "LbKbContainer";
+    private static final int TRACE_SAME_FOCUS = TraceLog.event(Log.DEBUG, TAG,
+            "Same key focus found! Direction: %d, type: %d, index: %d, code: %d");
     public static final double TOUCH_MOVE_MIN_DISTANCE = 0.1D;
     public static final int TOUCH_STATE_CLICK = 3;
     public static final int TOUCH_STATE_NO_TOUCH = 0;
@@ -100,6 +103,7 @@ public class LeanbackKeyboardContainer {
     private boolean mEscapeNorthEnabled;
     private Keyboard mInitialMainKeyboard;
     private KeyboardManager mKeyboardManager;
+    private String mLangCode;
     private View mKeyboardsContainer;
     private LeanbackKeyboardView mMainKeyboardView;
     private int mMiniKbKeyIndex;
@@ -122,6 +126,8 @@ public class LeanbackKeyboardContainer {
     private SpeechRecognizer mSpeechRecognizer;
     private RecognizerIntentWrapper mRecognizerIntentWrapper;
     private LinearLayout mSuggestions;
+    private SuggestionStrip mSuggestionStrip;
+    private PerfOverlay mPerfOverlay;
     private View mSuggestionsBg;
     private HorizontalScrollView mSuggestionsContainer;
     private boolean mSuggestionsEnabled;
@@ -206,7 +212,10 @@ public class LeanbackKeyboardContainer {
         mKeySelector = mRootView.findViewById(R.id.key_selector);
         mKeySelectorSquare = ContextCompat.getDrawable(mContext, R.drawable.key_selector_square);
         mKeySelectorStretched = ContextCompat.getDrawable(mContext, R.drawable.key_selector);
-        mThemeManager = new ThemeManager(mContext, mRootView);
+        mSuggestionStrip = new SuggestionStrip(mContext.getLayoutInflater(), mSuggestions, LeanbackImeService.MAX_SUGGESTIONS);
+        mThemeManager = new ThemeManager(mContext, mRootView); // binds the suggestion cells too
+        mPerfOverlay = new PerfOverlay(mRootView);
+        mRootView.getViewTreeObserver().addOnDrawListener(PerfMonitor.instance()::onDraw);
         mSelectorAnimation = new ScaleAnimation((FrameLayout) mSelector);
         mOverestimate = mContext.getResources().getFraction(R.fraction.focused_scale, 1, 1);
         final float scale = context.getResources().getFraction(R.fraction.clicked_scale, 1, 1);
@@ -486,6 +495,7 @@ public class LeanbackKeyboardContainer {
      * @param animate animate transition
      */
     private void setKbFocus(final KeyFocus focus, final boolean forceFocusChange, final boolean animate) {
+        long startNanos = System.nanoTime();
         boolean clicked = true;
         if (!focus.equals(mCurrKeyInfo) || forceFocusChange) {
             LeanbackKeyboardView prevView = mPrevView;
@@ -535,6 +545,8 @@ public class LeanbackKeyboardContainer {
             setSelectorToFocus(focus.rect, overestimateWidth, overestimateHeight, animate);
             mCurrKeyInfo.set(focus);
         }
+
+        PerfMonitor.instance().record(PerfMonitor.STAGE_SET_FOCUS, startNanos);
     }
 
     /**
@@ -608,12 +620,23 @@ public class LeanbackKeyboardContainer {
         mForceDisableSuggestions = !enabled;
     }
 
+    public void setPerfOverlayEnabled(boolean enabled) {
+        mPerfOverlay.setEnabled(enabled);
+    }
+
+    /**
+     * Lang of the current keyboard (e.g. en_us) or null
+     */
+    public String getLangCode() {
+        return mLangCode;
+    }
+
     public void cancelVoiceRecording() {
         mVoiceAnimator.startExitAnimation();
     }
 
     public void clearSuggestions() {
-        mSuggestions.removeAllViews();
+        mSuggestionStrip.clear();
         if (getCurrFocus().type == KeyFocus.TYPE_SUGGESTION) {
             resetFocusCursor();
         }
@@ -649,14 +672,14 @@ public class LeanbackKeyboardContainer {
             newY = mY;
         }
 
-        int count = mSuggestions.getChildCount();
+        int count = mSuggestionStrip.getCount();
         if (newY < (float) keyboardTop && count > 0 && mSuggestionsEnabled) {
             for (actionLeft = 0; actionLeft < count; ++actionLeft) {
-                View view = mSuggestions.getChildAt(actionLeft);
+                View view = mSuggestionStrip.getCell(actionLeft);
                 offsetRect(mRect, view);
                 if (newX < (float) mRect.right || actionLeft + 1 == count) {
                     view.requestFocus();
-                    LeanbackUtils.sendAccessibilityEvent(view.findViewById(R.id.text), true);
+                    LeanbackUtils.sendAccessibilityEvent(mSuggestionStrip.getButton(actionLeft), true);
                     configureFocus(focus, mRect, actionLeft, KeyFocus.TYPE_SUGGESTION);
                     break;
                 }
@@ -743,24 +766,9 @@ public class LeanbackKeyboardContainer {
                 mContext.hideIme();
             }
 
-            String direction = "UNKNOWN";
-
-            switch (dir) {
-                case LeanbackKeyboardContainer.DIRECTION_DOWN:
-                    direction = "DOWN";
-                    break;
-                case LeanbackKeyboardContainer.DIRECTION_LEFT:
-                    direction = "LEFT";
-                    break;
-                case LeanbackKeyboardContainer.DIRECTION_RIGHT:
-                    direction = "RIGHT";
-                    break;
-                case LeanbackKeyboardContainer.DIRECTION_UP:
-                    direction = "UP";
-                    break;
+            if (TraceLog.DEBUG && oldFocus.equals(newFocus)) {
+                TraceLog.trace(TRACE_SAME_FOCUS, dir, oldFocus.type, oldFocus.index, oldFocus.code);
             }
-
-            Log.d(TAG, "Same key focus found! Direction: " + direction + " Key Label: " + oldFocus.label);
         }
     }
 
@@ -843,7 +851,7 @@ public class LeanbackKeyboardContainer {
                         }
 
                         int suggestIdx = focusIdx + delta;
-                        View suggestion = mSuggestions.getChildAt(suggestIdx);
+                        View suggestion = mSuggestionStrip.getCell(suggestIdx);
                         if (suggestion != null) {
                             offsetRect(mRect, suggestion);
                             if (mRect.left < leftCalc && mRect.right > rightCalc) {
@@ -858,7 +866,7 @@ public class LeanbackKeyboardContainer {
                             }
 
                             suggestion.requestFocus();
-                            LeanbackUtils.sendAccessibilityEvent(suggestion.findViewById(R.id.text), true);
+                            LeanbackUtils.sendAccessibilityEvent(mSuggestionStrip.getButton(suggestIdx), true);
                             configureFocus(nextFocus, mRect, suggestIdx, KeyFocus.TYPE_SUGGESTION);
                             return true;
                         }
@@ -870,17 +878,7 @@ public class LeanbackKeyboardContainer {
     }
 
     public CharSequence getSuggestionText(int idx) {
-        CharSequence result = null;
-        if (idx >= 0) {
-            if (idx < mSuggestions.getChildCount()) {
-                Button btn = mSuggestions.getChildAt(idx).findViewById(R.id.text);
-                if (btn != null) {
-                    result = btn.getText();
-                }
-            }
-        }
-
-        return result;
+        return mSuggestionStrip.getText(idx);
     }
 
     public int getTouchState() {
@@ -1255,62 +1253,56 @@ public class LeanbackKeyboardContainer {
         } else {
             mInitialMainKeyboard = nextKeyboard.abcKeyboard;
             mAbcKeyboard = nextKeyboard.abcKeyboard;
+            mMainKeyboardView.setKeyboardLocale(LocaleUtility.fromLangCode(nextKeyboard.langCode));
             mMainKeyboardView.setKeyboard(nextKeyboard.abcKeyboard);
 
             mSymKeyboard = nextKeyboard.symKeyboard;
             mNumKeyboard = nextKeyboard.numKeyboard;
+            mLangCode = nextKeyboard.langCode;
         }
     }
 
     public void updateAddonKeyboard() {
-        mKeyboardManager.load(); // force reload to fix such errors as invisible kbd
+        // force reload to fix such errors as invisible kbd
+        // NOTE: cheap, models are taken from the KeyboardCache (no xml parsing)
+        mKeyboardManager.load();
         KeyboardData keyboard = mKeyboardManager.get();
         mInitialMainKeyboard = keyboard.abcKeyboard;
         mAbcKeyboard = keyboard.abcKeyboard;
+        mMainKeyboardView.setKeyboardLocale(LocaleUtility.fromLangCode(keyboard.langCode));
         mMainKeyboardView.setKeyboard(keyboard.abcKeyboard);
 
         mSymKeyboard = keyboard.symKeyboard;
         mNumKeyboard = keyboard.numKeyboard;
+        mLangCode = keyboard.langCode;
 
         mThemeManager.updateKeyboardTheme();
+        mThemeManager.updateSuggestionsTheme(); // theme could be changed in settings
     }
 
     public void updateSuggestions(ArrayList<String> suggestions) {
         addUserInputToSuggestions(suggestions);
 
-        int oldCount = mSuggestions.getChildCount();
-        int newCount = suggestions.size();
-        if (newCount < oldCount) {
-            mSuggestions.removeViews(newCount, oldCount - newCount);
-        } else if (newCount > oldCount) {
-            while (oldCount < newCount) {
-                View suggestion = mContext.getLayoutInflater().inflate(R.layout.candidate, null);
-                mSuggestions.addView(suggestion);
-                ++oldCount;
-            }
-        }
+        int capacity = mSuggestionStrip.getCapacity();
+        boolean changed = mSuggestionStrip.update(suggestions);
 
-        for (oldCount = 0; oldCount < newCount; ++oldCount) {
-            Button suggestion = mSuggestions.getChildAt(oldCount).findViewById(R.id.text);
-            suggestion.setText(suggestions.get(oldCount));
-            suggestion.setContentDescription(suggestions.get(oldCount));
+        if (mSuggestionStrip.getCapacity() != capacity) {
+            // new cells are inflated
+            mThemeManager.bindSuggestions();
+            mThemeManager.updateSuggestionsTheme();
         }
 
-        if (getCurrFocus().type == KeyFocus.TYPE_SUGGESTION) {
+        if (changed && getCurrFocus().type == KeyFocus.TYPE_SUGGESTION) {
             resetFocusCursor();
         }
-
-        mThemeManager.updateSuggestionsTheme();
     }
 
     /**
      * Useful for password fields
      */
     private void addUserInputToSuggestions(ArrayList<String> suggestions) {
-        InputConnection connection = mContext.getCurrentInputConnection();
-
-        if (connection != null) {
-            String editorText = LeanbackUtils.getEditorText(connection);
+        if (mContext.getCurrentInputConnection() != null) {
+            String editorText = mContext.getEditorMirror().getText();
 
             if (editorText.isEmpty()) {
                 editorText = mLabel;
@@ -368,6 +368,7 @@ public class LeanbackKeyboardController implements LeanbackKeyboardContainer.Voi
     }
 
     private boolean handleKeyDownEvent(int keyCode, int eventRepeatCount) {
+        long startNanos = System.nanoTime();
         keyCode = getSimplifiedKey(keyCode);
         boolean handled;
         if (keyCode == KeyEvent.KEYCODE_BACK) {
@@ -441,6 +442,8 @@ public class LeanbackKeyboardController implements LeanbackKeyboardContainer.Voi
             handled = applyLETVFixesDown(keyCode);
         }
 
+        PerfMonitor.instance().record(PerfMonitor.STAGE_KEY_DOWN, startNanos);
+
         return handled;
     }
 
@@ -619,7 +622,7 @@ public class LeanbackKeyboardController implements LeanbackKeyboardContainer.Voi
         }
         
         // Fallback to original behavior if needed
-        if (mContainer.getNextFocusInDirection(dir, mCurrentFocus, mTempFocus)) {
+        if (mContainer != null && mContainer.getNextFocusInDirection(dir, mCurrentFocus, mTempFocus)) {
             mContainer.updateCyclicFocus(dir, mCurrentFocus, mTempFocus);
             mContainer.setFocus(mTempFocus);
             mCurrentFocus.set(mTempFocus);
@@ -690,6 +693,16 @@ public class LeanbackKeyboardController implements LeanbackKeyboardContainer.Voi
         }
     }
 
+    public String getLangCode() {
+        return mContainer != null ? mContainer.getLangCode() : null;
+    }
+
+    public void setPerfOverlayEnabled(boolean enabled) {
+        if (mContainer != null) {
+            mContainer.setPerfOverlayEnabled(enabled);
+        }
+    }
+
     public boolean enableAutoEnterSpace() {
         return mContainer != null && mContainer.enableAutoEnterSpace();
     }
@@ -1,5 +1,6 @@
 package com.liskovsoft.leankeyboard.ime;
 
+import android.animation.ValueAnimator;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.res.Resources;
@@ -20,11 +21,14 @@ import android.view.View;
 import android.widget.FrameLayout;
 import android.widget.ImageView;
 import androidx.core.content.ContextCompat;
+import com.liskovsoft.leankeyboard.addons.keyboards.PopupKeyboardStore;
+import com.liskovsoft.leankeyboard.ime.KeyBitmapCache.RenderSpec;
 import com.liskovsoft.leankeyboard.utils.LeanKeyPreferences;
 import com.slideos.system.R;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 
 public class LeanbackKeyboardView extends FrameLayout {
     private static final String TAG = "LbKbView";
@@ -52,6 +56,8 @@ public class LeanbackKeyboardView extends FrameLayout {
     public static final int SHIFT_LOCKED = 2;
     public static final int SHIFT_OFF = 0;
     public static final int SHIFT_ON = 1;
+    private static final Typeface TYPEFACE_NORMAL = Typeface.create("sans-serif", Typeface.NORMAL);
+    private static final Typeface TYPEFACE_LIGHT = Typeface.create("sans-serif-light", Typeface.NORMAL);
     private int mBaseMiniKbIndex = -1;
     private final int mClickAnimDur;
     private final float mClickedScale;
@@ -63,6 +69,11 @@ public class LeanbackKeyboardView extends FrameLayout {
     private final float mFocusedScale;
     private final int mInactiveMiniKbAlpha;
     private ImageView[] mKeyImageViews;
+    private int mKeyViewCount;
+    private final KeyBitmapCache mBitmapCache = KeyBitmapCache.instance();
+    private final RenderSpec mRenderSpec = new RenderSpec();
+    private final Drawable[] mShiftDrawables = new Drawable[3];
+    private final PopupKeyboardStore mPopupStore = PopupKeyboardStore.instance();
     private int mKeyTextColor;
     private Keyboard mKeyboard;
     private KeyHolder[] mKeys;
@@ -81,16 +92,70 @@ public class LeanbackKeyboardView extends FrameLayout {
     private int mVisibleKeys = 7; // Number of keys visible at once (odd number for center highlighting)
     private int mScrollOffset = 0; // Current scroll position
     private int mFixedFocusIndex = 3; // Fixed position for focus (center of 7 keys = index 3)
+    private int mKeyWidth;
+    private int mKeySpacing;
+    private int mLaidOutScrollOffset = -1; // scroll offset the key views are positioned for, -1 when all of them need a pass
+
+    // Single canvas rendering properties
+    private boolean mSingleCanvasMode;
+    private Bitmap[] mKeyBitmaps;
+    private final Paint mBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final ValueAnimator mFocusAnimator;
+    private float mFocusAnimFraction = 1.0F;
+    private float mFocusStartScale = 1.0F;
+    private float mFocusTargetScale = 1.0F;
+    private float mPrevFocusStartScale = 1.0F;
+    private int mPrevFocusIndex = -1;
 
-    private static class KeyConverter {
-        private static final int LOWER_CASE = 0;
-        private static final int UPPER_CASE = 1;
+    /**
+     * Case variants of the labels are resolved once, when the key is bound to the holder ({@link #init}).<br/>
+     * Shift toggle only swaps the label pointers.
+     */
+    static class KeyConverter {
+        static final int LOWER_CASE = 0;
+        static final int UPPER_CASE = 1;
+        private Locale mLocale = Locale.getDefault();
+
+        /**
+         * @param locale layout's locale (e.g. Turkish dotted I), null = system one
+         */
+        void setLocale(Locale locale) {
+            mLocale = locale != null ? locale : Locale.getDefault();
+        }
+
+        Locale getLocale() {
+            return mLocale;
+        }
+
+        /**
+         * Resolves lower and upper label of the holder's current key
+         */
+        void init(KeyHolder keyHolder) {
+            Key key = keyHolder.key;
 
-        private void init(KeyHolder keyHolder) {
             // store original label
             // in case when two characters are stored in one label (e.g. "A|B")
-            if (keyHolder.key.text == null) {
-                keyHolder.key.text = keyHolder.key.label;
+            if (key.text == null) {
+                key.text = key.label;
+            }
+
+            CharSequence label = key.text;
+
+            if (label == null) { // icon key
+                keyHolder.lowerLabel = null;
+                keyHolder.upperLabel = null;
+                return;
+            }
+
+            String[] labels = splitLabels(label);
+
+            if (labels != null) {
+                keyHolder.lowerLabel = labels[0];
+                keyHolder.upperLabel = labels[1];
+            } else {
+                String realLabel = label.toString();
+                keyHolder.lowerLabel = realLabel.toLowerCase(mLocale);
+                keyHolder.upperLabel = realLabel.toUpperCase(mLocale);
             }
         }
 
@@ -102,27 +167,11 @@ public class LeanbackKeyboardView extends FrameLayout {
             extractChar(UPPER_CASE, keyHolder);
         }
 
-        private void extractChar(int charCase, KeyHolder keyHolder) {
-            init(keyHolder);
-
-            CharSequence result = null;
-            CharSequence label = keyHolder.key.text;
-
-            String[] labels = splitLabels(label);
-
-            switch (charCase) {
-                case LOWER_CASE:
-                    result = labels != null ? labels[0] : label.toString().toLowerCase();
-                    break;
-                case UPPER_CASE:
-                    result = labels != null ? labels[1] : label.toString().toUpperCase();
-                    break;
-            }
-
-            keyHolder.key.label = result;
+        void extractChar(int charCase, KeyHolder keyHolder) {
+            keyHolder.key.label = charCase == UPPER_CASE ? keyHolder.upperLabel : keyHolder.lowerLabel;
         }
 
-        private String[] splitLabels(CharSequence label) {
+        static String[] splitLabels(CharSequence label) {
             String realLabel = label.toString();
 
             String[] labels = realLabel.split("\\|");
@@ -159,6 +208,18 @@ public class LeanbackKeyboardView extends FrameLayout {
         // Initialize horizontal keyboard properties
         mVisibleKeys = mColCount;
         mScrollOffset = 0;
+        mKeyWidth = (int) res.getDimension(R.dimen.key_width);
+        mKeySpacing = (int) res.getDimension(R.dimen.keyboard_horizontal_gap);
+
+        mFocusAnimator = ValueAnimator.ofFloat(0, 1.0F);
+        mFocusAnimator.setDuration(mClickAnimDur);
+        mFocusAnimator.setInterpolator(LeanbackKeyboardContainer.sMovementInterpolator);
+        mFocusAnimator.addUpdateListener(animation -> {
+            mFocusAnimFraction = animation.getAnimatedFraction();
+            invalidate();
+        });
+
+        updateRenderMode();
     }
 
     private void adjustCase(KeyHolder keyHolder) {
@@ -173,54 +234,38 @@ public class LeanbackKeyboardView extends FrameLayout {
     }
 
     /**
-     * NOTE: Adds key views to root window
+     * Returns the key's pixels from the shared cache. Renders and caches them on miss.
      */
-    @SuppressLint("NewApi")
-    private ImageView createKeyImageView(final int keyIndex) {
+    private Bitmap getKeyBitmap(KeyHolder keyHolder) {
         Rect padding = mPadding;
-        int kbdPaddingLeft = getPaddingLeft();
-        int kbdPaddingTop = getPaddingTop();
-        KeyHolder keyHolder = mKeys[keyIndex];
         Key key = keyHolder.key;
         adjustCase(keyHolder);
-        String label;
-        if (key.label == null) {
-            label = null;
-        } else {
-            label = key.label.toString();
-        }
 
-        if (Log.isLoggable(TAG, Log.DEBUG)) {
-            Log.d(TAG, "LABEL: " + key.label + "->" + label);
-        }
+        int iconWidth = 0;
+        int iconHeight = 0;
 
-        Bitmap bitmap = Bitmap.createBitmap(key.width, key.height, Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
-        Paint paint = mPaint;
-        paint.setColor(mKeyTextColor);
-        canvas.drawARGB(0, 0, 0, 0);
         if (key.icon != null) {
             if (key.codes[0] == NOT_A_KEY) {
                 switch (mShiftState) {
                     case SHIFT_OFF:
-                        key.icon = ContextCompat.getDrawable(getContext(), R.drawable.ic_ime_shift_off);
+                        key.icon = getShiftDrawable(SHIFT_OFF);
                         break;
                     case SHIFT_ON:
-                        key.icon = ContextCompat.getDrawable(getContext(), R.drawable.ic_ime_shift_on);
+                        key.icon = getShiftDrawable(SHIFT_ON);
                         break;
                     case SHIFT_LOCKED:
                         if (mCustomCapsLockDrawable != null) {
                             key.icon = mCustomCapsLockDrawable;
                         } else {
-                            key.icon = ContextCompat.getDrawable(getContext(), R.drawable.ic_ime_shift_lock_on);
+                            key.icon = getShiftDrawable(SHIFT_LOCKED);
                         }
                 }
             }
 
             // NOTE: Fix non proper scale of space key on low dpi
 
-            int iconWidth = key.width; // originally used key.icon.getIntrinsicWidth();
-            int iconHeight = key.height; // originally used key.icon.getIntrinsicHeight();
+            iconWidth = key.width; // originally used key.icon.getIntrinsicWidth();
+            iconHeight = key.height; // originally used key.icon.getIntrinsicHeight();
 
             if (key.width == key.height) { // square key proper fit
                 int newSize = Math.round(key.width * mSquareIconScaleFactor);
@@ -234,7 +279,27 @@ public class LeanbackKeyboardView extends FrameLayout {
                 float gapDelta = (gap * 1.3f) - gap;
                 iconWidth -= gapDelta * (ASCII_PERIOD_LEN - 1);
             }
+        }
+
+        RenderSpec spec = mRenderSpec;
+        spec.set(key.icon != null ? null : key.label, key.icon, key.width, key.height, iconWidth, iconHeight, mKeyTextColor);
 
+        Bitmap bitmap = mBitmapCache.get(spec);
+
+        if (bitmap != null) {
+            return bitmap;
+        }
+
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Render key: " + key.label);
+        }
+
+        bitmap = Bitmap.createBitmap(key.width, key.height, Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Paint paint = mPaint;
+        paint.setColor(mKeyTextColor);
+        canvas.drawARGB(0, 0, 0, 0);
+        if (key.icon != null) {
             int dx = (key.width - padding.left - padding.right - iconWidth) / 2 + padding.left;
             int dy = (key.height - padding.top - padding.bottom - iconHeight) / 2 + padding.top;
 
@@ -242,13 +307,15 @@ public class LeanbackKeyboardView extends FrameLayout {
             key.icon.setBounds(0, 0, iconWidth, iconHeight);
             key.icon.draw(canvas);
             canvas.translate((float) (-dx), (float) (-dy));
-        } else if (label != null) {
+        } else if (key.label != null) {
+            String label = key.label.toString();
+
             if (label.length() > 1) {
                 paint.setTextSize((float) mModeChangeTextSize);
-                paint.setTypeface(Typeface.create("sans-serif", Typeface.NORMAL));
+                paint.setTypeface(TYPEFACE_NORMAL);
             } else {
                 paint.setTextSize((float) mKeyTextSize);
-                paint.setTypeface(Typeface.create("sans-serif-light", Typeface.NORMAL));
+                paint.setTypeface(TYPEFACE_LIGHT);
             }
 
             canvas.drawText(
@@ -260,52 +327,123 @@ public class LeanbackKeyboardView extends FrameLayout {
             paint.setShadowLayer(0.0F, 0.0F, 0.0F, 0);
         }
 
-        ImageView image = new ImageView(getContext());
-        image.setImageBitmap(bitmap);
-        image.setContentDescription(label);
-        // Adds key views to root window
-        addView(image, new LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT));
-        // Position will be set by updateKeyPositions() for horizontal scrolling
-        image.setY((float) (key.y + kbdPaddingTop));
-        int opacity;
-        if (mMiniKeyboardOnScreen && !keyHolder.isInMiniKb) {
-            opacity = mInactiveMiniKbAlpha;
-        } else {
-            opacity = 255;
+        mBitmapCache.put(spec, bitmap);
+
+        return bitmap;
+    }
+
+    private Drawable getShiftDrawable(int shiftState) {
+        if (mShiftDrawables[shiftState] == null) {
+            int resId;
+
+            switch (shiftState) {
+                case SHIFT_ON:
+                    resId = R.drawable.ic_ime_shift_on;
+                    break;
+                case SHIFT_LOCKED:
+                    resId = R.drawable.ic_ime_shift_lock_on;
+                    break;
+                default:
+                    resId = R.drawable.ic_ime_shift_off;
+            }
+
+            mShiftDrawables[shiftState] = ContextCompat.getDrawable(getContext(), resId);
         }
 
-        image.setImageAlpha(opacity);
-        image.setVisibility(View.VISIBLE);
+        return mShiftDrawables[shiftState];
+    }
+
+    /**
+     * NOTE: Binds key to the existing image view. Only drawable source is swapped.
+     */
+    private void bindKeyImageView(final int keyIndex) {
+        KeyHolder keyHolder = mKeys[keyIndex];
+        ImageView image = mKeyImageViews[keyIndex];
+
+        image.setImageBitmap(getKeyBitmap(keyHolder));
+        image.setContentDescription(keyHolder.key.label);
+        // Position will be set by updateKeyPositions() for horizontal scrolling
+        image.setY((float) (keyHolder.key.y + getPaddingTop()));
+        image.setImageAlpha(getKeyAlpha(keyHolder));
+    }
 
-        return image;
+    private int getKeyAlpha(KeyHolder keyHolder) {
+        return mMiniKeyboardOnScreen && !keyHolder.isInMiniKb ? mInactiveMiniKbAlpha : 255;
     }
 
-    private void createKeyImageViews(KeyHolder[] keys) {
+    /**
+     * Mini keyboard show/hide changes only alpha of the rest of the keys. No need to rebind them.
+     */
+    private void updateKeyAlphas() {
+        if (mSingleCanvasMode) {
+            invalidate(); // alpha is applied in drawKey()
+            return;
+        }
+
+        for (int i = 0; i < mKeyViewCount; i++) {
+            mKeyImageViews[i].setImageAlpha(getKeyAlpha(mKeys[i]));
+        }
+    }
+
+    /**
+     * Grows views pool when needed. Views are created once and reused afterwards.
+     */
+    private void ensureKeyImageViews(int totalKeys) {
+        int totalImages = mKeyImageViews != null ? mKeyImageViews.length : 0;
+
+        if (totalImages >= totalKeys) {
+            return;
+        }
+
+        ImageView[] images = new ImageView[totalKeys];
+
         if (mKeyImageViews != null) {
-            ImageView[] images = mKeyImageViews;
-            int totalImages = images.length;
+            System.arraycopy(mKeyImageViews, 0, images, 0, totalImages);
+        }
 
-            for (int i = 0; i < totalImages; ++i) {
-                removeView(images[i]);
-            }
+        for (int i = totalImages; i < totalKeys; ++i) {
+            ImageView image = new ImageView(getContext());
+            // Adds key views to root window
+            addView(image, new LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT));
+            images[i] = image;
+        }
+
+        mKeyImageViews = images;
+    }
 
-            mKeyImageViews = null;
+    private void bindKey(int keyIndex) {
+        if (mSingleCanvasMode) {
+            mKeyBitmaps[keyIndex] = getKeyBitmap(mKeys[keyIndex]);
+            invalidate();
+        } else {
+            bindKeyImageView(keyIndex);
         }
+    }
 
+    private void createKeyImageViews(KeyHolder[] keys) {
+        long startNanos = System.nanoTime();
         int totalKeys = keys.length;
-        for (int i = 0; i < totalKeys; ++i) {
-            if (mKeyImageViews == null) {
-                mKeyImageViews = new ImageView[totalKeys];
-            } else if (mKeyImageViews[i] != null) {
-                removeView(mKeyImageViews[i]);
+
+        if (mSingleCanvasMode) {
+            if (mKeyBitmaps == null || mKeyBitmaps.length < totalKeys) {
+                mKeyBitmaps = new Bitmap[totalKeys];
             }
+        } else {
+            ensureKeyImageViews(totalKeys);
+        }
 
-            mKeyImageViews[i] = createKeyImageView(i);
+        mKeyViewCount = totalKeys;
+
+        for (int i = 0; i < totalKeys; ++i) {
+            bindKey(i);
         }
-        
+
         // Initialize positions for horizontal scrolling
+        mLaidOutScrollOffset = -1;
         updateKeyPositions();
         updateFocus();
+
+        PerfMonitor.instance().record(PerfMonitor.STAGE_KEY_VIEWS, startNanos);
     }
 
     private void removeMessages() {
@@ -323,16 +461,36 @@ public class LeanbackKeyboardView extends FrameLayout {
 
         for (int i = 0; i < mKeys.length && iterator.hasNext(); ++i) {
             Key key = iterator.next();
-            mKeys[i] = new KeyHolder(key);
+            KeyHolder keyHolder = new KeyHolder(key);
+            mConverter.init(keyHolder);
+            keyHolder.saveBaseKey();
+            mKeys[i] = keyHolder;
         }
     }
 
+    /**
+     * Locale used to resolve the label case (e.g. Turkish dotted I). Applied on the next {@link #setKeyboard(Keyboard)}.
+     */
+    public void setKeyboardLocale(Locale locale) {
+        mConverter.setLocale(locale);
+    }
+
     public boolean dismissMiniKeyboard() {
         boolean dismiss = false;
         if (mMiniKeyboardOnScreen) {
             mMiniKeyboardOnScreen = false;
-            setKeys(mKeyboard.getKeys());
-            invalidateAllKeys();
+
+            // restore only the slots that were taken by the mini keyboard
+            for (int i = 0; i < mKeys.length; i++) {
+                KeyHolder keyHolder = mKeys[i];
+
+                if (keyHolder.isInMiniKb) {
+                    keyHolder.restoreBaseKey();
+                    invalidateKey(i);
+                }
+            }
+
+            updateKeyAlphas();
             dismiss = true;
         }
 
@@ -368,61 +526,69 @@ public class LeanbackKeyboardView extends FrameLayout {
      * @return index of the key
      */
     public int getNearestIndex(final float x, final float y) {
+        if (mKeys == null || mKeys.length == 0) {
+            return 0;
+        }
+
+        return getNearestIndex(x, y, getPaddingLeft(), getPaddingTop(),
+                getMeasuredWidth() - getPaddingLeft() - getPaddingRight(),
+                getMeasuredHeight() - getPaddingTop() - getPaddingBottom(),
+                getRowCount(), getColCount(), mKeys.length);
+    }
+
+    /**
+     * View independent part of {@link #getNearestIndex(float, float)}
+     * @param kbWidth keyboard width without padding
+     * @param kbHeight keyboard height without padding
+     * @param keyCount number of keys, not zero
+     * @return index of the key
+     */
+    static int getNearestIndex(float x, float y, float paddingLeft, float paddingTop, float kbWidth, float kbHeight,
+                               int rows, int cols, int keyCount) {
         int result;
-        if (mKeys != null && mKeys.length != 0) {
-            float paddingLeft = (float) getPaddingLeft();
-            float paddingTop = (float) getPaddingTop();
-            float kbHeight = (float) (getMeasuredHeight() - getPaddingTop() - getPaddingBottom());
-            float kbWidth = (float) (getMeasuredWidth() - getPaddingLeft() - getPaddingRight());
-            final int rows = getRowCount();
-            final int cols = getColCount();
-            final int indexVert = (int) ((y - paddingTop) / kbHeight * (float) rows);
-            if (indexVert < 0) {
-                result = 0;
-            } else {
-                result = indexVert;
-                if (indexVert >= rows) {
-                    result = rows - 1;
-                }
+        final int indexVert = (int) ((y - paddingTop) / kbHeight * (float) rows);
+        if (indexVert < 0) {
+            result = 0;
+        } else {
+            result = indexVert;
+            if (indexVert >= rows) {
+                result = rows - 1;
             }
+        }
 
-            final int indexHoriz = (int) ((x - paddingLeft) / kbWidth * (float) cols);
-            int indexFull;
-            if (indexHoriz < 0) {
-                indexFull = 0;
-            } else {
-                indexFull = indexHoriz;
-                if (indexHoriz >= cols) {
-                    indexFull = cols - 1;
-                }
+        final int indexHoriz = (int) ((x - paddingLeft) / kbWidth * (float) cols);
+        int indexFull;
+        if (indexHoriz < 0) {
+            indexFull = 0;
+        } else {
+            indexFull = indexHoriz;
+            if (indexHoriz >= cols) {
+                indexFull = cols - 1;
             }
+        }
 
-            indexFull += mColCount * result;
-            result = indexFull;
-            if (indexFull > ASCII_PERIOD) { // key goes beyond space
-                if (indexFull < (ASCII_PERIOD + ASCII_PERIOD_LEN)) {  // key stays within space boundary
-                    result = ASCII_PERIOD;
-                }
+        indexFull += cols * result;
+        result = indexFull;
+        if (indexFull > ASCII_PERIOD) { // key goes beyond space
+            if (indexFull < (ASCII_PERIOD + ASCII_PERIOD_LEN)) {  // key stays within space boundary
+                result = ASCII_PERIOD;
             }
+        }
 
-            indexFull = result;
-            if (result >= (ASCII_PERIOD + ASCII_PERIOD_LEN)) { // is key position after space?
-                indexFull = result - ASCII_PERIOD_LEN + 1;
-            }
+        indexFull = result;
+        if (result >= (ASCII_PERIOD + ASCII_PERIOD_LEN)) { // is key position after space?
+            indexFull = result - ASCII_PERIOD_LEN + 1;
+        }
 
-            if (indexFull < 0) {
-                return 0;
-            }
+        if (indexFull < 0) {
+            return 0;
+        }
 
-            result = indexFull;
-            if (indexFull >= mKeys.length) {
-                return mKeys.length - 1;
-            }
-        } else {
-            result = 0;
+        if (indexFull >= keyCount) {
+            return keyCount - 1;
         }
 
-        return result;
+        return indexFull;
     }
 
     public int getRowCount() {
@@ -438,12 +604,8 @@ public class LeanbackKeyboardView extends FrameLayout {
     }
 
     public void invalidateKey(int keyIndex) {
-        if (mKeys != null && keyIndex >= 0 && keyIndex < mKeys.length) {
-            if (mKeyImageViews[keyIndex] != null) {
-                removeView(mKeyImageViews[keyIndex]);
-            }
-
-            mKeyImageViews[keyIndex] = createKeyImageView(keyIndex);
+        if (mKeys != null && keyIndex >= 0 && keyIndex < mKeyViewCount) {
+            bindKey(keyIndex);
         }
     }
 
@@ -457,6 +619,24 @@ public class LeanbackKeyboardView extends FrameLayout {
 
     public void onDraw(Canvas canvas) {
         super.onDraw(canvas);
+
+        if (!mSingleCanvasMode || mKeyBitmaps == null) {
+            return;
+        }
+
+        // draw only visible window of keys, focused key goes last (above its neighbours)
+        int first = mScrollOffset;
+        int last = Math.min(mScrollOffset + mVisibleKeys, mKeyViewCount);
+
+        for (int i = first; i < last; i++) {
+            if (i != mFocusIndex) {
+                drawKey(canvas, i, i == mPrevFocusIndex ? getCanvasPrevFocusScale() : 1.0F);
+            }
+        }
+
+        if (mFocusIndex >= first && mFocusIndex < last) {
+            drawKey(canvas, mFocusIndex, getCanvasFocusScale());
+        }
     }
 
     public void onKeyLongPress() {
@@ -465,7 +645,9 @@ public class LeanbackKeyboardView extends FrameLayout {
         if (popupResId != 0) {
             dismissMiniKeyboard();
             mMiniKeyboardOnScreen = true;
-            List<Key> accentKeys = (new Keyboard(getContext(), popupResId)).getKeys();
+            // usually already parsed in background (see setKeyboard())
+            List<Key> accentKeys = mPopupStore.get(getContext(), popupResId);
+            mPopupStore.onPopupShown(popupResId);
             int totalAccentKeys = accentKeys.size();
             int baseIndex = mFocusIndex;
             int currentRow = mFocusIndex / mColCount;
@@ -484,11 +666,13 @@ public class LeanbackKeyboardView extends FrameLayout {
                 mKeys[baseIndex + i].key = accentKey;
                 mKeys[baseIndex + i].isInMiniKb = true;
                 KeyHolder holder = mKeys[baseIndex + i];
+                mConverter.init(holder); // few keys, once per popup
 
                 holder.isInvertible = i == 0; // uppercase first char
+                invalidateKey(baseIndex + i);
             }
 
-            invalidateAllKeys();
+            updateKeyAlphas();
         } else {
             boolean isSpecialKey = mKeys[mFocusIndex].key.icon != null; // space, paste, voice input etc
 
@@ -500,7 +684,8 @@ public class LeanbackKeyboardView extends FrameLayout {
                 mKeys[mFocusIndex].isInMiniKb = true;
                 mKeys[mFocusIndex].isInvertible = true;
 
-                invalidateAllKeys();
+                invalidateKey(mFocusIndex);
+                updateKeyAlphas();
             }
         }
     }
@@ -538,16 +723,21 @@ public class LeanbackKeyboardView extends FrameLayout {
      */
     public void setFocus(final int index, final boolean clicked, final boolean showFocusScale) {
         float scale = 1.0F;
-        if (mKeyImageViews != null && mKeyImageViews.length != 0) {
+        if (mKeyViewCount != 0) {
             int indexFull;
 
-            if (index >= 0 && index < mKeyImageViews.length) {
+            if (index >= 0 && index < mKeyViewCount) {
                 indexFull = index;
             } else {
                 indexFull = -1;
             }
 
             if (indexFull != mFocusIndex || clicked != mFocusClicked) {
+                if (mSingleCanvasMode) {
+                    setCanvasFocus(indexFull, clicked, showFocusScale);
+                    return;
+                }
+
                 if (indexFull != mFocusIndex) {
                     if (mFocusIndex != -1) {
                         LeanbackUtils.sendAccessibilityEvent(mKeyImageViews[mFocusIndex], false);
@@ -597,8 +787,112 @@ public class LeanbackKeyboardView extends FrameLayout {
 
     }
 
+    /**
+     * Single canvas variant of the focus change: focused key is drawn as scaled overlay in {@link #onDraw(Canvas)}
+     */
+    private void setCanvasFocus(final int index, final boolean clicked, final boolean showFocusScale) {
+        if (index != mFocusIndex && index != -1) {
+            setContentDescription(mKeys[index].key.label);
+            LeanbackUtils.sendAccessibilityEvent(this, true);
+        }
+
+        float scale = 1.0F;
+
+        if (index != -1) {
+            if (clicked) {
+                scale = mClickedScale;
+            } else if (showFocusScale) {
+                scale = mFocusedScale;
+            }
+        }
+
+        float currentScale = getCanvasFocusScale();
+
+        if (index != mFocusIndex) {
+            mPrevFocusIndex = mFocusIndex;
+            mPrevFocusStartScale = currentScale;
+            mFocusStartScale = 1.0F;
+        } else {
+            mFocusStartScale = currentScale;
+        }
+
+        mFocusTargetScale = scale;
+        mFocusAnimFraction = 0;
+        mFocusAnimator.cancel();
+        mFocusAnimator.start();
+
+        mFocusIndex = index;
+        mFocusClicked = clicked;
+        if (-1 != index && !mKeys[index].isInMiniKb) {
+            dismissMiniKeyboard();
+        }
+
+        invalidate();
+    }
+
+    private float getCanvasFocusScale() {
+        return mFocusStartScale + (mFocusTargetScale - mFocusStartScale) * mFocusAnimFraction;
+    }
+
+    private float getCanvasPrevFocusScale() {
+        return mPrevFocusStartScale + (1.0F - mPrevFocusStartScale) * mFocusAnimFraction;
+    }
+
+    private void drawKey(Canvas canvas, int keyIndex, float scale) {
+        Bitmap bitmap = mKeyBitmaps[keyIndex];
+
+        if (bitmap == null) {
+            return;
+        }
+
+        KeyHolder keyHolder = mKeys[keyIndex];
+        float x = getPaddingLeft() + (keyIndex - mScrollOffset) * (mKeyWidth + mKeySpacing);
+        float y = keyHolder.key.y + getPaddingTop();
+
+        mBitmapPaint.setAlpha(getKeyAlpha(keyHolder));
+
+        if (scale != 1.0F) {
+            int saveCount = canvas.save();
+            canvas.scale(scale, scale, x + bitmap.getWidth() / 2.0F, y + bitmap.getHeight() / 2.0F);
+            canvas.drawBitmap(bitmap, x, y, mBitmapPaint);
+            canvas.restoreToCount(saveCount);
+        } else {
+            canvas.drawBitmap(bitmap, x, y, mBitmapPaint);
+        }
+    }
+
+    /**
+     * Switches between per-key image views and single canvas rendering (see {@link LeanKeyPreferences#getSingleCanvasRendering()})
+     */
+    private void updateRenderMode() {
+        boolean singleCanvas = LeanKeyPreferences.instance(getContext()).getSingleCanvasRendering();
+
+        if (singleCanvas == mSingleCanvasMode) {
+            return;
+        }
+
+        mSingleCanvasMode = singleCanvas;
+        setWillNotDraw(!singleCanvas);
+
+        if (mKeyImageViews != null) {
+            for (ImageView image : mKeyImageViews) {
+                image.setScaleX(1.0F);
+                image.setScaleY(1.0F);
+                image.setVisibility(View.GONE);
+            }
+        }
+
+        mCurrentFocusView = null;
+        mKeyViewCount = 0;
+        mLaidOutScrollOffset = -1;
+        mFocusAnimFraction = 1.0F;
+        mFocusStartScale = mFocusTargetScale = mPrevFocusStartScale = 1.0F;
+        mPrevFocusIndex = -1;
+    }
+
     public void setKeyboard(Keyboard keyboard) {
         removeMessages();
+        updateRenderMode();
         mKeyboard = keyboard;
         setKeys(mKeyboard.getKeys());
         int state = mShiftState;
@@ -606,6 +900,7 @@ public class LeanbackKeyboardView extends FrameLayout {
         setShiftState(state);
         requestLayout();
         invalidateAllKeys();
+        mPopupStore.preload(getContext(), mKeyboard);
     }
 
     /**
@@ -635,79 +930,78 @@ public class LeanbackKeyboardView extends FrameLayout {
     // Horizontal scrolling methods
     public void scrollLeft() {
         if (mKeys != null) {
-            // Get current key index
+            // Move to previous key in sequence, loop to the end
             int currentKeyIndex = getCurrentKeyIndex();
-            
-            // Move to previous key in sequence
-            if (currentKeyIndex > 0) {
-                currentKeyIndex--;
-            } else {
-                // Loop to the end
-                currentKeyIndex = mKeys.length - 1;
-            }
-            
-            // Calculate new scroll offset to keep the target key in focus position
-            mScrollOffset = Math.max(0, currentKeyIndex - mFixedFocusIndex);
-            
-            // Ensure we don't scroll past the end
-            if (mScrollOffset > mKeys.length - mVisibleKeys) {
-                mScrollOffset = Math.max(0, mKeys.length - mVisibleKeys);
-            }
-            
-            updateKeyPositions();
-            updateFocus();
+            scrollToKey(currentKeyIndex > 0 ? currentKeyIndex - 1 : mKeys.length - 1);
         }
     }
     
     public void scrollRight() {
         if (mKeys != null) {
-            // Get current key index
+            // Move to next key in sequence, loop to the beginning
             int currentKeyIndex = getCurrentKeyIndex();
-            
-            // Move to next key in sequence
-            if (currentKeyIndex < mKeys.length - 1) {
-                currentKeyIndex++;
-            } else {
-                // Loop to the beginning
-                currentKeyIndex = 0;
-            }
-            
-            // Calculate new scroll offset to keep the target key in focus position
-            mScrollOffset = Math.max(0, currentKeyIndex - mFixedFocusIndex);
-            
-            // Ensure we don't scroll past the end
-            if (mScrollOffset > mKeys.length - mVisibleKeys) {
-                mScrollOffset = Math.max(0, mKeys.length - mVisibleKeys);
-            }
-            
-            updateKeyPositions();
-            updateFocus();
+            scrollToKey(currentKeyIndex < mKeys.length - 1 ? currentKeyIndex + 1 : 0);
         }
     }
+
+    private void scrollToKey(int keyIndex) {
+        // Calculate new scroll offset to keep the target key in focus position
+        // and ensure we don't scroll past the end
+        mScrollOffset = Math.min(Math.max(0, keyIndex - mFixedFocusIndex), Math.max(0, mKeys.length - mVisibleKeys));
+
+        updateKeyPositions();
+        updateFocus();
+    }
     
+    /**
+     * D-pad scrolling moves the window of visible keys by one. Only the views that leave or enter the window change
+     * visibility, the rest of the pool is left as is.
+     */
     private void updateKeyPositions() {
+        if (mSingleCanvasMode) {
+            // scrolling is just a translate inside onDraw
+            invalidate();
+            return;
+        }
+
         if (mKeyImageViews == null || mKeys == null) return;
-        
-        int keyWidth = (int) getResources().getDimension(R.dimen.key_width);
-        int keySpacing = (int) getResources().getDimension(R.dimen.keyboard_horizontal_gap);
-        int kbdPaddingLeft = getPaddingLeft();
-        int kbdPaddingTop = getPaddingTop();
-        
-        // Update positions for all keys based on scroll offset
-        for (int i = 0; i < mKeyImageViews.length; i++) {
-            if (mKeyImageViews[i] != null) {
-                // Calculate new X position based on scroll offset
-                int newX = kbdPaddingLeft + (i - mScrollOffset) * (keyWidth + keySpacing);
-                
-                // Only show keys that are in the visible range
-                if (i >= mScrollOffset && i < mScrollOffset + mVisibleKeys) {
-                    mKeyImageViews[i].setX(newX);
-                    mKeyImageViews[i].setVisibility(View.VISIBLE);
-                } else {
+
+        int prevOffset = mLaidOutScrollOffset;
+        int first = mScrollOffset;
+        int last = Math.min(mScrollOffset + mVisibleKeys, mKeyViewCount);
+
+        if (prevOffset == first) {
+            return;
+        }
+
+        mLaidOutScrollOffset = first;
+
+        if (prevOffset == -1) {
+            for (int i = 0; i < mKeyImageViews.length; i++) {
+                if (i >= mKeyViewCount) {
+                    // pooled view that isn't bound to any key
+                    mKeyImageViews[i].setVisibility(View.GONE);
+                } else if (i < first || i >= last) {
+                    mKeyImageViews[i].setVisibility(View.INVISIBLE);
+                }
+            }
+        } else {
+            // keys that left the visible range
+            for (int i = prevOffset, prevLast = Math.min(prevOffset + mVisibleKeys, mKeyViewCount); i < prevLast; i++) {
+                if (i < first || i >= last) {
                     mKeyImageViews[i].setVisibility(View.INVISIBLE);
                 }
             }
         }
+
+        // Only show keys that are in the visible range
+        int stride = mKeyWidth + mKeySpacing;
+        int x = getPaddingLeft();
+
+        for (int i = first; i < last; i++, x += stride) {
+            mKeyImageViews[i].setX(x);
+            mKeyImageViews[i].setVisibility(View.VISIBLE);
+        }
     }
     
     private void updateFocus() {
@@ -738,14 +1032,39 @@ public class LeanbackKeyboardView extends FrameLayout {
         updateFocus();
     }
 
-    private static class KeyHolder {
+    static class KeyHolder {
         public boolean isInMiniKb = false;
         public boolean isInvertible = false;
         public Key key;
+        /**
+         * Case variants of the {@link #key} label, see {@link KeyConverter#init}
+         */
+        CharSequence lowerLabel;
+        CharSequence upperLabel;
+        private Key mBaseKey;
+        private CharSequence mBaseLowerLabel;
+        private CharSequence mBaseUpperLabel;
 
         public KeyHolder(Key key) {
             this.key = key;
         }
+
+        /**
+         * Remembers the keyboard key with its labels (the slot could be taken by the mini keyboard later)
+         */
+        void saveBaseKey() {
+            mBaseKey = key;
+            mBaseLowerLabel = lowerLabel;
+            mBaseUpperLabel = upperLabel;
+        }
+
+        void restoreBaseKey() {
+            key = mBaseKey;
+            lowerLabel = mBaseLowerLabel;
+            upperLabel = mBaseUpperLabel;
+            isInMiniKb = false;
+            isInvertible = false;
+        }
     }
 
     public void setCapsLockDrawable(Drawable drawable) {
@@ -6,6 +6,7 @@ import android.text.TextUtils;
 import android.util.Log;
 import android.view.inputmethod.CompletionInfo;
 import android.view.inputmethod.EditorInfo;
+import com.liskovsoft.leankeyboard.addons.dictionary.WordPredictor;
 import com.slideos.system.R;
 
 import java.util.ArrayList;
@@ -20,13 +21,28 @@ public class LeanbackSuggestionsFactory {
     private int mMode;
     private int mNumSuggestions;
     private final ArrayList<String> mSuggestions = new ArrayList<>();
+    /**
+     * Supplied by the app in auto-complete fields, kept across predictions
+     */
+    private final ArrayList<String> mCompletions = new ArrayList<>();
+    private final WordPredictor mPredictor;
+    private boolean mPredictionEnabled;
+    private boolean mLearningEnabled;
+    /**
+     * Predictions follow the user input slot and the completions
+     */
+    private int mPredictionStart;
+    private int mPredictionCount;
 
     public LeanbackSuggestionsFactory(InputMethodService context, int numSuggestions) {
         mContext = context;
         mNumSuggestions = numSuggestions;
+        mPredictor = WordPredictor.instance(context);
     }
 
     public void clearSuggestions() {
+        mPredictionStart = 0;
+        mPredictionCount = 0;
         mSuggestions.clear();
         mSuggestions.add(null); // make room for user input, see LeanbackKeyboardContainer.addUserInputToSuggestions
     }
@@ -50,7 +66,7 @@ public class LeanbackSuggestionsFactory {
     }
 
     public void onDisplayCompletions(CompletionInfo[] infos) {
-        createSuggestions();
+        mCompletions.clear();
         int len;
         if (infos == null) {
             len = 0;
@@ -58,10 +74,12 @@ public class LeanbackSuggestionsFactory {
             len = infos.length;
         }
 
-        for (int i = 0; i < len && mSuggestions.size() < mNumSuggestions && !TextUtils.isEmpty(infos[i].getText()); ++i) {
-            mSuggestions.add(i, infos[i].getText().toString());
+        for (int i = 0; i < len && !TextUtils.isEmpty(infos[i].getText()); ++i) {
+            mCompletions.add(infos[i].getText().toString());
         }
 
+        createCompletions();
+
         if (DEBUG) {
             for (len = 0; len < mSuggestions.size(); ++len) {
                 Log.d(TAG, "completion " + len + ": " + mSuggestions.get(len));
@@ -70,12 +88,78 @@ public class LeanbackSuggestionsFactory {
 
     }
 
+    private void createCompletions() {
+        createSuggestions();
+
+        for (int i = 0; i < mCompletions.size() && mSuggestions.size() < mNumSuggestions; ++i) {
+            mSuggestions.add(i, mCompletions.get(i));
+        }
+    }
+
+    /**
+     * Replaces previous predictions with the ones for the word under the cursor.<br/>
+     * Completions of the app go first (auto-complete fields).
+     * @param langCode lang of the current keyboard
+     * @param textBeforeCursor see {@link WordPredictor#MAX_CONTEXT_LENGTH}
+     */
+    public void onTextChanged(String langCode, CharSequence textBeforeCursor) {
+        if (!mPredictionEnabled) {
+            return;
+        }
+
+        mPredictor.setLanguage(langCode);
+
+        createCompletions();
+        mPredictionStart = mSuggestions.size();
+        mPredictionCount = mPredictor.predict(textBeforeCursor, mSuggestions, mNumSuggestions - mPredictionStart);
+
+        if (DEBUG) {
+            Log.d(TAG, "predictions: " + mSuggestions);
+        }
+    }
+
+    /**
+     * Prediction replaces the current word only, unlike other suggestions
+     */
+    public boolean isPrediction(CharSequence suggestion) {
+        int end = Math.min(mPredictionStart + mPredictionCount, mSuggestions.size());
+
+        for (int i = mPredictionStart; i < end; i++) {
+            if (TextUtils.equals(mSuggestions.get(i), suggestion)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public boolean isPredictionEnabled() {
+        return mPredictionEnabled;
+    }
+
+    public boolean isLearningEnabled() {
+        return mLearningEnabled;
+    }
+
+    /**
+     * Remembers the word that the text ends with (no-op in password and incognito fields)
+     */
+    public void learnWord(CharSequence textBeforeCursor) {
+        if (mLearningEnabled) {
+            mPredictor.learnWord(textBeforeCursor);
+        }
+    }
+
     public void onStartInput(EditorInfo info) {
+        mCompletions.clear();
         mMode = MODE_DEFAULT;
         if ((info.inputType & InputType.TYPE_TEXT_FLAG_AUTO_COMPLETE) != 0) {
             mMode = MODE_AUTO_COMPLETE;
         }
 
+        mPredictionEnabled = isPredictionAllowed(info);
+        mLearningEnabled = mPredictionEnabled && (info.imeOptions & EditorInfo.IME_FLAG_NO_PERSONALIZED_LEARNING) == 0;
+
         switch (LeanbackUtils.getInputTypeClass(info)) {
             case InputType.TYPE_CLASS_TEXT:
                 switch (LeanbackUtils.getInputTypeVariation(info)) {
@@ -93,4 +177,26 @@ public class LeanbackSuggestionsFactory {
     public boolean shouldSuggestionsAmend() {
         return mMode == MODE_DOMAIN;
     }
+
+    /**
+     * Plain text only: no passwords, addresses or fields that asked for no suggestions
+     */
+    private static boolean isPredictionAllowed(EditorInfo info) {
+        if (LeanbackUtils.getInputTypeClass(info) != InputType.TYPE_CLASS_TEXT ||
+                (info.inputType & InputType.TYPE_TEXT_FLAG_NO_SUGGESTIONS) != 0) {
+            return false;
+        }
+
+        switch (LeanbackUtils.getInputTypeVariation(info)) {
+            case InputType.TYPE_TEXT_VARIATION_PASSWORD:
+            case InputType.TYPE_TEXT_VARIATION_VISIBLE_PASSWORD:
+            case InputType.TYPE_TEXT_VARIATION_WEB_PASSWORD:
+            case InputType.TYPE_TEXT_VARIATION_EMAIL_ADDRESS:
+            case InputType.TYPE_TEXT_VARIATION_WEB_EMAIL_ADDRESS:
+            case InputType.TYPE_TEXT_VARIATION_URI:
+                return false;
+            default:
+                return true;
+        }
+    }
 }
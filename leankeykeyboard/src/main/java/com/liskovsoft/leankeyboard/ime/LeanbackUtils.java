@@ -59,51 +59,6 @@ public class LeanbackUtils {
 
     }
 
-    public static int getAmpersandLocation(InputConnection connection) {
-        String text = getEditorText(connection);
-        int pos = text.indexOf(64);
-        if (pos < 0) { // not found
-            pos = text.length();
-        }
-
-        return pos;
-    }
-
-    public static int getCharLengthAfterCursor(InputConnection connection) {
-        int len = 0;
-        CharSequence after = connection.getTextAfterCursor(1000, 0);
-        if (after != null) {
-            len = after.length();
-        }
-
-        return len;
-    }
-
-    public static int getCharLengthBeforeCursor(InputConnection connection) {
-        int len = 0;
-        CharSequence before = connection.getTextBeforeCursor(1000, 0);
-        if (before != null) {
-            len = before.length();
-        }
-
-        return len;
-    }
-
-    public static String getEditorText(InputConnection connection) {
-        StringBuilder result = new StringBuilder();
-        CharSequence before = connection.getTextBeforeCursor(1000, 0);
-        CharSequence after = connection.getTextAfterCursor(1000, 0);
-        if (before != null) {
-            result.append(before);
-        }
-
-        if (after != null) {
-            result.append(after);
-        }
-
-        return result.toString();
-    }
-
     public static void sendEnterKey(InputConnection connection) {
         connection.sendKeyEvent(new KeyEvent(KeyEvent.ACTION_DOWN, KeyEvent.KEYCODE_ENTER));
     }
@@ -0,0 +1,149 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.view.Choreographer;
+import com.liskovsoft.leankeyboard.utils.LatencyHistogram;
+
+/**
+ * Latency of the keyboard hot paths: from a remote key event to the commit and to the next keyboard frame,
+ * plus the stages in between. Always on, recording is a couple of {@link System#nanoTime()} calls.<br/>
+ * Frame times are tracked only while {@link #setFrameTrackingEnabled enabled} (the overlay is shown),
+ * a frame callback on every vsync isn't free.<br/>
+ * See {@link PerfOverlay}, <code>adb shell dumpsys activity service LeanbackImeService</code>.<br/>
+ * Main thread only.
+ */
+public final class PerfMonitor {
+    public static final int STAGE_KEY_DOWN = 0;
+    public static final int STAGE_SET_FOCUS = 1;
+    public static final int STAGE_KEY_VIEWS = 2;
+    public static final int STAGE_KEY_TO_COMMIT = 3;
+    public static final int STAGE_KEY_TO_DRAW = 4;
+    public static final int STAGE_FRAME = 5;
+    private static final String[] STAGE_NAMES = {
+            "handleKeyDownEvent", "setKbFocus", "createKeyImageViews", "key -> commit", "key -> draw", "frame"
+    };
+    private static final long JANK_NANOS = 25_000_000; // missed 60Hz vsync with some slack
+    private static PerfMonitor sInstance;
+    private final LatencyHistogram[] mHistograms = new LatencyHistogram[STAGE_NAMES.length];
+    private final Choreographer.FrameCallback mFrameCallback = this::onFrame;
+    private long mInputNanos;
+    private boolean mCommitPending;
+    private boolean mDrawPending;
+    private boolean mFrameTrackingEnabled;
+    private long mLastFrameNanos;
+    private long mJankFrames;
+
+    public static PerfMonitor instance() {
+        if (sInstance == null)
+            sInstance = new PerfMonitor();
+        return sInstance;
+    }
+
+    private PerfMonitor() {
+        for (int i = 0; i < STAGE_NAMES.length; i++) {
+            mHistograms[i] = new LatencyHistogram(STAGE_NAMES[i]);
+        }
+    }
+
+    /**
+     * Stage done
+     * @param startNanos {@link System#nanoTime()} at the stage start
+     */
+    public void record(int stage, long startNanos) {
+        mHistograms[stage].recordNanos(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Key event has arrived to the IME
+     */
+    public void onInputEvent() {
+        mInputNanos = System.nanoTime();
+        mCommitPending = true;
+        mDrawPending = true;
+    }
+
+    /**
+     * Text is sent to the editor
+     */
+    public void onCommit() {
+        if (mCommitPending) {
+            mCommitPending = false;
+            record(STAGE_KEY_TO_COMMIT, mInputNanos);
+        }
+    }
+
+    /**
+     * Keyboard is drawn
+     */
+    public void onDraw() {
+        if (mDrawPending) {
+            mDrawPending = false;
+            record(STAGE_KEY_TO_DRAW, mInputNanos);
+        }
+    }
+
+    public void setFrameTrackingEnabled(boolean enabled) {
+        if (mFrameTrackingEnabled == enabled) {
+            return;
+        }
+
+        mFrameTrackingEnabled = enabled;
+        mLastFrameNanos = 0;
+        Choreographer choreographer = Choreographer.getInstance();
+
+        if (enabled) {
+            choreographer.postFrameCallback(mFrameCallback);
+        } else {
+            choreographer.removeFrameCallback(mFrameCallback);
+        }
+    }
+
+    public LatencyHistogram getHistogram(int stage) {
+        return mHistograms[stage];
+    }
+
+    public int getStageCount() {
+        return mHistograms.length;
+    }
+
+    public long getJankFrames() {
+        return mJankFrames;
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : mHistograms) {
+            histogram.reset();
+        }
+
+        mJankFrames = 0;
+    }
+
+    /**
+     * Text report, one stage per line
+     */
+    public void dump(StringBuilder out) {
+        for (LatencyHistogram histogram : mHistograms) {
+            histogram.dump(out);
+            out.append('\n');
+        }
+
+        out.append("jank frames (>").append(JANK_NANOS / 1_000_000).append("ms): ").append(mJankFrames).append('\n');
+    }
+
+    private void onFrame(long frameTimeNanos) {
+        if (!mFrameTrackingEnabled) {
+            return;
+        }
+
+        if (mLastFrameNanos != 0) {
+            long frameNanos = frameTimeNanos - mLastFrameNanos;
+            mHistograms[STAGE_FRAME].recordNanos(frameNanos);
+
+            if (frameNanos > JANK_NANOS) {
+                mJankFrames++;
+            }
+        }
+
+        mLastFrameNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(mFrameCallback);
+    }
+}
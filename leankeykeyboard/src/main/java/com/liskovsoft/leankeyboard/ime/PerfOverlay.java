@@ -0,0 +1,61 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.os.Handler;
+import android.util.TypedValue;
+import android.widget.RelativeLayout;
+import android.widget.TextView;
+
+/**
+ * Debug text on top of the keyboard with the {@link PerfMonitor} numbers. Refreshed twice a second while shown.
+ */
+public class PerfOverlay {
+    private static final long REFRESH_INTERVAL_MS = 500;
+    private final RelativeLayout mRootView;
+    private final Handler mHandler = new Handler();
+    private final StringBuilder mText = new StringBuilder();
+    private final Runnable mRefresh = this::refresh;
+    private TextView mTextView;
+
+    public PerfOverlay(RelativeLayout rootView) {
+        mRootView = rootView;
+    }
+
+    public void setEnabled(boolean enabled) {
+        if (enabled == (mTextView != null)) {
+            return;
+        }
+
+        PerfMonitor.instance().setFrameTrackingEnabled(enabled);
+
+        if (enabled) {
+            mTextView = new TextView(mRootView.getContext());
+            mTextView.setTypeface(Typeface.MONOSPACE);
+            mTextView.setTextSize(TypedValue.COMPLEX_UNIT_SP, 10);
+            mTextView.setTextColor(Color.WHITE);
+            mTextView.setBackgroundColor(0xA0000000);
+            mTextView.setFocusable(false);
+            mRootView.addView(mTextView, new RelativeLayout.LayoutParams(
+                    RelativeLayout.LayoutParams.WRAP_CONTENT, RelativeLayout.LayoutParams.WRAP_CONTENT));
+            refresh();
+        } else {
+            mHandler.removeCallbacks(mRefresh);
+            mRootView.removeView(mTextView);
+            mTextView = null;
+        }
+    }
+
+    private void refresh() {
+        if (mTextView == null) {
+            return;
+        }
+
+        mText.setLength(0);
+        PerfMonitor.instance().dump(mText);
+        mText.setLength(mText.length() - 1); // last line break
+        mTextView.setText(mText);
+
+        mHandler.postDelayed(mRefresh, REFRESH_INTERVAL_MS);
+    }
+}
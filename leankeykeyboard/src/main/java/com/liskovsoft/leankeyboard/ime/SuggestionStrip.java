@@ -0,0 +1,132 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.text.TextUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.Button;
+import android.widget.LinearLayout;
+import com.slideos.system.R;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Suggestion cells over a pool of views, inflated once.<br/>
+ * Cells beyond the current count stay in the layout as {@link View#GONE}, so theming the strip
+ * covers every cell that could be shown. The pool grows when a longer list arrives (e.g. email domains),
+ * see {@link #getCapacity()}. Only the cells whose text has changed are touched on update.
+ */
+public class SuggestionStrip {
+    private final LayoutInflater mInflater;
+    private final LinearLayout mContainer;
+    private View[] mCells;
+    private Button[] mButtons;
+    /**
+     * What's shown in each cell, to skip no-op updates
+     */
+    private String[] mTexts;
+    private int mCount;
+
+    public SuggestionStrip(LayoutInflater inflater, LinearLayout container, int capacity) {
+        mInflater = inflater;
+        mContainer = container;
+        mCells = new View[0];
+        mButtons = new Button[0];
+        mTexts = new String[0];
+
+        mContainer.removeAllViews();
+        ensureCapacity(capacity);
+    }
+
+    private void ensureCapacity(int capacity) {
+        int oldCapacity = mCells.length;
+
+        if (capacity <= oldCapacity) {
+            return;
+        }
+
+        mCells = Arrays.copyOf(mCells, capacity);
+        mButtons = Arrays.copyOf(mButtons, capacity);
+        mTexts = Arrays.copyOf(mTexts, capacity);
+
+        for (int i = oldCapacity; i < capacity; i++) {
+            View cell = mInflater.inflate(R.layout.candidate, null);
+            cell.setVisibility(View.GONE);
+            mContainer.addView(cell);
+            mCells[i] = cell;
+            mButtons[i] = cell.findViewById(R.id.text);
+        }
+    }
+
+    /**
+     * @return is the strip changed
+     */
+    public boolean update(List<String> suggestions) {
+        int newCount = suggestions.size();
+        ensureCapacity(newCount);
+        boolean changed = newCount != mCount;
+
+        for (int i = 0; i < newCount; i++) {
+            String text = suggestions.get(i);
+
+            if (!TextUtils.equals(text, mTexts[i])) {
+                mButtons[i].setText(text);
+                mButtons[i].setContentDescription(text);
+                mTexts[i] = text;
+                changed = true;
+            }
+
+            if (i >= mCount) {
+                mCells[i].setVisibility(View.VISIBLE);
+            }
+        }
+
+        for (int i = newCount; i < mCount; i++) {
+            mCells[i].setVisibility(View.GONE);
+        }
+
+        mCount = newCount;
+
+        return changed;
+    }
+
+    public void clear() {
+        for (int i = 0; i < mCount; i++) {
+            mCells[i].setVisibility(View.GONE);
+        }
+
+        mCount = 0;
+    }
+
+    /**
+     * Number of inflated cells, visible or not
+     */
+    public int getCapacity() {
+        return mCells.length;
+    }
+
+    /**
+     * Number of visible cells
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return visible cell or null
+     */
+    public View getCell(int index) {
+        return index >= 0 && index < mCount ? mCells[index] : null;
+    }
+
+    /**
+     * @return text of the visible cell or null
+     */
+    public CharSequence getText(int index) {
+        return index >= 0 && index < mCount ? mButtons[index].getText() : null;
+    }
+
+    public Button getButton(int index) {
+        return index >= 0 && index < mCount ? mButtons[index] : null;
+    }
+}
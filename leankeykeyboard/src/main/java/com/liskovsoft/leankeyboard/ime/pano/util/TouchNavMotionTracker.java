@@ -2,16 +2,29 @@ package com.liskovsoft.leankeyboard.ime.pano.util;
 
 import android.annotation.SuppressLint;
 import android.view.InputDevice;
-import android.view.MotionEvent;
-import android.view.VelocityTracker;
 import android.view.InputDevice.MotionRange;
 
+/**
+ * Per-device gesture state in the device units. Keeps the down point and the recent samples in fixed arrays,
+ * so tracking doesn't allocate (no {@link android.view.MotionEvent} copies, no VelocityTracker).
+ */
 public class TouchNavMotionTracker {
     private static final float MAXIMUM_FLING_VELOCITY = 1270.0F;
     private static final float MINIMUM_FLING_VELOCITY = 200.0F;
+    private static final int HISTORY_SIZE = 20;
+    private static final long HORIZON_MS = 100; // same as the platform VelocityTracker
+    private static final long ASSUME_STOPPED_MS = 40;
+    private final float[] mHistoryX = new float[HISTORY_SIZE];
+    private final float[] mHistoryY = new float[HISTORY_SIZE];
+    private final long[] mHistoryTime = new long[HISTORY_SIZE];
+    private int mHistoryIndex;
+    private int mHistoryCount;
     private float mCurrX;
     private float mCurrY;
-    private MotionEvent mDownEvent;
+    private boolean mHasDown;
+    private float mDownX;
+    private float mDownY;
+    private long mDownTime;
     private final float mMaxFlingVelocityX;
     private final float mMaxFlingVelocityY;
     private final float mMinFlingVelocityX;
@@ -26,7 +39,6 @@ public class TouchNavMotionTracker {
     private float mScrollY;
     private float mVelX;
     private float mVelY;
-    private VelocityTracker mVelocityTracker;
 
     public TouchNavMotionTracker(float resolutionX, float resolutionY, float minScrollDist) {
         if (resolutionX <= 0.0F) {
@@ -77,36 +89,108 @@ public class TouchNavMotionTracker {
         return new TouchNavMotionTracker(resolutionX, resolutionY, minScrollDist);
     }
 
-    public void addMovement(MotionEvent event) {
-        if (mVelocityTracker == null) {
-            mVelocityTracker = VelocityTracker.obtain();
-        }
+    /**
+     * Sample for the velocity, oldest ones are overwritten
+     */
+    public void addMovement(float x, float y, long eventTime) {
+        mHistoryIndex = (mHistoryIndex + 1) % HISTORY_SIZE;
+        mHistoryX[mHistoryIndex] = x;
+        mHistoryY[mHistoryIndex] = y;
+        mHistoryTime[mHistoryIndex] = eventTime;
 
-        mVelocityTracker.addMovement(event);
+        if (mHistoryCount < HISTORY_SIZE) {
+            mHistoryCount++;
+        }
     }
 
     public void clear() {
-        if (mDownEvent != null) {
-            mDownEvent.recycle();
-            mDownEvent = null;
+        mHasDown = false;
+        mHistoryCount = 0;
+    }
+
+    /**
+     * Least squares line over the recent samples (see {@link #HORIZON_MS}), units per second
+     * @return fling or not
+     */
+    public boolean computeVelocity() {
+        int count = getRecentCount();
+        mVelX = Math.min(mMaxFlingVelocityX, getSlope(mHistoryX, count) * 1000);
+        mVelY = Math.min(mMaxFlingVelocityY, getSlope(mHistoryY, count) * 1000);
+        return Math.abs(mVelX) > mMinFlingVelocityX || Math.abs(mVelY) > mMinFlingVelocityY;
+    }
+
+    /**
+     * @return samples within the horizon, pointer is assumed stopped on a long gap
+     */
+    private int getRecentCount() {
+        if (mHistoryCount == 0) {
+            return 0;
         }
 
-        if (mVelocityTracker != null) {
-            mVelocityTracker.recycle();
-            mVelocityTracker = null;
+        long newestTime = mHistoryTime[mHistoryIndex];
+        long prevTime = newestTime;
+        int count = 1;
+
+        for (; count < mHistoryCount; count++) {
+            long time = mHistoryTime[(mHistoryIndex - count + HISTORY_SIZE) % HISTORY_SIZE];
+
+            if (newestTime - time > HORIZON_MS || prevTime - time > ASSUME_STOPPED_MS) {
+                break;
+            }
+
+            prevTime = time;
         }
 
+        return count;
     }
 
-    public boolean computeVelocity() {
-        mVelocityTracker.computeCurrentVelocity(1000);
-        mVelX = Math.min(mMaxFlingVelocityX, mVelocityTracker.getXVelocity());
-        mVelY = Math.min(mMaxFlingVelocityY, mVelocityTracker.getYVelocity());
-        return Math.abs(mVelX) > mMinFlingVelocityX || Math.abs(mVelY) > mMinFlingVelocityY;
+    /**
+     * @return units per ms of the newest <code>count</code> samples
+     */
+    private float getSlope(float[] values, int count) {
+        if (count < 2) {
+            return 0;
+        }
+
+        long baseTime = mHistoryTime[mHistoryIndex];
+        float sumT = 0;
+        float sumV = 0;
+
+        for (int i = 0; i < count; i++) {
+            int index = (mHistoryIndex - i + HISTORY_SIZE) % HISTORY_SIZE;
+            sumT += mHistoryTime[index] - baseTime;
+            sumV += values[index];
+        }
+
+        float meanT = sumT / count;
+        float meanV = sumV / count;
+        float covariance = 0;
+        float variance = 0;
+
+        for (int i = 0; i < count; i++) {
+            int index = (mHistoryIndex - i + HISTORY_SIZE) % HISTORY_SIZE;
+            float t = mHistoryTime[index] - baseTime - meanT;
+            covariance += t * (values[index] - meanV);
+            variance += t * t;
+        }
+
+        return variance > 0 ? covariance / variance : 0;
+    }
+
+    public boolean hasDown() {
+        return mHasDown;
+    }
+
+    public float getDownX() {
+        return mDownX;
     }
 
-    public MotionEvent getDownEvent() {
-        return mDownEvent;
+    public float getDownY() {
+        return mDownY;
+    }
+
+    public long getDownTime() {
+        return mDownTime;
     }
 
     public float getPhysicalX(float x) {
@@ -141,12 +225,14 @@ public class TouchNavMotionTracker {
         return mVelY;
     }
 
-    public void setDownEvent(MotionEvent event) {
-        if (mDownEvent != null && event != mDownEvent) {
-            mDownEvent.recycle();
-        }
-
-        mDownEvent = event;
+    /**
+     * Gesture start (pointers averaged, device units)
+     */
+    public void setDown(float x, float y, long eventTime) {
+        mHasDown = true;
+        mDownX = x;
+        mDownY = y;
+        mDownTime = eventTime;
     }
 
     public boolean setNewValues(float currX, float currY) {
@@ -1,17 +1,21 @@
 package com.liskovsoft.leankeyboard.ime.pano.util;
 
-import android.animation.TimeInterpolator;
 import android.graphics.PointF;
 import android.os.Handler;
 import android.os.Message;
 import android.util.Log;
-import android.util.SparseArray;
 import android.view.InputDevice;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
 import android.view.ViewConfiguration;
-import android.view.animation.AccelerateInterpolator;
 
+import java.util.Arrays;
+
+/**
+ * Maps the touch navigation pad (device units) to the keyboard space (mm and pixels).<br/>
+ * Motion events are handled without allocations: positions are kept in primitives and the
+ * {@link PhysicalMotionEvent}s passed to the {@link TouchEventListener} are reused, copy them to keep.
+ */
 public class TouchNavSpaceTracker {
     private static final boolean DEBUG = false;
     public static final float DEFAULT_DAMPED_SENSITIVITY = 0.5F;
@@ -51,16 +55,21 @@ public class TouchNavSpaceTracker {
     private boolean mLPFEnabled;
     private long mMovementBlockTime;
     private float mPhysicalHeight;
-    private PointF mPhysicalPosition;
+    private float mPhysX;
+    private float mPhysY;
     private float mPhysicalWidth;
     private float mPixelHeight;
     protected TouchNavSpaceTracker.TouchEventListener mPixelListener;
     private float mPixelWidth;
     private float mPixelsPerMm;
-    private PointF mPrevPhysPosition;
+    private float mPrevPhysX;
+    private float mPrevPhysY;
     private float mSensitivity;
-    private TimeInterpolator mSensitivityInterpolator;
-    protected final SparseArray<TouchNavMotionTracker> mTouchParams;
+    private int[] mDeviceIds;
+    private TouchNavMotionTracker[] mTrackers;
+    private int mTrackerCount;
+    private final PhysicalMotionEvent mCurrEvent = new PhysicalMotionEvent(0, 0.0F, 0.0F, 0L);
+    private final PhysicalMotionEvent mDownEvent = new PhysicalMotionEvent(0, 0.0F, 0.0F, 0L);
     private float mUnscaledFlickMaxDistance;
     private float mUnscaledFlickMinDistance;
     private boolean mWasBlocked;
@@ -70,10 +79,9 @@ public class TouchNavSpaceTracker {
     }
 
     public TouchNavSpaceTracker(TouchNavSpaceTracker.KeyEventListener keyListener, TouchNavSpaceTracker.TouchEventListener pixelSpaceListener) {
-        mPrevPhysPosition = new PointF(Float.MIN_VALUE, Float.MIN_VALUE);
-        mPhysicalPosition = new PointF(Float.MIN_VALUE, Float.MIN_VALUE);
+        mPrevPhysX = mPrevPhysY = Float.MIN_VALUE;
+        mPhysX = mPhysY = Float.MIN_VALUE;
         mWasBlocked = false;
-        mSensitivityInterpolator = new AccelerateInterpolator();
         mDampingDuration = DEFAULT_DAMPING_DURATION_MS;
         mDampedSensitivity = DEFAULT_DAMPED_SENSITIVITY;
         mSensitivity = DEFAULT_SENSITIVITY;
@@ -99,7 +107,8 @@ public class TouchNavSpaceTracker {
         };
         mKeyEventListener = keyListener;
         mPixelListener = pixelSpaceListener;
-        mTouchParams = new SparseArray<>(1);
+        mDeviceIds = new int[1];
+        mTrackers = new TouchNavMotionTracker[1];
         mPhysicalWidth = DEFAULT_HORIZONTAL_SIZE_MM;
         mPhysicalHeight = DEFAULT_VERTICAL_SIZE_MM;
         mPixelWidth = 0.0F;
@@ -107,25 +116,26 @@ public class TouchNavSpaceTracker {
         mPixelsPerMm = 0.0F;
     }
 
-    private float calculateSensitivity(MotionEvent var1, MotionEvent var2) {
-        long var4 = var1.getEventTime() - var2.getEventTime();
-        float var3;
-        if (var1.getEventTime() < this.mMovementBlockTime) {
-            var3 = 0.0F;
-            this.mWasBlocked = true;
-        } else if ((float) var4 < this.mDampingDuration) {
-            var3 = this.mSensitivityInterpolator.getInterpolation((float) var4 / this.mDampingDuration);
-            var3 = this.mDampedSensitivity + (this.mSensitivity - this.mDampedSensitivity) * var3;
+    private float calculateSensitivity(long eventTime, long downTime) {
+        long duration = eventTime - downTime;
+        float sensitivity;
+        if (eventTime < mMovementBlockTime) {
+            sensitivity = 0.0F;
+            mWasBlocked = true;
+        } else if ((float) duration < mDampingDuration) {
+            float input = (float) duration / mDampingDuration;
+            // accelerate interpolation
+            sensitivity = mDampedSensitivity + (mSensitivity - mDampedSensitivity) * input * input;
         } else {
-            var3 = this.mSensitivity;
+            sensitivity = mSensitivity;
         }
 
-        if (var3 != 0.0F && this.mWasBlocked) {
-            this.mWasBlocked = false;
-            this.setPhysicalPosition(this.mPhysicalPosition.x, this.mPhysicalPosition.y);
+        if (sensitivity != 0.0F && mWasBlocked) {
+            mWasBlocked = false;
+            setPhysicalPosition(mPhysX, mPhysY);
         }
 
-        return var3;
+        return sensitivity;
     }
 
     private void checkForLongClick(int var1, KeyEvent event) {
@@ -142,16 +152,16 @@ public class TouchNavSpaceTracker {
     }
 
     private void clampPosition() {
-        if (mPhysicalPosition.x < 0.0F) {
-            setPhysicalPosition(0.0F, mPhysicalPosition.y);
-        } else if (mPhysicalPosition.x > mPhysicalWidth) {
-            setPhysicalPosition(mPhysicalWidth, mPhysicalPosition.y);
+        if (mPhysX < 0.0F) {
+            setPhysicalPosition(0.0F, mPhysY);
+        } else if (mPhysX > mPhysicalWidth) {
+            setPhysicalPosition(mPhysicalWidth, mPhysY);
         }
 
-        if (mPhysicalPosition.y < 0.0F) {
-            setPhysicalPosition(mPhysicalPosition.x, 0.0F);
-        } else if (mPhysicalPosition.y > mPhysicalHeight) {
-            setPhysicalPosition(mPhysicalPosition.x, mPhysicalHeight);
+        if (mPhysY < 0.0F) {
+            setPhysicalPosition(mPhysX, 0.0F);
+        } else if (mPhysY > mPhysicalHeight) {
+            setPhysicalPosition(mPhysX, mPhysicalHeight);
         }
     }
 
@@ -195,25 +205,37 @@ public class TouchNavSpaceTracker {
     }
 
     private TouchNavMotionTracker getTrackerForDevice(InputDevice device) {
-        TouchNavMotionTracker var3 = (TouchNavMotionTracker) this.mTouchParams.get(device.getId());
-        TouchNavMotionTracker var2 = var3;
-        if (var3 == null) {
-            var2 = TouchNavMotionTracker.buildTrackerForDevice(device, 0.1F);
-            this.mTouchParams.put(device.getId(), var2);
+        int deviceId = device.getId();
+
+        // usually a single pad, linear search is fine
+        for (int i = 0; i < mTrackerCount; i++) {
+            if (mDeviceIds[i] == deviceId) {
+                return mTrackers[i];
+            }
         }
 
-        return var2;
+        if (mTrackerCount == mTrackers.length) {
+            mDeviceIds = Arrays.copyOf(mDeviceIds, mTrackerCount * 2);
+            mTrackers = Arrays.copyOf(mTrackers, mTrackerCount * 2);
+        }
+
+        TouchNavMotionTracker tracker = TouchNavMotionTracker.buildTrackerForDevice(device, 0.1F);
+        mDeviceIds[mTrackerCount] = deviceId;
+        mTrackers[mTrackerCount] = tracker;
+        mTrackerCount++;
+
+        return tracker;
     }
 
     private void setPhysicalSizeInternal(float var1, float var2) {
         this.mPhysicalWidth = var1;
         this.mPhysicalHeight = var2;
-        if (this.mPhysicalPosition.x > this.mPhysicalWidth) {
-            this.mPhysicalPosition.x = this.mPhysicalWidth;
+        if (this.mPhysX > this.mPhysicalWidth) {
+            this.mPhysX = this.mPhysicalWidth;
         }
 
-        if (this.mPhysicalPosition.y > this.mPhysicalHeight) {
-            this.mPhysicalPosition.y = this.mPhysicalHeight;
+        if (this.mPhysY > this.mPhysicalHeight) {
+            this.mPhysY = this.mPhysicalHeight;
         }
 
     }
@@ -245,11 +267,31 @@ public class TouchNavSpaceTracker {
     }
 
     public PointF getCurrentPhysicalPosition() {
-        return new PointF(this.mPhysicalPosition.x, this.mPhysicalPosition.y);
+        return getCurrentPhysicalPosition(new PointF());
+    }
+
+    /**
+     * @param out receives the position
+     * @return out
+     */
+    public PointF getCurrentPhysicalPosition(PointF out) {
+        out.x = mPhysX;
+        out.y = mPhysY;
+        return out;
     }
 
     public PointF getCurrentPixelPosition() {
-        return new PointF(this.getPixelX(this.mPhysicalPosition.x), this.getPixelY(this.mPhysicalPosition.y));
+        return getCurrentPixelPosition(new PointF());
+    }
+
+    /**
+     * @param out receives the position
+     * @return out
+     */
+    public PointF getCurrentPixelPosition(PointF out) {
+        out.x = getPixelX(mPhysX);
+        out.y = getPixelY(mPhysY);
+        return out;
     }
 
     public boolean onGenericMotionEvent(MotionEvent event) {
@@ -259,22 +301,10 @@ public class TouchNavSpaceTracker {
                 return false;
             }
 
-            TouchNavMotionTracker tracker = this.getTrackerForDevice(device);
+            TouchNavMotionTracker tracker = getTrackerForDevice(device);
             int action = event.getActionMasked();
-            tracker.addMovement(event);
-            boolean pointerUp;
-            if ((action & 255) == MotionEvent.ACTION_POINTER_UP) {
-                pointerUp = true;
-            } else {
-                pointerUp = false;
-            }
-
-            int skipIndex;
-            if (pointerUp) {
-                skipIndex = event.getActionIndex();
-            } else {
-                skipIndex = -1;
-            }
+            boolean pointerUp = action == MotionEvent.ACTION_POINTER_UP;
+            int skipIndex = pointerUp ? event.getActionIndex() : -1;
 
             float sumX = 0.0F;
             float sumY = 0.0F;
@@ -287,139 +317,124 @@ public class TouchNavSpaceTracker {
                 }
             }
 
-            int div;
-            if (pointerUp) {
-                div = count - 1;
-            } else {
-                div = count;
-            }
+            int div = pointerUp ? count - 1 : count;
 
-            float currX = sumX / (float) div;
-            float currY = sumY / (float) div;
-            TouchNavSpaceTracker.PhysicalMotionEvent pe = new TouchNavSpaceTracker.PhysicalMotionEvent(event.getDeviceId(), tracker.getPhysicalX
-                    (currX), tracker.getPhysicalX(currY), event.getEventTime());
-            boolean var18 = false;
-            boolean var12 = false;
-            boolean var11;
-            MotionEvent var15;
-            TouchNavSpaceTracker.PhysicalMotionEvent var16;
-            switch (action & 255) {
-                case MotionEvent.ACTION_DOWN:
-                    if (mLPFEnabled) {
-                        mLPFCurrX = currX;
-                        mLPFCurrY = currY;
-                    }
+            return onTouchNavigation(tracker, event.getDeviceId(), action, sumX / (float) div, sumY / (float) div, event.getEventTime());
+        }
 
-                    tracker.setNewValues(currX, currY);
-                    tracker.updatePrevValues();
-                    tracker.setDownEvent(MotionEvent.obtain(event));
-                    if (mPixelListener != null) {
-                        return mPixelListener.onDown(pe);
-                    }
-                    break;
-                case MotionEvent.ACTION_UP:
-                    var15 = tracker.getDownEvent();
-                    if (var15 == null) {
-                        Log.w("TouchNavSpaceTracker", "Up event without down event");
-                        return false | this.mPixelListener.onUp(pe, this.getPixelX(this.mPhysicalPosition.x),
-                                this.getPixelY(this.mPhysicalPosition.y));
-                    }
+        return false;
+    }
+
+    /**
+     * @param currX pointers average, device units
+     * @param currY pointers average, device units
+     */
+    boolean onTouchNavigation(TouchNavMotionTracker tracker, int deviceId, int action, float currX, float currY, long eventTime) {
+        if (action == MotionEvent.ACTION_DOWN) {
+            tracker.clear();
+        }
+
+        tracker.addMovement(currX, currY, eventTime);
+        mCurrEvent.set(deviceId, tracker.getPhysicalX(currX), tracker.getPhysicalY(currY), eventTime);
+        boolean handled = false;
+
+        switch (action) {
+            case MotionEvent.ACTION_DOWN:
+                if (mLPFEnabled) {
+                    mLPFCurrX = currX;
+                    mLPFCurrY = currY;
+                }
+
+                tracker.setNewValues(currX, currY);
+                tracker.updatePrevValues();
+                tracker.setDown(currX, currY, eventTime);
+                if (mPixelListener != null) {
+                    return mPixelListener.onDown(mCurrEvent);
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+                if (!tracker.hasDown()) {
+                    Log.w(TAG, "Up event without down event");
+                    return mPixelListener != null && mPixelListener.onUp(mCurrEvent, getPixelX(mPhysX), getPixelY(mPhysY));
+                }
+
+                if (mPixelListener != null) {
+                    setDownEvent(tracker, deviceId);
 
-                    var16 = new TouchNavSpaceTracker.PhysicalMotionEvent(event.getDeviceId(), tracker.getPhysicalX(var15.getX()), tracker.getPhysicalY
-                            (var15.getY()), var15.getEventTime());
-                    pointerUp = var18;
                     if (tracker.computeVelocity()) {
-                        pointerUp = var18;
-                        if (this.mPixelListener != null) {
-                            sumY = this.getPixelX(tracker.getPhysicalX(tracker.getXVel()));
-                            sumX = this.getPixelY(tracker.getPhysicalY(tracker.getYVel()));
-                            var18 = false | this.mPixelListener.onFling(var16, pe, sumY, sumX);
-                            pointerUp = var18;
-                            if (pe.getTime() - var16.getTime() < this.mFlickMaxDuration) {
-                                sumY = pe.getX() - var16.getX();
-                                sumX = pe.getY() - var16.getY();
-                                currX = sumY * sumY + sumX * sumX;
-                                pointerUp = var18;
-                                if (currX > this.mFlickMinSquared) {
-                                    pointerUp = var18;
-                                    if (currX < this.mFlickMaxSquared) {
-                                        this.mPixelListener.onFlick(var16, pe, this.getDpadDirection(sumY, sumX), this.getPrimaryDpadDirection
-                                                (sumY, sumX));
-                                        pointerUp = var18;
-                                    }
-                                }
+                        float velX = getPixelX(tracker.getPhysicalX(tracker.getXVel()));
+                        float velY = getPixelY(tracker.getPhysicalY(tracker.getYVel()));
+                        handled = mPixelListener.onFling(mDownEvent, mCurrEvent, velX, velY);
+
+                        if (mCurrEvent.getTime() - mDownEvent.getTime() < mFlickMaxDuration) {
+                            float dx = mCurrEvent.getX() - mDownEvent.getX();
+                            float dy = mCurrEvent.getY() - mDownEvent.getY();
+                            float distSquared = dx * dx + dy * dy;
+                            if (distSquared > mFlickMinSquared && distSquared < mFlickMaxSquared) {
+                                mPixelListener.onFlick(mDownEvent, mCurrEvent, getDpadDirection(dx, dy), getPrimaryDpadDirection(dx, dy));
                             }
                         }
                     }
 
-                    sumY = this.getPixelX(this.mPhysicalPosition.x);
-                    sumX = this.getPixelY(this.mPhysicalPosition.y);
-                    var11 = this.mPixelListener.onUp(pe, sumY, sumX);
-                    tracker.clear();
-                    return pointerUp | var11;
-                case MotionEvent.ACTION_MOVE:
-                    if (tracker.getDownEvent() == null) {
-                        tracker.setDownEvent(MotionEvent.obtain(event));
-                        if (this.mLPFEnabled) {
-                            this.mLPFCurrX = currX;
-                            this.mLPFCurrY = currY;
-                        }
-                    }
+                    handled |= mPixelListener.onUp(mCurrEvent, getPixelX(mPhysX), getPixelY(mPhysY));
+                }
 
-                    sumX = currX;
-                    sumY = currY;
-                    if (this.mLPFEnabled) {
-                        this.mLPFCurrX = this.mLPFCurrX * 0.75F + DEFAULT_LPF_COEFF * currX;
-                        this.mLPFCurrY = this.mLPFCurrY * 0.75F + DEFAULT_LPF_COEFF * currY;
-                        sumX = this.mLPFCurrX;
-                        sumY = this.mLPFCurrY;
+                tracker.clear();
+                return handled;
+            case MotionEvent.ACTION_MOVE:
+                if (!tracker.hasDown()) {
+                    tracker.setDown(currX, currY, eventTime);
+                    if (mLPFEnabled) {
+                        mLPFCurrX = currX;
+                        mLPFCurrY = currY;
                     }
+                }
 
-                    if (tracker.setNewValues(sumX, sumY)) {
-                        sumY = tracker.getPhysicalX(tracker.getScrollX());
-                        sumX = tracker.getPhysicalY(tracker.getScrollY());
-                        currX = this.calculateSensitivity(event, tracker.getDownEvent());
-                        this.mPhysicalPosition.x = this.mPrevPhysPosition.x + this.getScaledValue(sumY, currX);
-                        this.mPhysicalPosition.y = this.mPrevPhysPosition.y + this.getScaledValue(sumX, currX);
-                        this.clampPosition();
-                        if (!this.mPhysicalPosition.equals(this.mPrevPhysPosition)) {
-                            var11 = var12;
-                            if (this.mPixelListener != null) {
-                                var11 = var12;
-                                if (this.mPixelHeight > 0.0F) {
-                                    var11 = var12;
-                                    if (this.mPixelWidth > 0.0F) {
-                                        var15 = tracker.getDownEvent();
-                                        var16 = new TouchNavSpaceTracker.PhysicalMotionEvent(event.getDeviceId(), tracker.getPhysicalX(var15.getX()),
-                                                tracker.getPhysicalY(var15.getY()), var15.getEventTime());
-                                        sumY = this.getPixelX(this.mPhysicalPosition.x);
-                                        sumX = this.getPixelY(this.mPhysicalPosition.y);
-                                        var11 = false | this.mPixelListener.onMove(var16, pe, sumY, sumX);
-                                    }
-                                }
-                            }
+                float x = currX;
+                float y = currY;
+                if (mLPFEnabled) {
+                    mLPFCurrX = mLPFCurrX * (1.0F - DEFAULT_LPF_COEFF) + DEFAULT_LPF_COEFF * currX;
+                    mLPFCurrY = mLPFCurrY * (1.0F - DEFAULT_LPF_COEFF) + DEFAULT_LPF_COEFF * currY;
+                    x = mLPFCurrX;
+                    y = mLPFCurrY;
+                }
 
-                            this.mPrevPhysPosition.set(this.mPhysicalPosition);
-                        } else {
-                            var11 = false | true;
-                        }
+                if (!tracker.setNewValues(x, y)) {
+                    return true;
+                }
 
-                        tracker.updatePrevValues();
-                        return var11;
+                float sensitivity = calculateSensitivity(eventTime, tracker.getDownTime());
+                mPhysX = mPrevPhysX + getScaledValue(tracker.getPhysicalX(tracker.getScrollX()), sensitivity);
+                mPhysY = mPrevPhysY + getScaledValue(tracker.getPhysicalY(tracker.getScrollY()), sensitivity);
+                clampPosition();
+                if (mPhysX != mPrevPhysX || mPhysY != mPrevPhysY) {
+                    if (mPixelListener != null && mPixelHeight > 0.0F && mPixelWidth > 0.0F) {
+                        setDownEvent(tracker, deviceId);
+                        handled = mPixelListener.onMove(mDownEvent, mCurrEvent, getPixelX(mPhysX), getPixelY(mPhysY));
                     }
 
-                    return false | true;
-                case MotionEvent.ACTION_CANCEL:
-                    tracker.clear();
-                    return false;
-                default:
-                    return false;
-            }
+                    mPrevPhysX = mPhysX;
+                    mPrevPhysY = mPhysY;
+                } else {
+                    handled = true;
+                }
+
+                tracker.updatePrevValues();
+                return handled;
+            case MotionEvent.ACTION_CANCEL:
+                tracker.clear();
+                return false;
+            default:
+                return false;
         }
 
         return false;
     }
 
+    private void setDownEvent(TouchNavMotionTracker tracker, int deviceId) {
+        mDownEvent.set(deviceId, tracker.getPhysicalX(tracker.getDownX()), tracker.getPhysicalY(tracker.getDownY()), tracker.getDownTime());
+    }
+
     public boolean onKeyDown(int keyCode, KeyEvent event) {
         if (event != null && event.getDevice() != null && (event.getDevice().getSources() & InputDevice.SOURCE_TOUCH_NAVIGATION) == InputDevice
                 .SOURCE_TOUCH_NAVIGATION) {
@@ -471,10 +486,10 @@ public class TouchNavSpaceTracker {
     }
 
     public void setPhysicalPosition(float x, float y) {
-        mPhysicalPosition.x = x;
-        mPhysicalPosition.y = y;
-        mPrevPhysPosition.x = x;
-        mPrevPhysPosition.y = y;
+        mPhysX = x;
+        mPhysY = y;
+        mPrevPhysX = x;
+        mPrevPhysY = y;
         clampPosition();
     }
 
@@ -515,19 +530,24 @@ public class TouchNavSpaceTracker {
         boolean onKeyUp(int keyCode, KeyEvent event);
     }
 
+    /**
+     * Position in mm. Instances passed to the listeners are reused by the tracker.
+     */
     public static class PhysicalMotionEvent {
-        private final int mDeviceId;
-        private final long mTime;
-        // $FF: renamed from: mX float
-        private final float field_6;
-        // $FF: renamed from: mY float
-        private final float field_7;
+        private int mDeviceId;
+        private long mTime;
+        private float mX;
+        private float mY;
+
+        public PhysicalMotionEvent(int deviceId, float x, float y, long time) {
+            set(deviceId, x, y, time);
+        }
 
-        public PhysicalMotionEvent(int var1, float var2, float var3, long var4) {
-            this.mDeviceId = var1;
-            this.field_6 = var2;
-            this.field_7 = var3;
-            this.mTime = var4;
+        void set(int deviceId, float x, float y, long time) {
+            mDeviceId = deviceId;
+            mX = x;
+            mY = y;
+            mTime = time;
         }
 
         public final InputDevice getDevice() {
@@ -543,11 +563,11 @@ public class TouchNavSpaceTracker {
         }
 
         public final float getX() {
-            return this.field_6;
+            return mX;
         }
 
         public final float getY() {
-            return this.field_7;
+            return mY;
         }
     }
 
@@ -0,0 +1,92 @@
+package com.liskovsoft.leankeyboard.service;
+
+import android.text.TextUtils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Foreground component as reported by {@link SystemStatusBarService} window state events.<br/>
+ * Listeners are called on the accessibility (main) thread and only when the component actually changes.
+ */
+public final class ForegroundComponentTracker {
+    private static ForegroundComponentTracker sInstance;
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+    private volatile boolean mConnected;
+    private String mPackageName;
+    private String mClassName;
+
+    public interface Listener {
+        void onForegroundComponentChanged(String packageName, String className);
+
+        /**
+         * Events source (accessibility service) started or stopped
+         */
+        void onTrackingStateChanged(boolean connected);
+    }
+
+    public static synchronized ForegroundComponentTracker instance() {
+        if (sInstance == null)
+            sInstance = new ForegroundComponentTracker();
+        return sInstance;
+    }
+
+    public void addListener(Listener listener) {
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Whether events are delivered. Pollers may stay idle while true.
+     */
+    public boolean isConnected() {
+        return mConnected;
+    }
+
+    public String getPackageName() {
+        return mPackageName;
+    }
+
+    public String getClassName() {
+        return mClassName;
+    }
+
+    void setConnected(boolean connected) {
+        if (mConnected == connected) {
+            return;
+        }
+
+        mConnected = connected;
+
+        if (!connected) {
+            mPackageName = null;
+            mClassName = null;
+        }
+
+        for (Listener listener : mListeners) {
+            listener.onTrackingStateChanged(connected);
+        }
+    }
+
+    void onWindowStateChanged(String packageName, String className) {
+        if (TextUtils.isEmpty(packageName) || TextUtils.isEmpty(className)) {
+            return;
+        }
+
+        if (packageName.equals(mPackageName) && className.equals(mClassName)) {
+            return;
+        }
+
+        mPackageName = packageName;
+        mClassName = className;
+
+        for (Listener listener : mListeners) {
+            listener.onForegroundComponentChanged(packageName, className);
+        }
+    }
+}
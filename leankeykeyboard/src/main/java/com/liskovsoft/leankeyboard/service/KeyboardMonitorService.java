@@ -1,12 +1,14 @@
 package com.liskovsoft.leankeyboard.service;
 
 import android.app.Service;
+import android.content.ComponentName;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
 import android.util.Log;
+import android.util.LruCache;
 import android.view.inputmethod.InputMethodManager;
 import android.content.Context;
 import android.app.ActivityManager;
@@ -17,22 +19,35 @@ import android.content.pm.ResolveInfo;
 import android.view.inputmethod.EditorInfo;
 import android.view.inputmethod.InputMethodInfo;
 import android.view.inputmethod.InputMethodSubtype;
+import com.liskovsoft.leankeyboard.ime.LeanbackImeService;
+import com.liskovsoft.leankeyboard.utils.ComponentRuleMatcher;
+import com.liskovsoft.leankeyboard.utils.SecureSettingsReconciler;
+import com.slideos.system.R;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
-public class KeyboardMonitorService extends Service {
+/**
+ * Shows keyboard when an app that likely needs text input comes to foreground.<br/>
+ * Driven by {@link ForegroundComponentTracker} (accessibility events). Polling is used only while
+ * the accessibility service isn't running.
+ */
+public class KeyboardMonitorService extends Service implements ForegroundComponentTracker.Listener {
     private static final String TAG = "KeyboardMonitorService";
     private static final long MONITOR_INTERVAL_MS = 2000; // 2 seconds
-    private static final String ROCKBOX_PACKAGE = "org.rockbox";
+    private static final int MAX_CACHED_VERDICTS = 64;
     
     private Handler mHandler;
     private Runnable mMonitorRunnable;
+    private ForegroundComponentTracker mTracker;
+    private ComponentRuleMatcher mRuleMatcher;
+    private final LruCache<ComponentName, Integer> mVerdicts = new LruCache<>(MAX_CACHED_VERDICTS);
+    private ComponentName mLastComponent;
+    private boolean mIsPolling = false;
     private ActivityManager mActivityManager;
     private PackageManager mPackageManager;
     private InputMethodManager mInputMethodManager;
-    private ScheduledExecutorService mExecutor;
+    private SecureSettingsReconciler mSettings;
+    private String mImeId;
     private boolean mIsMonitoring = false;
     
     @Override
@@ -44,13 +59,22 @@ public class KeyboardMonitorService extends Service {
         mActivityManager = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
         mPackageManager = getPackageManager();
         mInputMethodManager = (InputMethodManager) getSystemService(Context.INPUT_METHOD_SERVICE);
-        mExecutor = Executors.newSingleThreadScheduledExecutor();
+        mSettings = SecureSettingsReconciler.instance(this);
+        mImeId = new ComponentName(this, LeanbackImeService.class).flattenToString();
+        mTracker = ForegroundComponentTracker.instance();
+        mRuleMatcher = ComponentRuleMatcher.compile(getResources().getStringArray(R.array.text_input_rules));
         
+        // Fallback: used only while accessibility events aren't available
         mMonitorRunnable = new Runnable() {
             @Override
             public void run() {
+                if (mTracker.isConnected()) {
+                    stopPolling();
+                    return;
+                }
+
                 checkForTextInputOpportunities();
-                if (mIsMonitoring) {
+                if (mIsPolling) {
                     mHandler.postDelayed(this, MONITOR_INTERVAL_MS);
                 }
             }
@@ -77,7 +101,15 @@ public class KeyboardMonitorService extends Service {
         if (!mIsMonitoring) {
             mIsMonitoring = true;
             Log.d(TAG, "Starting keyboard monitoring");
-            mHandler.post(mMonitorRunnable);
+            mTracker.addListener(this);
+
+            if (mTracker.isConnected()) {
+                if (mTracker.getPackageName() != null) {
+                    onForegroundComponentChanged(mTracker.getPackageName(), mTracker.getClassName());
+                }
+            } else {
+                startPolling();
+            }
         }
     }
     
@@ -85,9 +117,78 @@ public class KeyboardMonitorService extends Service {
         if (mIsMonitoring) {
             mIsMonitoring = false;
             Log.d(TAG, "Stopping keyboard monitoring");
+            mTracker.removeListener(this);
+            stopPolling();
+        }
+    }
+
+    private void startPolling() {
+        if (!mIsPolling) {
+            mIsPolling = true;
+            Log.d(TAG, "Accessibility events aren't available. Polling foreground activity...");
+            mHandler.post(mMonitorRunnable);
+        }
+    }
+
+    private void stopPolling() {
+        if (mIsPolling) {
+            mIsPolling = false;
+            Log.d(TAG, "Polling stopped");
             mHandler.removeCallbacks(mMonitorRunnable);
         }
     }
+
+    @Override
+    public void onForegroundComponentChanged(String packageName, String className) {
+        onForegroundComponent(packageName, className);
+    }
+
+    @Override
+    public void onTrackingStateChanged(boolean connected) {
+        if (!mIsMonitoring) {
+            return;
+        }
+
+        if (connected) {
+            stopPolling();
+        } else {
+            startPolling();
+        }
+    }
+
+    /**
+     * Evaluates rules only when the component is changed. Verdicts are memoized per component.
+     */
+    private void onForegroundComponent(String packageName, String className) {
+        ComponentName component = new ComponentName(packageName, className);
+
+        if (component.equals(mLastComponent)) {
+            return;
+        }
+
+        Integer verdict = mVerdicts.get(component);
+
+        if (verdict == null) {
+            // Rules: R.array.text_input_rules (search screens, text fields, messengers etc)
+            verdict = mRuleMatcher.classify(packageName, className);
+
+            Log.d(TAG, "Current activity: " + component.flattenToShortString() + " (verdict: " + verdict + ")");
+
+            mVerdicts.put(component, verdict);
+        }
+
+        // Denied components (e.g. our own windows) are transparent: returning from them isn't a change
+        if (verdict == ComponentRuleMatcher.VERDICT_DENY) {
+            return;
+        }
+
+        mLastComponent = component;
+
+        // Show keyboard if it's a search activity or has text input
+        if (verdict == ComponentRuleMatcher.VERDICT_ALLOW) {
+            showKeyboard();
+        }
+    }
     
     private void checkForTextInputOpportunities() {
         try {
@@ -102,29 +203,7 @@ public class KeyboardMonitorService extends Service {
                 return;
             }
             
-            String packageName = topTask.topActivity.getPackageName();
-            String className = topTask.topActivity.getClassName();
-            
-            // Skip if it's the rockbox app or our own app
-            if (ROCKBOX_PACKAGE.equals(packageName) || 
-                "com.slideos.system".equals(packageName) ||
-                "com.liskovsoft.leankeyboard".equals(packageName)) {
-                return;
-            }
-            
-            // Check if this is a search activity
-            boolean isSearchActivity = isSearchActivity(packageName, className);
-            
-            // Check if this activity has text input fields
-            boolean hasTextInput = hasTextInputFields(packageName, className);
-            
-            Log.d(TAG, "Current activity: " + packageName + "/" + className + 
-                  " (search: " + isSearchActivity + ", textInput: " + hasTextInput + ")");
-            
-            // Show keyboard if it's a search activity or has text input
-            if (isSearchActivity || hasTextInput) {
-                showKeyboard();
-            }
+            onForegroundComponent(topTask.topActivity.getPackageName(), topTask.topActivity.getClassName());
             
         } catch (SecurityException e) {
             Log.w(TAG, "Security exception checking for text input opportunities - permissions may be needed", e);
@@ -133,72 +212,6 @@ public class KeyboardMonitorService extends Service {
         }
     }
     
-    private boolean isSearchActivity(String packageName, String className) {
-        try {
-            // Check if the activity name contains "search"
-            if (className.toLowerCase().contains("search")) {
-                return true;
-            }
-            
-            // Check for common search-related patterns
-            String lowerClassName = className.toLowerCase();
-            if (lowerClassName.contains("browser") || 
-                lowerClassName.contains("webview") ||
-                lowerClassName.contains("chrome") ||
-                lowerClassName.contains("firefox") ||
-                lowerClassName.contains("youtube") ||
-                lowerClassName.contains("playstore") ||
-                lowerClassName.contains("market")) {
-                return true;
-            }
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error checking if activity is search activity", e);
-        }
-        
-        return false;
-    }
-    
-    private boolean hasTextInputFields(String packageName, String className) {
-        try {
-            // Check if the activity name contains text input related terms
-            String lowerClassName = className.toLowerCase();
-            if (lowerClassName.contains("edit") || 
-                lowerClassName.contains("input") || 
-                lowerClassName.contains("text") ||
-                lowerClassName.contains("entry") ||
-                lowerClassName.contains("form") ||
-                lowerClassName.contains("compose") ||
-                lowerClassName.contains("message") ||
-                lowerClassName.contains("chat") ||
-                lowerClassName.contains("note") ||
-                lowerClassName.contains("memo")) {
-                return true;
-            }
-            
-            // Check for common apps that typically have text input
-            String lowerPackageName = packageName.toLowerCase();
-            if (lowerPackageName.contains("whatsapp") ||
-                lowerPackageName.contains("telegram") ||
-                lowerPackageName.contains("messenger") ||
-                lowerPackageName.contains("gmail") ||
-                lowerPackageName.contains("email") ||
-                lowerPackageName.contains("notes") ||
-                lowerPackageName.contains("memo") ||
-                lowerPackageName.contains("calculator") ||
-                lowerPackageName.contains("browser") ||
-                lowerPackageName.contains("chrome") ||
-                lowerPackageName.contains("firefox")) {
-                return true;
-            }
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error checking if activity has text input fields", e);
-        }
-        
-        return false;
-    }
-    
     private void showKeyboard() {
         try {
             // Check if our IME is enabled
@@ -257,22 +270,8 @@ public class KeyboardMonitorService extends Service {
     
     private void enableOurIme() {
         try {
-            // Use root to enable our IME if available
-            String command = "settings put secure enabled_input_methods com.liskovsoft.leankeyboard/.ime.LeanbackImeService";
-            
-            mExecutor.schedule(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        Process process = Runtime.getRuntime().exec("su -c '" + command + "'");
-                        process.waitFor();
-                        Log.d(TAG, "Enabled our IME via root");
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error enabling IME via root", e);
-                    }
-                }
-            }, 0, TimeUnit.MILLISECONDS);
-            
+            // Use root to enable our IME if available (appended to the list, see SecureSettingsReconciler)
+            mSettings.ensure(Collections.emptyMap(), mImeId);
         } catch (Exception e) {
             Log.e(TAG, "Error enabling our IME", e);
         }
@@ -287,9 +286,6 @@ public class KeyboardMonitorService extends Service {
     public void onDestroy() {
         Log.d(TAG, "KeyboardMonitorService destroyed");
         stopMonitoring();
-        if (mExecutor != null) {
-            mExecutor.shutdown();
-        }
         super.onDestroy();
     }
 } 
\ No newline at end of file
@@ -52,6 +52,9 @@ public class SystemStatusBarService extends AccessibilityService {
             
             // Update title based on current app
             updateStatusBarTitle(packageName, className);
+
+            // Feed text input detection (see KeyboardMonitorService)
+            ForegroundComponentTracker.instance().onWindowStateChanged(packageName, className);
         }
     }
     
@@ -64,6 +67,7 @@ public class SystemStatusBarService extends AccessibilityService {
     protected void onServiceConnected() {
         super.onServiceConnected();
         initializeStatusBar();
+        ForegroundComponentTracker.instance().setConnected(true);
     }
     
     private void initializeStatusBar() {
@@ -264,6 +268,7 @@ public class SystemStatusBarService extends AccessibilityService {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        ForegroundComponentTracker.instance().setConnected(false);
         if (mStatusBarView != null && mWindowManager != null) {
             try {
                 mWindowManager.removeView(mStatusBarView);
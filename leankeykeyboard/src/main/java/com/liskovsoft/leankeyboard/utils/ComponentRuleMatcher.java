@@ -0,0 +1,240 @@
+package com.liskovsoft.leankeyboard.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Classifies app components by case-insensitive substring rules.<br/>
+ * Rule format: <code>target|pattern|action</code>, where target is <code>package</code> or <code>class</code>
+ * and action is <code>allow</code> or <code>deny</code> (deny wins).<br/>
+ * All patterns of a target are compiled into one Aho-Corasick automaton (dense DFA),
+ * so classification cost depends on the name length, not on the number of rules.
+ * No allocations after compilation.
+ */
+public final class ComponentRuleMatcher {
+    public static final int VERDICT_NONE = 0;
+    public static final int VERDICT_ALLOW = 1;
+    public static final int VERDICT_DENY = 1 << 1;
+    private static final String TARGET_PACKAGE = "package";
+    private static final String TARGET_CLASS = "class";
+    private static final String ACTION_ALLOW = "allow";
+    private static final String ACTION_DENY = "deny";
+    private final Automaton mPackageRules;
+    private final Automaton mClassRules;
+
+    private ComponentRuleMatcher(Automaton packageRules, Automaton classRules) {
+        mPackageRules = packageRules;
+        mClassRules = classRules;
+    }
+
+    /**
+     * @param rules rule table (e.g. from <code>R.array.text_input_rules</code>)
+     * @throws IllegalArgumentException on malformed rule
+     */
+    public static ComponentRuleMatcher compile(String[] rules) {
+        Automaton.Builder packageRules = new Automaton.Builder();
+        Automaton.Builder classRules = new Automaton.Builder();
+
+        for (String rule : rules) {
+            String[] parts = rule.split("\\|");
+
+            if (parts.length != 3 || parts[1].isEmpty()) {
+                throw new IllegalArgumentException("Malformed rule: " + rule);
+            }
+
+            int verdict;
+
+            if (ACTION_ALLOW.equals(parts[2])) {
+                verdict = VERDICT_ALLOW;
+            } else if (ACTION_DENY.equals(parts[2])) {
+                verdict = VERDICT_DENY;
+            } else {
+                throw new IllegalArgumentException("Unknown action: " + rule);
+            }
+
+            if (TARGET_PACKAGE.equals(parts[0])) {
+                packageRules.add(parts[1], verdict);
+            } else if (TARGET_CLASS.equals(parts[0])) {
+                classRules.add(parts[1], verdict);
+            } else {
+                throw new IllegalArgumentException("Unknown target: " + rule);
+            }
+        }
+
+        return new ComponentRuleMatcher(packageRules.build(), classRules.build());
+    }
+
+    /**
+     * @return {@link #VERDICT_DENY}, {@link #VERDICT_ALLOW} or {@link #VERDICT_NONE}
+     */
+    public int classify(String packageName, String className) {
+        int flags = mPackageRules.match(packageName, VERDICT_NONE);
+
+        if ((flags & VERDICT_DENY) == 0) {
+            flags = mClassRules.match(className, flags);
+        }
+
+        if ((flags & VERDICT_DENY) != 0) {
+            return VERDICT_DENY;
+        }
+
+        return flags;
+    }
+
+    private static final class Automaton {
+        private static final int ASCII_SIZE = 128;
+        /**
+         * ASCII char to alphabet class. Class 0 - char that doesn't occur in any pattern.
+         */
+        private final int[] mAsciiClasses;
+        /**
+         * Sorted non-ASCII pattern chars and their classes
+         */
+        private final char[] mOtherChars;
+        private final int[] mOtherClasses;
+        private final int mAlphabetSize;
+        /**
+         * Transition table: state * alphabet size + class
+         */
+        private final int[] mNext;
+        /**
+         * Verdict flags of all patterns ending in the state (merged along failure links)
+         */
+        private final int[] mOutput;
+
+        private Automaton(int[] asciiClasses, char[] otherChars, int[] otherClasses, int alphabetSize, int[] next, int[] output) {
+            mAsciiClasses = asciiClasses;
+            mOtherChars = otherChars;
+            mOtherClasses = otherClasses;
+            mAlphabetSize = alphabetSize;
+            mNext = next;
+            mOutput = output;
+        }
+
+        int match(String text, int flags) {
+            if (text == null || mOutput.length == 1) {
+                return flags;
+            }
+
+            int state = 0;
+
+            for (int i = 0; i < text.length(); i++) {
+                state = mNext[state * mAlphabetSize + classOf(Character.toLowerCase(text.charAt(i)))];
+                flags |= mOutput[state];
+
+                if ((flags & VERDICT_DENY) != 0) {
+                    break;
+                }
+            }
+
+            return flags;
+        }
+
+        private int classOf(char c) {
+            if (c < ASCII_SIZE) {
+                return mAsciiClasses[c];
+            }
+
+            int idx = Arrays.binarySearch(mOtherChars, c);
+
+            return idx >= 0 ? mOtherClasses[idx] : 0;
+        }
+
+        private static final class Builder {
+            private final List<Map<Character, Integer>> mGoto = new ArrayList<>();
+            private final List<Integer> mOutput = new ArrayList<>();
+            private final TreeSet<Character> mChars = new TreeSet<>();
+
+            Builder() {
+                newState(); // root
+            }
+
+            void add(String pattern, int verdict) {
+                int state = 0;
+
+                for (int i = 0; i < pattern.length(); i++) {
+                    char c = Character.toLowerCase(pattern.charAt(i));
+                    mChars.add(c);
+                    Integer next = mGoto.get(state).get(c);
+
+                    if (next == null) {
+                        next = newState();
+                        mGoto.get(state).put(c, next);
+                    }
+
+                    state = next;
+                }
+
+                mOutput.set(state, mOutput.get(state) | verdict);
+            }
+
+            Automaton build() {
+                // alphabet
+                int[] asciiClasses = new int[ASCII_SIZE];
+                List<Character> otherCharList = new ArrayList<>();
+                int alphabetSize = 1;
+                Map<Character, Integer> classes = new HashMap<>();
+
+                for (char c : mChars) {
+                    classes.put(c, alphabetSize);
+
+                    if (c < ASCII_SIZE) {
+                        asciiClasses[c] = alphabetSize;
+                    } else {
+                        otherCharList.add(c);
+                    }
+
+                    alphabetSize++;
+                }
+
+                char[] otherChars = new char[otherCharList.size()];
+                int[] otherClasses = new int[otherChars.length];
+
+                for (int i = 0; i < otherChars.length; i++) {
+                    otherChars[i] = otherCharList.get(i);
+                    otherClasses[i] = classes.get(otherChars[i]);
+                }
+
+                // failure links in BFS order, then full transition table
+                int stateCount = mGoto.size();
+                int[] next = new int[stateCount * alphabetSize];
+                int[] output = new int[stateCount];
+                int[] fail = new int[stateCount];
+                int[] queue = new int[stateCount];
+                int head = 0;
+                int tail = 0;
+                queue[tail++] = 0;
+
+                while (head < tail) {
+                    int state = queue[head++];
+                    output[state] = mOutput.get(state) | output[fail[state]];
+
+                    for (Map.Entry<Character, Integer> entry : classes.entrySet()) {
+                        int cls = entry.getValue();
+                        Integer child = mGoto.get(state).get(entry.getKey());
+
+                        if (child != null) {
+                            fail[child] = state == 0 ? 0 : next[fail[state] * alphabetSize + cls];
+                            next[state * alphabetSize + cls] = child;
+                            queue[tail++] = child;
+                        } else {
+                            next[state * alphabetSize + cls] = state == 0 ? 0 : next[fail[state] * alphabetSize + cls];
+                        }
+                    }
+                }
+
+                return new Automaton(asciiClasses, otherChars, otherClasses, alphabetSize, next, output);
+            }
+
+            private int newState() {
+                mGoto.add(new HashMap<>());
+                mOutput.add(VERDICT_NONE);
+                return mGoto.size() - 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.liskovsoft.leankeyboard.utils;
+
+/**
+ * Immutable snapshot of the preferences read on the hot paths (key rendering, D-pad moves, theme updates).<br/>
+ * Rebuilt by {@link LeanKeyPreferences} only when one of them is changed, so a read is a field access
+ * instead of the {@link android.content.SharedPreferences} lookup.
+ */
+public final class KeyboardConfig {
+    public static final int CHANGED_ENLARGE_KEYBOARD = 1;
+    public static final int CHANGED_THEME = 1 << 1;
+    public static final int CHANGED_SUGGESTIONS = 1 << 2;
+    public static final int CHANGED_CYCLIC_NAVIGATION = 1 << 3;
+    public static final int CHANGED_AUTODETECT_LAYOUT = 1 << 4;
+    public static final int CHANGED_SINGLE_CANVAS_RENDERING = 1 << 5;
+    public static final int CHANGED_PERF_OVERLAY = 1 << 6;
+    public static final int CHANGED_FORCE_SHOW_KEYBOARD = 1 << 7;
+    public final boolean forceShowKeyboard;
+    public final boolean enlargeKeyboard;
+    public final String currentTheme;
+    public final boolean suggestionsEnabled;
+    public final boolean cyclicNavigationEnabled;
+    public final boolean autodetectLayout;
+    public final boolean singleCanvasRendering;
+    public final boolean perfOverlayEnabled;
+
+    public interface Listener {
+        /**
+         * Called on the main thread
+         * @param config new snapshot
+         * @param changes <code>CHANGED_*</code> flags
+         */
+        void onConfigChanged(KeyboardConfig config, int changes);
+    }
+
+    KeyboardConfig(boolean forceShowKeyboard, boolean enlargeKeyboard, String currentTheme, boolean suggestionsEnabled,
+                   boolean cyclicNavigationEnabled, boolean autodetectLayout, boolean singleCanvasRendering, boolean perfOverlayEnabled) {
+        this.forceShowKeyboard = forceShowKeyboard;
+        this.enlargeKeyboard = enlargeKeyboard;
+        this.currentTheme = currentTheme;
+        this.suggestionsEnabled = suggestionsEnabled;
+        this.cyclicNavigationEnabled = cyclicNavigationEnabled;
+        this.autodetectLayout = autodetectLayout;
+        this.singleCanvasRendering = singleCanvasRendering;
+        this.perfOverlayEnabled = perfOverlayEnabled;
+    }
+
+    /**
+     * @param old previous snapshot or null
+     * @return <code>CHANGED_*</code> flags, 0 if the same
+     */
+    public int diff(KeyboardConfig old) {
+        if (old == null) {
+            return ~0;
+        }
+
+        int changes = 0;
+
+        if (forceShowKeyboard != old.forceShowKeyboard) {
+            changes |= CHANGED_FORCE_SHOW_KEYBOARD;
+        }
+
+        if (enlargeKeyboard != old.enlargeKeyboard) {
+            changes |= CHANGED_ENLARGE_KEYBOARD;
+        }
+
+        if (currentTheme == null ? old.currentTheme != null : !currentTheme.equals(old.currentTheme)) {
+            changes |= CHANGED_THEME;
+        }
+
+        if (suggestionsEnabled != old.suggestionsEnabled) {
+            changes |= CHANGED_SUGGESTIONS;
+        }
+
+        if (cyclicNavigationEnabled != old.cyclicNavigationEnabled) {
+            changes |= CHANGED_CYCLIC_NAVIGATION;
+        }
+
+        if (autodetectLayout != old.autodetectLayout) {
+            changes |= CHANGED_AUTODETECT_LAYOUT;
+        }
+
+        if (singleCanvasRendering != old.singleCanvasRendering) {
+            changes |= CHANGED_SINGLE_CANVAS_RENDERING;
+        }
+
+        if (perfOverlayEnabled != old.perfOverlayEnabled) {
+            changes |= CHANGED_PERF_OVERLAY;
+        }
+
+        return changes;
+    }
+}
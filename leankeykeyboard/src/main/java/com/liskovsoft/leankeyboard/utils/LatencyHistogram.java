@@ -0,0 +1,134 @@
+package com.liskovsoft.leankeyboard.utils;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-bucket log-linear histogram of durations (microsecond resolution).<br/>
+ * Each power of two is split into {@link #SUB_BUCKETS} linear buckets, so percentiles are within ~12% of the
+ * real value over the whole range (1us to ~1min). Recording doesn't allocate.<br/>
+ * Not thread safe: record on one thread. Reading from another thread gives approximate (but sane) numbers.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_SHIFT = 23; // 2^26us ~ 67s
+    private static final int BUCKET_COUNT = (MAX_SHIFT + 2) * SUB_BUCKETS;
+    private final String mName;
+    private final long[] mCounts = new long[BUCKET_COUNT];
+    private long mCount;
+    private long mSumMicros;
+    private long mMaxMicros;
+
+    public LatencyHistogram(String name) {
+        mName = name;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    public void recordMicros(long micros) {
+        if (micros < 0) {
+            return;
+        }
+
+        mCounts[indexOf(micros)]++;
+        mCount++;
+        mSumMicros += micros;
+
+        if (micros > mMaxMicros) {
+            mMaxMicros = micros;
+        }
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    public long getMaxMicros() {
+        return mMaxMicros;
+    }
+
+    public long getMeanMicros() {
+        return mCount > 0 ? mSumMicros / mCount : 0;
+    }
+
+    /**
+     * @param percentile 0..100
+     * @return upper bound of the bucket the percentile falls into (0 if empty)
+     */
+    public long getPercentileMicros(double percentile) {
+        if (mCount == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(mCount * percentile / 100));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mCounts[i];
+
+            if (seen >= rank) {
+                return i < BUCKET_COUNT - 1 ? Math.min(upperBoundOf(i), mMaxMicros) : mMaxMicros; // last one is open
+            }
+        }
+
+        return mMaxMicros;
+    }
+
+    public void reset() {
+        Arrays.fill(mCounts, 0);
+        mCount = 0;
+        mSumMicros = 0;
+        mMaxMicros = 0;
+    }
+
+    /**
+     * One line summary: <code>name: n=.. p50=.. p95=.. p99=.. max=..</code> (milliseconds)
+     */
+    public void dump(StringBuilder out) {
+        out.append(mName)
+                .append(": n=").append(mCount);
+        appendMillis(out.append(" p50="), getPercentileMicros(50));
+        appendMillis(out.append(" p95="), getPercentileMicros(95));
+        appendMillis(out.append(" p99="), getPercentileMicros(99));
+        appendMillis(out.append(" max="), mMaxMicros);
+    }
+
+    static int indexOf(long micros) {
+        if (micros < SUB_BUCKETS * 2) {
+            return (int) micros;
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BITS;
+
+        if (shift > MAX_SHIFT) {
+            return BUCKET_COUNT - 1;
+        }
+
+        return (shift + 1) * SUB_BUCKETS + (int) ((micros >> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Inclusive
+     */
+    static long upperBoundOf(int index) {
+        if (index < SUB_BUCKETS * 2) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKETS - 1;
+        long sub = index % SUB_BUCKETS;
+
+        return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+
+    private static void appendMillis(StringBuilder out, long micros) {
+        long tenths = (micros + 50) / 100;
+        out.append(tenths / 10).append('.').append(tenths % 10).append("ms");
+    }
+}
@@ -2,8 +2,14 @@ package com.liskovsoft.leankeyboard.utils;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
+import android.os.Handler;
+import android.os.Looper;
 import android.preference.PreferenceManager;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 public final class LeanKeyPreferences {
     private static final String APP_RUN_ONCE = "appRunOnce";
     private static final String BOOTSTRAP_SELECTED_LANGUAGE = "bootstrapSelectedLanguage";
@@ -18,9 +24,20 @@ public final class LeanKeyPreferences {
     private static final String SUGGESTIONS_ENABLED = "suggestionsEnabled";
     private static final String CYCLIC_NAVIGATION_ENABLED = "cyclicNavigationEnabled";
     private static final String AUTODETECT_LAYOUT = "autodetectLayout";
+    private static final String SINGLE_CANVAS_RENDERING = "singleCanvasRendering";
+    private static final String PERF_OVERLAY = "perfOverlay";
     private static LeanKeyPreferences sInstance;
     private final Context mContext;
     private SharedPreferences mPrefs;
+    private volatile KeyboardConfig mConfig;
+    private final List<KeyboardConfig.Listener> mConfigListeners = new CopyOnWriteArrayList<>();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // NOTE: SharedPreferences holds listeners by weak reference
+    private final OnSharedPreferenceChangeListener mPrefsListener = (prefs, key) -> {
+        if (isConfigKey(key)) {
+            updateConfig();
+        }
+    };
 
     public static LeanKeyPreferences instance(Context ctx) {
         if (sInstance == null)
@@ -31,6 +48,88 @@ public final class LeanKeyPreferences {
     public LeanKeyPreferences(Context context) {
         mContext = context.getApplicationContext();
         mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mConfig = readConfig();
+        mPrefs.registerOnSharedPreferenceChangeListener(mPrefsListener);
+    }
+
+    /**
+     * Snapshot of the hot path preferences. Getters below read the same snapshot.
+     */
+    public KeyboardConfig getConfig() {
+        return mConfig;
+    }
+
+    public void addConfigListener(KeyboardConfig.Listener listener) {
+        mConfigListeners.add(listener);
+    }
+
+    public void removeConfigListener(KeyboardConfig.Listener listener) {
+        mConfigListeners.remove(listener);
+    }
+
+    private KeyboardConfig readConfig() {
+        return new KeyboardConfig(
+                mPrefs.getBoolean(FORCE_SHOW_KEYBOARD, true),
+                mPrefs.getBoolean(ENLARGE_KEYBOARD, false),
+                mPrefs.getString(KEYBOARD_THEME, THEME_DARK3),
+                mPrefs.getBoolean(SUGGESTIONS_ENABLED, true),
+                mPrefs.getBoolean(CYCLIC_NAVIGATION_ENABLED, false),
+                mPrefs.getBoolean(AUTODETECT_LAYOUT, false),
+                mPrefs.getBoolean(SINGLE_CANVAS_RENDERING, false),
+                mPrefs.getBoolean(PERF_OVERLAY, false));
+    }
+
+    /**
+     * Called by the setters right after <code>apply()</code> (the new value is already in memory),
+     * and by {@link OnSharedPreferenceChangeListener} for the changes made elsewhere (no-op for ours).<br/>
+     * Publishes the snapshot at once, listeners are notified on the main thread.
+     */
+    private void updateConfig() {
+        KeyboardConfig config;
+        int changes;
+
+        synchronized (this) {
+            config = readConfig();
+            changes = config.diff(mConfig);
+
+            if (changes == 0) {
+                return;
+            }
+
+            mConfig = config;
+        }
+
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            notifyConfigChanged(config, changes);
+        } else {
+            mMainHandler.post(() -> notifyConfigChanged(config, changes));
+        }
+    }
+
+    private void notifyConfigChanged(KeyboardConfig config, int changes) {
+        for (KeyboardConfig.Listener listener : mConfigListeners) {
+            listener.onConfigChanged(config, changes);
+        }
+    }
+
+    private static boolean isConfigKey(String key) {
+        if (key == null) { // cleared
+            return true;
+        }
+
+        switch (key) {
+            case FORCE_SHOW_KEYBOARD:
+            case ENLARGE_KEYBOARD:
+            case KEYBOARD_THEME:
+            case SUGGESTIONS_ENABLED:
+            case CYCLIC_NAVIGATION_ENABLED:
+            case AUTODETECT_LAYOUT:
+            case SINGLE_CANVAS_RENDERING:
+            case PERF_OVERLAY:
+                return true;
+            default:
+                return false;
+        }
     }
 
     public boolean isRunOnce() {
@@ -64,56 +163,83 @@ public final class LeanKeyPreferences {
     }
 
     public boolean getForceShowKeyboard() {
-        return mPrefs.getBoolean(FORCE_SHOW_KEYBOARD, true);
+        return mConfig.forceShowKeyboard;
     }
 
     public void setForceShowKeyboard(boolean force) {
         mPrefs.edit()
                 .putBoolean(FORCE_SHOW_KEYBOARD, force)
                 .apply();
+        updateConfig();
     }
 
     public boolean getEnlargeKeyboard() {
-        return mPrefs.getBoolean(ENLARGE_KEYBOARD, false);
+        return mConfig.enlargeKeyboard;
     }
 
     public void setEnlargeKeyboard(boolean enlarge) {
         mPrefs.edit()
                 .putBoolean(ENLARGE_KEYBOARD, enlarge)
                 .apply();
+        updateConfig();
     }
 
     public void setCurrentTheme(String theme) {
         mPrefs.edit()
                 .putString(KEYBOARD_THEME, theme)
                 .apply();
+        updateConfig();
     }
 
     public String getCurrentTheme() {
-        return mPrefs.getString(KEYBOARD_THEME, THEME_DARK3);
+        return mConfig.currentTheme;
     }
 
     public void setSuggestionsEnabled(boolean enabled) {
         mPrefs.edit()
                 .putBoolean(SUGGESTIONS_ENABLED, enabled)
                 .apply();
+        updateConfig();
     }
 
     public boolean getSuggestionsEnabled() {
-        return mPrefs.getBoolean(SUGGESTIONS_ENABLED, true);
+        return mConfig.suggestionsEnabled;
     }
 
     public void setCyclicNavigationEnabled(boolean enabled) {
         mPrefs.edit()
                 .putBoolean(CYCLIC_NAVIGATION_ENABLED, enabled)
                 .apply();
+        updateConfig();
     }
 
     public boolean isCyclicNavigationEnabled() {
-        return mPrefs.getBoolean(CYCLIC_NAVIGATION_ENABLED, false);
+        return mConfig.cyclicNavigationEnabled;
     }
 
     public boolean getAutodetectLayout() {
-        return mPrefs.getBoolean(AUTODETECT_LAYOUT, false);
+        return mConfig.autodetectLayout;
+    }
+
+    public boolean getSingleCanvasRendering() {
+        return mConfig.singleCanvasRendering;
+    }
+
+    public void setSingleCanvasRendering(boolean enabled) {
+        mPrefs.edit()
+                .putBoolean(SINGLE_CANVAS_RENDERING, enabled)
+                .apply();
+        updateConfig();
+    }
+
+    public boolean getPerfOverlayEnabled() {
+        return mConfig.perfOverlayEnabled;
+    }
+
+    public void setPerfOverlayEnabled(boolean enabled) {
+        mPrefs.edit()
+                .putBoolean(PERF_OVERLAY, enabled)
+                .apply();
+        updateConfig();
     }
 }
@@ -36,6 +36,20 @@ public class LocaleUtility extends LocaleScript {
         }
     }
 
+    /**
+     * @param langCode keyboard lang code, e.g. en_us (see KeyboardInfo#getLangCode())
+     * @return locale of the keyboard or the default one if lang code is empty
+     */
+    public static Locale fromLangCode(String langCode) {
+        if (langCode == null || langCode.isEmpty()) {
+            return Locale.getDefault();
+        }
+
+        String[] parts = langCode.split("[_-]");
+
+        return parts.length >= 2 ? new Locale(parts[0], parts[1]) : new Locale(parts[0]);
+    }
+
     /**
      * <a href="https://stackoverflow.com/questions/40221711/android-context-getresources-updateconfiguration-deprecated/40704077#40704077">Modern Solution</a>
      */
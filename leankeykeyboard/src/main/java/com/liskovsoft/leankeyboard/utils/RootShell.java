@@ -0,0 +1,348 @@
+package com.liskovsoft.leankeyboard.utils;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One long-lived root shell shared by all services.<br/>
+ * Commands are queued (bounded, {@link #submit} fails when full), written to the shell's stdin in batches
+ * and separated by sentinel lines that carry the exit code. A command that doesn't finish in time kills the session;
+ * the next command starts a new one. The rest of its batch is failed, not replayed: those commands may have run already.<br/>
+ * Callbacks are called on the shell thread.
+ */
+public final class RootShell {
+    private static final String TAG = RootShell.class.getSimpleName();
+    private static final String[] SU_COMMAND = {"su"};
+    private static final int MAX_PENDING_COMMANDS = 32;
+    private static final long DEFAULT_TIMEOUT_MS = 10_000;
+    private static final String SENTINEL_PREFIX = "__ROOTSHELL_END_";
+    /**
+     * Marks end of the shell's stdout in the lines queue
+     */
+    private static final String EOF = new String("EOF");
+    private static RootShell sInstance;
+    private final String[] mShellCommand;
+    private final long mDefaultTimeoutMs;
+    private final BlockingQueue<Command> mPending;
+    private final Thread mWorker;
+    private Process mProcess;
+    private OutputStream mStdin;
+    private BlockingQueue<String> mLines;
+    private long mSequence;
+    private volatile boolean mClosed;
+
+    public interface Callback {
+        void onResult(Result result);
+    }
+
+    public static final class Result {
+        public static final int EXIT_CODE_FAILED = -1;
+        public final int exitCode;
+        /**
+         * Stdout and stderr lines
+         */
+        public final List<String> output;
+        public final boolean timedOut;
+
+        Result(int exitCode, List<String> output, boolean timedOut) {
+            this.exitCode = exitCode;
+            this.output = Collections.unmodifiableList(output);
+            this.timedOut = timedOut;
+        }
+
+        public boolean isSuccess() {
+            return exitCode == 0;
+        }
+
+        static Result failed() {
+            return new Result(EXIT_CODE_FAILED, Collections.emptyList(), false);
+        }
+    }
+
+    private static final class Command {
+        private final String script;
+        private final long timeoutMs;
+        private final Callback callback;
+
+        private Command(String script, long timeoutMs, Callback callback) {
+            this.script = script;
+            this.timeoutMs = timeoutMs;
+            this.callback = callback;
+        }
+    }
+
+    public static synchronized RootShell instance() {
+        if (sInstance == null)
+            sInstance = new RootShell(SU_COMMAND, MAX_PENDING_COMMANDS, DEFAULT_TIMEOUT_MS);
+        return sInstance;
+    }
+
+    RootShell(String[] shellCommand, int maxPendingCommands, long defaultTimeoutMs) {
+        mShellCommand = shellCommand;
+        mDefaultTimeoutMs = defaultTimeoutMs;
+        mPending = new ArrayBlockingQueue<>(maxPendingCommands);
+        mWorker = new Thread(this::processCommands, "RootShell");
+        mWorker.setDaemon(true);
+        mWorker.start();
+    }
+
+    /**
+     * Queues command for execution. Doesn't block.
+     * @param callback may be null
+     * @return false if queue is full or shell is closed
+     */
+    public boolean submit(String command, Callback callback) {
+        return submit(command, mDefaultTimeoutMs, callback);
+    }
+
+    public boolean submit(String command, long timeoutMs, Callback callback) {
+        Command pending = new Command(command, timeoutMs, callback);
+
+        // closed in the meantime: the worker won't see the command anymore
+        if (mClosed || !mPending.offer(pending) || (mClosed && mPending.remove(pending))) {
+            Log.w(TAG, "Command rejected: " + command);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Queues several commands. They are executed in order, usually in one round trip.
+     * @return false if some of the commands didn't fit into the queue
+     */
+    public boolean submit(String... commands) {
+        boolean result = true;
+
+        for (String command : commands) {
+            result &= submit(command, null);
+        }
+
+        return result;
+    }
+
+    /**
+     * Blocking variant. Don't call from the main thread.<br/>
+     * Waits for the commands queued before, but not longer than one default timeout on top of the command's one.
+     */
+    public Result run(String command, long timeoutMs) {
+        final Result[] result = {Result.failed()};
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        boolean queued = submit(command, timeoutMs, commandResult -> {
+            result[0] = commandResult;
+            latch.countDown();
+        });
+
+        if (queued) {
+            try {
+                if (!latch.await(timeoutMs + mDefaultTimeoutMs, TimeUnit.MILLISECONDS)) {
+                    Log.e(TAG, "No result in time: " + command);
+                    return new Result(Result.EXIT_CODE_FAILED, Collections.emptyList(), true);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        return result[0];
+    }
+
+    public Result run(String command) {
+        return run(command, mDefaultTimeoutMs);
+    }
+
+    /**
+     * Stops the worker and the shell. Pending commands are failed.
+     */
+    public void close() {
+        mClosed = true;
+        mWorker.interrupt();
+    }
+
+    private void processCommands() {
+        List<Command> batch = new ArrayList<>();
+
+        try {
+            while (!mClosed) {
+                batch.add(mPending.take());
+                mPending.drainTo(batch);
+                executeBatch(batch);
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } finally {
+            destroySession();
+            // interrupted command and the queued ones won't run
+            mPending.drainTo(batch);
+            failAll(batch);
+        }
+    }
+
+    /**
+     * Writes all commands at once and then collects their results in order.
+     * Commands are removed from the batch once their result is delivered.
+     */
+    private void executeBatch(List<Command> batch) throws InterruptedException {
+        if (!ensureSession()) {
+            failAll(batch);
+            return;
+        }
+
+        long firstSequence = mSequence;
+
+        try {
+            StringBuilder script = new StringBuilder();
+
+            for (Command command : batch) {
+                // grouping and closed stdin: the command can't eat the following commands
+                script.append("{\n").append(command.script).append("\n} </dev/null 2>&1\n")
+                      .append("echo \"").append(SENTINEL_PREFIX).append(mSequence++).append(" $?\"\n");
+            }
+
+            mStdin.write(script.toString().getBytes(StandardCharsets.UTF_8));
+            mStdin.flush();
+        } catch (IOException e) {
+            Log.e(TAG, "Shell is gone: " + e.getMessage());
+            destroySession();
+            failAll(batch);
+            return;
+        }
+
+        while (!batch.isEmpty()) {
+            Command command = batch.get(0);
+            Result result = readResult(SENTINEL_PREFIX + firstSequence++ + " ", command.timeoutMs);
+            batch.remove(0);
+            deliver(command, result);
+
+            if (mProcess == null) { // session was killed, rest of the batch may have run already
+                failAll(batch);
+                return;
+            }
+        }
+    }
+
+    private static void failAll(List<Command> commands) {
+        for (Command command : commands) {
+            deliver(command, Result.failed());
+        }
+
+        commands.clear();
+    }
+
+    private Result readResult(String sentinel, long timeoutMs) throws InterruptedException {
+        List<String> output = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + timeoutMs;
+
+        while (true) {
+            long remainingMs = deadline - System.currentTimeMillis();
+            String line = remainingMs > 0 ? mLines.poll(remainingMs, TimeUnit.MILLISECONDS) : null;
+
+            if (line == null) {
+                Log.e(TAG, "Command timed out. Restarting shell...");
+                destroySession();
+                return new Result(Result.EXIT_CODE_FAILED, output, true);
+            }
+
+            if (line == EOF) {
+                Log.e(TAG, "Shell exited unexpectedly");
+                destroySession();
+                return new Result(Result.EXIT_CODE_FAILED, output, false);
+            }
+
+            int sentinelPos = line.indexOf(sentinel);
+
+            if (sentinelPos == -1) {
+                output.add(line);
+                continue;
+            }
+
+            if (sentinelPos > 0) { // output without trailing new line
+                output.add(line.substring(0, sentinelPos));
+            }
+
+            try {
+                return new Result(Integer.parseInt(line.substring(sentinelPos + sentinel.length()).trim()), output, false);
+            } catch (NumberFormatException e) {
+                return new Result(Result.EXIT_CODE_FAILED, output, false);
+            }
+        }
+    }
+
+    private boolean ensureSession() {
+        if (mProcess != null) {
+            return true;
+        }
+
+        try {
+            Process process = new ProcessBuilder(mShellCommand).redirectErrorStream(true).start();
+            BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+
+            Thread reader = new Thread(() -> readLines(process, lines), "RootShellReader");
+            reader.setDaemon(true);
+            reader.start();
+
+            mProcess = process;
+            mStdin = process.getOutputStream();
+            mLines = lines;
+            Log.d(TAG, "Shell started");
+
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Can't start shell: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static void readLines(Process process, BlockingQueue<String> lines) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } catch (IOException e) {
+            // process destroyed
+        } finally {
+            lines.add(EOF);
+        }
+    }
+
+    private void destroySession() {
+        if (mProcess != null) {
+            mProcess.destroy();
+            mProcess = null;
+            mStdin = null;
+            mLines = null;
+        }
+    }
+
+    private static void deliver(Command command, Result result) {
+        if (command.callback == null) {
+            if (!result.isSuccess()) {
+                Log.w(TAG, "Command failed (" + result.exitCode + "): " + command.script);
+            }
+
+            return;
+        }
+
+        try {
+            command.callback.onResult(result);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error in command callback", e);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.liskovsoft.leankeyboard.utils;
+
+import android.content.ComponentName;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.Settings;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Brings {@link Settings.Secure} values to the desired state with the minimal number of root writes.<br/>
+ * Current values are read first (no root needed), only the differing ones are written. Each write is a separate
+ * {@link RootShell} command (same session), so a failing one doesn't block the rest. A failed write isn't
+ * retried until its back-off delay has passed, and a write identical to the one in flight isn't queued again.
+ * Known values (absence too) are cached and dropped when the setting is changed by someone else,
+ * so repeated ensures touch neither the settings provider nor the shell.
+ */
+public final class SecureSettingsReconciler {
+    private static final String TAG = SecureSettingsReconciler.class.getSimpleName();
+    private static final long RETRY_DELAY_MS = 30_000;
+    private static final long MAX_RETRY_DELAY_MS = 30 * 60_000;
+    /**
+     * Cached value of the missing setting (null is a cache miss)
+     */
+    private static final String ABSENT = new String("ABSENT");
+    private static SecureSettingsReconciler sInstance;
+    private final ContentResolver mResolver;
+    private final RootShell mRootShell;
+    private final Handler mHandler;
+    /**
+     * Last known values. Guarded by <code>this</code>.
+     */
+    private final Map<String, String> mKnownValues = new HashMap<>();
+    private final Map<String, ContentObserver> mObservers = new HashMap<>();
+    /**
+     * Settings whose last write has failed. Guarded by <code>this</code>.
+     */
+    private final Map<String, Failure> mFailures = new HashMap<>();
+    /**
+     * Setting name to the queued command. Guarded by <code>this</code>.
+     */
+    private final Map<String, String> mInFlight = new HashMap<>();
+    private final AtomicInteger mSkippedWrites = new AtomicInteger();
+    private final AtomicInteger mAppliedWrites = new AtomicInteger();
+
+    private static final class Failure {
+        private long retryDelayMs;
+        private long retryTimeMs;
+    }
+
+    public static synchronized SecureSettingsReconciler instance(Context ctx) {
+        if (sInstance == null)
+            sInstance = new SecureSettingsReconciler(ctx);
+        return sInstance;
+    }
+
+    private SecureSettingsReconciler(Context context) {
+        mResolver = context.getApplicationContext().getContentResolver();
+        mRootShell = RootShell.instance();
+        mHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * @param values setting name to desired value
+     * @param enabledImeId IME (flattened component name) that should be present in the enabled list or null
+     */
+    public void ensure(Map<String, String> values, String enabledImeId) {
+        int queued = 0;
+
+        // queued first, before it's selected as default
+        if (enabledImeId != null) {
+            if (isImeEnabled(getValue(Settings.Secure.ENABLED_INPUT_METHODS), enabledImeId)) {
+                mSkippedWrites.incrementAndGet();
+            } else if (apply(Settings.Secure.ENABLED_INPUT_METHODS, null, "ime enable " + enabledImeId)) { // new list is re-read next time
+                queued++;
+            }
+        }
+
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            String name = entry.getKey();
+            String value = entry.getValue();
+
+            if (value.equals(getValue(name))) {
+                mSkippedWrites.incrementAndGet();
+            } else if (apply(name, value, "settings put secure " + name + " " + value)) {
+                queued++;
+            }
+        }
+
+        if (queued == 0) {
+            Log.d(TAG, "Settings are up to date. Skipped writes: " + mSkippedWrites.get());
+        }
+    }
+
+    public void ensure(Map<String, String> values) {
+        ensure(values, null);
+    }
+
+    /**
+     * Number of writes that weren't needed since the values were already in place
+     */
+    public int getSkippedWrites() {
+        return mSkippedWrites.get();
+    }
+
+    public int getAppliedWrites() {
+        return mAppliedWrites.get();
+    }
+
+    /**
+     * @param value expected value after the write or null if unknown
+     * @return is the write queued
+     */
+    private boolean apply(String name, String value, String command) {
+        synchronized (this) {
+            Failure failure = mFailures.get(name);
+
+            if (failure != null && SystemClock.uptimeMillis() < failure.retryTimeMs) {
+                return false;
+            }
+
+            if (command.equals(mInFlight.get(name))) {
+                return false; // concurrent ensure
+            }
+
+            mInFlight.put(name, command);
+        }
+
+        Log.d(TAG, "Applying setting: " + command);
+
+        boolean queued = mRootShell.submit(command, result -> {
+            if (result.isSuccess()) {
+                onApplied(name, value, command);
+            } else {
+                onFailed(name, command, command + ": " + result.output);
+            }
+        });
+
+        if (!queued) {
+            onFailed(name, command, command + ": root shell is busy");
+        }
+
+        return queued;
+    }
+
+    private synchronized void onApplied(String name, String value, String command) {
+        mAppliedWrites.incrementAndGet();
+        mFailures.remove(name);
+        clearInFlight(name, command);
+
+        if (value != null) {
+            mKnownValues.put(name, value);
+        } else {
+            mKnownValues.remove(name);
+        }
+    }
+
+    private synchronized void onFailed(String name, String command, String message) {
+        clearInFlight(name, command);
+        Failure failure = mFailures.get(name);
+
+        if (failure == null) {
+            failure = new Failure();
+            mFailures.put(name, failure);
+        }
+
+        failure.retryDelayMs = failure.retryDelayMs == 0 ? RETRY_DELAY_MS : Math.min(failure.retryDelayMs * 2, MAX_RETRY_DELAY_MS);
+        failure.retryTimeMs = SystemClock.uptimeMillis() + failure.retryDelayMs;
+        mKnownValues.remove(name);
+
+        Log.e(TAG, "Failed to apply setting, retry in " + failure.retryDelayMs + "ms. " + message);
+    }
+
+    private void clearInFlight(String name, String command) {
+        if (command.equals(mInFlight.get(name))) {
+            mInFlight.remove(name);
+        }
+    }
+
+    /**
+     * @param enabledImes {@link Settings.Secure#ENABLED_INPUT_METHODS} value, e.g. "ime1;subtype1;subtype2:ime2"
+     */
+    private static boolean isImeEnabled(String enabledImes, String imeId) {
+        if (enabledImes == null) {
+            return false;
+        }
+
+        ComponentName ime = ComponentName.unflattenFromString(imeId);
+
+        for (String entry : enabledImes.split(":")) {
+            int end = entry.indexOf(';');
+            String id = end == -1 ? entry : entry.substring(0, end);
+
+            // either short or full form
+            if (id.equals(imeId) || (ime != null && ime.equals(ComponentName.unflattenFromString(id)))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private synchronized String getValue(String name) {
+        String value = mKnownValues.get(name);
+
+        if (value == null) {
+            value = Settings.Secure.getString(mResolver, name);
+            mKnownValues.put(name, value != null ? value : ABSENT);
+            observe(name);
+        }
+
+        return value != ABSENT ? value : null;
+    }
+
+    /**
+     * Forget cached value once the setting is changed from outside
+     */
+    private void observe(String name) {
+        if (mObservers.containsKey(name)) {
+            return;
+        }
+
+        Uri uri = Settings.Secure.getUriFor(name);
+        ContentObserver observer = new ContentObserver(mHandler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                synchronized (SecureSettingsReconciler.this) {
+                    mKnownValues.remove(name);
+                }
+            }
+        };
+
+        mResolver.registerContentObserver(uri, false, observer);
+        mObservers.put(name, observer);
+    }
+}
@@ -0,0 +1,237 @@
+package com.liskovsoft.leankeyboard.utils;
+
+import android.util.Log;
+import com.slideos.system.BuildConfig;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IllegalFormatException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Allocation-free tracing for the hot paths. A trace call stores a primitive record (event id, timestamp,
+ * up to 4 longs) into a preallocated ring of the calling thread. Nothing is formatted until the records are
+ * {@link #dump dumped} or drained to {@link #drainToLogcat() logcat} / {@link #drainToFile file}.<br/>
+ * Calls are gated by the compile-time level (<code>BuildConfig.TRACE_LEVEL</code>), so they are stripped from
+ * the release build:
+ * <pre>
+ * private static final int TRACE_INDEX = TraceLog.event(Log.DEBUG, TAG, "direction key: index: %d");
+ * ...
+ * if (TraceLog.DEBUG) {
+ *     TraceLog.trace(TRACE_INDEX, index);
+ * }
+ * </pre>
+ * Oldest records are overwritten. A record written while the dump is running may come out torn.<br/>
+ * Every thread that traces keeps its ring (48KB) for the process life, trace from the long-lived threads only.
+ */
+public final class TraceLog {
+    private static final String TAG = TraceLog.class.getSimpleName();
+    /**
+     * One of the {@link Log} priorities, lower ones are compiled out
+     */
+    public static final int LEVEL = BuildConfig.TRACE_LEVEL;
+    public static final boolean VERBOSE = LEVEL <= Log.VERBOSE;
+    public static final boolean DEBUG = LEVEL <= Log.DEBUG;
+    public static final boolean INFO = LEVEL <= Log.INFO;
+    static final int RING_SIZE = 1024; // records per thread, power of two
+    private static final int RING_MASK = RING_SIZE - 1;
+    private static final int MAX_ARGS = 4;
+    private static final int RECORD_LONGS = 2 + MAX_ARGS; // event and arg count, nanos, args
+    private static final int MAX_EVENTS = 256;
+    private static final int[] sLevels = new int[MAX_EVENTS];
+    private static final String[] sTags = new String[MAX_EVENTS];
+    private static final String[] sFormats = new String[MAX_EVENTS];
+    private static int sEventCount;
+    private static final List<Ring> sRings = new CopyOnWriteArrayList<>();
+    private static final ThreadLocal<Ring> sRing = new ThreadLocal<Ring>() {
+        @Override
+        protected Ring initialValue() {
+            Ring ring = new Ring(Thread.currentThread().getName());
+            sRings.add(ring);
+            return ring;
+        }
+    };
+
+    private static final class Ring {
+        private final String mThreadName;
+        private final long[] mRecords = new long[RING_SIZE * RECORD_LONGS];
+        private volatile long mWritten; // written by the owner thread only
+        private volatile long mDrained;
+
+        private Ring(String threadName) {
+            mThreadName = threadName;
+        }
+
+        private void write(int event, int argCount, long arg0, long arg1, long arg2, long arg3) {
+            long written = mWritten;
+            int offset = (int) (written & RING_MASK) * RECORD_LONGS;
+            long[] records = mRecords;
+            records[offset] = (long) event << 8 | argCount;
+            records[offset + 1] = System.nanoTime();
+            records[offset + 2] = arg0;
+            records[offset + 3] = arg1;
+            records[offset + 4] = arg2;
+            records[offset + 5] = arg3;
+            mWritten = written + 1;
+        }
+    }
+
+    private static final class Record implements Comparable<Record> {
+        private final String threadName;
+        private final int event;
+        private final long nanos;
+        private final Object[] args;
+
+        private Record(String threadName, int event, long nanos, Object[] args) {
+            this.threadName = threadName;
+            this.event = event;
+            this.nanos = nanos;
+            this.args = args;
+        }
+
+        @Override
+        public int compareTo(Record other) {
+            return Long.compare(nanos, other.nanos);
+        }
+    }
+
+    private TraceLog() {
+    }
+
+    /**
+     * Registers event once (usually in a static field)
+     * @param level {@link Log} priority used when drained to logcat
+     * @param format message, formatted on dump with the trace args (as longs, e.g. <code>%d</code>, <code>%x</code>)
+     * @return event id
+     */
+    public static synchronized int event(int level, String tag, String format) {
+        if (sEventCount == MAX_EVENTS) {
+            throw new IllegalStateException("Too many trace events: " + MAX_EVENTS);
+        }
+
+        sLevels[sEventCount] = level;
+        sTags[sEventCount] = tag;
+        sFormats[sEventCount] = format;
+
+        return sEventCount++;
+    }
+
+    public static void trace(int event) {
+        sRing.get().write(event, 0, 0, 0, 0, 0);
+    }
+
+    public static void trace(int event, long arg0) {
+        sRing.get().write(event, 1, arg0, 0, 0, 0);
+    }
+
+    public static void trace(int event, long arg0, long arg1) {
+        sRing.get().write(event, 2, arg0, arg1, 0, 0);
+    }
+
+    public static void trace(int event, long arg0, long arg1, long arg2) {
+        sRing.get().write(event, 3, arg0, arg1, arg2, 0);
+    }
+
+    public static void trace(int event, long arg0, long arg1, long arg2, long arg3) {
+        sRing.get().write(event, 4, arg0, arg1, arg2, arg3);
+    }
+
+    /**
+     * Appends not yet drained records of all threads, oldest first
+     */
+    public static void dump(StringBuilder out) {
+        List<Record> records = collect(false);
+        long startNanos = records.isEmpty() ? 0 : records.get(0).nanos;
+
+        for (Record record : records) {
+            out.append(sTags[record.event]).append(' ').append(formatLine(record, startNanos)).append('\n');
+        }
+    }
+
+    /**
+     * Prints records to logcat with the event priority and tag and forgets them
+     */
+    public static void drainToLogcat() {
+        List<Record> records = collect(true);
+        long startNanos = records.isEmpty() ? 0 : records.get(0).nanos;
+
+        for (Record record : records) {
+            Log.println(sLevels[record.event], sTags[record.event], formatLine(record, startNanos));
+        }
+    }
+
+    /**
+     * Appends records to the file and forgets them
+     * @return whether records are written
+     */
+    public static boolean drainToFile(File file) {
+        StringBuilder out = new StringBuilder();
+        List<Record> records = collect(true);
+        long startNanos = records.isEmpty() ? 0 : records.get(0).nanos;
+
+        for (Record record : records) {
+            out.append(sTags[record.event]).append(' ').append(formatLine(record, startNanos)).append('\n');
+        }
+
+        if (records.isEmpty()) {
+            return true;
+        }
+
+        try (Writer writer = new FileWriter(file, true)) {
+            writer.write(out.toString());
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Can't write trace to " + file + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static List<Record> collect(boolean drain) {
+        List<Record> records = new ArrayList<>();
+
+        for (Ring ring : sRings) {
+            long written = ring.mWritten;
+            long first = Math.max(ring.mDrained, written - RING_SIZE);
+
+            for (long i = first; i < written; i++) {
+                int offset = (int) (i & RING_MASK) * RECORD_LONGS;
+                long header = ring.mRecords[offset];
+                int argCount = (int) (header & 0xFF);
+                Object[] args = new Object[argCount];
+
+                for (int j = 0; j < argCount; j++) {
+                    args[j] = ring.mRecords[offset + 2 + j];
+                }
+
+                records.add(new Record(ring.mThreadName, (int) (header >>> 8), ring.mRecords[offset + 1], args));
+            }
+
+            if (drain) {
+                ring.mDrained = written;
+            }
+        }
+
+        Collections.sort(records);
+
+        return records;
+    }
+
+    private static String formatLine(Record record, long startNanos) {
+        String message;
+
+        try {
+            message = String.format(Locale.US, sFormats[record.event], record.args);
+        } catch (IllegalFormatException e) {
+            message = sFormats[record.event] + " " + Arrays.toString(record.args);
+        }
+
+        return String.format(Locale.US, "+%.3fms [%s] %s", (record.nanos - startNanos) / 1_000_000.0, record.threadName, message);
+    }
+}
@@ -0,0 +1,141 @@
+package com.liskovsoft.leankeyboard.addons.dictionary;
+
+import com.liskovsoft.leankeyboard.addons.dictionary.UserDictionary.Store;
+import com.liskovsoft.leankeyboard.addons.dictionary.UserDictionary.Table;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UserDictionaryTest {
+    // same String.hashCode(), so they share one probe chain
+    private static final String[] COLLIDING = {"AaAa", "AaBB", "BBAa", "BBBB"};
+    private File mDir;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = Files.createTempDirectory("userdict").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+
+        mDir.delete();
+    }
+
+    @Test
+    public void countsLearnedWords() {
+        Table table = new Table();
+        table.learn("hello");
+        table.learn("world");
+        table.learn("hello");
+
+        assertEquals(2, table.size());
+        assertEquals(2, table.getFrequency("hello"));
+        assertEquals(1, table.getFrequency("world"));
+        assertEquals(0, table.getFrequency("unknown"));
+    }
+
+    @Test
+    public void removeKeepsProbeChain() {
+        Table table = new Table();
+
+        for (String word : COLLIDING) {
+            table.learn(word);
+        }
+
+        table.learn(COLLIDING[3]);
+        table.remove(table.find(COLLIDING[0], COLLIDING[0].hashCode()));
+
+        assertEquals(COLLIDING.length - 1, table.size());
+        assertEquals(0, table.getFrequency(COLLIDING[0]));
+        assertEquals(1, table.getFrequency(COLLIDING[1]));
+        assertEquals(1, table.getFrequency(COLLIDING[2]));
+        assertEquals(2, table.getFrequency(COLLIDING[3]));
+
+        // shifted back into the hole, no duplicate on the next learn
+        table.learn(COLLIDING[3]);
+        assertEquals(COLLIDING.length - 1, table.size());
+        assertEquals(3, table.getFrequency(COLLIDING[3]));
+    }
+
+    @Test
+    public void evictsLeastFrequentOldest() {
+        Table table = new Table();
+
+        for (int i = 0; i < UserDictionary.MAX_WORDS; i++) {
+            table.learn("word" + i);
+        }
+
+        table.learn("word0");
+        table.learn("extra");
+
+        assertEquals(UserDictionary.MAX_WORDS, table.size());
+        assertEquals(2, table.getFrequency("word0"));
+        assertEquals(0, table.getFrequency("word1")); // oldest of the least frequent
+        assertEquals(1, table.getFrequency("word2"));
+        assertEquals(1, table.getFrequency("extra"));
+    }
+
+    @Test
+    public void replaysLogOnTopOfSnapshot() throws IOException {
+        Store store = new Store(mDir);
+        Table table = store.load();
+        learn(store, table, "hello");
+        learn(store, table, "world");
+        store.compact(table); // generation 1
+
+        learn(store, table, "hello");
+        store.closeLog();
+
+        // log of the previous generation left by a crash during the compaction
+        try (Writer stale = new FileWriter(new File(mDir, "user_words.0.log"))) {
+            stale.write("world\n");
+        }
+
+        Store reloaded = new Store(mDir);
+        Table loaded = reloaded.load();
+
+        assertEquals(2, loaded.size());
+        assertEquals(2, loaded.getFrequency("hello"));
+        assertEquals(1, loaded.getFrequency("world"));
+        assertEquals(1, reloaded.getReplayedRecords());
+        assertFalse(new File(mDir, "user_words.0.log").exists());
+        assertTrue(new File(mDir, "user_words.1.log").exists());
+    }
+
+    @Test
+    public void skipsTornLogTail() throws IOException {
+        try (Writer log = new FileWriter(new File(mDir, "user_words.0.log"))) {
+            log.write("hello\nhello\nwor1");
+        }
+
+        Store store = new Store(mDir);
+        Table table = store.load();
+
+        assertEquals(1, table.size());
+        assertEquals(2, table.getFrequency("hello"));
+        assertEquals(2, store.getReplayedRecords());
+    }
+
+    private static void learn(Store store, Table table, String word) {
+        table.learn(word);
+        store.append(word);
+    }
+}
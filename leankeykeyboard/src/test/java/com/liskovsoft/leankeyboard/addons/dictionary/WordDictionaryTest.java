@@ -0,0 +1,163 @@
+package com.liskovsoft.leankeyboard.addons.dictionary;
+
+import com.liskovsoft.leankeyboard.addons.dictionary.WordDictionary.Cursor;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reads the dictionary compiled from src/test/dictionaries/test.txt by the build (see compileTestDictionaries)
+ */
+public class WordDictionaryTest {
+    private static final String RESOURCE_NAME = "/dictionaries/test.dict";
+    private static final String[] WORDS = {"the", "there", "this", "car", "then", "dog", "they", "cat", "card", "care"}; // by frequency
+    private static WordDictionary sDictionary;
+
+    @BeforeClass
+    public static void load() throws IOException {
+        try (InputStream in = WordDictionaryTest.class.getResourceAsStream(RESOURCE_NAME)) {
+            assertNotNull("Run compileTestDictionaries first", in);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+
+            sDictionary = new WordDictionary(ByteBuffer.wrap(out.toByteArray()));
+        }
+    }
+
+    @Test
+    public void roundTripsEveryWord() {
+        assertEquals(WORDS.length, sDictionary.getWordCount());
+
+        StringBuilder word = new StringBuilder();
+
+        for (String expected : WORDS) {
+            int wordId = sDictionary.findWord(expected);
+            assertTrue(expected, wordId >= 0);
+
+            word.setLength(0);
+            sDictionary.getWord(wordId, word);
+            assertEquals(expected, word.toString());
+        }
+
+        assertEquals(sDictionary.findWord("the"), sDictionary.findWord("The"));
+        assertEquals(-1, sDictionary.findWord("th"));
+        assertEquals(-1, sDictionary.findWord("thesis"));
+    }
+
+    @Test
+    public void idsAndFrequenciesFollowWordFrequency() {
+        assertEquals(0, sDictionary.findWord("the"));
+        assertEquals(1, sDictionary.findWord("there"));
+
+        for (int i = 1; i < sDictionary.getWordCount(); i++) {
+            assertTrue(sDictionary.getFrequency(i - 1) > sDictionary.getFrequency(i));
+        }
+    }
+
+    @Test
+    public void completesBestFirst() {
+        Cursor cursor = sDictionary.newCursor();
+
+        cursor.moveTo("th");
+        assertArrayEquals(new String[] {"the", "there", "this", "then", "they"}, complete(cursor, 10));
+        assertArrayEquals(new String[] {"the", "there"}, complete(cursor, 2));
+
+        // the best word of "car" subtree is shallower than the one of "cat"
+        cursor.moveTo("ca");
+        assertArrayEquals(new String[] {"car", "cat", "card", "care"}, complete(cursor, 10));
+
+        cursor.moveTo("");
+        assertEquals(Arrays.asList(WORDS), Arrays.asList(complete(cursor, 20)));
+    }
+
+    @Test
+    public void backtracksPrefix() {
+        Cursor cursor = sDictionary.newCursor();
+
+        cursor.moveTo("cards");
+        assertFalse(cursor.isValid());
+        assertEquals(-1, cursor.getWordId());
+        assertEquals(0, complete(cursor, 10).length);
+
+        // backspace
+        cursor.moveTo("card");
+        assertTrue(cursor.isValid());
+        assertEquals(sDictionary.findWord("card"), cursor.getWordId());
+
+        cursor.moveTo("car");
+        assertArrayEquals(new String[] {"car", "card", "care"}, complete(cursor, 10));
+
+        // typo in the middle, then fixed
+        cursor.moveTo("cxr");
+        assertFalse(cursor.isValid());
+        cursor.moveTo("c");
+        assertTrue(cursor.isValid());
+        cursor.moveTo("cat");
+        assertEquals(sDictionary.findWord("cat"), cursor.getWordId());
+        assertTrue(cursor.isPrefixOf(sDictionary.findWord("cat")));
+        assertFalse(cursor.isPrefixOf(sDictionary.findWord("car")));
+
+        // another word
+        cursor.moveTo("dog");
+        assertEquals(sDictionary.findWord("dog"), cursor.getWordId());
+
+        cursor.reset();
+        cursor.moveTo("the");
+        assertEquals(sDictionary.findWord("the"), cursor.getWordId());
+    }
+
+    @Test
+    public void bigramsAreSortedByFrequency() {
+        int the = sDictionary.findWord("the");
+        assertEquals(3, sDictionary.getBigramCount(the));
+
+        String[] expected = {"car", "dog", "cat"};
+        StringBuilder word = new StringBuilder();
+
+        for (int i = 0; i < expected.length; i++) {
+            word.setLength(0);
+            sDictionary.getWord(sDictionary.getBigramWord(the, i), word);
+            assertEquals(expected[i], word.toString());
+
+            if (i > 0) {
+                assertTrue(sDictionary.getBigramFrequency(the, i - 1) > sDictionary.getBigramFrequency(the, i));
+            }
+        }
+
+        assertEquals(0, sDictionary.getBigramCount(sDictionary.findWord("dog")));
+    }
+
+    private static String[] complete(Cursor cursor, int maxResults) {
+        int[] wordIds = new int[maxResults];
+        int count = cursor.complete(wordIds, 0, maxResults, Long.MAX_VALUE);
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+
+        for (int i = 0; i < count; i++) {
+            word.setLength(0);
+            sDictionary.getWord(wordIds[i], word);
+            words.add(word.toString());
+        }
+
+        return words.toArray(new String[0]);
+    }
+}
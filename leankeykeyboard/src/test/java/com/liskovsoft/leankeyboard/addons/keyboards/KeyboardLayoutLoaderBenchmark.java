@@ -0,0 +1,149 @@
+package com.liskovsoft.leankeyboard.addons.keyboards;
+
+import android.content.Context;
+import android.inputmethodservice.Keyboard;
+import android.inputmethodservice.Keyboard.Key;
+import com.liskovsoft.leankeyboard.bench.BenchmarkBaseline;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Layout load done on every keyboard switch: the compiled key table (see {@link KeyboardLayoutLoader})
+ * vs the xml parsing inside {@link Keyboard} that it replaces.
+ * Every shipped layout should come out of the table exactly as the xml parser builds it.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class KeyboardLayoutLoaderBenchmark {
+    private static final File XML_DIR = new File("src/main/res/xml");
+    private static final Pattern ROOT_TAG = Pattern.compile("<([A-Za-z]+)[\\s>/]");
+    private static final String BENCH_LAYOUT = "qwerty_en_us";
+    private static final int OPS = 200;
+    private Context mContext;
+    private KeyboardLayoutLoader mLoader;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.getApplication();
+        mLoader = new KeyboardLayoutLoader();
+    }
+
+    @Test
+    public void matchesXmlParser() throws Exception {
+        List<String> layouts = readLayoutNames();
+        assertFalse(layouts.isEmpty());
+
+        for (String layout : layouts) {
+            int resId = getLayoutResId(layout);
+            Keyboard compiled = mLoader.loadCompiled(mContext, resId);
+            assertNotNull(layout + ": not compiled", compiled);
+
+            assertKeyboardEquals(layout, new Keyboard(mContext, resId), compiled);
+        }
+    }
+
+    @Test
+    public void copyMatchesTemplate() {
+        Keyboard template = mLoader.loadCompiled(mContext, getLayoutResId(BENCH_LAYOUT));
+
+        assertKeyboardEquals(BENCH_LAYOUT, template, mLoader.copy(mContext, template));
+    }
+
+    @Test
+    public void loadCompiledCost() {
+        int resId = getLayoutResId(BENCH_LAYOUT);
+
+        BenchmarkBaseline.check("keyboardLayout.loadCompiled", OPS, i -> mLoader.loadCompiled(mContext, resId).getKeys().size());
+    }
+
+    @Test
+    public void parseXmlCost() {
+        int resId = getLayoutResId(BENCH_LAYOUT);
+
+        BenchmarkBaseline.check("keyboardLayout.parseXml", OPS, i -> new Keyboard(mContext, resId).getKeys().size());
+    }
+
+    private int getLayoutResId(String layout) {
+        int resId = mContext.getResources().getIdentifier(layout, "xml", mContext.getPackageName());
+        assertFalse(layout + ": no such resource", resId == 0);
+
+        return resId;
+    }
+
+    private static void assertKeyboardEquals(String layout, Keyboard expected, Keyboard actual) {
+        assertEquals(layout + ": height", expected.getHeight(), actual.getHeight());
+        assertEquals(layout + ": min width", expected.getMinWidth(), actual.getMinWidth());
+        assertEquals(layout + ": shift key", expected.getShiftKeyIndex(), actual.getShiftKeyIndex());
+        assertEquals(layout + ": modifier keys", expected.getModifierKeys().size(), actual.getModifierKeys().size());
+
+        List<Key> expectedKeys = expected.getKeys();
+        List<Key> actualKeys = actual.getKeys();
+        assertEquals(layout + ": key count", expectedKeys.size(), actualKeys.size());
+
+        for (int i = 0; i < expectedKeys.size(); i++) {
+            Key expectedKey = expectedKeys.get(i);
+            Key actualKey = actualKeys.get(i);
+            String message = layout + ": key " + i + " (" + expectedKey.label + ")";
+
+            assertEquals(message + " x", expectedKey.x, actualKey.x);
+            assertEquals(message + " y", expectedKey.y, actualKey.y);
+            assertEquals(message + " width", expectedKey.width, actualKey.width);
+            assertEquals(message + " height", expectedKey.height, actualKey.height);
+            assertEquals(message + " gap", expectedKey.gap, actualKey.gap);
+            assertArrayEquals(message + " codes", expectedKey.codes, actualKey.codes);
+            assertEquals(message + " edge flags", expectedKey.edgeFlags, actualKey.edgeFlags);
+            assertEquals(message + " popup", expectedKey.popupResId, actualKey.popupResId);
+            assertEquals(message + " label", toString(expectedKey.label), toString(actualKey.label));
+            assertEquals(message + " text", toString(expectedKey.text), toString(actualKey.text));
+            assertEquals(message + " popup chars", toString(expectedKey.popupCharacters), toString(actualKey.popupCharacters));
+            assertEquals(message + " icon", expectedKey.icon != null, actualKey.icon != null);
+            assertEquals(message + " repeatable", expectedKey.repeatable, actualKey.repeatable);
+            assertEquals(message + " modifier", expectedKey.modifier, actualKey.modifier);
+            assertEquals(message + " sticky", expectedKey.sticky, actualKey.sticky);
+        }
+    }
+
+    private static String toString(CharSequence text) {
+        return text != null ? text.toString() : null;
+    }
+
+    /**
+     * Same selection as KeyboardLayoutCompiler: res/xml files with the &lt;Keyboard&gt; root
+     */
+    private static List<String> readLayoutNames() throws Exception {
+        File[] files = XML_DIR.listFiles((dir, name) -> name.endsWith(".xml"));
+        assertNotNull(files);
+        Arrays.sort(files);
+
+        List<String> layouts = new ArrayList<>();
+
+        for (File file : files) {
+            String xml = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            Matcher matcher = ROOT_TAG.matcher(xml);
+
+            if (matcher.find() && "Keyboard".equals(matcher.group(1))) {
+                layouts.add(file.getName().substring(0, file.getName().length() - ".xml".length()));
+            }
+        }
+
+        return layouts;
+    }
+}
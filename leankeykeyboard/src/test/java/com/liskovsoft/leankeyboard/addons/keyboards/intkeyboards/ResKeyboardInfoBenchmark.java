@@ -0,0 +1,66 @@
+package com.liskovsoft.leankeyboard.addons.keyboards.intkeyboards;
+
+import com.liskovsoft.leankeyboard.addons.keyboards.KeyboardInfo;
+import com.liskovsoft.leankeyboard.bench.BenchmarkBaseline;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Per-language part of {@link ResKeyboardInfo#getAllKeyboardInfos}: parsing of the shipped language list
+ * and the preference key of every entry. Called on every keyboard (re)load.
+ */
+public class ResKeyboardInfoBenchmark {
+    private static final File LANGUAGES_FILE = new File("src/main/res/values/languages.xml");
+    private static final int OPS = 200_000;
+    private String[] mLangPairs;
+
+    @Before
+    public void setUp() throws Exception {
+        mLangPairs = readLangPairs();
+    }
+
+    @Test
+    public void parsesLangPairs() {
+        KeyboardInfo info = ResKeyboardInfo.fromLangPair("English (AZERTY)|en_us|azerty");
+
+        assertEquals("English (AZERTY)", info.getLangName());
+        assertEquals("en_us", info.getLangCode());
+        assertTrue(info.isAzerty());
+    }
+
+    @Test
+    public void getAllKeyboardInfosCost() {
+        String[] langPairs = mLangPairs;
+
+        BenchmarkBaseline.check("resKeyboardInfo.fromLangPair", OPS, i -> {
+            KeyboardInfo info = ResKeyboardInfo.fromLangPair(langPairs[i % langPairs.length]);
+            return info.toString().length(); // preference key
+        });
+    }
+
+    private static String[] readLangPairs() throws Exception {
+        String xml = new String(Files.readAllBytes(LANGUAGES_FILE.toPath()), StandardCharsets.UTF_8);
+        String array = xml.substring(xml.indexOf("name=\"additional_languages\""));
+        array = array.substring(0, array.indexOf("</string-array>"));
+
+        List<String> langPairs = new ArrayList<>();
+        Matcher matcher = Pattern.compile("<item>(.*?)</item>").matcher(array);
+
+        while (matcher.find()) {
+            langPairs.add(matcher.group(1));
+        }
+
+        return langPairs.toArray(new String[0]);
+    }
+}
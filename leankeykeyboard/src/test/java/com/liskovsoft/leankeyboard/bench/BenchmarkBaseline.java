@@ -0,0 +1,140 @@
+package com.liskovsoft.leankeyboard.bench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stored results of the hot path benchmarks (<code>src/test/resources/bench/baseline.properties</code>).<br/>
+ * Keys: <code>&lt;benchmark&gt;.nsPerOp</code>, <code>&lt;benchmark&gt;.bytesPerOp</code>.<br/>
+ * System properties (see build.gradle):
+ * <ul>
+ *     <li><code>bench.check</code> - fail when a result is worse than the baseline</li>
+ *     <li><code>bench.tolerance</code> - allowed slowdown, 0.5 means 50%</li>
+ *     <li><code>bench.output</code> - file to merge the results into (the baseline itself to update it)</li>
+ * </ul>
+ */
+public final class BenchmarkBaseline {
+    private static final String BASELINE_RESOURCE = "/bench/baseline.properties";
+    private static final double DEFAULT_TOLERANCE = 0.5;
+    /**
+     * Per-op allocation is stable, but the harness and the JIT may leave a few bytes
+     */
+    private static final double BYTES_SLACK = 8;
+    private static Properties sBaseline;
+
+    private BenchmarkBaseline() {
+    }
+
+    /**
+     * Measures, stores and compares with the baseline
+     * @param name benchmark id, no spaces
+     */
+    public static MicroBenchmark.Result check(String name, int opsPerIteration, MicroBenchmark.Operation operation) {
+        MicroBenchmark.Result result = MicroBenchmark.measure(name, opsPerIteration, operation);
+
+        save(result);
+        compare(result);
+
+        return result;
+    }
+
+    private static void compare(MicroBenchmark.Result result) {
+        Properties baseline = getBaseline();
+        String nsPerOp = baseline.getProperty(result.name + ".nsPerOp");
+        String bytesPerOp = baseline.getProperty(result.name + ".bytesPerOp");
+
+        if (nsPerOp == null) {
+            System.out.println(result.name + ": no baseline");
+            return;
+        }
+
+        double expectedNs = Double.parseDouble(nsPerOp);
+        System.out.println(String.format(Locale.US, "%-50s %+9.1f%% vs baseline", result.name, (result.nsPerOp / expectedNs - 1) * 100));
+
+        if (!Boolean.getBoolean("bench.check")) {
+            return;
+        }
+
+        double tolerance = Double.parseDouble(System.getProperty("bench.tolerance", String.valueOf(DEFAULT_TOLERANCE)));
+        assertTrue(String.format(Locale.US, "%s: %.1f ns/op, baseline %.1f ns/op", result.name, result.nsPerOp, expectedNs),
+                result.nsPerOp <= expectedNs * (1 + tolerance));
+
+        if (bytesPerOp != null && result.bytesPerOp >= 0) {
+            double expectedBytes = Double.parseDouble(bytesPerOp);
+            assertTrue(String.format(Locale.US, "%s: %.1f B/op, baseline %.1f B/op", result.name, result.bytesPerOp, expectedBytes),
+                    result.bytesPerOp <= expectedBytes + BYTES_SLACK);
+        }
+    }
+
+    /**
+     * Merges the result into the output file. Keys are sorted to keep the baseline diffs readable.
+     */
+    private static synchronized void save(MicroBenchmark.Result result) {
+        String output = System.getProperty("bench.output");
+
+        if (output == null) {
+            return;
+        }
+
+        File file = new File(output);
+        Properties results = new Properties();
+
+        if (file.exists()) {
+            try (InputStream in = new FileInputStream(file)) {
+                results.load(in);
+            } catch (IOException e) {
+                throw new IllegalStateException("Can't read " + file, e);
+            }
+        }
+
+        results.setProperty(result.name + ".nsPerOp", String.format(Locale.US, "%.1f", result.nsPerOp));
+
+        if (result.bytesPerOp >= 0) {
+            results.setProperty(result.name + ".bytesPerOp", String.format(Locale.US, "%.1f", result.bytesPerOp));
+        }
+
+        File dir = file.getAbsoluteFile().getParentFile();
+
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IllegalStateException("Can't create " + dir);
+        }
+
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.ISO_8859_1)) {
+            out.write("# Hot path benchmarks, see BenchmarkBaseline. Machine specific: regenerate on the CI runner.\n");
+
+            for (Map.Entry<Object, Object> entry : new TreeMap<>(results).entrySet()) {
+                out.write(entry.getKey() + "=" + entry.getValue() + "\n");
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't write " + file, e);
+        }
+    }
+
+    private static synchronized Properties getBaseline() {
+        if (sBaseline == null) {
+            sBaseline = new Properties();
+
+            try (InputStream in = BenchmarkBaseline.class.getResourceAsStream(BASELINE_RESOURCE)) {
+                if (in != null) {
+                    sBaseline.load(in);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Can't read " + BASELINE_RESOURCE, e);
+            }
+        }
+
+        return sBaseline;
+    }
+}
@@ -0,0 +1,113 @@
+package com.liskovsoft.leankeyboard.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+/**
+ * Minimal JMH-like harness for host unit tests: warmup iterations, then the best of the measured iterations.<br/>
+ * Results of the operation go to the sink so the JIT can't drop the work.<br/>
+ * Allocation is taken from the HotSpot per-thread counter over all measured iterations (-1 on other VMs).
+ */
+public final class MicroBenchmark {
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 10;
+    private static volatile long sSink;
+
+    public interface Operation {
+        /**
+         * @param i invocation number
+         * @return any value derived from the work
+         */
+        long run(int i);
+    }
+
+    public static final class Result {
+        public final String name;
+        public final double nsPerOp;
+        public final double opsPerSecond;
+        /**
+         * -1 if not supported by the VM
+         */
+        public final double bytesPerOp;
+
+        Result(String name, double nsPerOp, double bytesPerOp) {
+            this.name = name;
+            this.nsPerOp = nsPerOp;
+            this.opsPerSecond = nsPerOp > 0 ? 1_000_000_000 / nsPerOp : Double.POSITIVE_INFINITY;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-50s %10.1f ns/op %14.0f ops/s %10.1f B/op", name, nsPerOp, opsPerSecond, bytesPerOp);
+        }
+    }
+
+    private MicroBenchmark() {
+    }
+
+    /**
+     * @param opsPerIteration invocations per iteration
+     * @return best average time of one invocation in nanoseconds
+     */
+    public static double run(String name, int opsPerIteration, Operation operation) {
+        return measure(name, opsPerIteration, operation).nsPerOp;
+    }
+
+    /**
+     * Same as {@link #run}, plus throughput and allocation
+     * @param opsPerIteration invocations per iteration
+     */
+    public static Result measure(String name, int opsPerIteration, Operation operation) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iteration(opsPerIteration, operation);
+        }
+
+        long best = Long.MAX_VALUE;
+        long allocatedBefore = allocatedBytes();
+
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            best = Math.min(best, iteration(opsPerIteration, operation));
+        }
+
+        long allocatedAfter = allocatedBytes();
+
+        double bytesPerOp = allocatedBefore < 0 || allocatedAfter < 0 ? -1 :
+                (double) (allocatedAfter - allocatedBefore) / ((long) opsPerIteration * MEASURED_ITERATIONS);
+        Result result = new Result(name, (double) best / opsPerIteration, bytesPerOp);
+        System.out.println(result);
+
+        return result;
+    }
+
+    private static long iteration(int ops, Operation operation) {
+        long sink = 0;
+        long start = System.nanoTime();
+
+        for (int i = 0; i < ops; i++) {
+            sink += operation.run(i);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        sSink += sink;
+
+        return elapsed;
+    }
+
+    /**
+     * @return bytes allocated by the current thread so far or -1
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+
+        com.sun.management.ThreadMXBean hotSpotBean = (com.sun.management.ThreadMXBean) bean;
+
+        return hotSpotBean.isThreadAllocatedMemorySupported() && hotSpotBean.isThreadAllocatedMemoryEnabled() ?
+                hotSpotBean.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+    }
+}
@@ -0,0 +1,140 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.view.inputmethod.InputConnection;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class EditQueueTest {
+    private EditQueue mQueue;
+    private List<String> mCalls;
+    private InputConnection mConnection;
+
+    @Before
+    public void setUp() {
+        mQueue = new EditQueue(null); // flushed by the test
+        mCalls = new ArrayList<>();
+        mConnection = newConnection(mCalls);
+    }
+
+    @Test
+    public void mergesCommits() {
+        mQueue.commitText(mConnection, "a");
+        mQueue.commitText(mConnection, "b");
+        mQueue.commitText(mConnection, "c");
+        mQueue.flush();
+
+        assertCalls("commitText(abc, 1)");
+        assertEquals(1, mQueue.getCallsIssued());
+        assertEquals(2, mQueue.getCallsCoalesced());
+    }
+
+    @Test
+    public void sumsDeletes() {
+        mQueue.deleteSurroundingText(mConnection, 1, 0);
+        mQueue.deleteSurroundingText(mConnection, 2, 1);
+        mQueue.flush();
+
+        assertCalls("deleteSurroundingText(3, 1)");
+    }
+
+    @Test
+    public void backspaceTrimsPendingCommit() {
+        mQueue.commitText(mConnection, "abc");
+        mQueue.deleteSurroundingText(mConnection, 1, 0);
+        mQueue.flush();
+
+        assertCalls("commitText(ab, 1)");
+    }
+
+    @Test
+    public void backspaceBeyondPendingCommitDeletesRest() {
+        mQueue.commitText(mConnection, "a");
+        mQueue.deleteSurroundingText(mConnection, 3, 0);
+        mQueue.flush();
+
+        // empty commit still replaces the selection
+        assertCalls("beginBatchEdit()", "commitText(, 1)", "deleteSurroundingText(2, 0)", "endBatchEdit()");
+    }
+
+    @Test
+    public void lastSelectionWins() {
+        mQueue.setSelection(mConnection, 1, 1);
+        mQueue.setSelection(mConnection, 2, 5);
+        mQueue.setSelection(mConnection, 4, 4);
+        mQueue.flush();
+
+        assertCalls("setSelection(4, 4)");
+    }
+
+    @Test
+    public void keepsOrderOfDifferentOperations() {
+        mQueue.commitText(mConnection, "x");
+        mQueue.setSelection(mConnection, 0, 0);
+        mQueue.commitText(mConnection, "y");
+        mQueue.flush();
+
+        assertCalls("beginBatchEdit()", "commitText(x, 1)", "setSelection(0, 0)", "commitText(y, 1)", "endBatchEdit()");
+    }
+
+    @Test
+    public void newConnectionFlushesOldOne() {
+        List<String> otherCalls = new ArrayList<>();
+        InputConnection other = newConnection(otherCalls);
+
+        mQueue.commitText(mConnection, "a");
+        mQueue.commitText(other, "b");
+
+        assertCalls("commitText(a, 1)");
+        assertEquals(0, otherCalls.size());
+
+        mQueue.flush();
+
+        assertEquals(Arrays.asList("commitText(b, 1)"), otherCalls);
+    }
+
+    @Test
+    public void emptyFlushDoesNothing() {
+        mQueue.flush();
+
+        assertCalls();
+        assertEquals(0, mQueue.getCallsIssued());
+    }
+
+    private void assertCalls(String... calls) {
+        assertEquals(Arrays.asList(calls), mCalls);
+    }
+
+    /**
+     * Records edit calls as "name(arg, ...)"
+     */
+    private static InputConnection newConnection(List<String> calls) {
+        return (InputConnection) Proxy.newProxyInstance(EditQueueTest.class.getClassLoader(), new Class<?>[] {InputConnection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return "RecordingInputConnection";
+                    }
+
+                    StringBuilder call = new StringBuilder(method.getName()).append('(');
+
+                    for (int i = 0; args != null && i < args.length; i++) {
+                        call.append(i > 0 ? ", " : "").append(args[i]);
+                    }
+
+                    calls.add(call.append(')').toString());
+
+                    return method.getReturnType() == boolean.class ? true : null;
+                });
+    }
+}
@@ -0,0 +1,99 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import org.junit.Test;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Replays recorded input_event fixtures: KEY_A press, BACK down, repeat, up and a new BACK down,
+ * mixed with EV_MSC/EV_SYN traffic and a truncated trailing record.
+ */
+public class EvdevReaderTest {
+    private static final long[][] EXPECTED = {
+            {100_250, EvdevReader.VALUE_DOWN},
+            {100_750, EvdevReader.VALUE_REPEAT},
+            {101_100, EvdevReader.VALUE_UP},
+            {101_500, EvdevReader.VALUE_DOWN},
+    };
+
+    @Test
+    public void decodes64BitRecords() throws IOException {
+        assertEvents(replay("back_long_press_64.bin", EvdevReader.RECORD_SIZE_64, false));
+    }
+
+    @Test
+    public void decodes32BitRecords() throws IOException {
+        assertEvents(replay("back_long_press_32.bin", EvdevReader.RECORD_SIZE_32, false));
+    }
+
+    @Test
+    public void reassemblesRecordsSplitBetweenReads() throws IOException {
+        assertEvents(replay("back_long_press_64.bin", EvdevReader.RECORD_SIZE_64, true));
+        assertEvents(replay("back_long_press_32.bin", EvdevReader.RECORD_SIZE_32, true));
+    }
+
+    @Test
+    public void detectsRecordSize() throws IOException {
+        assertEvents(replay("back_long_press_64.bin", EvdevReader.RECORD_SIZE_AUTO, false));
+        assertEvents(replay("back_long_press_32.bin", EvdevReader.RECORD_SIZE_AUTO, false));
+    }
+
+    @Test
+    public void detectsRecordSizeOfSlowStream() throws IOException {
+        assertEvents(replay("back_long_press_64.bin", EvdevReader.RECORD_SIZE_AUTO, true));
+        assertEvents(replay("back_long_press_32.bin", EvdevReader.RECORD_SIZE_AUTO, true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownRecordSize() {
+        new EvdevReader(open("back_long_press_64.bin"), 20, EvdevReader.EV_KEY, EvdevReader.KEY_BACK);
+    }
+
+    private static List<long[]> replay(String fixture, int recordSize, boolean slowStream) throws IOException {
+        InputStream stream = open(fixture);
+
+        if (slowStream) {
+            stream = new SlowInputStream(stream);
+        }
+
+        List<long[]> events = new ArrayList<>();
+        EvdevReader reader = new EvdevReader(stream, recordSize, EvdevReader.EV_KEY, EvdevReader.KEY_BACK);
+        reader.read((timeMs, value) -> events.add(new long[] {timeMs, value}));
+        reader.close();
+
+        return events;
+    }
+
+    private static void assertEvents(List<long[]> events) {
+        assertEquals(EXPECTED.length, events.size());
+
+        for (int i = 0; i < EXPECTED.length; i++) {
+            assertEquals("time of event " + i, EXPECTED[i][0], events.get(i)[0]);
+            assertEquals("value of event " + i, EXPECTED[i][1], events.get(i)[1]);
+        }
+    }
+
+    private static InputStream open(String fixture) {
+        return EvdevReaderTest.class.getResourceAsStream("/evdev/" + fixture);
+    }
+
+    /**
+     * Pipe-like stream: returns at most 7 bytes per read
+     */
+    private static final class SlowInputStream extends FilterInputStream {
+        SlowInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, 7));
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class InputDeviceInventoryTest {
+    private static final List<String> REMOTE_AND_POWER_KEY = Arrays.asList(
+            "add device 1: /dev/input/event1",
+            "  name:     \"gpio-keys\"",
+            "  events:",
+            "    KEY (0001): KEY_POWER",
+            "add device 2: /dev/input/event2",
+            "  name:     \"ir-remote\"",
+            "  events:",
+            "    KEY (0001): KEY_AGAIN             KEY_BACK              KEY_QUESTION          KEY_DPAD_CENTER",
+            "                KEY_HOMEPAGE"
+    );
+
+    private static final List<String> KEYBOARD = Arrays.asList(
+            "add device 3: /dev/input/event3",
+            "  name:     \"Logitech K400\"",
+            "  events:",
+            "    KEY (0001): KEY_ESC               KEY_1                 KEY_2                 KEY_Q",
+            "                KEY_W                 KEY_A                 KEY_S",
+            "    REL (0002): REL_X                 REL_Y"
+    );
+
+    @Test
+    public void remoteIsNotKeyboard() {
+        assertEquals(InputDeviceInventory.CAPABILITY_DPAD, InputDeviceInventory.parseCapabilities(REMOTE_AND_POWER_KEY));
+    }
+
+    @Test
+    public void lettersMakeKeyboard() {
+        assertEquals(InputDeviceInventory.CAPABILITY_KEYBOARD, InputDeviceInventory.parseCapabilities(KEYBOARD));
+    }
+
+    @Test
+    public void lettersOfDifferentDevicesDontAddUp() {
+        List<String> lines = Arrays.asList(
+                "add device 1: /dev/input/event1",
+                "    KEY (0001): KEY_A",
+                "add device 2: /dev/input/event2",
+                "    KEY (0001): KEY_Q"
+        );
+
+        assertEquals(0, InputDeviceInventory.parseCapabilities(lines));
+    }
+}
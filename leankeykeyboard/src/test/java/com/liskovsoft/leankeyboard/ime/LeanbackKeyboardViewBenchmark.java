@@ -0,0 +1,146 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.inputmethodservice.Keyboard.Key;
+import com.liskovsoft.leankeyboard.bench.BenchmarkBaseline;
+import com.liskovsoft.leankeyboard.ime.LeanbackKeyboardView.KeyConverter;
+import com.liskovsoft.leankeyboard.ime.LeanbackKeyboardView.KeyHolder;
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Per-key work of the keyboard view: pointer to key index and label case conversion on every key redraw.
+ */
+public class LeanbackKeyboardViewBenchmark {
+    private static final int OPS = 200_000;
+    private static final float WIDTH = 1760;
+    private static final float HEIGHT = 400;
+    private static final int ROWS = 5;
+    private static final int COLS = 11;
+    private static final int KEY_COUNT = ROWS * COLS - LeanbackKeyboardView.ASCII_PERIOD_LEN + 1;
+    private static final String[] LABELS = {"q", "w", "A|B", "ß", "1", "ё", "I|İ", ".com", "?|!", "ш"};
+
+    @Test
+    public void nearestIndexSkipsSpaceKeyCells() {
+        assertEquals(0, nearestIndex(-10, -10));
+        assertEquals(COLS - 1, nearestIndex(WIDTH - 1, 0));
+        // bottom row: space is 5 cells wide (cols 3-7), keys after it are shifted
+        assertEquals(LeanbackKeyboardView.ASCII_PERIOD, nearestIndex(cellX(3), HEIGHT - 1));
+        assertEquals(LeanbackKeyboardView.ASCII_PERIOD, nearestIndex(cellX(7), HEIGHT - 1));
+        assertEquals(LeanbackKeyboardView.ASCII_PERIOD + 1, nearestIndex(cellX(8), HEIGHT - 1));
+        assertEquals(KEY_COUNT - 1, nearestIndex(WIDTH + 10, HEIGHT + 10));
+    }
+
+    @Test
+    public void nearestIndexCost() {
+        float[] points = new float[1024 * 2];
+
+        for (int i = 0; i < points.length; i += 2) {
+            points[i] = (i * 7919) % (int) WIDTH;
+            points[i + 1] = (i * 104729) % (int) HEIGHT;
+        }
+
+        BenchmarkBaseline.check("keyboardView.getNearestIndex", OPS, i -> {
+            int point = (i & 1023) * 2;
+            return nearestIndex(points[point], points[point + 1]);
+        });
+    }
+
+    @Test
+    public void splitsTwoCharLabels() {
+        assertArrayEquals(new String[] {"A", "B"}, KeyConverter.splitLabels("A|B"));
+        assertNull(KeyConverter.splitLabels("a"));
+        assertNull(KeyConverter.splitLabels("a|"));
+    }
+
+    @Test
+    public void splitLabelsCost() {
+        BenchmarkBaseline.check("keyConverter.splitLabels", OPS, i -> {
+            String[] labels = KeyConverter.splitLabels(LABELS[i % LABELS.length]);
+            return labels != null ? labels.length : 0;
+        });
+    }
+
+    @Test
+    public void resolvesCaseWithKeyboardLocale() {
+        KeyConverter converter = new KeyConverter();
+        converter.setLocale(new Locale("tr", "TR"));
+        KeyHolder dotted = newKey(converter, "i");
+        KeyHolder dotless = newKey(converter, "I");
+
+        converter.toUpperCase(dotted);
+        assertEquals("\u0130", dotted.key.label);
+        converter.toLowerCase(dotless);
+        assertEquals("\u0131", dotless.key.label);
+
+        converter.setLocale(Locale.US);
+        KeyHolder latin = newKey(converter, "i");
+        converter.toUpperCase(latin);
+        assertEquals("I", latin.key.label);
+    }
+
+    @Test
+    public void restoresBaseKeyAfterMiniKeyboard() {
+        KeyConverter converter = new KeyConverter();
+        KeyHolder holder = newKey(converter, "e");
+        holder.saveBaseKey();
+        Key base = holder.key;
+
+        Key accent = new Key(null);
+        accent.label = "\u00e9";
+        holder.key = accent;
+        holder.isInMiniKb = true;
+        converter.init(holder);
+        converter.toUpperCase(holder);
+        assertEquals("\u00c9", accent.label);
+
+        holder.restoreBaseKey();
+        converter.toUpperCase(holder);
+        assertSame(base, holder.key);
+        assertEquals("E", base.label);
+        assertFalse(holder.isInMiniKb);
+    }
+
+    @Test
+    public void extractCharCost() {
+        KeyConverter converter = new KeyConverter();
+        KeyHolder[] keys = new KeyHolder[LABELS.length];
+
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = newKey(converter, LABELS[i]);
+        }
+
+        converter.extractChar(KeyConverter.UPPER_CASE, keys[2]);
+        assertEquals("B", keys[2].key.label);
+
+        // shift toggle: every key flips its case, labels are resolved up front
+        BenchmarkBaseline.check("keyConverter.extractChar", OPS, i -> {
+            KeyHolder key = keys[i % keys.length];
+            converter.extractChar((i / keys.length & 1) == 0 ? KeyConverter.UPPER_CASE : KeyConverter.LOWER_CASE, key);
+            return key.key.label.length();
+        });
+    }
+
+    private static KeyHolder newKey(KeyConverter converter, String label) {
+        Key key = new Key(null);
+        key.label = label;
+        KeyHolder holder = new KeyHolder(key);
+        converter.init(holder);
+
+        return holder;
+    }
+
+    private static int nearestIndex(float x, float y) {
+        return LeanbackKeyboardView.getNearestIndex(x, y, 0, 0, WIDTH, HEIGHT, ROWS, COLS, KEY_COUNT);
+    }
+
+    private static float cellX(int col) {
+        return (col + 0.5f) * WIDTH / COLS;
+    }
+}
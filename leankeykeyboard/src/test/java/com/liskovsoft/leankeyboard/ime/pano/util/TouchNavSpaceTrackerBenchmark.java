@@ -0,0 +1,178 @@
+package com.liskovsoft.leankeyboard.ime.pano.util;
+
+import android.view.MotionEvent;
+import com.liskovsoft.leankeyboard.bench.BenchmarkBaseline;
+import com.liskovsoft.leankeyboard.bench.MicroBenchmark;
+import com.liskovsoft.leankeyboard.ime.pano.util.TouchNavSpaceTracker.PhysicalMotionEvent;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays the recorded swipe (see <code>resources/touchnav</code>) through the tracker.
+ */
+public class TouchNavSpaceTrackerBenchmark {
+    private static final int OPS = 200_000;
+    private static final int DEVICE_ID = 7;
+    private static final float PIXEL_WIDTH = 1920.0F;
+    private static final float PIXEL_HEIGHT = 400.0F;
+    private int[] mActions;
+    private float[] mX;
+    private float[] mY;
+    private long[] mTimes;
+    private TouchNavSpaceTracker mSpaceTracker;
+    private TouchNavMotionTracker mTracker;
+    private CountingListener mListener;
+
+    private static final class CountingListener extends TouchNavSpaceTracker.SimpleTouchEventListener {
+        private int mDowns;
+        private int mMoves;
+        private int mFlings;
+        private int mFlicks;
+        private int mUps;
+        private int mFlickDirection;
+        private float mFlingVelX;
+        private float mLastPixelX;
+
+        @Override
+        public boolean onDown(PhysicalMotionEvent event) {
+            mDowns++;
+            return true;
+        }
+
+        @Override
+        public boolean onMove(PhysicalMotionEvent down, PhysicalMotionEvent current, float pixelX, float pixelY) {
+            mMoves++;
+            mLastPixelX = pixelX;
+            return true;
+        }
+
+        @Override
+        public boolean onFling(PhysicalMotionEvent down, PhysicalMotionEvent current, float velX, float velY) {
+            mFlings++;
+            mFlingVelX = velX;
+            return true;
+        }
+
+        @Override
+        public boolean onFlick(PhysicalMotionEvent down, PhysicalMotionEvent current, int direction, int primaryDirection) {
+            mFlicks++;
+            mFlickDirection = primaryDirection;
+            return true;
+        }
+
+        @Override
+        public boolean onUp(PhysicalMotionEvent event, float pixelX, float pixelY) {
+            mUps++;
+            return true;
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        load("swipe_right.txt");
+        mListener = new CountingListener();
+        mSpaceTracker = new TouchNavSpaceTracker(null, mListener);
+        mSpaceTracker.setPixelSize(PIXEL_WIDTH, PIXEL_HEIGHT);
+        mTracker = new TouchNavMotionTracker(0.0F, 0.0F, 0.1F); // default resolution
+    }
+
+    @Test
+    public void swipeMovesRightAndFlicks() {
+        mSpaceTracker.setPixelPosition(PIXEL_WIDTH / 4, PIXEL_HEIGHT / 2);
+
+        for (int i = 0; i < mActions.length; i++) {
+            replay(i);
+        }
+
+        assertEquals(1, mListener.mDowns);
+        assertEquals(mActions.length - 2, mListener.mMoves);
+        assertTrue(mListener.mLastPixelX > PIXEL_WIDTH / 4);
+        assertEquals(1, mListener.mFlings);
+        assertTrue(mListener.mFlingVelX > 0);
+        assertEquals(1, mListener.mFlicks);
+        assertEquals(TouchNavSpaceTracker.DIRECTION_RIGHT, mListener.mFlickDirection);
+        assertEquals(1, mListener.mUps);
+    }
+
+    @Test
+    public void firstMoveStartsGesture() {
+        for (int i = 1; i < mActions.length; i++) {
+            replay(i);
+        }
+
+        assertEquals(0, mListener.mDowns);
+        assertEquals(1, mListener.mFlicks);
+        assertEquals(1, mListener.mUps);
+    }
+
+    @Test
+    public void moveCost() {
+        MicroBenchmark.Result move = BenchmarkBaseline.check("touchNav.replay", OPS, i -> {
+            int index = i % mActions.length;
+
+            if (index == 0) {
+                mSpaceTracker.setPixelPosition(PIXEL_WIDTH / 4, PIXEL_HEIGHT / 2);
+            }
+
+            return replay(index) ? 1 : 0;
+        });
+
+        // events, positions and velocity history are reused
+        assertTrue(move.toString(), move.bytesPerOp < 1);
+    }
+
+    private boolean replay(int index) {
+        return mSpaceTracker.onTouchNavigation(mTracker, DEVICE_ID, mActions[index], mX[index], mY[index], mTimes[index]);
+    }
+
+    private void load(String fixture) throws IOException {
+        List<String[]> events = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                getClass().getResourceAsStream("/touchnav/" + fixture), StandardCharsets.UTF_8))) {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    events.add(line.split(" "));
+                }
+            }
+        }
+
+        mActions = new int[events.size()];
+        mX = new float[events.size()];
+        mY = new float[events.size()];
+        mTimes = new long[events.size()];
+
+        for (int i = 0; i < events.size(); i++) {
+            String[] event = events.get(i);
+            mActions[i] = toAction(event[0]);
+            mX[i] = Float.parseFloat(event[1]);
+            mY[i] = Float.parseFloat(event[2]);
+            mTimes[i] = Long.parseLong(event[3]);
+        }
+    }
+
+    private static int toAction(String name) {
+        switch (name) {
+            case "DOWN":
+                return MotionEvent.ACTION_DOWN;
+            case "MOVE":
+                return MotionEvent.ACTION_MOVE;
+            case "UP":
+                return MotionEvent.ACTION_UP;
+            default:
+                throw new IllegalArgumentException("Unknown action: " + name);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.liskovsoft.leankeyboard.utils;
+
+import com.liskovsoft.leankeyboard.bench.MicroBenchmark;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Per-classification cost of the compiled matcher vs linear substring scan (previous implementation),
+ * for the shipped rule table and for a table grown to hundreds of apps.
+ */
+public class ComponentRuleMatcherBenchmark {
+    private static final File RULES_FILE = new File("src/main/res/values/arrays.xml");
+    private static final int GROWN_RULES = 500;
+    private static final int OPS = 200_000;
+    private List<String> mRules;
+    private String[][] mComponents;
+
+    @Before
+    public void setUp() throws Exception {
+        mRules = readRules();
+
+        mComponents = new String[][] {
+                {"com.google.android.youtube.tv", "com.google.android.apps.youtube.tv.activity.ShellActivity"},
+                {"com.android.tv.settings", "com.android.tv.settings.MainSettings"},
+                {"org.telegram.messenger", "org.telegram.ui.LaunchActivity"},
+                {"com.netflix.ninja", "com.netflix.ninja.MainActivity"},
+                {"com.example.player", "com.example.player.ui.PlaybackActivity"},
+                {"com.android.vending", "com.google.android.finsky.activities.MainActivity"},
+                {"com.slideos.system", "com.liskovsoft.leankeyboard.activity.settings.KbSettingsActivity"},
+                {"org.rockbox", "org.rockbox.RockboxActivity"},
+                {"com.vendor42.app", "com.vendor42.app.ui.HomeActivity"},
+                {"com.example.notes", "com.example.notes.ui.ListActivity"},
+        };
+    }
+
+    @Test
+    public void matchesLinearScan() {
+        List<String> rules = grow(mRules, GROWN_RULES);
+        ComponentRuleMatcher matcher = ComponentRuleMatcher.compile(rules.toArray(new String[0]));
+        LinearMatcher linear = new LinearMatcher(rules);
+
+        for (String[] component : mComponents) {
+            assertEquals(component[0] + "/" + component[1],
+                    linear.classify(component[0], component[1]), matcher.classify(component[0], component[1]));
+        }
+    }
+
+    @Test
+    public void classificationCost() {
+        measure("shipped rules", mRules);
+        List<String> grown = grow(mRules, GROWN_RULES);
+        double compiled = measure(grown.size() + " rules", grown);
+
+        // automaton cost depends on name length only
+        assertTrue(compiled < 10_000);
+    }
+
+    private double measure(String name, List<String> rules) {
+        ComponentRuleMatcher matcher = ComponentRuleMatcher.compile(rules.toArray(new String[0]));
+        LinearMatcher linear = new LinearMatcher(rules);
+        String[][] components = mComponents;
+
+        MicroBenchmark.run("linear scan, " + name, OPS, i -> {
+            String[] component = components[i % components.length];
+            return linear.classify(component[0], component[1]);
+        });
+
+        return MicroBenchmark.run("compiled matcher, " + name, OPS, i -> {
+            String[] component = components[i % components.length];
+            return matcher.classify(component[0], component[1]);
+        });
+    }
+
+    private static List<String> grow(List<String> rules, int size) {
+        List<String> result = new ArrayList<>(rules);
+
+        for (int i = 0; result.size() < size; i++) {
+            result.add("package|com.vendor" + i + ".app|" + (i % 10 == 0 ? "deny" : "allow"));
+        }
+
+        return result;
+    }
+
+    private static List<String> readRules() throws Exception {
+        String xml = new String(Files.readAllBytes(RULES_FILE.toPath()), StandardCharsets.UTF_8);
+        String array = xml.substring(xml.indexOf("name=\"text_input_rules\""));
+        array = array.substring(0, array.indexOf("</string-array>"));
+
+        List<String> rules = new ArrayList<>();
+        Matcher matcher = Pattern.compile("<item>(.*?)</item>").matcher(array);
+
+        while (matcher.find()) {
+            rules.add(matcher.group(1));
+        }
+
+        return rules;
+    }
+
+    /**
+     * Same semantics as the compiled matcher, implemented like the old hard-coded checks
+     */
+    private static final class LinearMatcher {
+        private final boolean[] mIsPackage;
+        private final String[] mPatterns;
+        private final int[] mVerdicts;
+
+        LinearMatcher(List<String> rules) {
+            mIsPackage = new boolean[rules.size()];
+            mPatterns = new String[rules.size()];
+            mVerdicts = new int[rules.size()];
+
+            for (int i = 0; i < rules.size(); i++) {
+                String[] parts = rules.get(i).split("\\|");
+                mIsPackage[i] = parts[0].equals("package");
+                mPatterns[i] = parts[1].toLowerCase();
+                mVerdicts[i] = parts[2].equals("deny") ? ComponentRuleMatcher.VERDICT_DENY : ComponentRuleMatcher.VERDICT_ALLOW;
+            }
+        }
+
+        int classify(String packageName, String className) {
+            int flags = ComponentRuleMatcher.VERDICT_NONE;
+            String lowerPackageName = packageName.toLowerCase();
+            String lowerClassName = className.toLowerCase();
+
+            for (int i = 0; i < mPatterns.length; i++) {
+                if ((mIsPackage[i] ? lowerPackageName : lowerClassName).contains(mPatterns[i])) {
+                    flags |= mVerdicts[i];
+                }
+            }
+
+            return (flags & ComponentRuleMatcher.VERDICT_DENY) != 0 ? ComponentRuleMatcher.VERDICT_DENY : flags;
+        }
+    }
+}
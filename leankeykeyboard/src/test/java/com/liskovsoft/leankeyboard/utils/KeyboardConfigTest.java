@@ -0,0 +1,31 @@
+package com.liskovsoft.leankeyboard.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class KeyboardConfigTest {
+    @Test
+    public void sameValuesHaveNoChanges() {
+        assertEquals(0, config(false, LeanKeyPreferences.THEME_DARK3, false).diff(config(false, LeanKeyPreferences.THEME_DARK3, false)));
+    }
+
+    @Test
+    public void reportsOnlyChangedValues() {
+        KeyboardConfig old = config(false, LeanKeyPreferences.THEME_DARK3, false);
+
+        assertEquals(KeyboardConfig.CHANGED_ENLARGE_KEYBOARD, config(true, LeanKeyPreferences.THEME_DARK3, false).diff(old));
+        assertEquals(KeyboardConfig.CHANGED_THEME, config(false, LeanKeyPreferences.THEME_DEFAULT, false).diff(old));
+        assertEquals(KeyboardConfig.CHANGED_THEME | KeyboardConfig.CHANGED_CYCLIC_NAVIGATION,
+                config(false, LeanKeyPreferences.THEME_DEFAULT, true).diff(old));
+    }
+
+    @Test
+    public void firstSnapshotChangesEverything() {
+        assertEquals(~0, config(false, LeanKeyPreferences.THEME_DARK3, false).diff(null));
+    }
+
+    private static KeyboardConfig config(boolean enlarge, String theme, boolean cyclic) {
+        return new KeyboardConfig(true, enlarge, theme, true, cyclic, false, false, false);
+    }
+}
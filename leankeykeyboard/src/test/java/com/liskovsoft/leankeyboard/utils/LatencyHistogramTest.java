@@ -0,0 +1,67 @@
+package com.liskovsoft.leankeyboard.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+    @Test
+    public void bucketsAreContiguous() {
+        long expectedLow = 0;
+
+        for (int index = 0; ; index++) {
+            long high = LatencyHistogram.upperBoundOf(index);
+
+            assertEquals(index, LatencyHistogram.indexOf(expectedLow));
+            assertEquals(index, LatencyHistogram.indexOf(high));
+
+            if (high >= 60_000_000) {
+                break;
+            }
+
+            expectedLow = high + 1;
+        }
+    }
+
+    @Test
+    public void percentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+
+        for (int micros = 1; micros <= 10_000; micros++) {
+            histogram.recordMicros(micros);
+        }
+
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(10_000, histogram.getMaxMicros());
+        assertNear(5_000, histogram.getPercentileMicros(50));
+        assertNear(9_500, histogram.getPercentileMicros(95));
+        assertNear(9_900, histogram.getPercentileMicros(99));
+        assertEquals(10_000, histogram.getPercentileMicros(100));
+    }
+
+    @Test
+    public void outliersGoToTheLastBucket() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        histogram.recordMicros(Long.MAX_VALUE / 2);
+        histogram.recordMicros(-5);
+
+        assertEquals(1, histogram.getCount());
+        assertEquals(Long.MAX_VALUE / 2, histogram.getPercentileMicros(50));
+    }
+
+    @Test
+    public void dumpsInMillis() {
+        LatencyHistogram histogram = new LatencyHistogram("key");
+        histogram.recordMicros(1_500);
+
+        StringBuilder out = new StringBuilder();
+        histogram.dump(out);
+
+        assertEquals("key: n=1 p50=1.5ms p95=1.5ms p99=1.5ms max=1.5ms", out.toString());
+    }
+
+    private static void assertNear(long expected, long actual) {
+        assertTrue("expected ~" + expected + ", got " + actual, actual >= expected && actual <= expected * 1.13);
+    }
+}
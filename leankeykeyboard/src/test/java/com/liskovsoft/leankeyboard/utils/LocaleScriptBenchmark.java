@@ -0,0 +1,152 @@
+package com.liskovsoft.leankeyboard.utils;
+
+import com.liskovsoft.leankeyboard.bench.BenchmarkBaseline;
+import com.liskovsoft.leankeyboard.bench.MicroBenchmark;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Script lookup done on every keyboard language switch, and the table init:
+ * packed table vs the HashMap per language that the class used to fill in its static initializer.
+ */
+public class LocaleScriptBenchmark {
+    private static final File SCRIPTS_FILE = new File("src/main/locales/scripts.txt");
+    private static final int OPS = 200_000;
+    private static final int INIT_OPS = 200;
+    private static final Locale[] LOCALES = {
+            Locale.US, Locale.GERMANY, new Locale("de", "BR"), new Locale("ru"), new Locale("uk", "UA"),
+            Locale.CHINA, Locale.TAIWAN, new Locale("sr", "RS"), Locale.FRANCE, new Locale("zu")
+    };
+    private List<String[]> mLines;
+
+    @Before
+    public void setUp() throws Exception {
+        mLines = readLines();
+    }
+
+    @Test
+    public void resolvesCountrySpecificScripts() {
+        assertEquals("Latn", LocaleScript.getScript(Locale.US));
+        assertEquals("Runr", LocaleScript.getScript(new Locale("de", "BR")));
+        assertEquals("Cyrl", LocaleScript.getScript(new Locale("uk", "UA")));
+        assertEquals("Hans", LocaleScript.getScript(Locale.CHINA));
+        assertEquals("Hant", LocaleScript.getScript(Locale.TAIWAN));
+        assertEquals("", LocaleScript.getScript(new Locale("abr")));
+        assertNull(LocaleScript.getScript(new Locale("xx")));
+    }
+
+    @Test
+    public void matchesLegacyMaps() {
+        Map<String, Map<String, String>> legacy = buildLegacyMaps(mLines);
+        assertEquals(legacy.size(), LocaleScript.load().getLanguageCount());
+
+        for (Map.Entry<String, Map<String, String>> language : legacy.entrySet()) {
+            for (String country : language.getValue().keySet()) {
+                Locale locale = new Locale(language.getKey(), country);
+                assertEquals(locale.toString(), legacyGetScript(legacy, locale), LocaleScript.getScript(locale));
+            }
+
+            Locale unknownCountry = new Locale(language.getKey(), "ZZ");
+            assertEquals(unknownCountry.toString(), legacyGetScript(legacy, unknownCountry), LocaleScript.getScript(unknownCountry));
+        }
+    }
+
+    @Test
+    public void getScriptCost() {
+        BenchmarkBaseline.check("localeScript.getScript", OPS, i -> LocaleScript.getScript(LOCALES[i % LOCALES.length]).length());
+    }
+
+    /**
+     * Decode only: opening the resource costs the same for any format and dominates the JVM numbers.
+     */
+    @Test
+    public void initCost() throws Exception {
+        List<String[]> lines = mLines;
+        byte[] data;
+
+        try (InputStream resource = LocaleScript.class.getResourceAsStream(LocaleScript.RESOURCE_NAME)) {
+            data = LocaleScript.readFully(resource);
+        }
+
+        MicroBenchmark.Result legacy = MicroBenchmark.measure("localeScript.legacyInit", INIT_OPS, i -> buildLegacyMaps(lines).size());
+        MicroBenchmark.Result packed = BenchmarkBaseline.check("localeScript.read", INIT_OPS, i -> {
+            try {
+                return LocaleScript.read(data).getLanguageCount();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        // a few int arrays and shared strings instead of a HashMap per language
+        assertTrue(packed.bytesPerOp < 0 || packed.bytesPerOp < legacy.bytesPerOp);
+    }
+
+    /**
+     * Same structure as the removed static initializer: <code>scriptsByLocale.put(lang, getScriptsMap(...))</code>
+     */
+    private static Map<String, Map<String, String>> buildLegacyMaps(List<String[]> lines) {
+        Map<String, Map<String, String>> scriptsByLocale = new HashMap<>();
+
+        for (String[] line : lines) {
+            scriptsByLocale.put(line[0], getScriptsMap(line));
+        }
+
+        return scriptsByLocale;
+    }
+
+    private static Map<String, String> getScriptsMap(String[] line) {
+        Map<String, String> scripts = new HashMap<>();
+        scripts.put("", "-".equals(line[1]) ? "" : line[1]);
+
+        for (int i = 2; i < line.length; i += 2) {
+            scripts.put(line[i], line[i + 1]);
+        }
+
+        return scripts;
+    }
+
+    private static String legacyGetScript(Map<String, Map<String, String>> scriptsByLocale, Locale locale) {
+        String localeString = locale.toString();
+        String language = "";
+        String country = "";
+        if (localeString.contains("_")) {
+            String[] split = localeString.split("_");
+            language = split[0];
+            country = split[1];
+        } else language = localeString;
+
+        Map<String, String> scripts = scriptsByLocale.get(language);
+        String script = scripts.get(country);
+        return script == null ? scripts.get("") : script;
+    }
+
+    /**
+     * @return language, script, country, script...
+     */
+    private static List<String[]> readLines() throws Exception {
+        List<String[]> lines = new ArrayList<>();
+
+        for (String line : Files.readAllLines(SCRIPTS_FILE.toPath(), StandardCharsets.UTF_8)) {
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                lines.add(line.split("[ =]"));
+            }
+        }
+
+        return lines;
+    }
+}
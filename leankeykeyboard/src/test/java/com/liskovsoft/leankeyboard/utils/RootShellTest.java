@@ -0,0 +1,175 @@
+package com.liskovsoft.leankeyboard.utils;
+
+import com.liskovsoft.leankeyboard.utils.RootShell.Result;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs against plain <code>/bin/sh</code> instead of <code>su</code>
+ */
+public class RootShellTest {
+    private static final String[] FAKE_SU = {"/bin/sh"};
+    private RootShell mShell;
+
+    @Before
+    public void setUp() {
+        assumeTrue(new File(FAKE_SU[0]).canExecute());
+        mShell = new RootShell(FAKE_SU, 4, 2_000);
+    }
+
+    @After
+    public void tearDown() {
+        if (mShell != null) {
+            mShell.close();
+        }
+    }
+
+    @Test
+    public void returnsOutputAndExitCode() {
+        Result result = mShell.run("echo first; echo second");
+        assertEquals(0, result.exitCode);
+        assertEquals("first", result.output.get(0));
+        assertEquals("second", result.output.get(1));
+
+        assertEquals(3, mShell.run("exit_with() { return $1; }; exit_with 3").exitCode);
+        assertEquals(1, mShell.run("false").exitCode);
+    }
+
+    @Test
+    public void keepsOutputWithoutTrailingNewLine() {
+        Result result = mShell.run("printf abc");
+        assertEquals(Collections.singletonList("abc"), result.output);
+        assertTrue(result.isSuccess());
+    }
+
+    @Test
+    public void capturesStderr() {
+        assertEquals(Collections.singletonList("oops"), mShell.run("echo oops >&2").output);
+    }
+
+    @Test
+    public void reusesSession() {
+        String pid = mShell.run("echo $$").output.get(0);
+        mShell.run("MY_VAR=42");
+
+        assertEquals(pid, mShell.run("echo $$").output.get(0));
+        assertEquals("42", mShell.run("echo $MY_VAR").output.get(0));
+    }
+
+    @Test
+    public void commandCantConsumeShellInput() {
+        Result result = mShell.run("cat");
+        assertTrue(result.isSuccess());
+        assertTrue(result.output.isEmpty());
+        assertEquals("after", mShell.run("echo after").output.get(0));
+    }
+
+    @Test
+    public void restartsSessionAfterTimeout() {
+        String pid = mShell.run("echo $$").output.get(0);
+
+        Result result = mShell.run("sleep 5", 200);
+        assertTrue(result.timedOut);
+        assertFalse(result.isSuccess());
+
+        Result next = mShell.run("echo $$");
+        assertTrue(next.isSuccess());
+        assertNotEquals(pid, next.output.get(0));
+    }
+
+    @Test
+    public void doesntReplayRestOfTimedOutBatch() throws IOException, InterruptedException {
+        File marker = File.createTempFile("rootshell", ".marker");
+        assertTrue(marker.delete());
+
+        CountDownLatch done = new CountDownLatch(1);
+        Result[] result = new Result[1];
+
+        // keeps the worker busy, so the next two are written as one batch
+        mShell.submit("sleep 0.3", null);
+        mShell.submit("sleep 5", 200, null);
+        mShell.submit("touch " + marker.getAbsolutePath(), r -> {
+            result[0] = r;
+            done.countDown();
+        });
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertFalse(result[0].isSuccess());
+        assertTrue(mShell.run("echo after").isSuccess());
+        assertFalse(marker.exists());
+    }
+
+    @Test
+    public void closeFailsPendingCommands() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(2);
+        boolean[] success = new boolean[2];
+
+        mShell.submit("sleep 5", result -> {
+            success[0] = result.isSuccess();
+            done.countDown();
+        });
+        mShell.submit("true", result -> {
+            success[1] = result.isSuccess();
+            done.countDown();
+        });
+        Thread.sleep(100);
+        mShell.close();
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertFalse(success[0]);
+        assertFalse(success[1]);
+        assertFalse(mShell.run("true").isSuccess());
+    }
+
+    @Test
+    public void rejectsWhenQueueIsFull() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        mShell.run("true"); // session is up
+        assertTrue(mShell.submit("sleep 0.5", result -> started.countDown()));
+        Thread.sleep(100); // taken by the worker, the queue is empty
+
+        int accepted = 0;
+        int rejected = 0;
+
+        for (int i = 0; i < 20; i++) {
+            if (mShell.submit("true", null)) {
+                accepted++;
+            } else {
+                rejected++;
+            }
+        }
+
+        assertEquals(4, accepted);
+        assertEquals(16, rejected);
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void deliversAsyncResultsInOrder() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(3);
+        StringBuilder order = new StringBuilder();
+
+        for (int i = 1; i <= 3; i++) {
+            mShell.submit("echo " + i, result -> {
+                order.append(result.output.get(0));
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertEquals("123", order.toString());
+    }
+}
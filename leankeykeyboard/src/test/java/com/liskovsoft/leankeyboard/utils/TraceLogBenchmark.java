@@ -0,0 +1,66 @@
+package com.liskovsoft.leankeyboard.utils;
+
+import android.util.Log;
+import com.liskovsoft.leankeyboard.bench.BenchmarkBaseline;
+import com.liskovsoft.leankeyboard.bench.MicroBenchmark;
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Trace call on the cursor and focus hot paths vs the <code>String.format</code> it replaces.
+ */
+public class TraceLogBenchmark {
+    private static final String TAG = TraceLogBenchmark.class.getSimpleName();
+    private static final int TRACE_CURSOR = TraceLog.event(Log.DEBUG, TAG, "cursor: lenBefore=%d, lenAfter=%d, isRtl=%d");
+    private static final int TRACE_COLOR = TraceLog.event(Log.DEBUG, TAG, "color: #%06X");
+    private static final int OPS = 1_000_000;
+
+    @Test
+    public void formatsOnDump() {
+        StringBuilder before = new StringBuilder();
+        TraceLog.dump(before);
+
+        TraceLog.trace(TRACE_CURSOR, 5, 2, 0);
+        TraceLog.trace(TRACE_COLOR, 0x3F51B5);
+
+        StringBuilder out = new StringBuilder();
+        TraceLog.dump(out);
+        String[] lines = out.toString().split("\n");
+
+        assertTrue(lines[lines.length - 2], lines[lines.length - 2].endsWith("cursor: lenBefore=5, lenAfter=2, isRtl=0"));
+        assertTrue(lines[lines.length - 1], lines[lines.length - 1].endsWith("color: #3F51B5"));
+        assertTrue(lines[lines.length - 1].startsWith(TAG));
+    }
+
+    @Test
+    public void keepsLastRecords() {
+        for (int i = 0; i < TraceLog.RING_SIZE * 3; i++) {
+            TraceLog.trace(TRACE_CURSOR, i, 0, 0);
+        }
+
+        StringBuilder out = new StringBuilder();
+        TraceLog.dump(out);
+        String[] lines = out.toString().split("\n");
+
+        assertEquals(TraceLog.RING_SIZE, lines.length);
+        assertTrue(lines[lines.length - 1].endsWith("lenBefore=" + (TraceLog.RING_SIZE * 3 - 1) + ", lenAfter=0, isRtl=0"));
+    }
+
+    @Test
+    public void traceCost() {
+        MicroBenchmark.Result format = MicroBenchmark.measure("traceLog.legacyFormat", OPS / 10, i ->
+                String.format("direction key: before: lenBefore=%s, lenAfter=%s, isRtlBefore=%s", i, i & 7, (i & 1) == 0).length());
+        MicroBenchmark.Result trace = BenchmarkBaseline.check("traceLog.trace", OPS, i -> {
+            TraceLog.trace(TRACE_CURSOR, i, i & 7, i & 1);
+            return i;
+        });
+
+        // record goes to the preallocated ring
+        assertTrue(trace.bytesPerOp < 1);
+        assertTrue(String.format(Locale.US, "%.1f vs %.1f", trace.nsPerOp, format.nsPerOp), trace.nsPerOp < format.nsPerOp);
+    }
+}